@@ -0,0 +1,272 @@
+// File: AdmissionController.java
+
+import enums.OperationClass;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for library operations.
+ * <p>
+ * Every operation class has its own lane with a token-bucket rate limit, a per-user token bucket
+ * and a cap on concurrent operations. Operations over a limit are rejected at once with an
+ * {@link OverloadException} carrying a retry-after hint rather than waiting for the disk.
+ * Circulation has its own lane that other classes cannot use, and search and reporting are shed
+ * while circulation is busy, so checkouts are never starved by expensive scans.
+ */
+public class AdmissionController {
+    private static final int MAX_USER_BUCKETS = 10_000;
+    private static final long MIN_RETRY_NANOS = 10_000_000L;
+
+    private final Map<OperationClass, Lane> lanes = new EnumMap<>(OperationClass.class);
+
+    /**
+     * Limits of one operation class.
+     *
+     * @param ratePerSecond Sustained operations per second across all users
+     * @param burst Operations admitted at once after an idle period
+     * @param userRatePerSecond Sustained operations per second for one user
+     * @param userBurst Operations one user may make at once after an idle period
+     * @param maxConcurrent Operations of this class that may run at the same time
+     */
+    public record LanePolicy(double ratePerSecond, double burst, double userRatePerSecond, double userBurst,
+                             int maxConcurrent) {
+        public LanePolicy {
+            if (ratePerSecond <= 0 || burst < 1 || userRatePerSecond <= 0 || userBurst < 1 || maxConcurrent <= 0) {
+                throw new IllegalArgumentException("Invalid lane policy");
+            }
+        }
+    }
+
+    /**
+     * Counters of one lane.
+     *
+     * @param operationClass The operation class
+     * @param admitted Operations admitted
+     * @param shedByRate Operations rejected by the lane's rate limit
+     * @param shedByUserRate Operations rejected by a user's rate limit
+     * @param shedByConcurrency Operations rejected because the lane was full
+     * @param shedByPriority Operations rejected to leave the disk to circulation
+     * @param inFlight Operations running now
+     */
+    public record LaneMetrics(OperationClass operationClass, long admitted, long shedByRate, long shedByUserRate,
+                              long shedByConcurrency, long shedByPriority, int inFlight) {
+        public long shed() {
+            return shedByRate + shedByUserRate + shedByConcurrency + shedByPriority;
+        }
+    }
+
+    /**
+     * Creates a controller with the default policies.
+     */
+    public AdmissionController() {
+        this(defaultPolicies());
+    }
+
+    /**
+     * Creates a controller.
+     *
+     * @param policies The limits of every operation class
+     * @throws IllegalArgumentException If an operation class has no policy
+     */
+    public AdmissionController(Map<OperationClass, LanePolicy> policies) {
+        for (OperationClass operationClass : OperationClass.values()) {
+            LanePolicy policy = policies.get(operationClass);
+            if (policy == null) {
+                throw new IllegalArgumentException("No policy for " + operationClass);
+            }
+            lanes.put(operationClass, new Lane(policy));
+        }
+    }
+
+    /**
+     * Gets the default policies: generous limits for circulation and authentication, tighter ones
+     * for search, and one report at a time.
+     *
+     * @return The default policies
+     */
+    public static Map<OperationClass, LanePolicy> defaultPolicies() {
+        Map<OperationClass, LanePolicy> policies = new EnumMap<>(OperationClass.class);
+        policies.put(OperationClass.CIRCULATION, new LanePolicy(500, 1000, 10, 20, 16));
+        policies.put(OperationClass.AUTH, new LanePolicy(100, 200, 2, 10, 8));
+        policies.put(OperationClass.SEARCH, new LanePolicy(100, 200, 5, 10, 8));
+        policies.put(OperationClass.REPORTING, new LanePolicy(2, 5, 1, 2, 1));
+        return policies;
+    }
+
+    /**
+     * Runs an operation if admission control admits it.
+     *
+     * @param operationClass The class of the operation
+     * @param userId The user the operation is made for, or null if unknown
+     * @param operation The operation
+     * @param <T> The result type
+     * @return The result of the operation
+     * @throws IOException If the operation fails with an I/O error
+     * @throws OverloadException If the operation is rejected
+     */
+    public <T> T admit(OperationClass operationClass, String userId, DataFileCoordinator.IOCallable<T> operation)
+            throws IOException {
+        Permit permit = acquire(operationClass, userId);
+        try {
+            return operation.call();
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Admits an operation that the caller runs itself, then releases by closing the permit.
+     *
+     * @param operationClass The class of the operation
+     * @param userId The user the operation is made for, or null if unknown
+     * @return The permit, to be closed when the operation completes
+     * @throws OverloadException If the operation is rejected
+     */
+    public Permit acquire(OperationClass operationClass, String userId) {
+        Lane lane = lanes.get(operationClass);
+        Lane circulation = lanes.get(OperationClass.CIRCULATION);
+        if (operationClass.yieldsToCirculation() && circulation.isUnderPressure()) {
+            lane.shedByPriority.incrementAndGet();
+            throw new OverloadException(operationClass, circulation.retryAfter(),
+                    operationClass + " deferred while circulation is busy");
+        }
+        // Every limit is checked before any token is taken, so a rejected operation uses no capacity
+        long wait = lane.bucket.nanosUntilAvailable();
+        if (wait > 0) {
+            throw shedByRate(lane, operationClass, wait);
+        }
+        TokenBucket userBucket = userId == null ? null : lane.userBucket(userId);
+        if (userBucket != null) {
+            wait = userBucket.nanosUntilAvailable();
+            if (wait > 0) {
+                throw shedByUserRate(lane, operationClass, userId, wait);
+            }
+        }
+        if (!lane.permits.tryAcquire()) {
+            lane.shedByConcurrency.incrementAndGet();
+            throw new OverloadException(operationClass, lane.retryAfter(),
+                    "Too many concurrent " + operationClass + " operations");
+        }
+        // Another thread may have taken the last token since the check
+        wait = lane.bucket.tryAcquire();
+        if (wait > 0) {
+            lane.permits.release();
+            throw shedByRate(lane, operationClass, wait);
+        }
+        if (userBucket != null) {
+            wait = userBucket.tryAcquire();
+            if (wait > 0) {
+                lane.bucket.refund();
+                lane.permits.release();
+                throw shedByUserRate(lane, operationClass, userId, wait);
+            }
+        }
+        lane.admitted.incrementAndGet();
+        lane.inFlight.incrementAndGet();
+        return new Permit(lane);
+    }
+
+    private static OverloadException shedByRate(Lane lane, OperationClass operationClass, long wait) {
+        lane.shedByRate.incrementAndGet();
+        return new OverloadException(operationClass, Duration.ofNanos(Math.max(wait, MIN_RETRY_NANOS)),
+                operationClass + " rate limit exceeded");
+    }
+
+    private static OverloadException shedByUserRate(Lane lane, OperationClass operationClass, String userId, long wait) {
+        lane.shedByUserRate.incrementAndGet();
+        return new OverloadException(operationClass, Duration.ofNanos(Math.max(wait, MIN_RETRY_NANOS)),
+                operationClass + " rate limit exceeded for user " + userId);
+    }
+
+    /**
+     * Gets the counters of every lane.
+     *
+     * @return The metrics, keyed by operation class
+     */
+    public Map<OperationClass, LaneMetrics> getMetrics() {
+        Map<OperationClass, LaneMetrics> metrics = new EnumMap<>(OperationClass.class);
+        lanes.forEach((operationClass, lane) -> metrics.put(operationClass, new LaneMetrics(operationClass,
+                lane.admitted.get(), lane.shedByRate.get(), lane.shedByUserRate.get(),
+                lane.shedByConcurrency.get(), lane.shedByPriority.get(), lane.inFlight.get())));
+        return metrics;
+    }
+
+    /**
+     * A slot in a lane held by an admitted operation.
+     */
+    public static final class Permit implements AutoCloseable {
+        private final Lane lane;
+        private final long startNanos = System.nanoTime();
+        private boolean released;
+
+        private Permit(Lane lane) {
+            this.lane = lane;
+        }
+
+        /**
+         * Releases the slot. Releasing more than once has no effect.
+         */
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            lane.recordLatency(System.nanoTime() - startNanos);
+            lane.inFlight.decrementAndGet();
+            lane.permits.release();
+        }
+    }
+
+    /**
+     * The limits, counters and state of one operation class.
+     */
+    private static class Lane {
+        private final LanePolicy policy;
+        private final TokenBucket bucket;
+        private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+        private final Semaphore permits;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong shedByRate = new AtomicLong();
+        private final AtomicLong shedByUserRate = new AtomicLong();
+        private final AtomicLong shedByConcurrency = new AtomicLong();
+        private final AtomicLong shedByPriority = new AtomicLong();
+        private volatile long averageLatencyNanos;
+
+        Lane(LanePolicy policy) {
+            this.policy = policy;
+            this.bucket = new TokenBucket(policy.burst(), policy.ratePerSecond());
+            this.permits = new Semaphore(policy.maxConcurrent());
+        }
+
+        TokenBucket userBucket(String userId) {
+            if (userBuckets.size() > MAX_USER_BUCKETS) {
+                // Full buckets carry no state worth keeping
+                userBuckets.values().removeIf(TokenBucket::isFull);
+            }
+            return userBuckets.computeIfAbsent(userId, id -> new TokenBucket(policy.userBurst(), policy.userRatePerSecond()));
+        }
+
+        boolean isUnderPressure() {
+            return inFlight.get() * 2 >= policy.maxConcurrent();
+        }
+
+        void recordLatency(long nanos) {
+            // Exponentially weighted moving average; races between threads only lose a sample
+            long average = averageLatencyNanos;
+            averageLatencyNanos = average == 0 ? nanos : average + (nanos - average) / 8;
+        }
+
+        Duration retryAfter() {
+            return Duration.ofNanos(Math.max(averageLatencyNanos, MIN_RETRY_NANOS));
+        }
+    }
+}
@@ -0,0 +1,423 @@
+// File: AsyncLibraryManager.java
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous facade over {@link LibraryManager}.
+ * Operations run on a bounded pool of I/O threads and return a {@link CompletableFuture}.
+ * At most {@code threads + queueCapacity} operations may be outstanding; beyond that new operations
+ * fail immediately with a {@link RejectedExecutionException} instead of queueing without limit.
+ * Operations on the same ISBN or user run one at a time in submission order, so callers can
+ * pipeline several requests for one patron or title without racing. Operations given a scanned
+ * barcode or a loan ID run one at a time per barcode or ID; each first looks up the title and
+ * patron on an I/O thread, and is then ordered behind the operations on those accepted by the
+ * time the lookup finishes.
+ */
+public class AsyncLibraryManager implements AutoCloseable {
+    private final LibraryManager libraryManager;
+    private final ThreadPoolExecutor executor;
+    private final int maxOutstanding;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ConcurrentHashMap<String, CompletableFuture<?>> tails = new ConcurrentHashMap<>();
+    private final Object tailLock = new Object();
+
+    /**
+     * Work run by the facade. May throw the checked exceptions of the wrapped operation.
+     */
+    @FunctionalInterface
+    private interface Operation<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * Creates a facade with one I/O thread per available processor and a queue of 256 operations.
+     *
+     * @param libraryManager The library manager to delegate to
+     */
+    public AsyncLibraryManager(LibraryManager libraryManager) {
+        this(libraryManager, Runtime.getRuntime().availableProcessors(), 256);
+    }
+
+    /**
+     * Creates a facade.
+     *
+     * @param libraryManager The library manager to delegate to
+     * @param threads The number of I/O threads
+     * @param queueCapacity The number of operations that may wait for a thread
+     * @throws IllegalArgumentException If threads is not positive or queueCapacity is negative
+     */
+    public AsyncLibraryManager(LibraryManager libraryManager, int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid pool size: " + threads + " threads, queue " + queueCapacity);
+        }
+        this.libraryManager = libraryManager;
+        this.maxOutstanding = threads + queueCapacity;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "library-io-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Authentication operations
+    public CompletableFuture<User> authenticateUser(String username, String password) {
+        return submit(() -> libraryManager.authenticateUser(username, password), "login:" + username);
+    }
+
+    // Book operations
+    public CompletableFuture<Void> addBook(Book book) {
+        return submit(() -> {
+            libraryManager.addBook(book);
+            return null;
+        }, isbnKey(book.getISBN()));
+    }
+
+    public CompletableFuture<Void> updateBook(Book updatedBook) {
+        return submit(() -> {
+            libraryManager.updateBook(updatedBook);
+            return null;
+        }, isbnKey(updatedBook.getISBN()));
+    }
+
+    public CompletableFuture<Void> deleteBook(String ISBN) {
+        return submit(() -> {
+            libraryManager.deleteBook(ISBN);
+            return null;
+        }, isbnKey(ISBN));
+    }
+
+    public CompletableFuture<CatalogImporter.ImportResult> importBooks(Path source) {
+        return submit(() -> libraryManager.importBooks(source));
+    }
+
+    public CompletableFuture<List<Book>> searchBooks(String query) {
+        return submit(() -> libraryManager.searchBooks(query));
+    }
+
+    public CompletableFuture<CatalogIndex.QueryResult> queryBooks(BookQuery query) {
+        return submit(() -> libraryManager.queryBooks(query));
+    }
+
+    public CompletableFuture<List<TrigramIndex.SearchHit>> fuzzySearchBooks(String query, int limit) {
+        return submit(() -> libraryManager.fuzzySearchBooks(query, limit));
+    }
+
+    public CompletableFuture<List<Book>> getAllBooks() {
+        return submit(libraryManager::getAllBooks);
+    }
+
+    // Circulation operations
+    public CompletableFuture<Void> borrowBook(String userId, String code, int loanDays) {
+        Operation<Void> borrow = () -> {
+            libraryManager.borrowBook(userId, code, loanDays);
+            return null;
+        };
+        if (!ItemIndex.isBarcode(code)) {
+            return submit(borrow, userKey(userId), isbnKey(code));
+        }
+        return submitResolved(code, () -> {
+            Item item = libraryManager.findItemByBarcode(code);
+            return new String[]{userKey(userId), isbnKey(item == null ? code : item.getISBN())};
+        }, borrow);
+    }
+
+    public CompletableFuture<Void> returnBook(String code) {
+        return submitResolved(code, () -> loanKeys(code), () -> {
+            libraryManager.returnBook(code);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Transaction> renewLoan(String transactionId) {
+        return submitResolved(transactionId, () -> loanKeys(transactionId), () -> libraryManager.renewLoan(transactionId));
+    }
+
+    public CompletableFuture<Integer> placeHold(String userId, String ISBN) {
+        return submit(() -> libraryManager.placeHold(userId, ISBN), userKey(userId), isbnKey(ISBN));
+    }
+
+    public CompletableFuture<Boolean> cancelHold(String userId, String ISBN) {
+        return submit(() -> libraryManager.cancelHold(userId, ISBN), userKey(userId), isbnKey(ISBN));
+    }
+
+    public CompletableFuture<Integer> getHoldQueueLength(String ISBN) {
+        return submit(() -> libraryManager.getHoldQueueLength(ISBN), isbnKey(ISBN));
+    }
+
+    public CompletableFuture<List<Transaction>> getUserTransactions(String userId) {
+        return submit(() -> libraryManager.getUserTransactions(userId), userKey(userId));
+    }
+
+    public CompletableFuture<List<Transaction>> getAllTransactions() {
+        return submit(libraryManager::getAllTransactions);
+    }
+
+    public CompletableFuture<Integer> archiveCompletedLoans(LocalDate cutoff) {
+        return submit(() -> libraryManager.archiveCompletedLoans(cutoff));
+    }
+
+    public CompletableFuture<Integer> sendOverdueNotifications() {
+        return submit(libraryManager::sendOverdueNotifications);
+    }
+
+    // Reporting operations
+    public CompletableFuture<Void> generateInventoryReport() {
+        return submit(() -> {
+            libraryManager.generateInventoryReport();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> generateOverdueReport() {
+        return submit(() -> {
+            libraryManager.generateOverdueReport();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> generateUserActivityReport(String userId) {
+        return submit(() -> {
+            libraryManager.generateUserActivityReport(userId);
+            return null;
+        }, userKey(userId));
+    }
+
+    public CompletableFuture<Void> generatePopularBooksReport(int topN) {
+        return submit(() -> {
+            libraryManager.generatePopularBooksReport(topN);
+            return null;
+        });
+    }
+
+    // User operations
+    public CompletableFuture<Void> addUser(User user) {
+        return submit(() -> {
+            libraryManager.addUser(user);
+            return null;
+        }, userKey(user.getUserId()));
+    }
+
+    public CompletableFuture<Void> updateUser(User updatedUser) {
+        return submit(() -> {
+            libraryManager.updateUser(updatedUser);
+            return null;
+        }, userKey(updatedUser.getUserId()));
+    }
+
+    public CompletableFuture<Void> deactivateUser(String userId) {
+        return submit(() -> {
+            libraryManager.deactivateUser(userId);
+            return null;
+        }, userKey(userId));
+    }
+
+    public CompletableFuture<Boolean> canUserBorrow(User user) {
+        return submit(() -> libraryManager.canUserBorrow(user), userKey(user.getUserId()));
+    }
+
+    public CompletableFuture<List<User>> getAllUsers() {
+        return submit(libraryManager::getAllUsers);
+    }
+
+    /**
+     * Gets the number of operations waiting for an I/O thread.
+     *
+     * @return The executor queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the number of accepted operations that have not completed, including those waiting
+     * behind an earlier operation on the same ISBN or user.
+     *
+     * @return The number of outstanding operations
+     */
+    public int getOutstandingOperations() {
+        return outstanding.get();
+    }
+
+    /**
+     * Gets the number of operations rejected because the facade was saturated or shut down.
+     *
+     * @return The rejection count
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops accepting operations and waits for the accepted ones to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accepts an operation, chaining it behind the latest operation on each of its keys.
+     */
+    private <T> CompletableFuture<T> submit(Operation<T> operation, String... keys) {
+        CompletableFuture<T> result = accept();
+        if (!result.isDone()) {
+            chain(result, keys, () -> run(operation, result), false);
+        }
+        return result;
+    }
+
+    /**
+     * Accepts an operation whose keys depend on a lookup, such as the title of a scanned copy or
+     * the patron and title of a loan. The operation is accepted once and runs behind the earlier
+     * operations on the same barcode or loan ID. The lookup then runs on an I/O thread, and the
+     * operation is chained behind the latest operations on the keys it resolved to.
+     */
+    private <T> CompletableFuture<T> submitResolved(String code, Operation<String[]> lookup, Operation<T> operation) {
+        CompletableFuture<T> result = accept();
+        if (!result.isDone()) {
+            chain(result, new String[]{"code:" + code}, () -> {
+                String[] keys;
+                try {
+                    keys = lookup.call();
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                chain(result, keys, () -> run(operation, result), true);
+            }, false);
+        }
+        return result;
+    }
+
+    /**
+     * Counts an operation as outstanding if the facade has room for it.
+     *
+     * @return A new future for the operation, or a failed one if it was rejected
+     */
+    private <T> CompletableFuture<T> accept() {
+        if (outstanding.incrementAndGet() > maxOutstanding || executor.isShutdown()) {
+            outstanding.decrementAndGet();
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Library request queue is full"));
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.whenComplete((value, error) -> outstanding.decrementAndGet());
+        return result;
+    }
+
+    /**
+     * Makes an accepted operation the latest on each of the keys and runs a task for it once the
+     * operations before it on those keys have completed.
+     *
+     * @param onIOThread Whether the caller is already an I/O thread working on the operation,
+     *                   which then runs the task itself if nothing is ahead of it
+     */
+    private void chain(CompletableFuture<?> result, String[] keys, Runnable task, boolean onIOThread) {
+        List<CompletableFuture<?>> predecessors = new ArrayList<>(keys.length);
+        synchronized (tailLock) {
+            for (String key : keys) {
+                CompletableFuture<?> previous = tails.put(key, result);
+                if (previous != null && previous != result) {
+                    predecessors.add(previous);
+                }
+            }
+        }
+        result.whenComplete((value, error) -> {
+            for (String key : keys) {
+                tails.remove(key, result);
+            }
+        });
+
+        Runnable start = () -> {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                result.completeExceptionally(e);
+            }
+        };
+        if (predecessors.isEmpty()) {
+            if (onIOThread) {
+                task.run();
+            } else {
+                start.run();
+            }
+        } else {
+            // Failures of earlier operations do not cancel later ones
+            CompletableFuture.allOf(predecessors.toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((value, error) -> start.run());
+        }
+    }
+
+    private static <T> void run(Operation<T> operation, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            result.complete(operation.call());
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Looks up the keys of an operation on a loan given by its ID or by the barcode of the lent
+     * copy: the loan itself, and its patron and title once known. A scanned copy is always keyed
+     * by its title, even while it is not on loan yet.
+     */
+    private String[] loanKeys(String code) throws IOException {
+        Set<String> keys = new LinkedHashSet<>();
+        if (ItemIndex.isBarcode(code)) {
+            Item item = libraryManager.findItemByBarcode(code);
+            keys.add(isbnKey(item == null ? code : item.getISBN()));
+        }
+        Transaction loan = libraryManager.findTransaction(code);
+        if (loan == null) {
+            keys.add("transaction:" + code);
+        } else {
+            keys.add("transaction:" + loan.getTransactionId());
+            keys.add(userKey(loan.getUserId()));
+            keys.add(isbnKey(loan.getISBN()));
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the key of a title. Scanned barcodes are resolved to their title before this is called.
+     */
+    private static String isbnKey(String ISBN) {
+        String normalized = ISBNUtils.normalize(ISBN);
+        return "isbn:" + (normalized == null ? ISBN : normalized);
+    }
+
+    private static String userKey(String userId) {
+        return "user:" + userId;
+    }
+}
@@ -0,0 +1,421 @@
+// File: AuditLog.java
+
+import enums.AuditAction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Audit trail of who changed what, kept as compact binary records in {@code data/audit/}.
+ * <p>
+ * Recording an action only adds it to a lock-free queue, so the operation being audited never
+ * waits for the disk. A single writer thread drains the queue, encodes each batch into one buffer
+ * and appends it to the current segment with one channel write and one force. A segment is closed
+ * once it passes its size limit or has been open for its time limit, and closed segments are
+ * compressed with gzip in the background. Each process writes its own segments, named after the
+ * time they were opened and the process ID; {@link AuditLogReader} reads them back.
+ * <p>
+ * A segment starts with the 4-byte magic {@code LAUD} and a format version byte, followed by
+ * records of a 2-byte length and the record: the time in epoch milliseconds (8 bytes), the
+ * action ordinal (1 byte), and the actor, subject and detail as 2-byte-length-prefixed UTF-8
+ * strings. A record torn by a crash is detected by its length and ignored.
+ */
+public class AuditLog implements AutoCloseable {
+    private static final String DIRECTORY = "data/audit";
+    static final byte[] MAGIC = {'L', 'A', 'U', 'D'};
+    static final byte VERSION = 1;
+    static final String SEGMENT_PREFIX = "audit-";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String COMPRESSED_SUFFIX = ".log.gz";
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_FIELD_BYTES = 1024;
+    private static final int MAX_RECORD_BYTES = 2 + 8 + 1 + 3 * (2 + MAX_FIELD_BYTES);
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final int MAX_QUEUED = 1_000_000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long COMPRESS_WAIT_SECONDS = 10;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final AtomicInteger SEGMENT_COUNTER = new AtomicInteger();
+    private static AuditLog defaultLog;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong written = new AtomicLong();
+    private final ExecutorService compressor;
+    private final Thread writer;
+    private volatile boolean writerIdle;
+    private volatile boolean closed;
+    private FileChannel segment;
+    private Path segmentPath;
+    private long segmentOpenedAt;
+
+    /**
+     * An audited change.
+     *
+     * @param timestamp When the change was made, in epoch milliseconds
+     * @param action The kind of change
+     * @param actor The ID of the user who made the change, empty if unknown
+     * @param subject The key of the changed record, such as an ISBN, user ID or transaction ID
+     * @param detail Further facts about the change, empty if none
+     */
+    public record Entry(long timestamp, AuditAction action, String actor, String subject, String detail) {
+        /**
+         * Formats the entry as a CSV line, with the time in ISO-8601.
+         *
+         * @return The line
+         */
+        public String toLine() {
+            return String.join(",", Instant.ofEpochMilli(timestamp).toString(), action.name(), actor,
+                    subject, detail.replace(',', ';'));
+        }
+    }
+
+    /**
+     * A recorded entry waiting for the writer, or a flush marker when the entry is null.
+     */
+    private record Pending(Entry entry, CompletableFuture<Void> written) {
+    }
+
+    /**
+     * Gets the audit log of this process, writing to {@code data/audit/}. It is closed when the
+     * process exits.
+     *
+     * @return The shared audit log
+     */
+    public static synchronized AuditLog getDefault() {
+        if (defaultLog == null) {
+            defaultLog = new AuditLog(Paths.get(DIRECTORY), DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MILLIS);
+            // Records still queued at exit are written before the process ends
+            Runtime.getRuntime().addShutdownHook(new Thread(defaultLog::close, "audit-log-shutdown"));
+        }
+        return defaultLog;
+    }
+
+    /**
+     * Creates an audit log and starts its writer thread. Segments left uncompressed by processes
+     * that have exited are compressed.
+     *
+     * @param directory The directory holding the segments
+     * @param maxBytes The size past which a segment is closed
+     * @param maxAgeMillis The time after which a segment is closed
+     * @throws IllegalArgumentException If a limit is not positive
+     */
+    public AuditLog(Path directory, long maxBytes, long maxAgeMillis) {
+        if (maxBytes <= 0 || maxAgeMillis <= 0) {
+            throw new IllegalArgumentException("Invalid audit segment limits: " + maxBytes + " bytes, " + maxAgeMillis + " ms");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.compressor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "audit-log-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compressAbandonedSegments();
+        this.writer = new Thread(this::runWriter, "audit-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records a change. Returns immediately; the record is written by the writer thread.
+     *
+     * @param action The kind of change
+     * @param actor The ID of the user who made the change, or null if unknown
+     * @param subject The key of the changed record
+     * @param detail Further facts about the change, or null
+     */
+    public void record(AuditAction action, String actor, String subject, String detail) {
+        if (closed) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), action, actor == null ? "" : actor,
+                subject == null ? "" : subject, detail == null ? "" : detail);
+        enqueue(new Pending(entry, null));
+    }
+
+    /**
+     * Gets a future completed once every change recorded so far has been written and forced to disk.
+     *
+     * @return The future
+     */
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        enqueue(new Pending(null, flushed));
+        return flushed;
+    }
+
+    /**
+     * Gets the number of records written by this log.
+     *
+     * @return The number of records
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * Writes every change recorded so far, closes the current segment and stops the writer thread.
+     * Waits a bounded time for the closed segments to be compressed, so that a normal exit does
+     * not leave a half-written compressed copy behind.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        CompletableFuture<Void> flushed = flush();
+        closed = true;
+        try {
+            flushed.get();
+        } catch (Exception e) {
+            System.err.println("Unable to write the last audit records: " + e.getMessage());
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compressor.shutdown();
+        try {
+            if (!compressor.awaitTermination(COMPRESS_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                // The uncompressed segment is kept and compressed by the next process to start
+                System.err.println("Audit segments still compressing at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Pending pending) {
+        // Only when the disk has stalled for a long time do callers wait for the writer to catch up
+        while (queued.get() >= MAX_QUEUED && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        queue.offer(pending);
+        queued.incrementAndGet();
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void runWriter() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        while (true) {
+            Pending pending = queue.poll();
+            if (pending == null) {
+                if (closed) {
+                    rotate();
+                    return;
+                }
+                rotateIfExpired();
+                writerIdle = true;
+                // Checked again after announcing idleness, so a record offered meanwhile is not missed
+                if (queue.isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerIdle = false;
+                continue;
+            }
+            writeBatch(buffer, pending);
+        }
+    }
+
+    /**
+     * Encodes the queued records into the buffer, starting with the given one, and writes them
+     * with one append and one force. Flush markers are completed once the batch is on disk.
+     */
+    private void writeBatch(ByteBuffer buffer, Pending first) {
+        buffer.clear();
+        List<CompletableFuture<Void>> flushed = new ArrayList<>();
+        int records = 0;
+        int taken = 0;
+        Pending pending = first;
+        while (pending != null) {
+            taken++;
+            if (pending.entry() == null) {
+                flushed.add(pending.written());
+            } else {
+                encode(buffer, pending.entry());
+                records++;
+            }
+            if (buffer.remaining() < MAX_RECORD_BYTES) {
+                break;
+            }
+            pending = queue.poll();
+        }
+        queued.addAndGet(-taken);
+        buffer.flip();
+        while (true) {
+            try {
+                if (buffer.hasRemaining()) {
+                    append(buffer);
+                }
+                break;
+            } catch (IOException e) {
+                // The batch is kept and retried, so no audited change is lost to a transient failure
+                System.err.println("Unable to write the audit log: " + e.getMessage());
+                closeSegment();
+                buffer.rewind();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MILLIS));
+            }
+        }
+        written.addAndGet(records);
+        flushed.forEach(future -> future.complete(null));
+    }
+
+    private void append(ByteBuffer buffer) throws IOException {
+        if (segment == null) {
+            openSegment();
+        }
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        segment.force(false);
+        if (segment.size() >= maxBytes) {
+            rotate();
+        }
+    }
+
+    private static void encode(ByteBuffer buffer, Entry entry) {
+        int start = buffer.position();
+        buffer.putShort((short) 0); // Length, filled in below
+        buffer.putLong(entry.timestamp());
+        buffer.put((byte) entry.action().ordinal());
+        putString(buffer, entry.actor());
+        putString(buffer, entry.subject());
+        putString(buffer, entry.detail());
+        buffer.putShort(start, (short) (buffer.position() - start - 2));
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_FIELD_BYTES);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    private void openSegment() throws IOException {
+        Files.createDirectories(directory);
+        segmentOpenedAt = System.currentTimeMillis();
+        segmentPath = directory.resolve(SEGMENT_PREFIX + segmentOpenedAt + "-" + ProcessHandle.current().pid() + "-"
+                + SEGMENT_COUNTER.incrementAndGet() + SEGMENT_SUFFIX);
+        segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1);
+        header.put(MAGIC).put(VERSION).flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+    }
+
+    private void rotateIfExpired() {
+        if (segment != null && System.currentTimeMillis() - segmentOpenedAt >= maxAgeMillis) {
+            rotate();
+        }
+    }
+
+    private void rotate() {
+        Path closedPath = segmentPath;
+        closeSegment();
+        if (closedPath != null) {
+            compressor.execute(() -> compress(closedPath));
+        }
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                System.err.println("Unable to close audit segment " + segmentPath + ": " + e.getMessage());
+            }
+            segment = null;
+        }
+    }
+
+    /**
+     * Replaces a closed segment with its gzip-compressed copy.
+     */
+    private static void compress(Path path) {
+        String name = path.getFileName().toString();
+        Path target = path.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + COMPRESSED_SUFFIX);
+        Path temporary = path.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX);
+        try {
+            try (InputStream in = Files.newInputStream(path);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary), 64 * 1024)) {
+                in.transferTo(out);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(path);
+        } catch (IOException e) {
+            System.err.println("Unable to compress audit segment " + path + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // The segment itself is kept, so it is compressed again on the next start
+            }
+        }
+    }
+
+    /**
+     * Compresses the open segments of processes that are no longer running, and removes the
+     * compressed copies they left half-written.
+     */
+    private void compressAbandonedSegments() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> temporaries = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + COMPRESSED_SUFFIX + TEMPORARY_SUFFIX)) {
+            for (Path path : temporaries) {
+                long pid = AuditLogReader.segmentProcessId(path);
+                if (pid < 0 || !ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to remove temporary audit segments: " + e.getMessage());
+        }
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : segments) {
+                long pid = AuditLogReader.segmentProcessId(path);
+                if (pid >= 0 && ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+                    continue;
+                }
+                compressor.execute(() -> compress(path));
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to list audit segments: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,233 @@
+// File: AuditLogReader.java
+
+import enums.AuditAction;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams the records of the audit log segments in a directory, compressed or not, in the order
+ * the segments were opened. Records are decoded one at a time, so logs of any size can be
+ * filtered in constant memory.
+ */
+public class AuditLogReader {
+    private static final String DIRECTORY = "data/audit";
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path directory;
+
+    /**
+     * Creates a reader of the audit log in {@code data/audit/}.
+     */
+    public AuditLogReader() {
+        this(Paths.get(DIRECTORY));
+    }
+
+    /**
+     * Creates a reader of the audit log segments in a directory.
+     *
+     * @param directory The directory holding the segments
+     */
+    public AuditLogReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Streams the records made within a time range that match a filter. Segments opened after
+     * the end of the range are not read.
+     *
+     * @param fromMillis The earliest record time, in epoch milliseconds, inclusive
+     * @param toMillis The latest record time, in epoch milliseconds, exclusive
+     * @param filter The records to keep
+     * @param action Called with each matching record
+     * @return The number of matching records
+     * @throws IOException If an I/O error occurs or a segment is not an audit log
+     */
+    public long read(long fromMillis, long toMillis, Predicate<AuditLog.Entry> filter,
+                     Consumer<AuditLog.Entry> action) throws IOException {
+        long matched = 0;
+        for (Path segment : listSegments()) {
+            if (segmentOpenedAt(segment) >= toMillis) {
+                continue;
+            }
+            try (DataInputStream in = open(segment)) {
+                AuditLog.Entry entry;
+                while ((entry = readEntry(in)) != null) {
+                    if (entry.timestamp() >= fromMillis && entry.timestamp() < toMillis && filter.test(entry)) {
+                        action.accept(entry);
+                        matched++;
+                    }
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Lists the segments in the directory, oldest first. A segment being compressed is listed
+     * once, under whichever name exists.
+     *
+     * @return The segment files
+     * @throws IOException If an I/O error occurs
+     */
+    public List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, AuditLog.SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(AuditLog.COMPRESSED_SUFFIX)) {
+                    segments.add(file);
+                } else if (name.endsWith(AuditLog.SEGMENT_SUFFIX)) {
+                    // Skipped if its compressed copy is already complete, before the original is deleted
+                    Path compressed = file.resolveSibling(baseName(file) + AuditLog.COMPRESSED_SUFFIX);
+                    if (!Files.exists(compressed)) {
+                        segments.add(file);
+                    }
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(AuditLogReader::segmentOpenedAt)
+                .thenComparing(file -> file.getFileName().toString()));
+        return segments;
+    }
+
+    private static DataInputStream open(Path segment) throws IOException {
+        InputStream in = Files.newInputStream(segment);
+        if (segment.getFileName().toString().endsWith(AuditLog.COMPRESSED_SUFFIX)) {
+            in = new GZIPInputStream(in, BUFFER_BYTES);
+        }
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, BUFFER_BYTES));
+        try {
+            byte[] magic = new byte[AuditLog.MAGIC.length];
+            data.readFully(magic);
+            if (!Arrays.equals(magic, AuditLog.MAGIC) || data.readByte() != AuditLog.VERSION) {
+                throw new IOException("Not an audit log segment: " + segment);
+            }
+        } catch (EOFException e) {
+            // A segment whose header was never completed holds no records
+            data.close();
+            return new DataInputStream(InputStream.nullInputStream());
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        return data;
+    }
+
+    /**
+     * Reads the next record, or returns null at the end of the segment or at a record torn by a crash.
+     */
+    private static AuditLog.Entry readEntry(DataInputStream in) throws IOException {
+        byte[] record;
+        try {
+            int length = in.readUnsignedShort();
+            record = new byte[length];
+            in.readFully(record);
+        } catch (EOFException e) {
+            return null;
+        }
+        DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+        long timestamp = fields.readLong();
+        int action = fields.readUnsignedByte();
+        AuditAction[] actions = AuditAction.values();
+        if (action >= actions.length) {
+            throw new IOException("Unknown audit action " + action);
+        }
+        return new AuditLog.Entry(timestamp, actions[action], readString(fields), readString(fields), readString(fields));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String baseName(Path segment) {
+        String name = segment.getFileName().toString();
+        int suffix = name.endsWith(AuditLog.COMPRESSED_SUFFIX) ? AuditLog.COMPRESSED_SUFFIX.length()
+                : AuditLog.SEGMENT_SUFFIX.length();
+        return name.substring(0, name.length() - suffix);
+    }
+
+    /**
+     * Gets the time a segment was opened from its name {@code audit-<openedAt>-<pid>-<n>}.
+     */
+    static long segmentOpenedAt(Path segment) {
+        String[] parts = baseName(segment).split("-");
+        try {
+            return parts.length >= 4 ? Long.parseLong(parts[1]) : Long.MAX_VALUE;
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Gets the ID of the process that wrote a segment from its name.
+     *
+     * @return The process ID, or -1 if the name does not contain one
+     */
+    static long segmentProcessId(Path segment) {
+        String[] parts = baseName(segment).split("-");
+        try {
+            return parts.length >= 4 ? Long.parseLong(parts[2]) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Prints matching audit records as CSV lines. Options: {@code --from=<date>} and
+     * {@code --to=<date>} (inclusive, ISO dates), {@code --action=<action>}, {@code --actor=<user ID>}
+     * and {@code --subject=<key>}.
+     *
+     * @param args The options
+     * @throws IOException If an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        long from = 0;
+        long to = Long.MAX_VALUE;
+        Predicate<AuditLog.Entry> filter = entry -> true;
+        ZoneId zone = ZoneId.systemDefault();
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--from=")) {
+                from = LocalDate.parse(value).atStartOfDay(zone).toInstant().toEpochMilli();
+            } else if (arg.startsWith("--to=")) {
+                to = LocalDate.parse(value).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            } else if (arg.startsWith("--action=")) {
+                AuditAction action = AuditAction.fromString(value);
+                filter = filter.and(entry -> entry.action() == action);
+            } else if (arg.startsWith("--actor=")) {
+                filter = filter.and(entry -> entry.actor().equals(value));
+            } else if (arg.startsWith("--subject=")) {
+                filter = filter.and(entry -> entry.subject().equals(value));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        System.out.println("Time,Action,Actor,Subject,Detail");
+        long matched = new AuditLogReader().read(from, to, filter, entry -> System.out.println(entry.toLine()));
+        System.err.println(matched + " audit records");
+    }
+}
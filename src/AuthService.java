@@ -1,40 +1,80 @@
+import enums.AuditAction;
+import enums.OperationClass;
 import enums.UserRole;
 
 import javax.naming.AuthenticationException;
 import java.io.IOException;
-import java.util.List;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AuthService {
+    private static final int MAX_FAILED_ATTEMPTS = 5;
+    private static final double FAILED_ATTEMPTS_FORGIVEN_PER_SECOND = 1 / 30.0;
+    private static final int MAX_TRACKED_USERNAMES = 10_000;
+
     private final CSVUserDAO userDAO;
+    private final AuditLog auditLog;
+    private final Map<String, TokenBucket> failedLogins = new ConcurrentHashMap<>();
 
     public AuthService(CSVUserDAO userDAO) {
+        this(userDAO, AuditLog.getDefault());
+    }
+
+    /**
+     * Creates an authentication service recording password changes in the given audit log.
+     *
+     * @param userDAO The user data
+     * @param auditLog The audit log
+     */
+    public AuthService(CSVUserDAO userDAO, AuditLog auditLog) {
         this.userDAO = userDAO;
+        this.auditLog = auditLog;
     }
 
     /**
      * Authenticates a user based on their username (email) and password.
+     * After repeated failures for the same username, further attempts are rejected without
+     * reading the user file until some time has passed.
      *
      * @param username The user's email address
      * @param password The user's password
      * @return The authenticated User object if successful, null otherwise
      * @throws IOException If there's an error reading the user data
+     * @throws OverloadException If the username has too many recent failed attempts
      */
     public User authenticate(String username, String password) throws IOException, AuthenticationException {
-        List<User> users = userDAO.loadUsers();
+        TokenBucket failures = failedLogins.get(username);
+        if (failures != null) {
+            long wait = failures.nanosUntilAvailable();
+            if (wait > 0) {
+                throw new OverloadException(OperationClass.AUTH, Duration.ofNanos(wait),
+                        "Too many failed login attempts for " + username);
+            }
+        }
 
-        for (User user : users) {
-            if (user.getEmail().equals(username) && user.verifyPassword(password)) {
-                if (user.isActive()) {
-                    return user;
-                } else {
-                    throw new AuthenticationException("User account is inactive");
-                }
+        User user = userDAO.findUserByEmail(username);
+        if (user != null && user.verifyPassword(password)) {
+            if (user.isActive()) {
+                failedLogins.remove(username);
+                return user;
+            } else {
+                throw new AuthenticationException("User account is inactive");
             }
         }
 
+        recordFailedLogin(username);
         return null; // Authentication failed
     }
 
+    private void recordFailedLogin(String username) {
+        if (failedLogins.size() > MAX_TRACKED_USERNAMES) {
+            failedLogins.values().removeIf(TokenBucket::isFull);
+        }
+        failedLogins.computeIfAbsent(username,
+                name -> new TokenBucket(MAX_FAILED_ATTEMPTS, FAILED_ATTEMPTS_FORGIVEN_PER_SECOND)).tryAcquire();
+    }
+
     /**
      * Changes the password for a given user.
      *
@@ -49,6 +89,7 @@ public class AuthService {
         if (user != null && user.verifyPassword(oldPassword)) {
             user.setPasswordHash(PasswordUtils.hashPassword(newPassword));
             userDAO.updateUser(user);
+            auditLog.record(AuditAction.PASSWORD_CHANGED, userId, userId, null);
             return true;
         }
         return false;
@@ -0,0 +1,117 @@
+// File: BloomFilter.java
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact probabilistic set of strings.
+ * A negative answer from {@link #mightContain(String)} is always correct; a positive answer
+ * may be a false positive at roughly the rate the filter was sized for.
+ */
+public class BloomFilter {
+    private final long[] words;
+    private final int numBits;
+    private final int numHashes;
+
+    /**
+     * Creates an empty filter sized for the expected number of entries.
+     *
+     * @param expectedEntries The number of entries the filter will hold
+     * @param falsePositiveRate The target false positive rate, between 0 and 1
+     */
+    public BloomFilter(int expectedEntries, double falsePositiveRate) {
+        int entries = Math.max(1, expectedEntries);
+        double bits = -entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int words = (int) Math.min(Integer.MAX_VALUE / 64, Math.max(1, (long) Math.ceil(bits / 64)));
+        this.words = new long[words];
+        this.numBits = words * 64;
+        this.numHashes = Math.max(1, (int) Math.round(bits / entries * Math.log(2)));
+    }
+
+    private BloomFilter(long[] words, int numHashes) {
+        this.words = words;
+        this.numBits = words.length * 64;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Adds a value to the filter.
+     *
+     * @param value The value to add
+     */
+    public void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks whether a value may have been added to the filter.
+     *
+     * @param value The value to check
+     * @return false if the value was definitely never added, true otherwise
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the filter to a binary stream.
+     *
+     * @param out The stream to write to
+     * @throws IOException If an I/O error occurs
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(numHashes);
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads a filter previously written with {@link #writeTo(DataOutput)}.
+     *
+     * @param in The stream to read from
+     * @return The filter
+     * @throws IOException If an I/O error occurs
+     */
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        int numHashes = in.readInt();
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return new BloomFilter(words, numHashes);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the UTF-8 bytes followed by a finalizing mix.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -9,6 +9,7 @@ import java.util.Objects;
  */
 public class Book {
     private String ISBN;
+    private long ISBNKey;
     private String title;
     private String author;
     private Genre genre;
@@ -24,9 +25,10 @@ public class Book {
      * @param author The author of the book
      * @param genre The genre of the book
      * @param totalCopies The total number of copies of this book
+     * @throws IllegalArgumentException If the ISBN is not a valid ISBN-10 or ISBN-13
      */
     public Book(String ISBN, String title, String author, Genre genre, int totalCopies) {
-        this.ISBN = ISBN;
+        setISBN(ISBN);
         this.title = title;
         this.author = author;
         this.genre = genre;
@@ -37,7 +39,17 @@ public class Book {
 
     // Getters and setters
     public String getISBN() { return ISBN; }
-    public void setISBN(String ISBN) { this.ISBN = ISBN; }
+    public void setISBN(String ISBN) {
+        this.ISBNKey = ISBNUtils.toLong(ISBN);
+        this.ISBN = ISBNUtils.fromLong(ISBNKey);
+    }
+
+    /**
+     * Gets the ISBN encoded as a number, for use as a primitive map key.
+     *
+     * @return The 13-digit ISBN as a long
+     */
+    public long getISBNKey() { return ISBNKey; }
 
     public String getTitle() { return title; }
     public void setTitle(String title) { this.title = title; }
@@ -68,6 +80,18 @@ public class Book {
         updateAvailability();
     }
 
+    /**
+     * Sets the copy counts, as derived from the item records of this title.
+     *
+     * @param totalCopies The number of copies held by the library
+     * @param availableCopies The number of copies on the shelf
+     */
+    public void setCopyCounts(int totalCopies, int availableCopies) {
+        this.totalCopies = totalCopies;
+        this.availableCopies = availableCopies;
+        updateAvailability();
+    }
+
     private void updateAvailability() {
         this.isAvailable = this.availableCopies > 0;
     }
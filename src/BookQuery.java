@@ -0,0 +1,136 @@
+// File: BookQuery.java
+
+import enums.Genre;
+
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Describes a catalog query: predicates on genre, availability, author, title and copy counts,
+ * plus sorting and pagination. Unset predicates match every book.
+ */
+public class BookQuery {
+
+    /**
+     * Fields a query result can be sorted by.
+     */
+    public enum SortField {
+        ISBN(Comparator.comparing(Book::getISBN)),
+        TITLE(Comparator.comparing(Book::getTitle, String.CASE_INSENSITIVE_ORDER)),
+        AUTHOR(Comparator.comparing(Book::getAuthor, String.CASE_INSENSITIVE_ORDER)),
+        AVAILABLE_COPIES(Comparator.comparingInt(Book::getAvailableCopies)),
+        TOTAL_COPIES(Comparator.comparingInt(Book::getTotalCopies));
+
+        private final Comparator<Book> comparator;
+
+        SortField(Comparator<Book> comparator) {
+            this.comparator = comparator;
+        }
+
+        public Comparator<Book> getComparator() {
+            return comparator;
+        }
+    }
+
+    private Set<Genre> genres;
+    private boolean availableOnly;
+    private String authorContains;
+    private String titleContains;
+    private int minTotalCopies;
+    private int minAvailableCopies;
+    private SortField sortField;
+    private boolean descending;
+    private int page;
+    private int pageSize = 20;
+
+    // Getters and fluent setters
+    public Set<Genre> getGenres() { return genres; }
+    public BookQuery genres(Genre first, Genre... rest) {
+        this.genres = EnumSet.of(first, rest);
+        return this;
+    }
+
+    public boolean isAvailableOnly() { return availableOnly; }
+    public BookQuery availableOnly(boolean availableOnly) {
+        this.availableOnly = availableOnly;
+        return this;
+    }
+
+    public String getAuthorContains() { return authorContains; }
+    public BookQuery authorContains(String author) {
+        this.authorContains = author == null ? null : author.toLowerCase(Locale.ROOT);
+        return this;
+    }
+
+    public String getTitleContains() { return titleContains; }
+    public BookQuery titleContains(String title) {
+        this.titleContains = title == null ? null : title.toLowerCase(Locale.ROOT);
+        return this;
+    }
+
+    public int getMinTotalCopies() { return minTotalCopies; }
+    public BookQuery minTotalCopies(int minTotalCopies) {
+        this.minTotalCopies = minTotalCopies;
+        return this;
+    }
+
+    public int getMinAvailableCopies() { return minAvailableCopies; }
+    public BookQuery minAvailableCopies(int minAvailableCopies) {
+        this.minAvailableCopies = minAvailableCopies;
+        return this;
+    }
+
+    public SortField getSortField() { return sortField; }
+    public boolean isDescending() { return descending; }
+    public BookQuery sortBy(SortField sortField, boolean descending) {
+        this.sortField = sortField;
+        this.descending = descending;
+        return this;
+    }
+
+    public int getPage() { return page; }
+    public int getPageSize() { return pageSize; }
+
+    /**
+     * Selects the page of results to return.
+     *
+     * @param page The 0-based page number
+     * @param pageSize The number of books per page
+     * @return This query
+     */
+    public BookQuery page(int page, int pageSize) {
+        if (page < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page: " + page + " of size " + pageSize);
+        }
+        this.page = page;
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Checks whether the query has predicates that can only be evaluated on the book rows
+     * rather than on the genre and availability bitmaps.
+     *
+     * @return true if row predicates are present
+     */
+    boolean hasRowPredicates() {
+        return authorContains != null || titleContains != null || minTotalCopies > 0 || minAvailableCopies > 0;
+    }
+
+    /**
+     * Evaluates the row predicates against a book.
+     *
+     * @param book The book
+     * @param lowerTitle The book title in lower case
+     * @param lowerAuthor The book author in lower case
+     * @return true if the book matches
+     */
+    boolean matchesRow(Book book, String lowerTitle, String lowerAuthor) {
+        return (authorContains == null || lowerAuthor.contains(authorContains))
+                && (titleContains == null || lowerTitle.contains(titleContains))
+                && book.getTotalCopies() >= minTotalCopies
+                && book.getAvailableCopies() >= minAvailableCopies;
+    }
+}
@@ -0,0 +1,293 @@
+// File: BranchConsortium.java
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The branch partitions of a library consortium sharing one data directory.
+ * <p>
+ * Every branch keeps its holdings and loans in its own partition under {@code data/branches/<id>/},
+ * so writes at a branch touch only that partition. Consortium-wide queries fan out to every
+ * partition on a fork-join pool and merge the partial results: searches concatenate the matches
+ * of each branch, and popularity sums the per-branch borrow counts before selecting the top titles
+ * with a bounded heap.
+ */
+public class BranchConsortium {
+    private static final String DIRECTORY = "data/branches";
+    private static final Pattern BRANCH_ID = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+    private final Path root;
+    private final ForkJoinPool pool;
+    private final Map<String, BranchPartition> partitions = new ConcurrentSkipListMap<>();
+
+    /**
+     * A title held by a branch.
+     *
+     * @param branchId The branch
+     * @param book The book with the branch's copy counts
+     */
+    public record BranchHolding(String branchId, Book book) {
+    }
+
+    /**
+     * A title with its number of borrows.
+     *
+     * @param ISBN The ISBN of the title
+     * @param borrows The number of borrows
+     */
+    public record TitleBorrows(String ISBN, long borrows) {
+    }
+
+    /**
+     * Opens the consortium in {@code data/branches}, with one worker per available processor.
+     *
+     * @throws IOException If an I/O error occurs listing the branches
+     */
+    public BranchConsortium() throws IOException {
+        this(Paths.get(DIRECTORY), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Opens a consortium, with a partition for every branch directory found.
+     *
+     * @param root The directory holding one subdirectory per branch
+     * @param parallelism The number of workers for consortium-wide queries
+     * @throws IOException If an I/O error occurs listing the branches
+     * @throws IllegalArgumentException If the parallelism is not positive
+     */
+    public BranchConsortium(Path root, int parallelism) throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.root = root;
+        this.pool = new ForkJoinPool(parallelism);
+        discoverBranches();
+        DataFileCoordinator.addChangeListener(this::onExternalCommit);
+    }
+
+    /**
+     * Creates the partition of a new branch.
+     *
+     * @param branchId The branch ID: letters, digits, '_' and '-', at most 32 characters
+     * @return The new partition
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the ID is invalid or the branch already exists
+     */
+    public synchronized BranchPartition createBranch(String branchId) throws IOException {
+        if (branchId == null || !BRANCH_ID.matcher(branchId).matches()) {
+            throw new IllegalArgumentException("Invalid branch ID: " + branchId);
+        }
+        discoverBranches();
+        if (partitions.containsKey(branchId)) {
+            throw new IllegalArgumentException("Branch already exists: " + branchId);
+        }
+        Path directory = root.resolve(branchId);
+        BranchPartition.create(directory);
+        BranchPartition partition = new BranchPartition(branchId, directory);
+        partitions.put(branchId, partition);
+        return partition;
+    }
+
+    /**
+     * Gets the partition of a branch, looking for branches created by other processes if it is
+     * not known yet.
+     *
+     * @param branchId The branch ID
+     * @return The partition
+     * @throws IOException If an I/O error occurs listing the branches
+     * @throws IllegalArgumentException If the branch does not exist
+     */
+    public BranchPartition getBranch(String branchId) throws IOException {
+        BranchPartition partition = partitions.get(branchId);
+        if (partition == null) {
+            discoverBranches();
+            partition = partitions.get(branchId);
+        }
+        if (partition == null) {
+            throw new IllegalArgumentException("Unknown branch: " + branchId);
+        }
+        return partition;
+    }
+
+    /**
+     * Gets the IDs of all branches.
+     *
+     * @return The branch IDs in alphabetical order
+     * @throws IOException If an I/O error occurs listing the branches
+     */
+    public List<String> getBranchIds() throws IOException {
+        discoverBranches();
+        return new ArrayList<>(partitions.keySet());
+    }
+
+    /**
+     * Searches the holdings of every branch in parallel.
+     *
+     * @param query The text to search for in titles and authors, or an exact ISBN
+     * @return The matches, grouped by branch in alphabetical order
+     * @throws IOException If an I/O error occurs
+     */
+    public List<BranchHolding> searchBooks(String query) throws IOException {
+        List<BranchHolding> holdings = new ArrayList<>();
+        for (List<BranchHolding> branchHoldings : fanOut(partition -> partition.searchBooks(query).stream()
+                .map(book -> new BranchHolding(partition.getBranchId(), book))
+                .toList())) {
+            holdings.addAll(branchHoldings);
+        }
+        return holdings;
+    }
+
+    /**
+     * Finds the branches holding a title.
+     *
+     * @param ISBN The ISBN of the title
+     * @return The holdings, with each branch's copy counts
+     * @throws IOException If an I/O error occurs
+     */
+    public List<BranchHolding> findHoldings(String ISBN) throws IOException {
+        List<BranchHolding> holdings = new ArrayList<>();
+        for (BranchHolding holding : fanOut(partition -> {
+            Book book = partition.findBook(ISBN);
+            return book == null ? null : new BranchHolding(partition.getBranchId(), book);
+        })) {
+            if (holding != null) {
+                holdings.add(holding);
+            }
+        }
+        return holdings;
+    }
+
+    /**
+     * Gets the most borrowed titles across the consortium. Each branch counts its own history in
+     * parallel; the counts are summed so that titles borrowed moderately at many branches rank
+     * correctly, and the top titles are kept in a bounded min-heap.
+     *
+     * @param topN The number of titles
+     * @param since Only borrows on or after this date are counted, or null for all
+     * @return The titles, most borrowed first
+     * @throws IOException If an I/O error occurs
+     */
+    public List<TitleBorrows> getPopularBooks(int topN, LocalDate since) throws IOException {
+        if (topN <= 0) {
+            throw new IllegalArgumentException("Invalid number of titles: " + topN);
+        }
+        LongIntHashMap totals = new LongIntHashMap();
+        for (LongIntHashMap counts : fanOut(partition -> partition.countBorrows(since))) {
+            counts.forEach(totals::addTo);
+        }
+        PriorityQueue<long[]> heap = new PriorityQueue<>(Comparator.comparingLong(e -> e[1]));
+        totals.forEach((isbn, count) -> {
+            if (heap.size() < topN) {
+                heap.add(new long[]{isbn, count});
+            } else if (count > heap.peek()[1]) {
+                heap.poll();
+                heap.add(new long[]{isbn, count});
+            }
+        });
+        List<long[]> sorted = new ArrayList<>(heap);
+        sorted.sort(Comparator.comparingLong((long[] e) -> e[1]).reversed());
+        List<TitleBorrows> result = new ArrayList<>(sorted.size());
+        for (long[] entry : sorted) {
+            result.add(new TitleBorrows(ISBNUtils.fromLong(entry[0]), entry[1]));
+        }
+        return result;
+    }
+
+    /**
+     * Runs the nightly status transitions on the loans of every branch. Branches are processed
+     * one at a time, since each run already spreads its chunks over a worker pool.
+     *
+     * @return The combined summary of the runs
+     * @throws IOException If an I/O error occurs
+     */
+    public StatusTransitionJob.JobResult runStatusTransitions() throws IOException {
+        discoverBranches();
+        StatusTransitionJob.JobResult total = new StatusTransitionJob.JobResult(LocalDate.now(), 0, 0, 0, 0, 0);
+        for (BranchPartition partition : partitions.values()) {
+            total = total.plus(partition.runStatusTransitions());
+        }
+        return total;
+    }
+
+    /**
+     * Runs a query on every partition as a fork-join task and collects the results in branch order.
+     */
+    private <T> List<T> fanOut(PartitionQuery<T> query) throws IOException {
+        discoverBranches();
+        List<ForkJoinTask<T>> tasks = new ArrayList<>();
+        for (BranchPartition partition : partitions.values()) {
+            tasks.add(pool.submit(() -> {
+                try {
+                    return query.apply(partition);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (ForkJoinTask<T> task : tasks) {
+                results.add(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while querying branches", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Opens a partition for every branch directory not yet known, including the branches other
+     * processes have created since the consortium was opened.
+     */
+    private synchronized void discoverBranches() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> directories = Files.list(root)) {
+            for (Path directory : directories.filter(Files::isDirectory).toList()) {
+                String branchId = directory.getFileName().toString();
+                if (BRANCH_ID.matcher(branchId).matches() && !partitions.containsKey(branchId)) {
+                    partitions.put(branchId, new BranchPartition(branchId, directory));
+                }
+            }
+        }
+    }
+
+    private void onExternalCommit(Path file) {
+        for (BranchPartition partition : partitions.values()) {
+            partition.onExternalCommit(file);
+        }
+    }
+
+    /**
+     * A query against one partition.
+     */
+    @FunctionalInterface
+    private interface PartitionQuery<T> {
+        T apply(BranchPartition partition) throws IOException;
+    }
+}
@@ -0,0 +1,288 @@
+// File: BranchPartition.java
+
+import enums.TransactionStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The holdings and loans of one branch of a consortium, stored in the branch's own directory.
+ * <p>
+ * Each partition has its own {@code books.csv} with the branch's copy counts, its own
+ * {@code transactions.csv} and archive, and therefore its own file locks, write-behind queues and
+ * caches. Circulation at a branch reads and writes only its partition, so its cost depends on the
+ * branch's holdings and loans rather than the consortium's, and branches never wait on each
+ * other. Users are shared by all branches and stay in the main data directory.
+ */
+public class BranchPartition {
+    private static final String BOOKS_FILE = "books.csv";
+    private static final String TRANSACTIONS_FILE = "transactions.csv";
+    private static final String BOOKS_HEADER = "ISBN,Title,Author,Genre,IsAvailable,TotalCopies,AvailableCopies";
+    private static final String TRANSACTIONS_HEADER = "TransactionId,UserId,ISBN,BorrowDate,DueDate,ReturnDate,Status,Renewals";
+
+    private final String branchId;
+    private final Path booksPath;
+    private final WriteBehindFlusher bookFlusher;
+    private final CSVTransactionDAO transactionDAO;
+    private LongObjectHashMap<Book> holdings; // Guarded by this; null until loaded or after an external commit
+
+    /**
+     * Opens the partition of a branch.
+     *
+     * @param branchId The branch ID
+     * @param directory The branch directory, created by {@link #create}
+     */
+    public BranchPartition(String branchId, Path directory) {
+        this.branchId = branchId;
+        this.booksPath = directory.resolve(BOOKS_FILE);
+        this.bookFlusher = new WriteBehindFlusher(booksPath, BOOKS_HEADER);
+        this.transactionDAO = new CSVTransactionDAO(directory.resolve(TRANSACTIONS_FILE));
+    }
+
+    /**
+     * Creates the directory and empty data files of a new partition.
+     *
+     * @param directory The branch directory
+     * @throws IOException If an I/O error occurs
+     */
+    public static void create(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path books = directory.resolve(BOOKS_FILE);
+        if (!Files.exists(books)) {
+            Files.writeString(books, BOOKS_HEADER + System.lineSeparator());
+        }
+        Path transactions = directory.resolve(TRANSACTIONS_FILE);
+        if (!Files.exists(transactions)) {
+            Files.writeString(transactions, TRANSACTIONS_HEADER + System.lineSeparator());
+        }
+    }
+
+    public String getBranchId() {
+        return branchId;
+    }
+
+    /**
+     * Loads the branch's holdings, including changes not yet flushed.
+     *
+     * @return The books held by the branch, with the branch's copy counts
+     * @throws IOException If an I/O error occurs
+     */
+    public List<Book> loadBooks() throws IOException {
+        return bookFlusher.read(Book::fromCSV);
+    }
+
+    /**
+     * Finds a title in the branch's holdings.
+     *
+     * @param ISBN The ISBN of the title
+     * @return The book with the branch's copy counts, or null if the branch does not hold it
+     * @throws IOException If the holdings have to be loaded and an I/O error occurs
+     */
+    public synchronized Book findBook(String ISBN) throws IOException {
+        String normalized = ISBNUtils.normalize(ISBN);
+        if (normalized == null || !normalized.equals(ISBN)) {
+            return null;
+        }
+        return getHoldings().get(ISBNUtils.toLong(ISBN));
+    }
+
+    /**
+     * Searches the branch's titles and authors for a substring, or for an exact ISBN.
+     *
+     * @param query The text to search for
+     * @return The matching books
+     * @throws IOException If the holdings have to be loaded and an I/O error occurs
+     */
+    public synchronized List<Book> searchBooks(String query) throws IOException {
+        List<Book> matches = new ArrayList<>();
+        getHoldings().forEach((isbn, book) -> {
+            if (book.getTitle().contains(query) || book.getAuthor().contains(query) || book.getISBN().equals(query)) {
+                matches.add(book);
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Adds a title to the branch's holdings.
+     *
+     * @param book The book, with the copies held by the branch
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the branch already holds the title
+     */
+    public void addBook(Book book) throws IOException {
+        DataFileCoordinator.write(booksPath, () -> {
+            if (findBook(book.getISBN()) != null) {
+                throw new IllegalArgumentException("Branch " + branchId + " already holds " + book.getISBN());
+            }
+            if (bookFlusher.isDeferred()) {
+                bookFlusher.put(book.toCSV());
+            } else {
+                DataFileCoordinator.append(booksPath, book.toCSV());
+            }
+            cache(book);
+            return null;
+        });
+    }
+
+    /**
+     * Lends a copy held by the branch. The copy counts and the new loan are written to the
+     * branch's own files only, in one write transaction on the branch's catalog: if the loan
+     * cannot be written, the copy is given back before the catalog lock is released.
+     *
+     * @param userId The ID of the patron, already validated by the caller
+     * @param ISBN The ISBN of the title
+     * @param loanDays The loan period in days
+     * @return The new loan
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the branch does not hold the title or has no copy available
+     */
+    public Transaction borrowBook(String userId, String ISBN, int loanDays) throws IOException {
+        if (findBook(ISBN) == null) {
+            throw new IllegalArgumentException("Branch " + branchId + " does not hold " + ISBN);
+        }
+        Transaction transaction = new Transaction(userId, ISBN, loanDays);
+        return DataFileCoordinator.write(booksPath, () -> {
+            updateAvailableCopies(ISBN, -1);
+            try {
+                transactionDAO.addTransaction(transaction);
+            } catch (IOException | RuntimeException e) {
+                try {
+                    updateAvailableCopies(ISBN, 1);
+                } catch (IOException | RuntimeException restoreFailure) {
+                    e.addSuppressed(restoreFailure);
+                }
+                throw e;
+            }
+            return transaction;
+        });
+    }
+
+    /**
+     * Takes back a copy lent by the branch. The loan is closed and the copy counted back on the
+     * shelf in one write transaction on the branch's catalog.
+     *
+     * @param transactionId The ID of the loan
+     * @return The completed loan
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the branch has no open loan with this ID
+     */
+    public Transaction returnBook(String transactionId) throws IOException {
+        return DataFileCoordinator.write(booksPath, () -> {
+            Transaction transaction = transactionDAO.withWriteLock(() -> {
+                Transaction t = transactionDAO.findTransactionById(transactionId);
+                if (t == null || !(t.getStatus().isOpenLoan() || t.getStatus() == TransactionStatus.LOST)) {
+                    throw new IllegalArgumentException("Invalid transaction");
+                }
+                t.completeTransaction();
+                transactionDAO.updateTransaction(t);
+                return t;
+            });
+            updateAvailableCopies(transaction.getISBN(), 1);
+            return transaction;
+        });
+    }
+
+    /**
+     * Loads the branch's open loans and recent history.
+     *
+     * @return The branch's hot transactions
+     * @throws IOException If an I/O error occurs
+     */
+    public List<Transaction> loadTransactions() throws IOException {
+        return transactionDAO.loadTransactions();
+    }
+
+    /**
+     * Counts the borrows of each title at the branch, hot and archived.
+     *
+     * @param since Only borrows on or after this date are counted, or null for all
+     * @return Borrow counts keyed by numeric ISBN
+     * @throws IOException If an I/O error occurs
+     */
+    public LongIntHashMap countBorrows(LocalDate since) throws IOException {
+        LongIntHashMap counts = new LongIntHashMap();
+        transactionDAO.scanHistory(null, null, since, t -> counts.addTo(ISBNUtils.toLong(t.getISBN()), 1));
+        return counts;
+    }
+
+    /**
+     * Moves the branch's loans past their due date to OVERDUE or LOST.
+     *
+     * @return A summary of the run
+     * @throws IOException If an I/O error occurs
+     */
+    public StatusTransitionJob.JobResult runStatusTransitions() throws IOException {
+        return new StatusTransitionJob(transactionDAO.getPath()).run();
+    }
+
+    /**
+     * Gets a future completed once every change to the branch's files has been written.
+     *
+     * @return The commit future, already completed in synchronous mode
+     */
+    public CompletableFuture<Void> getPendingCommit() {
+        return CompletableFuture.allOf(bookFlusher.getPendingCommit(), transactionDAO.getPendingCommit());
+    }
+
+    /**
+     * Drops cached state derived from a file of this partition that another process has committed to.
+     *
+     * @param file The changed data file
+     */
+    public synchronized void onExternalCommit(Path file) {
+        if (file.endsWith(booksPath)) {
+            holdings = null;
+        } else if (file.endsWith(transactionDAO.getPath())) {
+            transactionDAO.invalidateCaches();
+        }
+    }
+
+    /**
+     * Changes the available copies of a held title in one write of the branch's catalog. Must
+     * run inside a write transaction on the catalog, so the change is never deferred.
+     */
+    private void updateAvailableCopies(String ISBN, int change) throws IOException {
+        List<Book> books = loadBooks();
+        for (Book book : books) {
+            if (book.getISBN().equals(ISBN)) {
+                if (book.getAvailableCopies() + change < 0) {
+                    throw new IllegalArgumentException("Book not available");
+                }
+                book.updateAvailableCopies(change);
+                DataFileCoordinator.replace(booksPath, writer -> {
+                    writer.write(BOOKS_HEADER);
+                    writer.newLine();
+                    for (Book b : books) {
+                        writer.write(b.toCSV());
+                        writer.newLine();
+                    }
+                });
+                cache(book);
+                return;
+            }
+        }
+    }
+
+    private synchronized LongObjectHashMap<Book> getHoldings() throws IOException {
+        if (holdings == null) {
+            LongObjectHashMap<Book> loaded = new LongObjectHashMap<>();
+            for (Book book : loadBooks()) {
+                loaded.put(book.getISBNKey(), book);
+            }
+            holdings = loaded;
+        }
+        return holdings;
+    }
+
+    private synchronized void cache(Book book) {
+        if (holdings != null) {
+            holdings.put(book.getISBNKey(), book);
+        }
+    }
+}
@@ -1,16 +1,32 @@
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.List;
-import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 
 /**
  * Data Access Object for Book entities using CSV file storage.
+ * <p>
+ * With the {@code library.catalog.sorted} system property set to true, the catalog file is kept
+ * sorted by ISBN and {@link #findBookByISBN(String)} reads a single block of it through a sparse
+ * index, so lookups need memory proportional to the number of blocks rather than the number of
+ * books. The index is saved next to the catalog file and rebuilt when the catalog changes.
  */
 public class CSVBookDAO {
     private static final String FILE_PATH = "data/books.csv";
     private static final String CSV_HEADER = "ISBN,Title,Author,Genre,IsAvailable,TotalCopies,AvailableCopies";
+    private static final Path PATH = Paths.get(FILE_PATH);
+    private static final WriteBehindFlusher FLUSHER = new WriteBehindFlusher(PATH, CSV_HEADER);
+    private static final boolean SORTED = Boolean.getBoolean("library.catalog.sorted");
+    private static final Path INDEX_PATH = Paths.get(FILE_PATH + ".idx");
+    private static final int BOOKS_PER_BLOCK = 64;
+    private static final int CACHED_BLOCKS = 256;
+    private static final Object INDEX_LOCK = new Object();
+    private static volatile SparseFileIndex sparseIndex;
 
     /**
      * Saves a list of books to the CSV file.
@@ -19,32 +35,36 @@ public class CSVBookDAO {
      * @throws IOException If an I/O error occurs
      */
     public static void saveBooks(List<Book> books) throws IOException {
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(FILE_PATH))) {
-            writer.write(CSV_HEADER);
-            writer.newLine();
-            for (Book book : books) {
-                writer.write(book.toCSV());
+        List<Book> ordered = books;
+        if (SORTED) {
+            ordered = new ArrayList<>(books);
+            ordered.sort(Comparator.comparingLong(Book::getISBNKey));
+        }
+        List<Book> rows = ordered;
+        DataFileCoordinator.write(PATH, () -> {
+            DataFileCoordinator.replace(PATH, writer -> {
+                writer.write(CSV_HEADER);
                 writer.newLine();
+                for (Book book : rows) {
+                    writer.write(book.toCSV());
+                    writer.newLine();
+                }
+            });
+            if (SORTED) {
+                indexSortedFile();
             }
-        }
+            return null;
+        });
     }
 
     /**
-     * Loads all books from the CSV file.
+     * Loads all books from the CSV file, including changes not yet flushed.
      *
      * @return A list of all books
      * @throws IOException If an I/O error occurs
      */
     public static List<Book> loadBooks() throws IOException {
-        List<Book> books = new ArrayList<>();
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(FILE_PATH))) {
-            String line;
-            reader.readLine(); // Skip header
-            while ((line = reader.readLine()) != null) {
-                books.add(Book.fromCSV(line));
-            }
-        }
-        return books;
+        return FLUSHER.read(Book::fromCSV);
     }
 
     /**
@@ -54,10 +74,21 @@ public class CSVBookDAO {
      * @throws IOException If an I/O error occurs
      */
     public static void addBook(Book book) throws IOException {
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(FILE_PATH), StandardOpenOption.APPEND)) {
-            writer.write(book.toCSV());
-            writer.newLine();
+        if (FLUSHER.isDeferred()) {
+            FLUSHER.put(book.toCSV());
+            return;
+        }
+        if (SORTED) {
+            // Inserted in ISBN order; an append would leave the file unsorted
+            DataFileCoordinator.write(PATH, () -> {
+                List<Book> books = loadBooks();
+                books.add(book);
+                saveBooks(books);
+                return null;
+            });
+            return;
         }
+        DataFileCoordinator.append(PATH, book.toCSV());
     }
 
     /**
@@ -67,14 +98,176 @@ public class CSVBookDAO {
      * @throws IOException If an I/O error occurs
      */
     public static void updateBook(Book updatedBook) throws IOException {
-        List<Book> books = loadBooks();
-        for (int i = 0; i < books.size(); i++) {
-            if (books.get(i).getISBN().equals(updatedBook.getISBN())) {
-                books.set(i, updatedBook);
-                break;
+        if (FLUSHER.isDeferred()) {
+            FLUSHER.put(updatedBook.toCSV());
+            return;
+        }
+        updateBook(updatedBook, -1);
+    }
+
+    /**
+     * Updates an existing book, provided the catalog was not changed since it was read.
+     *
+     * @param updatedBook The updated book information
+     * @param expectedGeneration The catalog generation the book was read at, or -1 to skip the check
+     * @throws IOException If an I/O error occurs
+     * @throws java.util.ConcurrentModificationException If the catalog changed since the expected generation
+     */
+    public static void updateBook(Book updatedBook, long expectedGeneration) throws IOException {
+        DataFileCoordinator.write(PATH, expectedGeneration, () -> {
+            List<Book> books = loadBooks();
+            for (int i = 0; i < books.size(); i++) {
+                if (books.get(i).getISBN().equals(updatedBook.getISBN())) {
+                    books.set(i, updatedBook);
+                    break;
+                }
+            }
+            saveBooks(books);
+            return null;
+        });
+    }
+
+    /**
+     * Atomically changes the available copies of several books in one write.
+     *
+     * @param changes The change in available copies, keyed by ISBN
+     * @throws IOException If an I/O error occurs
+     */
+    public static void updateAvailableCopies(Map<String, Integer> changes) throws IOException {
+        DataFileCoordinator.write(PATH, () -> {
+            List<Book> books = loadBooks();
+            for (Book book : books) {
+                Integer change = changes.get(book.getISBN());
+                if (change != null) {
+                    book.updateAvailableCopies(change);
+                }
+            }
+            saveBooks(books);
+            return null;
+        });
+    }
+
+    /**
+     * Atomically changes the available copies of a book.
+     * The check and the update happen in one write transaction, so concurrent checkouts
+     * from other processes cannot both take the last copy.
+     *
+     * @param ISBN The ISBN of the book
+     * @param change The number of copies to add (positive) or remove (negative)
+     * @return The updated book, or null if no book has this ISBN
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If not enough copies are available
+     */
+    public static Book updateAvailableCopies(String ISBN, int change) throws IOException {
+        if (FLUSHER.isDeferred()) {
+            String updated = FLUSHER.update(ISBN, line -> {
+                Book book = Book.fromCSV(line);
+                if (book.getAvailableCopies() + change < 0) {
+                    throw new IllegalArgumentException("Book not available");
+                }
+                book.updateAvailableCopies(change);
+                return book.toCSV();
+            });
+            return updated == null ? null : Book.fromCSV(updated);
+        }
+        return DataFileCoordinator.write(PATH, () -> {
+            List<Book> books = loadBooks();
+            for (Book book : books) {
+                if (book.getISBN().equals(ISBN)) {
+                    if (book.getAvailableCopies() + change < 0) {
+                        throw new IllegalArgumentException("Book not available");
+                    }
+                    book.updateAvailableCopies(change);
+                    saveBooks(books);
+                    return book;
+                }
             }
+            return null;
+        });
+    }
+
+    /**
+     * Sets the copy counts of a book to the counts derived from its items.
+     *
+     * @param ISBN The ISBN of the book
+     * @param counts The copy counts
+     * @return The updated book, or null if no book has this ISBN
+     * @throws IOException If an I/O error occurs
+     */
+    public static Book updateCopyCounts(String ISBN, ItemIndex.CopyCounts counts) throws IOException {
+        if (FLUSHER.isDeferred()) {
+            String updated = FLUSHER.update(ISBN, line -> {
+                Book book = Book.fromCSV(line);
+                book.setCopyCounts(counts.total(), counts.available());
+                return book.toCSV();
+            });
+            return updated == null ? null : Book.fromCSV(updated);
         }
-        saveBooks(books);
+        List<Book> updated = updateCopyCounts(Map.of(ISBN, counts));
+        return updated.isEmpty() ? null : updated.get(0);
+    }
+
+    /**
+     * Sets the copy counts of several books in one write.
+     *
+     * @param counts The copy counts derived from the items, keyed by ISBN
+     * @return The updated books
+     * @throws IOException If an I/O error occurs
+     */
+    public static List<Book> updateCopyCounts(Map<String, ItemIndex.CopyCounts> counts) throws IOException {
+        return DataFileCoordinator.write(PATH, () -> {
+            List<Book> books = loadBooks();
+            List<Book> updated = new ArrayList<>();
+            for (Book book : books) {
+                ItemIndex.CopyCounts bookCounts = counts.get(book.getISBN());
+                if (bookCounts != null) {
+                    book.setCopyCounts(bookCounts.total(), bookCounts.available());
+                    updated.add(book);
+                }
+            }
+            saveBooks(books);
+            return updated;
+        });
+    }
+
+    /**
+     * Runs a read-modify-write operation on the catalog as one write transaction.
+     *
+     * @param action The operation
+     * @param <T> The result type
+     * @return The result of the operation
+     * @throws IOException If an I/O error occurs
+     */
+    public static <T> T withWriteLock(DataFileCoordinator.IOCallable<T> action) throws IOException {
+        return DataFileCoordinator.write(PATH, action);
+    }
+
+    /**
+     * Gets the current generation of the catalog file, for use with optimistic updates.
+     *
+     * @return The catalog generation
+     * @throws IOException If an I/O error occurs
+     */
+    public static long getGeneration() throws IOException {
+        return DataFileCoordinator.getGeneration(PATH);
+    }
+
+    /**
+     * Gets a future completed once every catalog change queued so far has been written.
+     *
+     * @return The commit future, already completed in synchronous mode
+     */
+    public static CompletableFuture<Void> getPendingCommit() {
+        return FLUSHER.getPendingCommit();
+    }
+
+    /**
+     * Gets the path of the catalog file.
+     *
+     * @return The catalog file path
+     */
+    public static Path getPath() {
+        return PATH;
     }
 
     /**
@@ -84,9 +277,16 @@ public class CSVBookDAO {
      * @throws IOException If an I/O error occurs
      */
     public static void deleteBook(String ISBN) throws IOException {
-        List<Book> books = loadBooks();
-        books.removeIf(book -> book.getISBN().equals(ISBN));
-        saveBooks(books);
+        if (FLUSHER.isDeferred()) {
+            FLUSHER.delete(ISBN);
+            return;
+        }
+        DataFileCoordinator.write(PATH, () -> {
+            List<Book> books = loadBooks();
+            books.removeIf(book -> book.getISBN().equals(ISBN));
+            saveBooks(books);
+            return null;
+        });
     }
 
     /**
@@ -97,10 +297,104 @@ public class CSVBookDAO {
      * @throws IOException If an I/O error occurs
      */
     public static Book findBookByISBN(String ISBN) throws IOException {
+        if (SORTED) {
+            String normalized = ISBNUtils.normalize(ISBN);
+            if (normalized == null || !normalized.equals(ISBN)) {
+                return null;
+            }
+            WriteBehindFlusher.QueuedChange queued = FLUSHER.findQueued(ISBN);
+            if (queued != null) {
+                return queued.line() == null ? null : Book.fromCSV(queued.line());
+            }
+            String line = findSorted(Long.parseLong(ISBN));
+            return line == null ? null : Book.fromCSV(line);
+        }
         List<Book> books = loadBooks();
         return books.stream()
                 .filter(book -> book.getISBN().equals(ISBN))
                 .findFirst()
                 .orElse(null);
     }
+
+    /**
+     * Finds a catalog line through the sparse index, sorting the file first if it is not sorted.
+     */
+    private static String findSorted(long ISBNKey) throws IOException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            SparseFileIndex index = currentSparseIndex();
+            if (index == null) {
+                break;
+            }
+            try {
+                return index.find(ISBNKey);
+            } catch (ConcurrentModificationException e) {
+                // The catalog was replaced during the lookup; retry against the new version
+                sparseIndex = null;
+            }
+        }
+        String key = ISBNUtils.fromLong(ISBNKey);
+        for (Book book : loadBooks()) {
+            if (book.getISBN().equals(key)) {
+                return book.toCSV();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the sparse index of the current catalog file, loading, building or sorting as needed.
+     *
+     * @return The index, or null if the catalog cannot be indexed
+     */
+    private static SparseFileIndex currentSparseIndex() throws IOException {
+        SparseFileIndex index = sparseIndex;
+        if (index != null && index.isCurrent()) {
+            return index;
+        }
+        synchronized (INDEX_LOCK) {
+            index = sparseIndex;
+            if (index == null || !index.isCurrent()) {
+                index = SparseFileIndex.load(PATH, INDEX_PATH, CACHED_BLOCKS);
+            }
+            if (index == null) {
+                index = SparseFileIndex.build(PATH, BOOKS_PER_BLOCK, CACHED_BLOCKS);
+                if (index != null) {
+                    saveIndexQuietly(index);
+                }
+            }
+            if (index != null) {
+                sparseIndex = index;
+                return index;
+            }
+        }
+        // Appended or flushed records left the file out of order. The rewrite indexes the sorted
+        // file; it runs outside the index lock, which writers take inside the file lock.
+        DataFileCoordinator.write(PATH, () -> {
+            saveBooks(loadBooks());
+            return null;
+        });
+        return sparseIndex;
+    }
+
+    /**
+     * Indexes the catalog file just written in ISBN order.
+     */
+    private static void indexSortedFile() throws IOException {
+        synchronized (INDEX_LOCK) {
+            SparseFileIndex index = SparseFileIndex.build(PATH, BOOKS_PER_BLOCK, CACHED_BLOCKS);
+            if (index != null) {
+                saveIndexQuietly(index);
+            }
+            sparseIndex = index;
+        }
+    }
+
+    private static void saveIndexQuietly(SparseFileIndex index) {
+        try {
+            index.save(INDEX_PATH);
+        } catch (IOException e) {
+            // The index is rebuilt from the catalog on the next start
+            System.err.println("Unable to save the catalog index: " + e.getMessage());
+        }
+    }
 }
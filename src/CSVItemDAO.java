@@ -0,0 +1,181 @@
+// File: CSVItemDAO.java
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Data Access Object for Item entities using CSV file storage.
+ */
+public class CSVItemDAO {
+    private static final String FILE_PATH = "data/items.csv";
+    private static final String CSV_HEADER = "Barcode,ISBN,Status,TransactionId";
+    private static final Path PATH = Paths.get(FILE_PATH);
+    private static final WriteBehindFlusher FLUSHER = new WriteBehindFlusher(PATH, CSV_HEADER);
+    private static final ReentrantLock LOCK = new ReentrantLock();
+
+    /**
+     * Saves a list of items to the CSV file.
+     *
+     * @param items The list of items to save
+     * @throws IOException If an I/O error occurs
+     */
+    public void saveItems(Collection<Item> items) throws IOException {
+        DataFileCoordinator.replace(PATH, writer -> {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            for (Item item : items) {
+                writer.write(item.toCSV());
+                writer.newLine();
+            }
+        });
+    }
+
+    /**
+     * Loads all items from the CSV file, including changes not yet flushed.
+     *
+     * @return A list of all items, empty if no copies have been recorded yet
+     * @throws IOException If an I/O error occurs
+     */
+    public List<Item> loadItems() throws IOException {
+        if (!Files.exists(PATH)) {
+            return new ArrayList<>();
+        }
+        return FLUSHER.read(Item::fromCSV);
+    }
+
+    /**
+     * Adds new items in one write, or queues them in the deferred modes once the file exists.
+     *
+     * @param newItems The items to add
+     * @throws IOException If an I/O error occurs
+     */
+    public void addItems(Collection<Item> newItems) throws IOException {
+        if (newItems.isEmpty()) {
+            return;
+        }
+        if (FLUSHER.isDeferred() && Files.exists(PATH)) {
+            for (Item item : newItems) {
+                FLUSHER.put(item.toCSV());
+            }
+            return;
+        }
+        DataFileCoordinator.write(PATH, () -> {
+            List<Item> items = loadItems();
+            items.addAll(newItems);
+            saveItems(items);
+            return null;
+        });
+    }
+
+    /**
+     * Replaces existing items by barcode in one write, or queues them in the deferred modes.
+     *
+     * @param updatedItems The updated items
+     * @throws IOException If an I/O error occurs
+     */
+    public void updateItems(Collection<Item> updatedItems) throws IOException {
+        if (updatedItems.isEmpty()) {
+            return;
+        }
+        if (FLUSHER.isDeferred()) {
+            for (Item item : updatedItems) {
+                FLUSHER.put(item.toCSV());
+            }
+            return;
+        }
+        Map<String, Item> byBarcode = new HashMap<>();
+        for (Item item : updatedItems) {
+            byBarcode.put(item.getBarcode(), item);
+        }
+        DataFileCoordinator.write(PATH, () -> {
+            List<Item> items = loadItems();
+            items.replaceAll(item -> byBarcode.getOrDefault(item.getBarcode(), item));
+            saveItems(items);
+            return null;
+        });
+    }
+
+    /**
+     * Deletes items by barcode in one write, or queues the deletions in the deferred modes.
+     *
+     * @param barcodes The barcodes of the items to delete
+     * @throws IOException If an I/O error occurs
+     */
+    public void deleteItems(Collection<String> barcodes) throws IOException {
+        if (barcodes.isEmpty()) {
+            return;
+        }
+        if (FLUSHER.isDeferred()) {
+            for (String barcode : barcodes) {
+                FLUSHER.delete(barcode);
+            }
+            return;
+        }
+        DataFileCoordinator.write(PATH, () -> {
+            List<Item> items = loadItems();
+            items.removeIf(item -> barcodes.contains(item.getBarcode()));
+            saveItems(items);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a read-modify-write operation on the item file as one write transaction. Every item
+     * change runs inside one. In synchronous mode the transaction holds the file lock and each
+     * change rewrites the file before the transaction ends. In the deferred modes the queued
+     * changes are only visible to this process until they are flushed, so a lock local to this
+     * process orders them, and the flusher writes the changes of many checkouts and returns at once.
+     *
+     * @param action The operation
+     * @param <T> The result type
+     * @return The result of the operation
+     * @throws IOException If an I/O error occurs
+     */
+    public <T> T withWriteLock(DataFileCoordinator.IOCallable<T> action) throws IOException {
+        LOCK.lock();
+        try {
+            if (WriteBehindFlusher.getMode().isDeferred()) {
+                return action.call();
+            }
+            return DataFileCoordinator.write(PATH, action);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Writes the item changes queued so far.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void flush() throws IOException {
+        FLUSHER.flush();
+    }
+
+    /**
+     * Gets a future completed once every item change queued so far has been written.
+     *
+     * @return The commit future, already completed in synchronous mode
+     */
+    public CompletableFuture<Void> getPendingCommit() {
+        return FLUSHER.getPendingCommit();
+    }
+
+    /**
+     * Gets the path of the item file.
+     *
+     * @return The item file path
+     */
+    public Path getPath() {
+        return PATH;
+    }
+}
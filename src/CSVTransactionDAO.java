@@ -1,17 +1,53 @@
 import enums.TransactionStatus;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /**
  * Data Access Object for Transaction entities using CSV file storage.
  */
 public class CSVTransactionDAO {
     private static final String FILE_PATH = "data/transactions.csv";
-    private static final String CSV_HEADER = "TransactionId,UserId,ISBN,BorrowDate,DueDate,ReturnDate,Status";
+    private static final String CSV_HEADER = "TransactionId,UserId,ISBN,BorrowDate,DueDate,ReturnDate,Status,Renewals";
+    private static final String ARCHIVE_DIRECTORY = "archive";
+    // One flusher per file, shared by every DAO instance on it
+    private static final Map<Path, WriteBehindFlusher> FLUSHERS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final WriteBehindFlusher flusher;
+    private final TransactionArchive archive;
+
+    /**
+     * Creates a DAO for the library's transaction file, {@code data/transactions.csv}.
+     */
+    public CSVTransactionDAO() {
+        this(Paths.get(FILE_PATH));
+    }
+
+    /**
+     * Creates a DAO for a transaction file. Its archive segments are kept in an {@code archive}
+     * directory next to the file.
+     *
+     * @param path The transaction file
+     */
+    public CSVTransactionDAO(Path path) {
+        this.path = path;
+        this.flusher = FLUSHERS.computeIfAbsent(path, file -> new WriteBehindFlusher(file, CSV_HEADER));
+        this.archive = new TransactionArchive(path.resolveSibling(ARCHIVE_DIRECTORY));
+    }
 
     /**
      * Saves a list of transactions to the CSV file.
@@ -20,32 +56,24 @@ public class CSVTransactionDAO {
      * @throws IOException If an I/O error occurs
      */
     public void saveTransactions(List<Transaction> transactions) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH))) {
+        DataFileCoordinator.replace(path, writer -> {
             writer.write(CSV_HEADER);
             writer.newLine();
             for (Transaction transaction : transactions) {
                 writer.write(transactionToCSV(transaction));
                 writer.newLine();
             }
-        }
+        });
     }
 
     /**
-     * Loads all transactions from the CSV file.
+     * Loads all transactions from the CSV file, including changes not yet flushed.
      *
      * @return A list of all transactions
      * @throws IOException If an I/O error occurs
      */
     public List<Transaction> loadTransactions() throws IOException {
-        List<Transaction> transactions = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            reader.readLine(); // Skip header
-            while ((line = reader.readLine()) != null) {
-                transactions.add(csvToTransaction(line));
-            }
-        }
-        return transactions;
+        return flusher.read(this::csvToTransaction);
     }
 
     /**
@@ -55,10 +83,11 @@ public class CSVTransactionDAO {
      * @throws IOException If an I/O error occurs
      */
     public void addTransaction(Transaction transaction) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH, true))) {
-            writer.write(transactionToCSV(transaction));
-            writer.newLine();
+        if (flusher.isDeferred()) {
+            flusher.put(transactionToCSV(transaction));
+            return;
         }
+        DataFileCoordinator.append(path, transactionToCSV(transaction));
     }
 
     /**
@@ -68,14 +97,58 @@ public class CSVTransactionDAO {
      * @throws IOException If an I/O error occurs
      */
     public void updateTransaction(Transaction updatedTransaction) throws IOException {
-        List<Transaction> transactions = loadTransactions();
-        for (int i = 0; i < transactions.size(); i++) {
-            if (transactions.get(i).getTransactionId().equals(updatedTransaction.getTransactionId())) {
-                transactions.set(i, updatedTransaction);
-                break;
-            }
+        if (flusher.isDeferred()) {
+            flusher.put(transactionToCSV(updatedTransaction));
+            return;
         }
-        saveTransactions(transactions);
+        DataFileCoordinator.write(path, () -> {
+            List<Transaction> transactions = loadTransactions();
+            for (int i = 0; i < transactions.size(); i++) {
+                if (transactions.get(i).getTransactionId().equals(updatedTransaction.getTransactionId())) {
+                    transactions.set(i, updatedTransaction);
+                    break;
+                }
+            }
+            saveTransactions(transactions);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a read-modify-write operation on the transaction file as one write transaction.
+     *
+     * @param action The operation
+     * @param <T> The result type
+     * @return The result of the operation
+     * @throws IOException If an I/O error occurs
+     */
+    public <T> T withWriteLock(DataFileCoordinator.IOCallable<T> action) throws IOException {
+        return DataFileCoordinator.write(path, action);
+    }
+
+    /**
+     * Gets a future completed once every transaction change queued so far has been written.
+     *
+     * @return The commit future, already completed in synchronous mode
+     */
+    public CompletableFuture<Void> getPendingCommit() {
+        return flusher.getPendingCommit();
+    }
+
+    /**
+     * Gets the path of the transaction file.
+     *
+     * @return The transaction file path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Drops cached archive metadata so that segments written by another process become visible.
+     */
+    public void invalidateCaches() {
+        archive.invalidate();
     }
 
     /**
@@ -93,6 +166,111 @@ public class CSVTransactionDAO {
                 .orElse(null);
     }
 
+    /**
+     * Moves completed transactions returned before the cutoff date out of the hot file and into
+     * compressed archive segments. Open loans and recent history stay in the hot file.
+     *
+     * @param cutoff Completed transactions returned before this date are archived
+     * @return The number of transactions archived
+     * @throws IOException If an I/O error occurs
+     */
+    public int archiveCompletedBefore(LocalDate cutoff) throws IOException {
+        return DataFileCoordinator.write(path, () -> {
+            List<Transaction> hot = new ArrayList<>();
+            List<Transaction> archived = new ArrayList<>();
+            for (Transaction t : loadTransactions()) {
+                LocalDate closed = t.getReturnDate() != null ? t.getReturnDate() : t.getBorrowDate();
+                if (t.getStatus() == TransactionStatus.COMPLETED && closed.isBefore(cutoff)) {
+                    archived.add(t);
+                } else {
+                    hot.add(t);
+                }
+            }
+            if (archived.isEmpty()) {
+                return 0;
+            }
+            // Segments are written before the hot file is rewritten, so a crash in between leaves
+            // duplicates rather than losing history; scanHistory skips archived copies of hot records.
+            archive.append(archived);
+            saveTransactions(hot);
+            return archived.size();
+        });
+    }
+
+    /**
+     * Applies an update to every open loan in parallel and writes all changed loans with a single
+     * rewrite of the transaction file. Only lines whose status column marks an open loan are parsed,
+     * and the archive is never read, so the cost grows with open loans and recent history rather
+     * than with the full history.
+     *
+     * @param update Changes a loan in place and returns true, or returns false to leave it unchanged;
+     *               called concurrently from several threads
+     * @return The changed loans
+     * @throws IOException If an I/O error occurs
+     */
+    public List<Transaction> updateOpenLoans(Predicate<Transaction> update) throws IOException {
+        return DataFileCoordinator.write(path, () -> {
+            List<String> lines = new ArrayList<>();
+            flusher.forEach(line -> line, lines::add);
+            Transaction[] changed = new Transaction[lines.size()];
+            IntStream.range(0, lines.size()).parallel().forEach(i -> {
+                String line = lines.get(i);
+                if (statusOf(line).isOpenLoan()) {
+                    Transaction t = csvToTransaction(line);
+                    if (update.test(t)) {
+                        changed[i] = t;
+                    }
+                }
+            });
+
+            List<Transaction> updated = new ArrayList<>();
+            for (int i = 0; i < changed.length; i++) {
+                if (changed[i] != null) {
+                    lines.set(i, transactionToCSV(changed[i]));
+                    updated.add(changed[i]);
+                }
+            }
+            if (!updated.isEmpty()) {
+                DataFileCoordinator.replace(path, writer -> {
+                    writer.write(CSV_HEADER);
+                    writer.newLine();
+                    for (String line : lines) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                });
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Streams the full transaction history, hot and archived, matching the given criteria.
+     * Null criteria are unrestricted. Only archive segments that can contain a match are opened.
+     *
+     * @param userId The user ID to match, or null
+     * @param ISBN The ISBN to match, or null
+     * @param from The earliest borrow date to include, or null
+     * @param action The action to apply to each matching transaction
+     * @throws IOException If an I/O error occurs
+     */
+    public void scanHistory(String userId, String ISBN, LocalDate from, Consumer<Transaction> action) throws IOException {
+        Set<String> hotIds = new HashSet<>();
+        for (Transaction t : loadTransactions()) {
+            hotIds.add(t.getTransactionId());
+            if ((userId == null || t.getUserId().equals(userId))
+                    && (ISBN == null || t.getISBN().equals(ISBN))
+                    && (from == null || !t.getBorrowDate().isBefore(from))) {
+                action.accept(t);
+            }
+        }
+        archive.scan(userId, ISBN, from, null, t -> {
+            if (!hotIds.contains(t.getTransactionId())) {
+                action.accept(t);
+            }
+        });
+    }
+
     /**
      * Converts a Transaction object to a CSV string.
      *
@@ -107,10 +285,23 @@ public class CSVTransactionDAO {
                 transaction.getBorrowDate().toString(),
                 transaction.getDueDate().toString(),
                 transaction.getReturnDate() != null ? transaction.getReturnDate().toString() : "",
-                transaction.getStatus().toString()
+                transaction.getStatus().toString(),
+                String.valueOf(transaction.getRenewalCount())
         );
     }
 
+    /**
+     * Reads the status column of a CSV line without splitting the whole line.
+     */
+    private static TransactionStatus statusOf(String csv) {
+        int start = 0;
+        for (int column = 0; column < 6; column++) {
+            start = csv.indexOf(',', start) + 1;
+        }
+        int end = csv.indexOf(',', start);
+        return TransactionStatus.fromString(end < 0 ? csv.substring(start) : csv.substring(start, end));
+    }
+
     /**
      * Converts a CSV string to a Transaction object.
      *
@@ -121,10 +312,16 @@ public class CSVTransactionDAO {
         String[] parts = csv.split(",");
         Transaction transaction = new Transaction(parts[1], parts[2], (int) ChronoUnit.DAYS.between(LocalDate.parse(parts[3]), LocalDate.parse(parts[4])));
         transaction.setTransactionId(parts[0]);
+        transaction.setBorrowDate(LocalDate.parse(parts[3]));
+        transaction.setDueDate(LocalDate.parse(parts[4]));
         if (!parts[5].isEmpty()) {
             transaction.setReturnDate(LocalDate.parse(parts[5]));
         }
         transaction.setStatus(TransactionStatus.fromString(parts[6]));
+        // Files written before renewals were counted have no Renewals column
+        if (parts.length > 7) {
+            transaction.setRenewalCount(Integer.parseInt(parts[7]));
+        }
         return transaction;
     }
 }
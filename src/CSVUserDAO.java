@@ -1,8 +1,10 @@
 import enums.UserRole;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Data Access Object for User entities using CSV file storage.
@@ -10,6 +12,18 @@ import java.util.List;
 public class CSVUserDAO {
     private static final String FILE_PATH = "data/users.csv";
     private static final String CSV_HEADER = "UserId,Name,Email,PasswordHash,Role,IsActive";
+    private static final Path PATH = Paths.get(FILE_PATH);
+    private static final WriteBehindFlusher FLUSHER = new WriteBehindFlusher(PATH, CSV_HEADER);
+    private static final Object DIRECTORY_LOCK = new Object();
+    private static PatronDirectory directory;
+
+    static {
+        DataFileCoordinator.addChangeListener(changed -> {
+            if (changed.equals(PATH.toAbsolutePath().normalize())) {
+                invalidateDirectory();
+            }
+        });
+    }
 
     /**
      * Saves a list of users to the CSV file.
@@ -18,32 +32,29 @@ public class CSVUserDAO {
      * @throws IOException If an I/O error occurs
      */
     public void saveUsers(List<User> users) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH))) {
+        writeUsers(users);
+        invalidateDirectory();
+    }
+
+    private void writeUsers(List<User> users) throws IOException {
+        DataFileCoordinator.replace(PATH, writer -> {
             writer.write(CSV_HEADER);
             writer.newLine();
             for (User user : users) {
                 writer.write(userToCSV(user));
                 writer.newLine();
             }
-        }
+        });
     }
 
     /**
-     * Loads all users from the CSV file.
+     * Loads all users from the CSV file, including changes not yet flushed.
      *
      * @return A list of all users
      * @throws IOException If an I/O error occurs
      */
     public List<User> loadUsers() throws IOException {
-        List<User> users = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            reader.readLine(); // Skip header
-            while ((line = reader.readLine()) != null) {
-                users.add(csvToUser(line));
-            }
-        }
-        return users;
+        return FLUSHER.read(this::csvToUser);
     }
 
     /**
@@ -53,9 +64,14 @@ public class CSVUserDAO {
      * @throws IOException If an I/O error occurs
      */
     public void addUser(User user) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH, true))) {
-            writer.write(userToCSV(user));
-            writer.newLine();
+        if (FLUSHER.isDeferred()) {
+            queue(user);
+        } else {
+            DataFileCoordinator.write(PATH, () -> {
+                DataFileCoordinator.append(PATH, userToCSV(user));
+                updateDirectory(user);
+                return null;
+            });
         }
     }
 
@@ -66,14 +82,52 @@ public class CSVUserDAO {
      * @throws IOException If an I/O error occurs
      */
     public void updateUser(User updatedUser) throws IOException {
-        List<User> users = loadUsers();
-        for (int i = 0; i < users.size(); i++) {
-            if (users.get(i).getUserId().equals(updatedUser.getUserId())) {
-                users.set(i, updatedUser);
-                break;
-            }
+        if (FLUSHER.isDeferred()) {
+            queue(updatedUser);
+        } else {
+            DataFileCoordinator.write(PATH, () -> {
+                List<User> users = loadUsers();
+                for (int i = 0; i < users.size(); i++) {
+                    if (users.get(i).getUserId().equals(updatedUser.getUserId())) {
+                        users.set(i, updatedUser);
+                        break;
+                    }
+                }
+                writeUsers(users);
+                updateDirectory(updatedUser);
+                return null;
+            });
         }
-        saveUsers(users);
+    }
+
+    /**
+     * Runs a read-modify-write operation on the user file as one write transaction.
+     *
+     * @param action The operation
+     * @param <T> The result type
+     * @return The result of the operation
+     * @throws IOException If an I/O error occurs
+     */
+    public <T> T withWriteLock(DataFileCoordinator.IOCallable<T> action) throws IOException {
+        return DataFileCoordinator.write(PATH, action);
+    }
+
+    /**
+     * Gets a future completed once every user change queued so far has been written.
+     *
+     * @return The commit future, already completed in synchronous mode
+     */
+    public CompletableFuture<Void> getPendingCommit() {
+        return FLUSHER.getPendingCommit();
+    }
+
+    /**
+     * Gets the path of the user file.
+     *
+     * @return The user file path
+     */
+    public Path getPath() {
+        return PATH;
     }
 
     /**
@@ -84,11 +138,61 @@ public class CSVUserDAO {
      * @throws IOException If an I/O error occurs
      */
     public User findUserById(String userId) throws IOException {
-        List<User> users = loadUsers();
-        return users.stream()
-                .filter(u -> u.getUserId().equals(userId))
-                .findFirst()
-                .orElse(null);
+        return directory().findById(userId);
+    }
+
+    /**
+     * Finds a user by their email address.
+     *
+     * @param email The email address of the user to find
+     * @return The found user, or null if not found
+     * @throws IOException If an I/O error occurs
+     */
+    public User findUserByEmail(String email) throws IOException {
+        return directory().findByEmail(email);
+    }
+
+    /**
+     * Gets the off-heap directory of all users, loading it from the user file on first use.
+     */
+    private PatronDirectory directory() throws IOException {
+        synchronized (DIRECTORY_LOCK) {
+            if (directory == null) {
+                PatronDirectory loaded = new PatronDirectory();
+                FLUSHER.forEach(this::csvToUser, loaded::put);
+                directory = loaded;
+            }
+            return directory;
+        }
+    }
+
+    /**
+     * Queues a user change for the flusher and applies it to the directory in the same order.
+     */
+    private void queue(User user) {
+        synchronized (DIRECTORY_LOCK) {
+            FLUSHER.put(userToCSV(user));
+            updateDirectory(user);
+        }
+    }
+
+    /**
+     * Applies a user change to the directory, if it is loaded. Synchronous writes call this inside
+     * their write transaction, so the directory sees changes in the order they were committed.
+     */
+    private static void updateDirectory(User user) {
+        synchronized (DIRECTORY_LOCK) {
+            if (directory != null) {
+                directory.put(user);
+            }
+        }
+    }
+
+    private static void invalidateDirectory() {
+        synchronized (DIRECTORY_LOCK) {
+            // Direct memory is released once the old directory is collected
+            directory = null;
+        }
     }
 
     /**
@@ -103,7 +207,7 @@ public class CSVUserDAO {
                 user.getName(),
                 user.getEmail(),
                 user.getPasswordHash(),
-                user.getRole().toString(),
+                user.getRole().name(),
                 String.valueOf(user.isActive())
         );
     }
@@ -116,10 +220,8 @@ public class CSVUserDAO {
      */
     private User csvToUser(String csv) {
         String[] parts = csv.split(",");
-        User user = new User(parts[1], parts[2], "", UserRole.valueOf(parts[4]));
-        user.setUserId(parts[0]);
-        user.setPasswordHash(parts[3]); // Set hashed password directly from CSV
-        user.setActive(Boolean.parseBoolean(parts[5]));
-        return user;
+        // Restore the stored hash directly rather than hashing a placeholder password for every row
+        return User.restore(parts[0], parts[1], parts[2], parts[3], UserRole.fromString(parts[4]),
+                Boolean.parseBoolean(parts[5]));
     }
 }
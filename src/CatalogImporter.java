@@ -0,0 +1,421 @@
+// File: CatalogImporter.java
+
+import enums.Genre;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports large catalog exports into the library in a single write.
+ * The source file is streamed in fixed-size chunks that are parsed and validated in parallel,
+ * duplicates are merged by adding their copy counts, and the merged catalog is saved once.
+ * The imported copies are handed to a {@link CopySink} in the same write, so that every copy
+ * counted in the catalog is also recorded as an item.
+ */
+public class CatalogImporter {
+    private static final int DEFAULT_CHUNK_SIZE = 10_000;
+    private static final int MAX_REPORTED_REJECTIONS = 1_000;
+
+    private final char delimiter;
+    private final int chunkSize;
+    private final int parallelism;
+
+    /**
+     * Listener notified after each chunk has been merged into the import.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * Called after a chunk has been processed.
+         *
+         * @param rowsProcessed The number of data rows processed so far
+         * @param elapsedMillis The time spent since the import started
+         */
+        void onProgress(long rowsProcessed, long elapsedMillis);
+    }
+
+    /**
+     * Records the physical copies of imported titles.
+     */
+    public interface CopySink {
+        /**
+         * Runs the catalog write of an import inside the sink's own write transaction.
+         *
+         * @param catalogWrite The write merging the imported titles into the catalog
+         * @param <T> The result type
+         * @return The result of the write
+         * @throws IOException If an I/O error occurs
+         */
+        <T> T withWriteLock(DataFileCoordinator.IOCallable<T> catalogWrite) throws IOException;
+
+        /**
+         * Records new copies of imported titles. Called inside the catalog write, once the merged
+         * catalog has been saved; the sink sets the copy counts of the titles from their items.
+         *
+         * @param copies The number of copies imported for each title, keyed by ISBN
+         * @throws IOException If an I/O error occurs
+         */
+        void addCopies(Map<String, Integer> copies) throws IOException;
+    }
+
+    /**
+     * A row that could not be imported.
+     *
+     * @param lineNumber The 1-based line number in the source file
+     * @param reason Why the row was rejected
+     * @param line The raw line
+     */
+    public record Rejection(long lineNumber, String reason, String line) {
+    }
+
+    /**
+     * Summary of a completed import.
+     *
+     * @param rowsRead The number of data rows read from the source
+     * @param titlesAdded The number of new titles added to the catalog
+     * @param rowsMerged The number of rows merged into an existing or earlier title
+     * @param rowsRejected The number of rows rejected
+     * @param rejections The first rejected rows, capped to keep memory bounded
+     * @param elapsedMillis The wall-clock duration of the import
+     */
+    public record ImportResult(long rowsRead, long titlesAdded, long rowsMerged, long rowsRejected,
+                               List<Rejection> rejections, long elapsedMillis) {
+        /**
+         * Gets the import throughput.
+         *
+         * @return The number of rows processed per second
+         */
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? rowsRead : rowsRead * 1000.0 / elapsedMillis;
+        }
+    }
+
+    /**
+     * Creates an importer for comma-separated files using all available processors.
+     */
+    public CatalogImporter() {
+        this(',', DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an importer.
+     *
+     * @param delimiter The field delimiter used by the source file
+     * @param chunkSize The number of rows parsed per task
+     * @param parallelism The number of parser threads
+     */
+    public CatalogImporter(char delimiter, int chunkSize, int parallelism) {
+        if (chunkSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Chunk size and parallelism must be positive");
+        }
+        this.delimiter = delimiter;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Imports a catalog export and merges it into the existing catalog.
+     * The file may start with a header naming the ISBN, Title, Author, Genre and TotalCopies columns.
+     * Without a header, rows in the books.csv layout are recognized by their field count and
+     * all other rows are read as ISBN, Title, Author, Genre, Copies.
+     *
+     * @param source The file to import
+     * @param listener The progress listener, or null
+     * @param sink Records the imported copies as items
+     * @return A summary of the import
+     * @throws IOException If an I/O error occurs
+     */
+    public ImportResult importFile(Path source, ProgressListener listener, CopySink sink) throws IOException {
+        long start = System.nanoTime();
+        Map<String, Book> imported = new LinkedHashMap<>();
+        List<Rejection> rejections = new ArrayList<>();
+        long rowsRead = 0;
+        long rowsMerged = 0;
+        long rowsRejected = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            ColumnLayout layout = null;
+            Deque<Future<ChunkResult>> pending = new ArrayDeque<>();
+            List<String> lines = new ArrayList<>(chunkSize);
+            long chunkFirstLine = 1;
+            long lineNumber = 0;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (layout == null) {
+                    layout = ColumnLayout.fromHeader(splitFields(line, delimiter));
+                    if (layout != null) {
+                        chunkFirstLine = lineNumber + 1;
+                        continue;
+                    }
+                    layout = ColumnLayout.DEFAULT;
+                }
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    pending.add(submitChunk(executor, lines, chunkFirstLine, layout));
+                    lines = new ArrayList<>(chunkSize);
+                    chunkFirstLine = lineNumber + 1;
+                }
+                // Bound the number of parsed chunks held in memory
+                if (pending.size() >= parallelism * 2) {
+                    ChunkResult result = await(pending.poll());
+                    rowsRead += result.rows;
+                    rowsMerged += mergeInto(imported, result.books) + result.mergedWithinChunk;
+                    rowsRejected += addRejections(rejections, result.rejections);
+                    notify(listener, rowsRead, start);
+                }
+            }
+            if (!lines.isEmpty()) {
+                pending.add(submitChunk(executor, lines, chunkFirstLine, layout == null ? ColumnLayout.DEFAULT : layout));
+            }
+            while (!pending.isEmpty()) {
+                ChunkResult result = await(pending.poll());
+                rowsRead += result.rows;
+                rowsMerged += mergeInto(imported, result.books) + result.mergedWithinChunk;
+                rowsRejected += addRejections(rejections, result.rejections);
+                notify(listener, rowsRead, start);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long[] counts = sink.withWriteLock(() -> CSVBookDAO.withWriteLock(() -> {
+            List<Book> catalog = CSVBookDAO.loadBooks();
+            Map<String, Book> byISBN = new LinkedHashMap<>(catalog.size() * 2);
+            for (Book book : catalog) {
+                byISBN.put(book.getISBN(), book);
+            }
+            long added = 0;
+            long merged = 0;
+            Map<String, Integer> copies = new LinkedHashMap<>(imported.size() * 2);
+            for (Book book : imported.values()) {
+                Book existing = byISBN.get(book.getISBN());
+                if (existing == null) {
+                    byISBN.put(book.getISBN(), book);
+                    added++;
+                } else {
+                    addCopies(existing, book.getTotalCopies());
+                    merged++;
+                }
+                copies.put(book.getISBN(), book.getTotalCopies());
+            }
+            CSVBookDAO.saveBooks(new ArrayList<>(byISBN.values()));
+            sink.addCopies(copies);
+            return new long[]{added, merged};
+        }));
+        long titlesAdded = counts[0];
+        rowsMerged += counts[1];
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new ImportResult(rowsRead, titlesAdded, rowsMerged, rowsRejected, rejections, elapsedMillis);
+    }
+
+    private Future<ChunkResult> submitChunk(ExecutorService executor, List<String> lines, long firstLine, ColumnLayout layout) {
+        return executor.submit(() -> parseChunk(lines, firstLine, layout));
+    }
+
+    private ChunkResult parseChunk(List<String> lines, long firstLine, ColumnLayout layout) {
+        ChunkResult result = new ChunkResult();
+        result.rows = lines.size();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            long lineNumber = firstLine + i;
+            if (line.isBlank()) {
+                result.rejections.add(new Rejection(lineNumber, "Empty row", line));
+                continue;
+            }
+            try {
+                Book book = parseRow(splitFields(line, delimiter), layout);
+                Book existing = result.books.putIfAbsent(book.getISBN(), book);
+                if (existing != null) {
+                    addCopies(existing, book.getTotalCopies());
+                    result.mergedWithinChunk++;
+                }
+            } catch (IllegalArgumentException e) {
+                result.rejections.add(new Rejection(lineNumber, e.getMessage(), line));
+            }
+        }
+        return result;
+    }
+
+    private static Book parseRow(List<String> fields, ColumnLayout layout) {
+        int copiesColumn = layout.copies;
+        if (layout == ColumnLayout.DEFAULT && fields.size() == 7) {
+            copiesColumn = 5; // books.csv layout
+        }
+        int required = Math.max(Math.max(layout.isbn, layout.title), Math.max(Math.max(layout.author, layout.genre), copiesColumn));
+        if (fields.size() <= required) {
+            throw new IllegalArgumentException("Expected at least " + (required + 1) + " fields but found " + fields.size());
+        }
+
+        String isbn = ISBNUtils.normalize(fields.get(layout.isbn));
+        if (isbn == null) {
+            throw new IllegalArgumentException("Invalid ISBN: " + fields.get(layout.isbn));
+        }
+        String title = fields.get(layout.title).trim();
+        String author = fields.get(layout.author).trim();
+        if (title.isEmpty() || author.isEmpty()) {
+            throw new IllegalArgumentException("Missing title or author");
+        }
+        if (title.indexOf(',') >= 0 || author.indexOf(',') >= 0) {
+            throw new IllegalArgumentException("Title and author must not contain commas");
+        }
+        Genre genre = Genre.fromString(fields.get(layout.genre).trim());
+        int copies;
+        try {
+            copies = Integer.parseInt(fields.get(copiesColumn).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid copy count: " + fields.get(copiesColumn));
+        }
+        if (copies <= 0) {
+            throw new IllegalArgumentException("Copy count must be positive: " + copies);
+        }
+        return new Book(isbn, title, author, genre, copies);
+    }
+
+    /**
+     * Splits a delimited line into fields, honoring double-quoted fields.
+     */
+    private static List<String> splitFields(String line, char delimiter) {
+        List<String> fields = new ArrayList<>(8);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == delimiter && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static long mergeInto(Map<String, Book> imported, Map<String, Book> chunk) {
+        long merged = 0;
+        for (Book book : chunk.values()) {
+            Book existing = imported.putIfAbsent(book.getISBN(), book);
+            if (existing != null) {
+                addCopies(existing, book.getTotalCopies());
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    private static void addCopies(Book book, int copies) {
+        book.setTotalCopies(book.getTotalCopies() + copies);
+        book.updateAvailableCopies(copies);
+    }
+
+    private static long addRejections(List<Rejection> rejections, List<Rejection> chunkRejections) {
+        for (Rejection rejection : chunkRejections) {
+            if (rejections.size() >= MAX_REPORTED_REJECTIONS) {
+                break;
+            }
+            rejections.add(rejection);
+        }
+        return chunkRejections.size();
+    }
+
+    private static void notify(ProgressListener listener, long rowsProcessed, long startNanos) {
+        if (listener != null) {
+            listener.onProgress(rowsProcessed, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+    }
+
+    private static ChunkResult await(Future<ChunkResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing import chunk", e.getCause());
+        }
+    }
+
+    /**
+     * Parsed and locally merged rows of one chunk.
+     */
+    private static class ChunkResult {
+        private final Map<String, Book> books = new LinkedHashMap<>();
+        private final List<Rejection> rejections = new ArrayList<>();
+        private long rows;
+        private long mergedWithinChunk;
+    }
+
+    /**
+     * Column positions of the fields needed to build a book.
+     */
+    private static class ColumnLayout {
+        private static final ColumnLayout DEFAULT = new ColumnLayout(0, 1, 2, 3, 4);
+
+        private final int isbn;
+        private final int title;
+        private final int author;
+        private final int genre;
+        private final int copies;
+
+        private ColumnLayout(int isbn, int title, int author, int genre, int copies) {
+            this.isbn = isbn;
+            this.title = title;
+            this.author = author;
+            this.genre = genre;
+            this.copies = copies;
+        }
+
+        /**
+         * Builds a layout from a header row.
+         *
+         * @return The layout, or null if the row is not a header
+         */
+        private static ColumnLayout fromHeader(List<String> fields) {
+            int isbn = -1, title = -1, author = -1, genre = -1, copies = -1;
+            for (int i = 0; i < fields.size(); i++) {
+                String name = fields.get(i).trim().toLowerCase(Locale.ROOT);
+                switch (name) {
+                    case "isbn", "isbn13", "isbn-13" -> isbn = i;
+                    case "title" -> title = i;
+                    case "author" -> author = i;
+                    case "genre" -> genre = i;
+                    case "totalcopies", "copies" -> copies = i;
+                    default -> {
+                    }
+                }
+            }
+            if (isbn < 0) {
+                return null;
+            }
+            if (title < 0 || author < 0 || genre < 0 || copies < 0) {
+                throw new IllegalArgumentException("Header must name ISBN, Title, Author, Genre and TotalCopies columns");
+            }
+            return new ColumnLayout(isbn, title, author, genre, copies);
+        }
+    }
+}
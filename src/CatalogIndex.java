@@ -0,0 +1,245 @@
+// File: CatalogIndex.java
+
+import enums.Genre;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the catalog for composable queries.
+ * Every book occupies a row; per-genre and availability bitsets over the rows are kept up to date
+ * on every change, so a query intersects the genre and availability bitmaps first and only
+ * evaluates author, title and copy predicates on the rows that survive. Genre facets are counted
+ * in a separate pass that evaluates the predicates only on rows outside the genre filter.
+ */
+public class CatalogIndex {
+    private final List<Book> rows = new ArrayList<>();
+    private final List<String> lowerTitles = new ArrayList<>();
+    private final List<String> lowerAuthors = new ArrayList<>();
+    private final LongIntHashMap rowByISBN = new LongIntHashMap();
+    private final Map<Genre, BitSet> genreRows = new EnumMap<>(Genre.class);
+    private final BitSet availableRows = new BitSet();
+    private final BitSet liveRows = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The result of a catalog query.
+     *
+     * @param books The books on the requested page
+     * @param totalMatches The number of books matching the query across all pages
+     * @param page The 0-based page number
+     * @param pageSize The page size
+     * @param genreFacets Per-genre counts of books matching every predicate except the genre filter
+     */
+    public record QueryResult(List<Book> books, int totalMatches, int page, int pageSize,
+                              Map<Genre, Integer> genreFacets) {
+    }
+
+    /**
+     * Creates an index of the given books.
+     *
+     * @param books The catalog
+     */
+    public CatalogIndex(List<Book> books) {
+        for (Genre genre : Genre.values()) {
+            genreRows.put(genre, new BitSet());
+        }
+        for (Book book : books) {
+            index(book);
+        }
+    }
+
+    /**
+     * Adds a book or replaces the indexed state of an existing one, including its copy counts.
+     *
+     * @param book The book
+     */
+    public void put(Book book) {
+        lock.writeLock().lock();
+        try {
+            index(book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(Book book) {
+        int row = rowByISBN.get(book.getISBNKey(), -1);
+        if (row < 0) {
+            row = rows.size();
+            rows.add(book);
+            lowerTitles.add(book.getTitle().toLowerCase(Locale.ROOT));
+            lowerAuthors.add(book.getAuthor().toLowerCase(Locale.ROOT));
+            rowByISBN.put(book.getISBNKey(), row);
+        } else {
+            genreRows.get(rows.get(row).getGenre()).clear(row);
+            rows.set(row, book);
+            lowerTitles.set(row, book.getTitle().toLowerCase(Locale.ROOT));
+            lowerAuthors.set(row, book.getAuthor().toLowerCase(Locale.ROOT));
+        }
+        liveRows.set(row);
+        genreRows.get(book.getGenre()).set(row);
+        availableRows.set(row, book.isAvailable());
+    }
+
+    /**
+     * Removes a book from the index. Its row is left empty.
+     *
+     * @param ISBN The ISBN of the book
+     */
+    public void remove(String ISBN) {
+        lock.writeLock().lock();
+        try {
+            long key = ISBNUtils.toLong(ISBN);
+            int row = rowByISBN.get(key, -1);
+            if (row >= 0) {
+                rowByISBN.remove(key);
+                genreRows.get(rows.get(row).getGenre()).clear(row);
+                availableRows.clear(row);
+                liveRows.clear(row);
+                rows.set(row, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds an indexed book by ISBN.
+     *
+     * @param ISBN The ISBN
+     * @return The book, or null if it is not indexed
+     */
+    public Book get(String ISBN) {
+        lock.readLock().lock();
+        try {
+            int row = rowByISBN.get(ISBNUtils.toLong(ISBN), -1);
+            return row < 0 ? null : rows.get(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a query against the index.
+     *
+     * @param query The query
+     * @return The requested page of matches with genre facet counts
+     */
+    public QueryResult query(BookQuery query) {
+        lock.readLock().lock();
+        try {
+            BitSet candidates = (BitSet) liveRows.clone();
+            if (query.isAvailableOnly()) {
+                candidates.and(availableRows);
+            }
+            BitSet genreFilter = null;
+            if (query.getGenres() != null) {
+                genreFilter = new BitSet();
+                for (Genre genre : query.getGenres()) {
+                    genreFilter.or(genreRows.get(genre));
+                }
+            }
+
+            // Bitmap stage: genre and availability, then row predicates only on the rows that survive
+            BitSet matches = (BitSet) candidates.clone();
+            if (genreFilter != null) {
+                matches.and(genreFilter);
+            }
+            retainMatchingRows(matches, query);
+
+            // Facet pass: facets count every predicate except the genre filter, so only the rows
+            // outside the filter, which the bitmap stage never evaluated, are checked here
+            BitSet faceted = matches;
+            if (genreFilter != null) {
+                faceted = (BitSet) candidates.clone();
+                faceted.andNot(genreFilter);
+                retainMatchingRows(faceted, query);
+                faceted.or(matches);
+            }
+            Map<Genre, Integer> facets = new EnumMap<>(Genre.class);
+            for (Map.Entry<Genre, BitSet> entry : genreRows.entrySet()) {
+                BitSet inGenre = (BitSet) entry.getValue().clone();
+                inGenre.and(faceted);
+                int count = inGenre.cardinality();
+                if (count > 0) {
+                    facets.put(entry.getKey(), count);
+                }
+            }
+
+            int total = matches.cardinality();
+            long offset = (long) query.getPage() * query.getPageSize();
+            List<Book> page = query.getSortField() == null
+                    ? pageInRowOrder(matches, offset, query.getPageSize())
+                    : pageSorted(matches, offset, query.getPageSize(), query);
+            return new QueryResult(page, total, query.getPage(), query.getPageSize(), facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Clears the rows that fail the author, title or copy predicates of a query.
+     */
+    private void retainMatchingRows(BitSet rowSet, BookQuery query) {
+        if (!query.hasRowPredicates()) {
+            return;
+        }
+        for (int row = rowSet.nextSetBit(0); row >= 0; row = rowSet.nextSetBit(row + 1)) {
+            if (!query.matchesRow(rows.get(row), lowerTitles.get(row), lowerAuthors.get(row))) {
+                rowSet.clear(row);
+            }
+        }
+    }
+
+    private List<Book> pageInRowOrder(BitSet matches, long offset, int pageSize) {
+        List<Book> page = new ArrayList<>(pageSize);
+        long position = 0;
+        for (int row = matches.nextSetBit(0); row >= 0 && page.size() < pageSize; row = matches.nextSetBit(row + 1)) {
+            if (position++ >= offset) {
+                page.add(rows.get(row));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Selects a sorted page by keeping only the first offset + pageSize books in a bounded heap.
+     */
+    private List<Book> pageSorted(BitSet matches, long offset, int pageSize, BookQuery query) {
+        Comparator<Book> order = query.getSortField().getComparator();
+        if (query.isDescending()) {
+            order = order.reversed();
+        }
+        long limit = offset + pageSize;
+        if (limit > Integer.MAX_VALUE) {
+            return Collections.emptyList();
+        }
+        // The heap's head is the worst book kept so far, so it can be evicted cheaply
+        PriorityQueue<Book> heap = new PriorityQueue<>((int) Math.min(limit, 1024) + 1, order.reversed());
+        for (int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+            Book book = rows.get(row);
+            if (heap.size() < limit) {
+                heap.add(book);
+            } else if (order.compare(book, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(book);
+            }
+        }
+        List<Book> sorted = new ArrayList<>(heap);
+        sorted.sort(order);
+        if (offset >= sorted.size()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(sorted.subList((int) offset, sorted.size()));
+    }
+}
@@ -0,0 +1,192 @@
+// File: CirculationAnalytics.java
+
+import enums.Genre;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Streaming circulation analytics over weekly time buckets.
+ * <p>
+ * Each borrow is added to the bucket of its week. A bucket holds HyperLogLog sketches of the
+ * distinct borrowers of every title and every genre, plus count-min heavy-hitter trackers for
+ * titles and authors. Queries over a date range merge the buckets of the weeks it covers, so
+ * they never read the transaction history and answer with bounded error: about 3% for distinct
+ * borrowers of a title, 1.6% for a genre, and an overcount of at most 0.13% of the borrows in
+ * the range for title and author counts. Buckets older than the retention period are dropped.
+ */
+public class CirculationAnalytics {
+    private static final int TITLE_PRECISION = 10;
+    private static final int GENRE_PRECISION = 12;
+    private static final int SKETCH_WIDTH = 2048;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int TRACKED_KEYS = 100;
+    static final int DEFAULT_RETENTION_WEEKS = 104;
+
+    private final int retentionWeeks;
+    private final NavigableMap<Long, Bucket> buckets = new TreeMap<>();
+
+    /**
+     * Creates analytics keeping two years of weekly buckets.
+     */
+    public CirculationAnalytics() {
+        this(DEFAULT_RETENTION_WEEKS);
+    }
+
+    /**
+     * Creates analytics.
+     *
+     * @param retentionWeeks The number of most recent weeks kept
+     * @throws IllegalArgumentException If the retention is not positive
+     */
+    public CirculationAnalytics(int retentionWeeks) {
+        if (retentionWeeks <= 0) {
+            throw new IllegalArgumentException("Invalid retention: " + retentionWeeks + " weeks");
+        }
+        this.retentionWeeks = retentionWeeks;
+    }
+
+    /**
+     * Records a borrow.
+     *
+     * @param userId The borrowing patron
+     * @param book The borrowed book
+     * @param date The borrow date
+     */
+    public synchronized void recordBorrow(String userId, Book book, LocalDate date) {
+        long week = weekOf(date);
+        Long newest = buckets.isEmpty() ? null : buckets.lastKey();
+        if (newest != null && week <= newest - retentionWeeks) {
+            return;
+        }
+        Bucket bucket = buckets.computeIfAbsent(week, w -> new Bucket());
+        long userHash = SketchHash.hash64(userId);
+        HyperLogLog titleBorrowers = bucket.titleBorrowers.get(book.getISBNKey());
+        if (titleBorrowers == null) {
+            titleBorrowers = new HyperLogLog(TITLE_PRECISION);
+            bucket.titleBorrowers.put(book.getISBNKey(), titleBorrowers);
+        }
+        titleBorrowers.addHash(userHash);
+        if (book.getGenre() != null) {
+            bucket.genreBorrowers.computeIfAbsent(book.getGenre(), genre -> new HyperLogLog(GENRE_PRECISION)).addHash(userHash);
+        }
+        bucket.titles.add(book.getISBN());
+        bucket.authors.add(book.getAuthor());
+        if (newest == null || week > newest) {
+            buckets.headMap(week - retentionWeeks, true).clear();
+        }
+    }
+
+    /**
+     * Estimates how many distinct patrons borrowed a title in a date range.
+     *
+     * @param ISBN The ISBN of the title
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return The estimate, counted over the whole weeks the range touches
+     */
+    public synchronized long estimateDistinctBorrowers(String ISBN, LocalDate from, LocalDate to) {
+        long isbn = ISBNUtils.toLong(ISBN);
+        HyperLogLog merged = new HyperLogLog(TITLE_PRECISION);
+        for (Bucket bucket : range(from, to).values()) {
+            HyperLogLog sketch = bucket.titleBorrowers.get(isbn);
+            if (sketch != null) {
+                merged.merge(sketch);
+            }
+        }
+        return merged.estimate();
+    }
+
+    /**
+     * Estimates how many distinct patrons borrowed books of a genre in a date range.
+     *
+     * @param genre The genre
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return The estimate, counted over the whole weeks the range touches
+     */
+    public synchronized long estimateDistinctBorrowers(Genre genre, LocalDate from, LocalDate to) {
+        HyperLogLog merged = new HyperLogLog(GENRE_PRECISION);
+        for (Bucket bucket : range(from, to).values()) {
+            HyperLogLog sketch = bucket.genreBorrowers.get(genre);
+            if (sketch != null) {
+                merged.merge(sketch);
+            }
+        }
+        return merged.estimate();
+    }
+
+    /**
+     * Gets the most borrowed titles in a date range.
+     *
+     * @param limit The maximum number of titles, at most 100
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return ISBNs with estimated borrow counts, most borrowed first
+     */
+    public synchronized List<HeavyHitters.HeavyHitter> getTopTitles(int limit, LocalDate from, LocalDate to) {
+        HeavyHitters merged = newTracker();
+        for (Bucket bucket : range(from, to).values()) {
+            merged.merge(bucket.titles);
+        }
+        return merged.top(limit);
+    }
+
+    /**
+     * Gets the most borrowed authors in a date range.
+     *
+     * @param limit The maximum number of authors, at most 100
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return Authors with estimated borrow counts, most borrowed first
+     */
+    public synchronized List<HeavyHitters.HeavyHitter> getTopAuthors(int limit, LocalDate from, LocalDate to) {
+        HeavyHitters merged = newTracker();
+        for (Bucket bucket : range(from, to).values()) {
+            merged.merge(bucket.authors);
+        }
+        return merged.top(limit);
+    }
+
+    /**
+     * Gets the number of weekly buckets held.
+     *
+     * @return The number of buckets
+     */
+    public synchronized int getBucketCount() {
+        return buckets.size();
+    }
+
+    private NavigableMap<Long, Bucket> range(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Invalid date range: " + from + " to " + to);
+        }
+        return buckets.subMap(weekOf(from), true, weekOf(to), true);
+    }
+
+    /**
+     * Numbers weeks starting on Monday.
+     */
+    private static long weekOf(LocalDate date) {
+        return Math.floorDiv(date.with(DayOfWeek.MONDAY).toEpochDay(), 7);
+    }
+
+    private static HeavyHitters newTracker() {
+        return new HeavyHitters(TRACKED_KEYS, new CountMinSketch(SKETCH_WIDTH, SKETCH_DEPTH));
+    }
+
+    /**
+     * The sketches of one week.
+     */
+    private static class Bucket {
+        private final LongObjectHashMap<HyperLogLog> titleBorrowers = new LongObjectHashMap<>();
+        private final Map<Genre, HyperLogLog> genreBorrowers = new EnumMap<>(Genre.class);
+        private final HeavyHitters titles = newTracker();
+        private final HeavyHitters authors = newTracker();
+    }
+}
@@ -0,0 +1,533 @@
+// File: CirculationRollup.java
+
+import enums.CirculationEvent;
+import enums.Genre;
+import enums.TransactionStatus;
+import enums.UserRole;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Pre-aggregated calendar rollups of circulation counts by day, genre, patron role and event.
+ * <p>
+ * Every day is a fixed slice of {@code int} counters, one per genre, role and event, so the daily
+ * table is one array indexed by epoch day and enum ordinals, at 960 bytes a day. Monthly and
+ * yearly tables with the same layout are derived from the daily one and kept current with it.
+ * A range query reads one slice per whole year, whole month or remaining day it covers, so its
+ * cost depends on the length of the range and never on the loan volume.
+ * <p>
+ * A borrow is counted on its borrow date, a return on its return date and an overdue on the
+ * first day the loan was late. Events are classified by the genre of the book and the role of
+ * the patron when they are recorded; a rebuild reclassifies them with the current catalog and
+ * patrons, and leaves out those of deleted books and patrons.
+ */
+public class CirculationRollup {
+    static final String DEFAULT_SNAPSHOT_PATH = "data/rollup.bin";
+    private static final byte[] MAGIC = {'L', 'R', 'O', 'L'};
+    private static final byte VERSION = 1;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int GENRES = Genre.values().length;
+    private static final int ROLES = UserRole.values().length;
+    private static final int EVENTS = CirculationEvent.values().length;
+    private static final int CELLS = GENRES * ROLES * EVENTS;
+    // Spans beyond a century come from bad dates and would only waste memory
+    private static final int MAX_YEARS = 100;
+
+    private final Table days = new Table(MAX_YEARS * 365);
+    private final Table months = new Table((MAX_YEARS + 1) * 12);
+    private final Table years = new Table(MAX_YEARS + 1);
+    private long updateCount;
+
+    /**
+     * Records a circulation event.
+     *
+     * @param event The event
+     * @param date The day the event is counted on
+     * @param genre The genre of the book
+     * @param role The role of the patron
+     * @throws IllegalArgumentException If the date is more than a century away from the counted days
+     */
+    public synchronized void record(CirculationEvent event, LocalDate date, Genre genre, UserRole role) {
+        int cell = cell(genre.ordinal(), role.ordinal(), event.ordinal());
+        if (!days.add(date.toEpochDay(), cell, 1)) {
+            throw new IllegalArgumentException("Date outside the rollup range: " + date);
+        }
+        months.add(monthOf(date.getYear(), date.getMonthValue()), cell, 1);
+        years.add(date.getYear(), cell, 1);
+        updateCount++;
+    }
+
+    /**
+     * Counts the events in a date range.
+     *
+     * @param event The event
+     * @param genre The genre, or null for all genres
+     * @param role The patron role, or null for all roles
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return The number of events
+     * @throws IllegalArgumentException If the range is empty
+     */
+    public synchronized long count(CirculationEvent event, Genre genre, UserRole role, LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        return sum(cells(event, genre, role), from, to);
+    }
+
+    /**
+     * Counts the events in a date range for every genre.
+     *
+     * @param event The event
+     * @param role The patron role, or null for all roles
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return The number of events of each genre
+     * @throws IllegalArgumentException If the range is empty
+     */
+    public synchronized Map<Genre, Long> countByGenre(CirculationEvent event, UserRole role, LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        Map<Genre, Long> counts = new EnumMap<>(Genre.class);
+        for (Genre genre : Genre.values()) {
+            counts.put(genre, sum(cells(event, genre, role), from, to));
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the daily event counts of a date range.
+     *
+     * @param event The event
+     * @param genre The genre, or null for all genres
+     * @param role The patron role, or null for all roles
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return The count of each day, in order
+     * @throws IllegalArgumentException If the range is empty or longer than a century
+     */
+    public synchronized long[] getDailySeries(CirculationEvent event, Genre genre, UserRole role, LocalDate from, LocalDate to) {
+        checkRange(from, to);
+        return days.series(from.toEpochDay(), to.toEpochDay(), cells(event, genre, role));
+    }
+
+    /**
+     * Gets the monthly event counts of a range of months.
+     *
+     * @param event The event
+     * @param genre The genre, or null for all genres
+     * @param role The patron role, or null for all roles
+     * @param from The first month of the range
+     * @param to The last month of the range
+     * @return The count of each month, in order
+     * @throws IllegalArgumentException If the range is empty or longer than a century
+     */
+    public synchronized long[] getMonthlySeries(CirculationEvent event, Genre genre, UserRole role, YearMonth from, YearMonth to) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("Invalid month range: " + from + " to " + to);
+        }
+        return months.series(monthOf(from.getYear(), from.getMonthValue()), monthOf(to.getYear(), to.getMonthValue()),
+                cells(event, genre, role));
+    }
+
+    /**
+     * Gets the yearly event counts of a range of years.
+     *
+     * @param event The event
+     * @param genre The genre, or null for all genres
+     * @param role The patron role, or null for all roles
+     * @param fromYear The first year of the range
+     * @param toYear The last year of the range
+     * @return The count of each year, in order
+     * @throws IllegalArgumentException If the range is empty or longer than a century
+     */
+    public synchronized long[] getYearlySeries(CirculationEvent event, Genre genre, UserRole role, int fromYear, int toYear) {
+        if (toYear < fromYear) {
+            throw new IllegalArgumentException("Invalid year range: " + fromYear + " to " + toYear);
+        }
+        return years.series(fromYear, toYear, cells(event, genre, role));
+    }
+
+    /**
+     * Gets the number of events recorded since the rollup was built or loaded.
+     *
+     * @return The number of recorded events
+     */
+    public synchronized long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Copies the rollup, for saving it while recording continues.
+     *
+     * @return An independent copy
+     */
+    public synchronized CirculationRollup copy() {
+        CirculationRollup copy = new CirculationRollup();
+        copy.days.copyFrom(days);
+        copy.months.copyFrom(months);
+        copy.years.copyFrom(years);
+        copy.updateCount = updateCount;
+        return copy;
+    }
+
+    /**
+     * Saves the daily table as a snapshot, atomically replacing the previous one.
+     *
+     * @param path The snapshot file
+     * @param generation The generation of the transaction file the counts reflect
+     * @throws IOException If an I/O error occurs
+     */
+    public synchronized void save(Path path, long generation) throws IOException {
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_BYTES))) {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                out.writeInt(CELLS);
+                out.writeLong(generation);
+                out.writeLong(days.origin);
+                out.writeInt(days.periods());
+                for (int count : days.counts) {
+                    out.writeInt(count);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Loads a snapshot, provided that it reflects the given generation of the transaction file.
+     *
+     * @param path The snapshot file
+     * @param generation The current generation of the transaction file
+     * @return The rollup, or null if there is no snapshot or it is out of date or of another layout
+     * @throws IOException If an I/O error occurs or the file is not a rollup snapshot
+     */
+    public static CirculationRollup load(Path path, long generation) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_BYTES))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a circulation rollup snapshot: " + path);
+            }
+            if (in.readByte() != VERSION || in.readInt() != CELLS || in.readLong() != generation) {
+                return null;
+            }
+            CirculationRollup rollup = new CirculationRollup();
+            long origin = in.readLong();
+            int periods = in.readInt();
+            if (periods < 0 || periods > rollup.days.maxPeriods) {
+                throw new IOException("Invalid day count " + periods + " in " + path);
+            }
+            int[] counts = new int[periods * CELLS];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = in.readInt();
+            }
+            rollup.days.origin = origin;
+            rollup.days.counts = counts;
+            rollup.deriveMonthsAndYears();
+            return rollup;
+        } catch (EOFException e) {
+            // A truncated snapshot is rebuilt like a missing one
+            return null;
+        }
+    }
+
+    /**
+     * Sums cells over a date range, reading the yearly and monthly tables for the whole years
+     * and months it covers and the daily table for the days left at its ends.
+     */
+    private long sum(int[] cells, LocalDate from, LocalDate to) {
+        long total = 0;
+        LocalDate day = from;
+        LocalDate end = to.plusDays(1);
+        while (day.isBefore(end)) {
+            LocalDate nextYear = day.plusYears(1);
+            LocalDate nextMonth = day.plusMonths(1);
+            if (day.getDayOfYear() == 1 && !nextYear.isAfter(end)) {
+                total += years.sum(day.getYear(), cells);
+                day = nextYear;
+            } else if (day.getDayOfMonth() == 1 && !nextMonth.isAfter(end)) {
+                total += months.sum(monthOf(day.getYear(), day.getMonthValue()), cells);
+                day = nextMonth;
+            } else {
+                total += days.sum(day.toEpochDay(), cells);
+                day = day.plusDays(1);
+            }
+        }
+        return total;
+    }
+
+    private void deriveMonthsAndYears() {
+        int periods = days.periods();
+        for (int period = 0; period < periods; period++) {
+            LocalDate date = LocalDate.ofEpochDay(days.origin + period);
+            long month = monthOf(date.getYear(), date.getMonthValue());
+            int base = period * CELLS;
+            for (int cell = 0; cell < CELLS; cell++) {
+                int count = days.counts[base + cell];
+                if (count != 0) {
+                    months.add(month, cell, count);
+                    years.add(date.getYear(), cell, count);
+                }
+            }
+        }
+    }
+
+    private static void checkRange(LocalDate from, LocalDate to) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("Invalid date range: " + from + " to " + to);
+        }
+    }
+
+    private static long monthOf(int year, int month) {
+        return year * 12L + month - 1;
+    }
+
+    private static int cell(int genre, int role, int event) {
+        return (genre * ROLES + role) * EVENTS + event;
+    }
+
+    /**
+     * Gets the cells of an event for one or all genres and one or all roles.
+     */
+    private static int[] cells(CirculationEvent event, Genre genre, UserRole role) {
+        Objects.requireNonNull(event, "event");
+        int[] cells = new int[(genre == null ? GENRES : 1) * (role == null ? ROLES : 1)];
+        int i = 0;
+        for (int g = 0; g < GENRES; g++) {
+            if (genre != null && g != genre.ordinal()) {
+                continue;
+            }
+            for (int r = 0; r < ROLES; r++) {
+                if (role == null || r == role.ordinal()) {
+                    cells[i++] = cell(g, r, event.ordinal());
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Adds the events of one transaction to a daily table.
+     */
+    private static void addTransaction(Table table, Transaction t, int genre, int role) {
+        TransactionStatus status = t.getStatus();
+        if (status == TransactionStatus.RESERVED || status == TransactionStatus.EXPIRED) {
+            return;
+        }
+        table.add(t.getBorrowDate().toEpochDay(), cell(genre, role, CirculationEvent.BORROW.ordinal()), 1);
+        LocalDate returned = t.getReturnDate();
+        if (status == TransactionStatus.COMPLETED && returned != null) {
+            table.add(returned.toEpochDay(), cell(genre, role, CirculationEvent.RETURN.ordinal()), 1);
+        }
+        if (status == TransactionStatus.OVERDUE || status == TransactionStatus.LOST
+                || (returned != null && returned.isAfter(t.getDueDate()))) {
+            table.add(t.getDueDate().toEpochDay() + 1, cell(genre, role, CirculationEvent.OVERDUE.ordinal()), 1);
+        }
+    }
+
+    /**
+     * Counters of consecutive periods, one slice of cells per period, grown in either direction
+     * as periods outside it are counted.
+     */
+    private static final class Table {
+        private final int maxPeriods;
+        private long origin;
+        private int[] counts = new int[0];
+
+        private Table(int maxPeriods) {
+            this.maxPeriods = maxPeriods;
+        }
+
+        private int periods() {
+            return counts.length / CELLS;
+        }
+
+        /**
+         * Adds to a counter.
+         *
+         * @return false if the table would span more than its maximum number of periods
+         */
+        private boolean add(long period, int cell, int count) {
+            if (!ensure(period)) {
+                return false;
+            }
+            counts[(int) (period - origin) * CELLS + cell] += count;
+            return true;
+        }
+
+        private long sum(long period, int[] cells) {
+            long index = period - origin;
+            if (index < 0 || index >= periods()) {
+                return 0;
+            }
+            int base = (int) index * CELLS;
+            long total = 0;
+            for (int cell : cells) {
+                total += counts[base + cell];
+            }
+            return total;
+        }
+
+        private long[] series(long from, long to, int[] cells) {
+            if (to - from >= maxPeriods) {
+                throw new IllegalArgumentException("Range too long: " + (to - from + 1) + " periods");
+            }
+            long[] series = new long[(int) (to - from + 1)];
+            for (int i = 0; i < series.length; i++) {
+                series[i] = sum(from + i, cells);
+            }
+            return series;
+        }
+
+        private void merge(Table other) {
+            int periods = other.periods();
+            if (periods == 0 || !ensure(other.origin) || !ensure(other.origin + periods - 1)) {
+                return;
+            }
+            int offset = (int) (other.origin - origin) * CELLS;
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[offset + i] += other.counts[i];
+            }
+        }
+
+        private void copyFrom(Table other) {
+            origin = other.origin;
+            counts = other.counts.clone();
+        }
+
+        /**
+         * Makes room for a period, growing by at least half the current span so that a run of
+         * new periods costs amortized constant time.
+         */
+        private boolean ensure(long period) {
+            int periods = periods();
+            if (periods == 0) {
+                origin = period;
+                counts = new int[CELLS];
+                return true;
+            }
+            long last = origin + periods - 1;
+            if (period >= origin && period <= last) {
+                return true;
+            }
+            long needed = Math.max(last, period) - Math.min(origin, period) + 1;
+            if (needed > maxPeriods) {
+                return false;
+            }
+            int grown = (int) Math.min(maxPeriods, Math.max(needed, periods + (periods >> 1)));
+            long newOrigin = period < origin ? last - grown + 1 : origin;
+            int[] grownCounts = new int[grown * CELLS];
+            System.arraycopy(counts, 0, grownCounts, (int) (origin - newOrigin) * CELLS, counts.length);
+            origin = newOrigin;
+            counts = grownCounts;
+            return true;
+        }
+    }
+
+    /**
+     * Rebuilds a rollup from the transaction history in one pass. Transactions are handed over
+     * in batches to the common fork-join pool, where each worker classifies and counts them into
+     * a daily table of its own; the tables are merged once the history has been read.
+     */
+    public static class Builder {
+        private static final int BATCH_SIZE = 8192;
+
+        private final LongObjectHashMap<Book> catalog;
+        private final Map<String, UserRole> roles;
+        private final int maxPendingBatches = ForkJoinPool.getCommonPoolParallelism() * 2;
+        private final Map<Thread, Table> workerTables = new ConcurrentHashMap<>();
+        private final Deque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+        private List<Transaction> batch = new ArrayList<>(BATCH_SIZE);
+
+        /**
+         * Creates a builder.
+         *
+         * @param catalog The books by ISBN key, for the genre of each transaction
+         * @param roles The roles by user ID, for the role of each transaction
+         */
+        public Builder(LongObjectHashMap<Book> catalog, Map<String, UserRole> roles) {
+            this.catalog = catalog;
+            this.roles = roles;
+        }
+
+        /**
+         * Adds a transaction of the history, in any order. Transactions of unknown books and
+         * patrons, and of books without a genre, are not counted.
+         *
+         * @param transaction The transaction
+         */
+        public void add(Transaction transaction) {
+            batch.add(transaction);
+            if (batch.size() == BATCH_SIZE) {
+                submit();
+            }
+        }
+
+        /**
+         * Waits for the pending batches and builds the rollup.
+         *
+         * @return The rollup
+         */
+        public CirculationRollup build() {
+            if (!batch.isEmpty()) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                pending.poll().join();
+            }
+            CirculationRollup rollup = new CirculationRollup();
+            for (Table table : workerTables.values()) {
+                rollup.days.merge(table);
+            }
+            rollup.deriveMonthsAndYears();
+            return rollup;
+        }
+
+        private void submit() {
+            List<Transaction> transactions = batch;
+            batch = new ArrayList<>(BATCH_SIZE);
+            pending.add(ForkJoinPool.commonPool().submit(() -> count(transactions)));
+            // Bound the batches held in memory when the workers fall behind the reader
+            while (pending.size() > maxPendingBatches) {
+                pending.poll().join();
+            }
+        }
+
+        private void count(List<Transaction> transactions) {
+            Table table = workerTables.computeIfAbsent(Thread.currentThread(), thread -> new Table(MAX_YEARS * 365));
+            for (Transaction t : transactions) {
+                Book book = catalog.get(ISBNUtils.toLong(t.getISBN()));
+                UserRole role = roles.get(t.getUserId());
+                if (book != null && book.getGenre() != null && role != null) {
+                    addTransaction(table, t, book.getGenre().ordinal(), role.ordinal());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+// File: CoBorrowIndex.java
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Item-to-item "patrons who borrowed this also borrowed" index.
+ * <p>
+ * Two titles co-occur when a patron borrows one within their last 32 distinct titles borrowed
+ * before the other. Each title keeps a sparse primitive map from co-borrowed titles to co-occurrence
+ * counts. A map is trimmed to its strongest neighbors whenever it grows past twice the neighbor
+ * limit, so memory stays proportional to the number of titles however long the history grows;
+ * counts of trimmed neighbors are forgotten, which only affects weak pairs. Recommendations for a
+ * title rank at most twice the neighbor limit of entries, so they take microseconds.
+ * <p>
+ * The index is built once from the borrow history with a {@link Builder}, in parallel across
+ * shards of titles, and then kept current by {@link #recordBorrow} on every new loan.
+ */
+public class CoBorrowIndex {
+    static final int DEFAULT_NEIGHBORS = 50;
+    private static final int USER_WINDOW = 32;
+
+    private final int maxNeighbors;
+    private final LongObjectHashMap<LongIntHashMap> neighbors;
+    private final Map<String, long[]> recentTitles; // Distinct titles per patron, oldest first
+
+    /**
+     * A recommended title.
+     *
+     * @param ISBN The ISBN of the recommended title
+     * @param coBorrows The number of patrons who borrowed both titles close together
+     */
+    public record Recommendation(String ISBN, int coBorrows) {
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param maxNeighbors The number of strongest neighbors kept per title
+     * @throws IllegalArgumentException If the neighbor limit is not positive
+     */
+    public CoBorrowIndex(int maxNeighbors) {
+        this(maxNeighbors, new LongObjectHashMap<>(), new HashMap<>());
+    }
+
+    private CoBorrowIndex(int maxNeighbors, LongObjectHashMap<LongIntHashMap> neighbors, Map<String, long[]> recentTitles) {
+        if (maxNeighbors <= 0) {
+            throw new IllegalArgumentException("Invalid neighbor limit: " + maxNeighbors);
+        }
+        this.maxNeighbors = maxNeighbors;
+        this.neighbors = neighbors;
+        this.recentTitles = recentTitles;
+    }
+
+    /**
+     * Records a new borrow, pairing the title with the patron's recent titles.
+     *
+     * @param userId The borrowing patron
+     * @param ISBN The ISBN of the borrowed title
+     */
+    public synchronized void recordBorrow(String userId, String ISBN) {
+        long title = ISBNUtils.toLong(ISBN);
+        long[] window = recentTitles.get(userId);
+        recentTitles.put(userId, advance(window, title, this::addPair));
+    }
+
+    /**
+     * Gets the titles most often borrowed together with a title.
+     *
+     * @param ISBN The ISBN of the title
+     * @param limit The maximum number of recommendations, at most the neighbor limit
+     * @return The recommendations, most co-borrowed first; empty if the title has none
+     */
+    public synchronized List<Recommendation> recommend(String ISBN, int limit) {
+        if (limit <= 0 || limit > maxNeighbors) {
+            throw new IllegalArgumentException("Invalid number of recommendations: " + limit);
+        }
+        LongIntHashMap counts = neighbors.get(ISBNUtils.toLong(ISBN));
+        if (counts == null) {
+            return List.of();
+        }
+        // Selecting the few strongest of at most twice the neighbor limit beats sorting them
+        int size = counts.size();
+        long[] titles = new long[size];
+        int[] coBorrows = new int[size];
+        int[] next = new int[1];
+        counts.forEach((title, count) -> {
+            titles[next[0]] = title;
+            coBorrows[next[0]++] = count;
+        });
+        List<Recommendation> result = new ArrayList<>(Math.min(limit, size));
+        for (int picked = 0; picked < limit && picked < size; picked++) {
+            int best = picked;
+            for (int i = picked + 1; i < size; i++) {
+                if (coBorrows[i] > coBorrows[best] || (coBorrows[i] == coBorrows[best] && titles[i] < titles[best])) {
+                    best = i;
+                }
+            }
+            result.add(new Recommendation(ISBNUtils.fromLong(titles[best]), coBorrows[best]));
+            titles[best] = titles[picked];
+            coBorrows[best] = coBorrows[picked];
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of titles with at least one neighbor.
+     *
+     * @return The number of titles
+     */
+    public synchronized int getTitleCount() {
+        return neighbors.size();
+    }
+
+    /**
+     * Gets the number of neighbor counts held across all titles.
+     *
+     * @return The number of counts
+     */
+    public synchronized long getNeighborCount() {
+        long[] total = new long[1];
+        neighbors.forEach((title, counts) -> total[0] += counts.size());
+        return total[0];
+    }
+
+    private void addPair(long title, long other) {
+        increment(neighbors, title, other, maxNeighbors);
+        increment(neighbors, other, title, maxNeighbors);
+    }
+
+    /**
+     * Adds one co-occurrence to a title's neighbor map, trimming the map when it is full.
+     */
+    private static void increment(LongObjectHashMap<LongIntHashMap> neighbors, long title, long other, int maxNeighbors) {
+        LongIntHashMap counts = neighbors.get(title);
+        if (counts == null) {
+            counts = new LongIntHashMap();
+            neighbors.put(title, counts);
+        }
+        counts.addTo(other, 1);
+        if (counts.size() > maxNeighbors * 2) {
+            trim(counts, maxNeighbors);
+        }
+    }
+
+    /**
+     * Keeps only the strongest neighbors of a title. Among neighbors tied at the cut-off count,
+     * the ones with the lowest ISBNs are kept.
+     */
+    private static void trim(LongIntHashMap counts, int maxNeighbors) {
+        int size = counts.size();
+        long[] titles = new long[size];
+        int[] values = new int[size];
+        int[] next = new int[1];
+        counts.forEach((title, count) -> {
+            titles[next[0]] = title;
+            values[next[0]++] = count;
+        });
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int cutoff = sorted[size - maxNeighbors];
+        int keptAtCutoff = 0;
+        for (int i = size - maxNeighbors; i < size && sorted[i] == cutoff; i++) {
+            keptAtCutoff++;
+        }
+        long[] tied = new long[size];
+        int tiedCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (values[i] < cutoff) {
+                counts.remove(titles[i]);
+            } else if (values[i] == cutoff) {
+                tied[tiedCount++] = titles[i];
+            }
+        }
+        Arrays.sort(tied, 0, tiedCount);
+        for (int i = keptAtCutoff; i < tiedCount; i++) {
+            counts.remove(tied[i]);
+        }
+    }
+
+    /**
+     * Adds a title to a patron's window of recent distinct titles, reporting each new pair.
+     * A title already in the window only moves to the newest position.
+     *
+     * @return The new window, oldest first
+     */
+    private static long[] advance(long[] window, long title, PairConsumer pairs) {
+        if (window == null) {
+            return new long[]{title};
+        }
+        for (int i = 0; i < window.length; i++) {
+            if (window[i] == title) {
+                System.arraycopy(window, i + 1, window, i, window.length - i - 1);
+                window[window.length - 1] = title;
+                return window;
+            }
+        }
+        for (long other : window) {
+            pairs.accept(title, other);
+        }
+        if (window.length < USER_WINDOW) {
+            long[] grown = Arrays.copyOf(window, window.length + 1);
+            grown[window.length] = title;
+            return grown;
+        }
+        System.arraycopy(window, 1, window, 0, window.length - 1);
+        window[window.length - 1] = title;
+        return window;
+    }
+
+    @FunctionalInterface
+    private interface PairConsumer {
+        void accept(long title, long other);
+    }
+
+    /**
+     * Collects the borrow history and builds an index from it.
+     */
+    public static class Builder {
+        private final Map<String, UserBorrows> borrowsByUser = new HashMap<>();
+
+        /**
+         * Adds a past borrow, in any order.
+         *
+         * @param userId The borrowing patron
+         * @param ISBN The ISBN of the borrowed title
+         * @param date The borrow date
+         */
+        public void add(String userId, String ISBN, LocalDate date) {
+            borrowsByUser.computeIfAbsent(userId, id -> new UserBorrows()).add(ISBNUtils.toLong(ISBN), date.toEpochDay());
+        }
+
+        /**
+         * Builds the index. Every worker replays all patrons' histories in date order but only
+         * counts pairs for the titles of its own shard, so workers never share a map.
+         *
+         * @param maxNeighbors The number of strongest neighbors kept per title
+         * @param parallelism The number of shards built in parallel
+         * @return The index
+         * @throws IllegalArgumentException If the neighbor limit or parallelism is not positive
+         */
+        public CoBorrowIndex build(int maxNeighbors, int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("Parallelism must be positive");
+            }
+            List<long[]> sequences = new ArrayList<>(borrowsByUser.size());
+            List<String> users = new ArrayList<>(borrowsByUser.size());
+            borrowsByUser.forEach((userId, borrows) -> {
+                users.add(userId);
+                sequences.add(borrows.inDateOrder());
+            });
+
+            List<LongObjectHashMap<LongIntHashMap>> shards = IntStream.range(0, parallelism).parallel().mapToObj(shard -> {
+                LongObjectHashMap<LongIntHashMap> own = new LongObjectHashMap<>();
+                PairConsumer pairs = (title, other) -> {
+                    if (shardOf(title, parallelism) == shard) {
+                        increment(own, title, other, maxNeighbors);
+                    }
+                    if (shardOf(other, parallelism) == shard) {
+                        increment(own, other, title, maxNeighbors);
+                    }
+                };
+                for (long[] sequence : sequences) {
+                    long[] window = null;
+                    for (long title : sequence) {
+                        window = advance(window, title, pairs);
+                    }
+                }
+                own.forEach((title, counts) -> {
+                    if (counts.size() > maxNeighbors) {
+                        trim(counts, maxNeighbors);
+                    }
+                });
+                return own;
+            }).toList();
+
+            LongObjectHashMap<LongIntHashMap> neighbors = new LongObjectHashMap<>();
+            for (LongObjectHashMap<LongIntHashMap> shard : shards) {
+                shard.forEach(neighbors::put);
+            }
+            Map<String, long[]> recentTitles = new HashMap<>();
+            for (int i = 0; i < users.size(); i++) {
+                long[] window = null;
+                for (long title : sequences.get(i)) {
+                    window = advance(window, title, (title1, other) -> { });
+                }
+                recentTitles.put(users.get(i), window);
+            }
+            return new CoBorrowIndex(maxNeighbors, neighbors, recentTitles);
+        }
+
+        private static int shardOf(long title, int shards) {
+            return (LongObjectHashMap.hash(title) & Integer.MAX_VALUE) % shards;
+        }
+    }
+
+    /**
+     * The borrows of one patron as parallel primitive arrays.
+     */
+    private static class UserBorrows {
+        private long[] titles = new long[4];
+        private long[] days = new long[4];
+        private int size;
+
+        private void add(long title, long day) {
+            if (size == titles.length) {
+                titles = Arrays.copyOf(titles, size * 2);
+                days = Arrays.copyOf(days, size * 2);
+            }
+            titles[size] = title;
+            days[size++] = day;
+        }
+
+        private long[] inDateOrder() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> days[i]));
+            long[] sequence = new long[size];
+            for (int i = 0; i < size; i++) {
+                sequence[i] = titles[order[i]];
+            }
+            return sequence;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+// File: ConsoleNotificationSink.java
+
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for a real transport that prints each notification instead of sending it.
+ * Useful for development and for testing the outbox without an email gateway.
+ */
+public class ConsoleNotificationSink implements NotificationSink {
+    private final PrintStream out;
+    private final AtomicLong delivered = new AtomicLong();
+
+    public ConsoleNotificationSink() {
+        this(System.out);
+    }
+
+    /**
+     * Creates a sink printing to the given stream.
+     *
+     * @param out The stream notifications are printed to
+     */
+    public ConsoleNotificationSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public Set<String> deliver(List<Notification> batch) {
+        Set<String> keys = new HashSet<>();
+        for (Notification notification : batch) {
+            out.println("To " + notification.getRecipient() + " [" + notification.getType().getDisplayName() + "]: "
+                    + notification.getMessage());
+            keys.add(notification.getKey());
+        }
+        delivered.addAndGet(keys.size());
+        return keys;
+    }
+
+    /**
+     * Gets the number of notifications printed.
+     *
+     * @return The number of notifications delivered
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+}
@@ -0,0 +1,107 @@
+// File: CountMinSketch.java
+
+/**
+ * Count-min sketch estimating how often each key occurred in a stream.
+ * <p>
+ * Counts are kept in {@code depth} rows of {@code width} counters. An estimate never undercounts,
+ * and with probability {@code 1 - e^-depth} it overcounts by at most {@code e / width} times the
+ * total of all counts. Sketches of the same shape can be merged by adding their counters.
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+    private long total;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param width The number of counters per row, a power of two
+     * @param depth The number of rows
+     * @throws IllegalArgumentException If the width is not a positive power of two or the depth is not positive
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || Integer.bitCount(width) != 1 || depth <= 0) {
+            throw new IllegalArgumentException("Invalid sketch shape: " + width + " x " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new long[width * depth];
+    }
+
+    /**
+     * Adds occurrences of a key.
+     *
+     * @param key The key
+     * @param count The number of occurrences
+     * @return The estimated count of the key after the addition
+     */
+    public long add(String key, long count) {
+        long hash = SketchHash.hash64(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int slot = slot(hash, row);
+            counters[slot] += count;
+            estimate = Math.min(estimate, counters[slot]);
+        }
+        total += count;
+        return estimate;
+    }
+
+    /**
+     * Estimates the count of a key.
+     *
+     * @param key The key
+     * @return The estimated count, never lower than the true count
+     */
+    public long estimate(String key) {
+        long hash = SketchHash.hash64(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[slot(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Adds the counts of another sketch to this one.
+     *
+     * @param other A sketch of the same width and depth
+     * @throws IllegalArgumentException If the shapes differ
+     */
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge sketches of different shapes");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        total += other.total;
+    }
+
+    /**
+     * Creates an empty sketch of the same shape.
+     *
+     * @return The empty sketch
+     */
+    public CountMinSketch emptyCopy() {
+        return new CountMinSketch(width, depth);
+    }
+
+    /**
+     * Gets the total of all counts added.
+     *
+     * @return The total
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Picks the counter of a row. Row hashes are derived from two halves of one 64-bit hash.
+     */
+    private int slot(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return row * width + (combined & (width - 1));
+    }
+}
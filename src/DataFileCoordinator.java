@@ -0,0 +1,399 @@
+// File: DataFileCoordinator.java
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Coordinates access to the shared data files across threads and JVM processes.
+ * <p>
+ * Every write transaction on a data file runs under an exclusive {@link FileLock} on a sidecar
+ * {@code <file>.lock} file, which also stores the file's generation counter. The counter is
+ * incremented on each commit that wrote to the file and can be used for optimistic concurrency. Whole-file rewrites go
+ * to a temporary file that atomically replaces the original, so readers never take a lock and
+ * never see a partially written file. Commits made by other processes are detected through a
+ * {@link WatchService} on the data directory and every directory below it, and reported to
+ * registered change listeners.
+ */
+public class DataFileCoordinator {
+    private static final String DATA_DIRECTORY = "data";
+    private static final String LOCK_SUFFIX = ".lock";
+
+    private static final Map<Path, ReentrantLock> localLocks = new ConcurrentHashMap<>();
+    private static final Map<Path, FileChannel> lockChannels = new ConcurrentHashMap<>();
+    private static final Map<Path, Long> knownGenerations = new ConcurrentHashMap<>();
+    private static final Map<Path, IOCallable<?>> preWriteHooks = new ConcurrentHashMap<>();
+    private static final Set<Path> writtenFiles = ConcurrentHashMap.newKeySet();
+    private static final List<Consumer<Path>> changeListeners = new CopyOnWriteArrayList<>();
+    private static Thread watcherThread;
+
+    private DataFileCoordinator() {
+    }
+
+    /**
+     * An I/O operation run inside a write transaction.
+     *
+     * @param <T> The result type
+     */
+    @FunctionalInterface
+    public interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Writes the lines of a data file.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void write(BufferedWriter writer) throws IOException;
+    }
+
+    /**
+     * Runs an operation as a write transaction on a data file.
+     * Transactions are reentrant within a thread; the file lock is only taken by the outermost one.
+     * The generation only moves on if the transaction wrote to the file, so a read-modify-write
+     * that found nothing to change does not look like a commit to other processes.
+     *
+     * @param file The data file
+     * @param action The read-modify-write operation
+     * @param <T> The result type
+     * @return The result of the operation
+     * @throws IOException If an I/O error occurs
+     */
+    public static <T> T write(Path file, IOCallable<T> action) throws IOException {
+        return write(file, -1, action);
+    }
+
+    /**
+     * Runs an operation as a write transaction on a data file, provided that no other commit
+     * happened since the caller read the file.
+     *
+     * @param file The data file
+     * @param expectedGeneration The generation the caller read, or -1 to skip the check
+     * @param action The read-modify-write operation
+     * @param <T> The result type
+     * @return The result of the operation
+     * @throws IOException If an I/O error occurs
+     * @throws ConcurrentModificationException If the file was changed since the expected generation
+     */
+    public static <T> T write(Path file, long expectedGeneration, IOCallable<T> action) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        ReentrantLock lock = localLocks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            if (lock.getHoldCount() > 1) {
+                if (expectedGeneration >= 0) {
+                    checkGeneration(key, expectedGeneration, getGeneration(file));
+                }
+                return action.call();
+            }
+            try (FileLock fileLock = lockChannel(key).lock()) {
+                FileChannel channel = fileLock.channel();
+                long generation = readGeneration(channel);
+                checkGeneration(key, expectedGeneration, generation);
+                writtenFiles.remove(key);
+                IOCallable<?> hook = preWriteHooks.get(key);
+                if (hook != null) {
+                    hook.call();
+                }
+                T result = action.call();
+                if (!writtenFiles.remove(key)) {
+                    return result;
+                }
+                // Known before it is written, so the watcher never takes this commit for another process's
+                knownGenerations.put(key, generation + 1);
+                try {
+                    writeGeneration(channel, generation + 1);
+                } catch (IOException e) {
+                    knownGenerations.put(key, generation);
+                    throw e;
+                }
+                return result;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically replaces the contents of a data file within a write transaction.
+     *
+     * @param file The data file
+     * @param content Writes the new contents
+     * @throws IOException If an I/O error occurs
+     */
+    public static void replace(Path file, ContentWriter content) throws IOException {
+        write(file, () -> {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8))) {
+                content.write(writer);
+                writer.flush();
+                if (WriteBehindFlusher.getMode().forcesWrites()) {
+                    channel.force(false);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            markWritten(file);
+            return null;
+        });
+    }
+
+    /**
+     * Appends a line to a data file within a write transaction using a single write.
+     *
+     * @param file The data file
+     * @param line The line to append, without a line separator
+     * @throws IOException If an I/O error occurs
+     */
+    public static void append(Path file, String line) throws IOException {
+        write(file, () -> {
+            ByteBuffer bytes = ByteBuffer.wrap((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                if (WriteBehindFlusher.getMode().forcesWrites()) {
+                    channel.force(false);
+                }
+            }
+            markWritten(file);
+            return null;
+        });
+    }
+
+    /**
+     * Records that the current write transaction on a data file changed the file, so that its
+     * generation moves on when the transaction commits. {@link #replace} and {@link #append} do
+     * this themselves; transactions that write the file directly must call it.
+     *
+     * @param file The data file
+     * @throws IllegalStateException If the current thread is not inside a write transaction on the file
+     */
+    public static void markWritten(Path file) {
+        if (!isWriteLockedByCurrentThread(file)) {
+            throw new IllegalStateException("Not inside a write transaction on " + file.getFileName());
+        }
+        writtenFiles.add(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Registers an operation run at the start of every outermost write transaction on a data file,
+     * after the file lock is taken. Used to flush changes queued in memory before anyone rewrites the file.
+     *
+     * @param file The data file
+     * @param hook The operation, or null to remove it
+     */
+    public static void setPreWriteHook(Path file, IOCallable<?> hook) {
+        Path key = file.toAbsolutePath().normalize();
+        if (hook == null) {
+            preWriteHooks.remove(key);
+        } else {
+            preWriteHooks.put(key, hook);
+        }
+    }
+
+    /**
+     * Checks whether the current thread is inside a write transaction on a data file.
+     *
+     * @param file The data file
+     * @return true if the current thread holds the file's write lock
+     */
+    public static boolean isWriteLockedByCurrentThread(Path file) {
+        ReentrantLock lock = localLocks.get(file.toAbsolutePath().normalize());
+        return lock != null && lock.isHeldByCurrentThread();
+    }
+
+    /**
+     * Gets the committed generation of a data file without taking any lock.
+     *
+     * @param file The data file
+     * @return The generation, 0 if the file was never written through the coordinator
+     * @throws IOException If an I/O error occurs
+     */
+    public static long getGeneration(Path file) throws IOException {
+        return readGeneration(lockChannel(file.toAbsolutePath().normalize()));
+    }
+
+    /**
+     * Gets the latest generation of a data file that this process committed or has notified the
+     * change listeners of. A file whose current generation differs has a commit by another
+     * process that the listeners have not yet seen.
+     *
+     * @param file The data file
+     * @return The generation, or -1 if this process has not seen any
+     */
+    public static long getKnownGeneration(Path file) {
+        return knownGenerations.getOrDefault(file.toAbsolutePath().normalize(), -1L);
+    }
+
+    /**
+     * Registers a listener notified with the data file path whenever another process commits
+     * a change to that file. Listeners run on the watcher thread.
+     *
+     * @param listener The listener
+     */
+    public static synchronized void addChangeListener(Consumer<Path> listener) {
+        changeListeners.add(listener);
+        if (watcherThread == null) {
+            watcherThread = new Thread(DataFileCoordinator::watchDataDirectory, "data-file-watcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+        }
+    }
+
+    /**
+     * Removes a previously registered change listener.
+     *
+     * @param listener The listener
+     */
+    public static void removeChangeListener(Consumer<Path> listener) {
+        changeListeners.remove(listener);
+    }
+
+    private static void watchDataDirectory() {
+        Path directory = Paths.get(DATA_DIRECTORY).toAbsolutePath().normalize();
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            Map<WatchKey, Path> directories = new HashMap<>();
+            register(watchService, directory, directories);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey watchKey = watchService.take();
+                Path watched = directories.get(watchKey);
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        knownGenerations.keySet().forEach(DataFileCoordinator::checkForExternalCommit);
+                        continue;
+                    }
+                    Path changed = watched.resolve(event.context().toString());
+                    String name = changed.getFileName().toString();
+                    if (name.endsWith(LOCK_SUFFIX)) {
+                        checkForExternalCommit(changed.resolveSibling(name.substring(0, name.length() - LOCK_SUFFIX.length())));
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                        try {
+                            register(watchService, changed, directories);
+                        } catch (NoSuchFileException e) {
+                            // The directory was removed again before it could be watched
+                        }
+                    }
+                }
+                if (!watchKey.reset()) {
+                    directories.remove(watchKey);
+                    if (directories.isEmpty()) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Data directory watcher stopped: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Watches a directory and every directory below it, such as the branch partitions. Lock files
+     * already present are checked, since they may have been committed to before the directory
+     * was registered.
+     */
+    private static void register(WatchService watchService, Path directory, Map<WatchKey, Path> directories) throws IOException {
+        List<Path> lockFiles = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (file.getFileName().toString().endsWith(LOCK_SUFFIX)) {
+                    lockFiles.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (!directory.equals(Paths.get(DATA_DIRECTORY).toAbsolutePath().normalize())) {
+            for (Path lockFile : lockFiles) {
+                String name = lockFile.getFileName().toString();
+                checkForExternalCommit(lockFile.resolveSibling(name.substring(0, name.length() - LOCK_SUFFIX.length())));
+            }
+        }
+    }
+
+    private static void checkForExternalCommit(Path file) {
+        try {
+            long generation = getGeneration(file);
+            Long known = knownGenerations.get(file);
+            if (known == null || known != generation) {
+                // The generation is only recorded as known once the listeners have dropped their state
+                for (Consumer<Path> listener : changeListeners) {
+                    listener.accept(file);
+                }
+                knownGenerations.merge(file, generation, Math::max);
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read generation of " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void checkGeneration(Path file, long expected, long actual) {
+        if (expected >= 0 && expected != actual) {
+            throw new ConcurrentModificationException(file.getFileName() + " was modified: expected generation "
+                    + expected + " but found " + actual);
+        }
+    }
+
+    private static long readGeneration(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // Keep reading until the counter is complete or the file ends
+        }
+        return buffer.position() == Long.BYTES ? buffer.getLong(0) : 0;
+    }
+
+    private static void writeGeneration(FileChannel channel, long generation) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, generation);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    /**
+     * Gets the process-wide channel to a file's lock file.
+     * The channel is never closed: on POSIX systems closing any channel to a file releases all
+     * locks the process holds on it.
+     */
+    private static FileChannel lockChannel(Path file) throws IOException {
+        FileChannel channel = lockChannels.get(file);
+        if (channel != null) {
+            return channel;
+        }
+        synchronized (lockChannels) {
+            channel = lockChannels.get(file);
+            if (channel == null) {
+                channel = FileChannel.open(file.resolveSibling(file.getFileName() + LOCK_SUFFIX),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                lockChannels.put(file, channel);
+            }
+            return channel;
+        }
+    }
+}
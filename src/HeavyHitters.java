@@ -0,0 +1,134 @@
+// File: HeavyHitters.java
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the most frequent keys of a stream in constant memory.
+ * <p>
+ * Counts come from a {@link CountMinSketch}; alongside it a bounded set of candidate keys keeps the
+ * keys with the highest estimates seen so far. A key that becomes frequent enters the candidates as
+ * soon as its estimate passes the smallest candidate, so the top keys are found without storing a
+ * count for every key. Trackers of the same shape can be merged, for example to combine time buckets.
+ */
+public class HeavyHitters {
+    private final int capacity;
+    private final CountMinSketch sketch;
+    private final Map<String, Long> candidates = new HashMap<>();
+    private String smallestKey;
+    private long smallestCount;
+
+    /**
+     * A frequent key.
+     *
+     * @param key The key
+     * @param estimatedCount The estimated number of occurrences, never lower than the true count
+     */
+    public record HeavyHitter(String key, long estimatedCount) {
+    }
+
+    /**
+     * Creates an empty tracker.
+     *
+     * @param capacity The number of candidate keys kept; queries can return at most this many
+     * @param sketch An empty sketch to count with
+     * @throws IllegalArgumentException If the capacity is not positive
+     */
+    public HeavyHitters(int capacity, CountMinSketch sketch) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.sketch = sketch;
+    }
+
+    /**
+     * Records one occurrence of a key.
+     *
+     * @param key The key
+     */
+    public void add(String key) {
+        offer(key, sketch.add(key, 1));
+    }
+
+    /**
+     * Gets the most frequent keys.
+     *
+     * @param limit The maximum number of keys
+     * @return The keys with the highest estimated counts, most frequent first
+     */
+    public List<HeavyHitter> top(int limit) {
+        List<HeavyHitter> top = new ArrayList<>(candidates.size());
+        candidates.forEach((key, count) -> top.add(new HeavyHitter(key, count)));
+        top.sort(Comparator.comparingLong(HeavyHitter::estimatedCount).reversed().thenComparing(HeavyHitter::key));
+        return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+    }
+
+    /**
+     * Estimates the count of any key, tracked or not.
+     *
+     * @param key The key
+     * @return The estimated count
+     */
+    public long estimate(String key) {
+        return sketch.estimate(key);
+    }
+
+    /**
+     * Adds the counts and candidates of another tracker to this one.
+     *
+     * @param other A tracker of the same shape
+     */
+    public void merge(HeavyHitters other) {
+        sketch.merge(other.sketch);
+        List<String> keys = new ArrayList<>(candidates.keySet());
+        keys.addAll(other.candidates.keySet());
+        candidates.clear();
+        smallestKey = null;
+        for (String key : keys) {
+            offer(key, sketch.estimate(key));
+        }
+    }
+
+    /**
+     * Creates an empty tracker of the same shape.
+     *
+     * @return The empty tracker
+     */
+    public HeavyHitters emptyCopy() {
+        return new HeavyHitters(capacity, sketch.emptyCopy());
+    }
+
+    private void offer(String key, long estimate) {
+        if (candidates.containsKey(key)) {
+            candidates.put(key, estimate);
+            if (key.equals(smallestKey)) {
+                findSmallest();
+            }
+        } else if (candidates.size() < capacity) {
+            candidates.put(key, estimate);
+            if (smallestKey == null || estimate < smallestCount) {
+                smallestKey = key;
+                smallestCount = estimate;
+            }
+        } else if (estimate > smallestCount) {
+            candidates.remove(smallestKey);
+            candidates.put(key, estimate);
+            findSmallest();
+        }
+    }
+
+    private void findSmallest() {
+        smallestKey = null;
+        smallestCount = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : candidates.entrySet()) {
+            if (entry.getValue() < smallestCount) {
+                smallestKey = entry.getKey();
+                smallestCount = entry.getValue();
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+// File: HoldQueueManager.java
+
+import enums.TransactionStatus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Maintains per-title FIFO hold queues and the pickup deadlines of reserved copies.
+ * Queues are safe for concurrent use and persisted to a CSV file after every change. Changes run
+ * as write transactions on the holds file and reload the queues first if another process
+ * committed since they were last read.
+ * Reservations are indexed by their pickup expiry date so expired ones can be collected
+ * in one batch without scanning all transactions.
+ */
+public class HoldQueueManager {
+    private static final String FILE_PATH = "data/holds.csv";
+    private static final String CSV_HEADER = "UserId,ISBN,PlacedDate";
+    private static final Path PATH = Paths.get(FILE_PATH);
+
+    private final Map<String, Deque<Hold>> queues = new ConcurrentHashMap<>();
+    private final Map<String, String> reservationsByUserAndISBN = new ConcurrentHashMap<>();
+    private final NavigableMap<LocalDate, Set<String>> reservationsByExpiry = new ConcurrentSkipListMap<>();
+    private volatile long loadedGeneration = -1;
+
+    /**
+     * A patron waiting for a copy of a title.
+     *
+     * @param userId The ID of the waiting user
+     * @param ISBN The ISBN of the requested title
+     * @param placedDate The date the hold was placed
+     */
+    public record Hold(String userId, String ISBN, LocalDate placedDate) {
+    }
+
+    /**
+     * Creates a hold queue manager, loading persisted holds and indexing the open reservations.
+     *
+     * @param transactions The current transactions, used to index RESERVED transactions
+     * @throws IOException If an I/O error occurs
+     */
+    public HoldQueueManager(List<Transaction> transactions) throws IOException {
+        reloadIfStale();
+        for (Transaction t : transactions) {
+            if (t.getStatus() == TransactionStatus.RESERVED) {
+                registerReservation(t);
+            }
+        }
+    }
+
+    /**
+     * Places a hold at the end of a title's queue.
+     *
+     * @param userId The ID of the user placing the hold
+     * @param ISBN The ISBN of the title
+     * @return The 1-based position of the hold in the queue
+     * @throws IOException If an I/O error occurs
+     */
+    public int placeHold(String userId, String ISBN) throws IOException {
+        if (reservationsByUserAndISBN.containsKey(key(userId, ISBN))) {
+            throw new IllegalArgumentException("A copy is already reserved for this user");
+        }
+        return modify(() -> {
+            Deque<Hold> queue = queues.computeIfAbsent(ISBN, k -> new ArrayDeque<>());
+            synchronized (queue) {
+                for (Hold hold : queue) {
+                    if (hold.userId().equals(userId)) {
+                        throw new IllegalArgumentException("User already has a hold on this title");
+                    }
+                }
+                queue.addLast(new Hold(userId, ISBN, LocalDate.now()));
+                return queue.size();
+            }
+        });
+    }
+
+    /**
+     * Cancels a user's hold on a title.
+     *
+     * @param userId The ID of the user
+     * @param ISBN The ISBN of the title
+     * @return true if a hold was removed, false otherwise
+     * @throws IOException If an I/O error occurs
+     */
+    public boolean cancelHold(String userId, String ISBN) throws IOException {
+        return modify(() -> {
+            Deque<Hold> queue = queues.get(ISBN);
+            if (queue == null) {
+                return false;
+            }
+            synchronized (queue) {
+                return queue.removeIf(hold -> hold.userId().equals(userId));
+            }
+        });
+    }
+
+    /**
+     * Removes and returns the next hold for a title.
+     *
+     * @param ISBN The ISBN of the title
+     * @return The oldest hold, or null if nobody is waiting
+     * @throws IOException If an I/O error occurs
+     */
+    public Hold pollNextHold(String ISBN) throws IOException {
+        if (getQueueLength(ISBN) == 0 && loadedGeneration == DataFileCoordinator.getGeneration(PATH)) {
+            return null;
+        }
+        return modify(() -> {
+            Deque<Hold> queue = queues.get(ISBN);
+            if (queue == null) {
+                return null;
+            }
+            synchronized (queue) {
+                return queue.pollFirst();
+            }
+        });
+    }
+
+    /**
+     * Puts holds taken with {@link #pollNextHold} back at the head of their queues, in the order
+     * they were taken, when the reservations made for them could not be written.
+     *
+     * @param holds The holds, oldest first
+     * @throws IOException If an I/O error occurs
+     */
+    public void restoreHolds(List<Hold> holds) throws IOException {
+        if (holds.isEmpty()) {
+            return;
+        }
+        modify(() -> {
+            for (int i = holds.size() - 1; i >= 0; i--) {
+                Hold hold = holds.get(i);
+                Deque<Hold> queue = queues.computeIfAbsent(hold.ISBN(), k -> new ArrayDeque<>());
+                synchronized (queue) {
+                    if (queue.stream().noneMatch(waiting -> waiting.userId().equals(hold.userId()))) {
+                        queue.addFirst(hold);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Gets the number of holds waiting on a title.
+     *
+     * @param ISBN The ISBN of the title
+     * @return The queue length
+     */
+    public int getQueueLength(String ISBN) {
+        Deque<Hold> queue = queues.get(ISBN);
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Rereads the queues if another process has committed to the holds file since they were
+     * last read. Checks that must see holds placed elsewhere call this first.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void refresh() throws IOException {
+        if (DataFileCoordinator.getGeneration(PATH) != loadedGeneration) {
+            DataFileCoordinator.write(PATH, () -> {
+                reloadIfStale();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Indexes a RESERVED transaction by its user, ISBN and pickup expiry (its due date).
+     *
+     * @param reservation The reservation transaction
+     */
+    public void registerReservation(Transaction reservation) {
+        reservationsByUserAndISBN.put(key(reservation.getUserId(), reservation.getISBN()), reservation.getTransactionId());
+        reservationsByExpiry.compute(reservation.getDueDate(), (date, ids) -> {
+            Set<String> reserved = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            reserved.add(reservation.getTransactionId());
+            return reserved;
+        });
+    }
+
+    /**
+     * Removes a reservation from the indexes once its pickup or expiry has been written.
+     *
+     * @param reservation The reservation transaction, with the pickup deadline as its due date
+     */
+    public void releaseReservation(Transaction reservation) {
+        releaseReservation(reservation.getTransactionId(), reservation.getUserId(), reservation.getISBN(),
+                reservation.getDueDate());
+    }
+
+    /**
+     * Removes a reservation from the indexes once its pickup or expiry has been written.
+     *
+     * @param transactionId The ID of the reservation transaction
+     * @param userId The ID of the reserving user
+     * @param ISBN The ISBN of the reserved title
+     * @param pickupDeadline The pickup deadline the reservation was indexed under
+     */
+    public void releaseReservation(String transactionId, String userId, String ISBN, LocalDate pickupDeadline) {
+        reservationsByUserAndISBN.remove(key(userId, ISBN), transactionId);
+        reservationsByExpiry.computeIfPresent(pickupDeadline, (date, ids) -> {
+            ids.remove(transactionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Finds the open reservation of a user for a title.
+     *
+     * @param userId The ID of the user
+     * @param ISBN The ISBN of the title
+     * @return The reservation transaction ID, or null if none exists
+     */
+    public String findReservation(String userId, String ISBN) {
+        return reservationsByUserAndISBN.get(key(userId, ISBN));
+    }
+
+    /**
+     * Gets the IDs of all reservations whose pickup expiry is before the given date. They stay
+     * indexed until {@link #releaseReservation} is called once their expiry has been written.
+     *
+     * @param today The current date
+     * @return The IDs of the expired reservations
+     */
+    public List<String> findExpiredReservations(LocalDate today) {
+        List<String> expired = new ArrayList<>();
+        for (Set<String> ids : reservationsByExpiry.headMap(today).values()) {
+            expired.addAll(ids);
+        }
+        return expired;
+    }
+
+    /**
+     * Applies a change to the queues and persists them in one write transaction on the holds file.
+     */
+    private <T> T modify(DataFileCoordinator.IOCallable<T> change) throws IOException {
+        return DataFileCoordinator.write(PATH, () -> {
+            reloadIfStale();
+            T result = change.call();
+            try {
+                persist();
+            } catch (IOException e) {
+                // Drop the unwritten change so the queues keep matching the file
+                loadedGeneration = -1;
+                try {
+                    reloadIfStale();
+                } catch (IOException reloadError) {
+                    e.addSuppressed(reloadError);
+                }
+                throw e;
+            }
+            loadedGeneration = DataFileCoordinator.getGeneration(PATH) + 1;
+            return result;
+        });
+    }
+
+    /**
+     * Reloads the queues from the holds file if it was committed since they were last read.
+     */
+    private void reloadIfStale() throws IOException {
+        long generation = DataFileCoordinator.getGeneration(PATH);
+        if (generation == loadedGeneration) {
+            return;
+        }
+        queues.clear();
+        if (Files.exists(PATH)) {
+            try (BufferedReader reader = Files.newBufferedReader(PATH)) {
+                String line;
+                reader.readLine(); // Skip header
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(",");
+                    Hold hold = new Hold(parts[0], parts[1], LocalDate.parse(parts[2]));
+                    queues.computeIfAbsent(hold.ISBN(), k -> new ArrayDeque<>()).addLast(hold);
+                }
+            }
+        }
+        loadedGeneration = generation;
+    }
+
+    /**
+     * Writes all queues to the holds file, replacing it atomically.
+     */
+    private void persist() throws IOException {
+        DataFileCoordinator.replace(PATH, writer -> {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            for (Deque<Hold> queue : queues.values()) {
+                synchronized (queue) {
+                    for (Hold hold : queue) {
+                        writer.write(String.join(",", hold.userId(), hold.ISBN(), hold.placedDate().toString()));
+                        writer.newLine();
+                    }
+                }
+            }
+        });
+    }
+
+    private static String key(String userId, String ISBN) {
+        return userId + '|' + ISBN;
+    }
+}
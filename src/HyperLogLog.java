@@ -0,0 +1,196 @@
+// File: HyperLogLog.java
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values added to it.
+ * <p>
+ * A sketch of precision {@code p} uses {@code 2^p} one-byte registers and has a standard error
+ * of about {@code 1.04 / sqrt(2^p)}, whatever the number of distinct values. Small sketches start
+ * in a sparse form that only stores the registers that were set, and switch to the dense register
+ * array once that is smaller, so the many sketches that only ever see a few values stay small.
+ * Sketches of the same precision can be merged; the merge estimates the size of the union.
+ */
+public class HyperLogLog {
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 16;
+
+    private final int precision;
+    private final int registerCount;
+    private byte[] registers;
+    // Sparse form: sorted register indexes, each packed with its value as index << 8 | value
+    private int[] sparse = new int[4];
+    private int sparseSize;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision The number of index bits, from 4 to 16
+     * @throws IllegalArgumentException If the precision is out of range
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Invalid precision: " + precision);
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value The value
+     */
+    public void add(String value) {
+        addHash(SketchHash.hash64(value));
+    }
+
+    /**
+     * Adds a value by its 64-bit hash.
+     *
+     * @param hash A well-mixed hash of the value
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Rank of the first set bit in the remaining bits; the sentinel bit bounds it
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        setRegister(index, rank);
+    }
+
+    /**
+     * Estimates the number of distinct values added.
+     *
+     * @return The estimate
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = registerCount;
+        if (registers == null) {
+            sum = registerCount - sparseSize;
+            for (int i = 0; i < sparseSize; i++) {
+                sum += Math.scalb(1.0, -(sparse[i] & 0xFF));
+            }
+            zeros -= sparseSize;
+        } else {
+            zeros = 0;
+            for (byte register : registers) {
+                sum += Math.scalb(1.0, -register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        }
+        double estimate = alpha() * registerCount * registerCount / sum;
+        if (estimate <= 2.5 * registerCount && zeros > 0) {
+            // Linear counting is more accurate while many registers are still empty
+            estimate = registerCount * Math.log((double) registerCount / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds every value of another sketch to this one.
+     *
+     * @param other A sketch of the same precision
+     * @throws IllegalArgumentException If the precisions differ
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches of precision " + precision + " and " + other.precision);
+        }
+        if (other.registers == null) {
+            for (int i = 0; i < other.sparseSize; i++) {
+                setRegister(other.sparse[i] >>> 8, other.sparse[i] & 0xFF);
+            }
+            return;
+        }
+        toDense();
+        for (int i = 0; i < registerCount; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Creates an independent copy of this sketch.
+     *
+     * @return The copy
+     */
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        copy.registers = registers == null ? null : registers.clone();
+        copy.sparse = sparse.clone();
+        copy.sparseSize = sparseSize;
+        return copy;
+    }
+
+    /**
+     * Gets the precision of this sketch.
+     *
+     * @return The number of index bits
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Gets the approximate memory used by the registers.
+     *
+     * @return The number of bytes
+     */
+    public int getSizeInBytes() {
+        return registers != null ? registers.length : sparse.length * Integer.BYTES;
+    }
+
+    private void setRegister(int index, int rank) {
+        if (registers != null) {
+            if (rank > registers[index]) {
+                registers[index] = (byte) rank;
+            }
+            return;
+        }
+        int position = Arrays.binarySearch(sparse, 0, sparseSize, index << 8);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        if (position < sparseSize && sparse[position] >>> 8 == index) {
+            if (rank > (sparse[position] & 0xFF)) {
+                sparse[position] = index << 8 | rank;
+            }
+            return;
+        }
+        if ((sparseSize + 1) * Integer.BYTES > registerCount) {
+            toDense();
+            setRegister(index, rank);
+            return;
+        }
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, Math.min(sparseSize * 2, registerCount / Integer.BYTES + 1));
+        }
+        System.arraycopy(sparse, position, sparse, position + 1, sparseSize - position);
+        sparse[position] = index << 8 | rank;
+        sparseSize++;
+    }
+
+    private void toDense() {
+        if (registers != null) {
+            return;
+        }
+        registers = new byte[registerCount];
+        for (int i = 0; i < sparseSize; i++) {
+            registers[sparse[i] >>> 8] = (byte) (sparse[i] & 0xFF);
+        }
+        sparse = new int[0];
+        sparseSize = 0;
+    }
+
+    private double alpha() {
+        return switch (registerCount) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / registerCount);
+        };
+    }
+}
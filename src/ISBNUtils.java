@@ -0,0 +1,128 @@
+// File: ISBNUtils.java
+
+/**
+ * Utility class for validating and normalizing International Standard Book Numbers.
+ * All ISBNs stored in the catalog are normalized to the 13-digit form without separators.
+ */
+public class ISBNUtils {
+
+    private ISBNUtils() {
+    }
+
+    /**
+     * Normalizes an ISBN-10 or ISBN-13 to its 13-digit form.
+     * Hyphens and spaces are ignored and ISBN-10 values are converted to the 978 prefix.
+     *
+     * @param raw The ISBN as entered or exported
+     * @return The normalized 13-digit ISBN, or null if the value is not a valid ISBN
+     */
+    public static String normalize(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(13);
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            digits.append(c == 'x' ? 'X' : c);
+        }
+        String isbn = digits.toString();
+        if (isbn.length() == 13 && isValidISBN13(isbn)) {
+            return isbn;
+        }
+        if (isbn.length() == 10 && isValidISBN10(isbn)) {
+            return convertISBN10(isbn);
+        }
+        return null;
+    }
+
+    /**
+     * Encodes a valid ISBN-10 or ISBN-13 as a {@code long} key for primitive hash maps.
+     *
+     * @param isbn The ISBN, with or without separators
+     * @return The 13-digit ISBN as a number
+     * @throws IllegalArgumentException If the ISBN is not valid
+     */
+    public static long toLong(String isbn) {
+        String normalized = normalize(isbn);
+        if (normalized == null) {
+            throw new IllegalArgumentException("Invalid ISBN: " + isbn);
+        }
+        return Long.parseLong(normalized);
+    }
+
+    /**
+     * Decodes an ISBN key produced by {@link #toLong(String)}.
+     *
+     * @param key The ISBN key
+     * @return The 13-digit ISBN
+     */
+    public static String fromLong(long key) {
+        String digits = Long.toString(key);
+        return digits.length() >= 13 ? digits : "0".repeat(13 - digits.length()) + digits;
+    }
+
+    /**
+     * Checks whether a string is a valid ISBN-13, including its check digit.
+     *
+     * @param isbn The 13-character ISBN without separators
+     * @return true if the ISBN is valid, false otherwise
+     */
+    public static boolean isValidISBN13(String isbn) {
+        if (isbn == null || isbn.length() != 13) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 13; i++) {
+            char c = isbn.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            sum += (c - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return sum % 10 == 0;
+    }
+
+    /**
+     * Checks whether a string is a valid ISBN-10, including its check digit.
+     *
+     * @param isbn The 10-character ISBN without separators
+     * @return true if the ISBN is valid, false otherwise
+     */
+    public static boolean isValidISBN10(String isbn) {
+        if (isbn == null || isbn.length() != 10) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = isbn.charAt(i);
+            int value;
+            if (c >= '0' && c <= '9') {
+                value = c - '0';
+            } else if (c == 'X' && i == 9) {
+                value = 10;
+            } else {
+                return false;
+            }
+            sum += value * (10 - i);
+        }
+        return sum % 11 == 0;
+    }
+
+    /**
+     * Converts a valid ISBN-10 to its ISBN-13 equivalent.
+     *
+     * @param isbn10 The valid 10-character ISBN
+     * @return The equivalent 13-digit ISBN
+     */
+    private static String convertISBN10(String isbn10) {
+        String body = "978" + isbn10.substring(0, 9);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (body.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return body + ((10 - sum % 10) % 10);
+    }
+}
@@ -0,0 +1,786 @@
+// File: IntegrityChecker.java
+
+import enums.DiscrepancyType;
+import enums.ItemStatus;
+import enums.TransactionStatus;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Verifies the invariants that hold across the catalog, item, user and transaction files:
+ * <ul>
+ *     <li>every record parses and every book, item, user and transaction ID is unique,</li>
+ *     <li>every transaction references an existing user and ISBN,</li>
+ *     <li>every copy on loan or reserved is held by an open loan, lost loan or reservation of its
+ *     title, and each of those holds exactly one copy,</li>
+ *     <li>each book's copy counts equal the number of its copies and of those on the shelf, or,
+ *     for titles whose copies are not recorded as items yet, its total copies minus the copies
+ *     held by open loans, lost loans and reservations.</li>
+ * </ul>
+ * Each file is streamed in byte ranges that a fork-join pool parses in parallel, so the
+ * transaction file is never held in memory as objects; only the open loans and reservations
+ * are kept. Transaction IDs are checked for uniqueness through sorted 64-bit hashes, and only
+ * IDs whose hash repeats are read again.
+ * <p>
+ * {@link #check()} reads the committed files without locking them, so a check that overlaps
+ * circulation may report drift that is only in flight. {@link #repair()} checks again while
+ * holding the transaction, item and catalog write locks. It puts copies held by no open loan
+ * back on the shelf, gives loans without a copy one from the shelf, and derives the copy counts
+ * from the corrected items, writing the items and the catalog once each; the other
+ * discrepancies need a librarian's judgment and are only reported.
+ */
+public class IntegrityChecker {
+    private static final String BOOKS_FILE = "books.csv";
+    private static final String ITEMS_FILE = "items.csv";
+    private static final String USERS_FILE = "users.csv";
+    private static final String TRANSACTIONS_FILE = "transactions.csv";
+    private static final long CHUNK_BYTES = 4L * 1024 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_REPORTED_DISCREPANCIES = 100_000;
+    private static final String REPORT_HEADER = "Type,File,Key,Expected,Actual";
+
+    private final CSVItemDAO csvItemDAO = new CSVItemDAO();
+    private final CSVUserDAO csvUserDAO = new CSVUserDAO();
+    private final CSVTransactionDAO csvTransactionDAO = new CSVTransactionDAO();
+    private final int parallelism;
+
+    /**
+     * An inconsistency found in the data files.
+     *
+     * @param type The kind of inconsistency
+     * @param file The name of the file holding the offending record
+     * @param key The ISBN or ID of the record, or the byte offset of a malformed line
+     * @param expected The value the invariant requires, empty if not applicable
+     * @param actual The value found
+     */
+    public record Discrepancy(DiscrepancyType type, String file, String key, String expected, String actual) {
+        /**
+         * Creates a CSV representation of the discrepancy. Commas and line breaks in the
+         * values are replaced by spaces so each discrepancy stays one row.
+         *
+         * @return The discrepancy as a CSV row
+         */
+        public String toCSV() {
+            return String.join(",", type.name(), file, clean(key), clean(expected), clean(actual));
+        }
+
+        private static String clean(String value) {
+            return value.replace(',', ' ').replace('\n', ' ').replace('\r', ' ');
+        }
+    }
+
+    /**
+     * Result of an integrity check.
+     *
+     * @param booksChecked The number of catalog records read
+     * @param usersChecked The number of user records read
+     * @param transactionsChecked The number of transaction records read
+     * @param counts The number of discrepancies of each type
+     * @param discrepancies The first discrepancies found, capped to keep memory bounded
+     * @param repaired The number of books whose copy counts were corrected
+     * @param itemsRepaired The number of copies whose status was corrected
+     * @param elapsedMillis The wall-clock duration of the check
+     */
+    public record IntegrityReport(long booksChecked, long usersChecked, long transactionsChecked,
+                                  Map<DiscrepancyType, Long> counts, List<Discrepancy> discrepancies,
+                                  int repaired, int itemsRepaired, long elapsedMillis) {
+        /**
+         * Gets the total number of discrepancies found.
+         *
+         * @return The number of discrepancies, including those beyond the reported ones
+         */
+        public long totalDiscrepancies() {
+            return counts.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /**
+         * Checks whether the files satisfy every invariant.
+         *
+         * @return true if no discrepancy was found
+         */
+        public boolean isClean() {
+            return totalDiscrepancies() == 0;
+        }
+
+        /**
+         * Writes the reported discrepancies as a CSV file with the header
+         * {@code Type,File,Key,Expected,Actual}.
+         *
+         * @param path The report file
+         * @throws IOException If an I/O error occurs
+         */
+        public void writeTo(Path path) throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                writer.write(REPORT_HEADER);
+                writer.newLine();
+                for (Discrepancy discrepancy : discrepancies) {
+                    writer.write(discrepancy.toCSV());
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a checker using one worker per processor.
+     */
+    public IntegrityChecker() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a checker.
+     *
+     * @param parallelism The number of file ranges parsed in parallel
+     * @throws IllegalArgumentException If the parallelism is not positive
+     */
+    public IntegrityChecker(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Checks the data files without changing them.
+     *
+     * @return The report
+     * @throws IOException If an I/O error occurs
+     */
+    public IntegrityReport check() throws IOException {
+        CSVBookDAO.getPendingCommit().join();
+        csvItemDAO.getPendingCommit().join();
+        csvUserDAO.getPendingCommit().join();
+        csvTransactionDAO.getPendingCommit().join();
+        return run(false);
+    }
+
+    /**
+     * Checks the data files while holding the transaction, item and catalog write locks,
+     * corrects the copies whose status disagrees with the open loans and reservations in one
+     * write of the items, and then the copy counts of every book that has drifted in one write
+     * of the catalog. Circulation waits for the check to finish.
+     *
+     * @return The report, with the discrepancies found before the repair
+     * @throws IOException If an I/O error occurs
+     */
+    public IntegrityReport repair() throws IOException {
+        return csvTransactionDAO.withWriteLock(() -> csvItemDAO.withWriteLock(() -> {
+            // In the deferred modes item changes are queued rather than held back by the file lock
+            csvItemDAO.flush();
+            return CSVBookDAO.withWriteLock(() -> run(true));
+        }));
+    }
+
+    private IntegrityReport run(boolean repair) throws IOException {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Findings findings = new Findings();
+
+            BookScan bookScan = scan(pool, CSVBookDAO.getPath(), BookScan::new, IntegrityChecker::parseBook, BookScan::merge);
+            findings.mergeFindings(bookScan);
+            LongObjectHashMap<Book> catalog = new LongObjectHashMap<>();
+            LongIntHashMap bookCounts = new LongIntHashMap();
+            for (Book book : bookScan.books) {
+                if (bookCounts.addTo(book.getISBNKey(), 1) == 1) {
+                    catalog.put(book.getISBNKey(), book);
+                }
+            }
+            bookCounts.forEach((ISBN, count) -> {
+                if (count > 1) {
+                    findings.report(new Discrepancy(DiscrepancyType.DUPLICATE_ID, BOOKS_FILE,
+                            ISBNUtils.fromLong(ISBN), "1", String.valueOf(count)));
+                }
+            });
+
+            UserScan userScan = scan(pool, csvUserDAO.getPath(), UserScan::new, IntegrityChecker::parseUser, UserScan::merge);
+            findings.mergeFindings(userScan);
+            Map<String, Integer> userCounts = new HashMap<>(userScan.userIds.size() * 2);
+            for (String userId : userScan.userIds) {
+                userCounts.merge(userId, 1, Integer::sum);
+            }
+            userCounts.forEach((userId, count) -> {
+                if (count > 1) {
+                    findings.report(new Discrepancy(DiscrepancyType.DUPLICATE_ID, USERS_FILE, userId, "1",
+                            String.valueOf(count)));
+                }
+            });
+
+            Set<String> users = userCounts.keySet();
+            LoanScan loanScan = scan(pool, csvTransactionDAO.getPath(), LoanScan::new,
+                    (scan, line, offset) -> parseTransaction(scan, line, offset, users, catalog), LoanScan::merge);
+            findings.mergeFindings(loanScan);
+            reportDuplicateTransactions(pool, loanScan, findings);
+
+            ItemScan itemScan = scan(pool, csvItemDAO.getPath(), ItemScan::new, IntegrityChecker::parseItem, ItemScan::merge);
+            findings.mergeFindings(itemScan);
+            List<Item> correctedItems = new ArrayList<>();
+            LongObjectHashMap<List<Item>> copies = checkItems(itemScan, loanScan, catalog, findings, correctedItems);
+
+            List<Book> corrected = new ArrayList<>();
+            catalog.forEach((ISBN, book) -> {
+                int held = loanScan.heldCopies.get(ISBN, 0);
+                List<Item> titleCopies = copies.get(ISBN);
+                int total = titleCopies == null ? book.getTotalCopies() : titleCopies.size();
+                if (held > total) {
+                    findings.report(new Discrepancy(DiscrepancyType.OVERCOMMITTED, BOOKS_FILE, book.getISBN(),
+                            String.valueOf(total), String.valueOf(held)));
+                }
+                int expected = Math.max(total - held, 0);
+                if (titleCopies != null) {
+                    expected = (int) titleCopies.stream().filter(item -> item.getStatus() == ItemStatus.AVAILABLE).count();
+                }
+                if (book.getTotalCopies() != total || book.getAvailableCopies() != expected) {
+                    findings.report(new Discrepancy(DiscrepancyType.COPY_COUNT, BOOKS_FILE, book.getISBN(),
+                            total + "/" + expected, book.getTotalCopies() + "/" + book.getAvailableCopies()));
+                    book.setCopyCounts(total, expected);
+                    corrected.add(book);
+                }
+            });
+            if (repair && !correctedItems.isEmpty()) {
+                csvItemDAO.updateItems(correctedItems);
+            }
+            if (repair && !corrected.isEmpty()) {
+                saveCorrectedCounts(corrected);
+            }
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            return new IntegrityReport(bookScan.records, userScan.records, loanScan.records, findings.getCounts(),
+                    Collections.unmodifiableList(findings.listed), repair ? corrected.size() : 0,
+                    repair ? correctedItems.size() : 0, elapsedMillis);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Matches the copies on loan or reserved to the open loans and reservations. A copy held by
+     * no open loan or reservation of its title goes back on the shelf, a copy whose status
+     * disagrees with its loan takes the loan's status, and a loan or reservation without a copy
+     * is given one from the shelf while any is left. The corrected items are collected for the
+     * repair, and the copy counts are derived from the items as they are after correction.
+     *
+     * @return The copies of each title with recorded items, keyed by numeric ISBN
+     */
+    private static LongObjectHashMap<List<Item>> checkItems(ItemScan itemScan, LoanScan loanScan,
+                                                          LongObjectHashMap<Book> catalog, Findings findings,
+                                                          List<Item> correctedItems) {
+        LongObjectHashMap<List<Item>> copies = new LongObjectHashMap<>();
+        Map<String, Integer> barcodeCounts = new HashMap<>();
+        Set<String> claimed = new HashSet<>();
+        for (Item item : itemScan.items) {
+            if (barcodeCounts.merge(item.getBarcode(), 1, Integer::sum) > 1) {
+                continue;
+            }
+            long ISBN = ISBNUtils.toLong(item.getISBN());
+            if (!catalog.containsKey(ISBN)) {
+                findings.report(new Discrepancy(DiscrepancyType.UNKNOWN_BOOK, ITEMS_FILE, item.getBarcode(), "", item.getISBN()));
+                continue;
+            }
+            Item checked = item;
+            if (item.getStatus() != ItemStatus.AVAILABLE) {
+                HeldCopy held = loanScan.held.get(item.getTransactionId());
+                if (held == null || held.ISBN() != ISBN || !claimed.add(item.getTransactionId())) {
+                    checked = item.withStatus(ItemStatus.AVAILABLE, null);
+                } else if (held.status() != item.getStatus()) {
+                    checked = item.withStatus(held.status(), item.getTransactionId());
+                }
+            }
+            if (checked != item) {
+                findings.report(new Discrepancy(DiscrepancyType.ITEM_STATUS, ITEMS_FILE, item.getBarcode(),
+                        checked.getStatus().getDisplayName(), item.getStatus().getDisplayName()));
+            }
+            List<Item> titleCopies = copies.get(ISBN);
+            if (titleCopies == null) {
+                titleCopies = new ArrayList<>();
+                copies.put(ISBN, titleCopies);
+            }
+            titleCopies.add(checked);
+        }
+        barcodeCounts.forEach((barcode, count) -> {
+            if (count > 1) {
+                findings.report(new Discrepancy(DiscrepancyType.DUPLICATE_ID, ITEMS_FILE, barcode, "1", String.valueOf(count)));
+            }
+        });
+
+        loanScan.held.forEach((transactionId, held) -> {
+            List<Item> titleCopies = copies.get(held.ISBN());
+            if (titleCopies == null || claimed.contains(transactionId)) {
+                return; // Titles without items are checked against their copy counts only
+            }
+            findings.report(new Discrepancy(DiscrepancyType.ITEM_STATUS, TRANSACTIONS_FILE, transactionId,
+                    held.status().getDisplayName(), "No copy"));
+            for (int i = 0; i < titleCopies.size(); i++) {
+                if (titleCopies.get(i).getStatus() == ItemStatus.AVAILABLE) {
+                    titleCopies.set(i, titleCopies.get(i).withStatus(held.status(), transactionId));
+                    break;
+                }
+            }
+        });
+
+        // Only the copies whose final state differs from the file are written back
+        Map<String, Item> original = new HashMap<>();
+        for (Item item : itemScan.items) {
+            original.putIfAbsent(item.getBarcode(), item);
+        }
+        copies.forEach((ISBN, titleCopies) -> {
+            for (Item item : titleCopies) {
+                Item before = original.get(item.getBarcode());
+                if (before.getStatus() != item.getStatus() || !Objects.equals(before.getTransactionId(), item.getTransactionId())) {
+                    correctedItems.add(item);
+                }
+            }
+        });
+        return copies;
+    }
+
+    /**
+     * Rewrites the catalog with the corrected copy counts, keeping every other record as it is.
+     * Must run inside the catalog write transaction.
+     */
+    private static void saveCorrectedCounts(List<Book> corrected) throws IOException {
+        Map<String, Book> byISBN = new HashMap<>(corrected.size() * 2);
+        for (Book book : corrected) {
+            byISBN.put(book.getISBN(), book);
+        }
+        List<Book> books = CSVBookDAO.loadBooks();
+        Set<String> replaced = new HashSet<>();
+        for (int i = 0; i < books.size(); i++) {
+            Book book = byISBN.get(books.get(i).getISBN());
+            // Duplicate records of a title are left alone, only the first one is counted
+            if (book != null && replaced.add(book.getISBN())) {
+                books.set(i, book);
+            }
+        }
+        CSVBookDAO.saveBooks(books);
+    }
+
+    private static void parseBook(BookScan scan, String line, long offset) {
+        scan.records++;
+        try {
+            scan.books.add(Book.fromCSV(line));
+        } catch (RuntimeException e) {
+            scan.report(malformed(BOOKS_FILE, offset, e));
+        }
+    }
+
+    private static void parseItem(ItemScan scan, String line, long offset) {
+        scan.records++;
+        try {
+            scan.items.add(Item.fromCSV(line));
+        } catch (RuntimeException e) {
+            scan.report(malformed(ITEMS_FILE, offset, e));
+        }
+    }
+
+    private static void parseUser(UserScan scan, String line, long offset) {
+        scan.records++;
+        String[] parts = line.split(",", -1);
+        if (parts.length < 6 || parts[0].isEmpty()) {
+            scan.report(new Discrepancy(DiscrepancyType.MALFORMED_RECORD, USERS_FILE, String.valueOf(offset), "",
+                    "Expected 6 fields, found " + parts.length));
+            return;
+        }
+        scan.userIds.add(parts[0]);
+    }
+
+    /**
+     * Checks one transaction record. Only the ID, user, ISBN and status columns are extracted,
+     * which keeps the pass over a large transaction file cheap.
+     */
+    private static void parseTransaction(LoanScan scan, String line, long offset, Set<String> users,
+                                         LongObjectHashMap<Book> catalog) {
+        scan.records++;
+        int[] commas = new int[6];
+        int from = 0;
+        for (int i = 0; i < commas.length; i++) {
+            commas[i] = line.indexOf(',', from);
+            if (commas[i] < 0) {
+                scan.report(new Discrepancy(DiscrepancyType.MALFORMED_RECORD, TRANSACTIONS_FILE, String.valueOf(offset),
+                        "", "Expected at least 7 fields, found " + (i + 1)));
+                return;
+            }
+            from = commas[i] + 1;
+        }
+        int statusEnd = line.indexOf(',', from);
+        String transactionId = line.substring(0, commas[0]);
+        String userId = line.substring(commas[0] + 1, commas[1]);
+        String ISBN = line.substring(commas[1] + 1, commas[2]);
+        TransactionStatus status;
+        long ISBNKey;
+        try {
+            if (transactionId.isEmpty()) {
+                throw new IllegalArgumentException("Missing transaction ID");
+            }
+            status = TransactionStatus.fromString(statusEnd < 0 ? line.substring(from) : line.substring(from, statusEnd));
+            ISBNKey = ISBNUtils.toLong(ISBN);
+        } catch (IllegalArgumentException e) {
+            scan.report(malformed(TRANSACTIONS_FILE, offset, e));
+            return;
+        }
+
+        scan.addIdHash(SketchHash.hash64(transactionId));
+        if (!users.contains(userId)) {
+            scan.report(new Discrepancy(DiscrepancyType.UNKNOWN_USER, TRANSACTIONS_FILE, transactionId, "", userId));
+        }
+        if (!catalog.containsKey(ISBNKey)) {
+            scan.report(new Discrepancy(DiscrepancyType.UNKNOWN_BOOK, TRANSACTIONS_FILE, transactionId, "", ISBN));
+        } else if (status.isOpenLoan() || status == TransactionStatus.LOST || status == TransactionStatus.RESERVED) {
+            scan.heldCopies.addTo(ISBNKey, 1);
+            scan.held.put(transactionId, new HeldCopy(ISBNKey,
+                    status == TransactionStatus.RESERVED ? ItemStatus.RESERVED : ItemStatus.ON_LOAN));
+        }
+    }
+
+    /**
+     * Finds repeated transaction IDs. The hashes of all IDs are sorted to find the repeated
+     * ones, and only the IDs with a repeated hash are read again and compared exactly.
+     */
+    private void reportDuplicateTransactions(ForkJoinPool pool, LoanScan loanScan, Findings findings) throws IOException {
+        long[] hashes = Arrays.copyOf(loanScan.idHashes, loanScan.idCount);
+        loanScan.idHashes = null;
+        Arrays.parallelSort(hashes);
+        LongIntHashMap repeated = new LongIntHashMap();
+        for (int i = 1; i < hashes.length; i++) {
+            if (hashes[i] == hashes[i - 1]) {
+                repeated.addTo(hashes[i], 1);
+            }
+        }
+        if (repeated.size() == 0) {
+            return;
+        }
+        IdScan idScan = scan(pool, csvTransactionDAO.getPath(), IdScan::new, (scan, line, offset) -> {
+            int comma = line.indexOf(',');
+            if (comma > 0) {
+                String transactionId = line.substring(0, comma);
+                if (repeated.get(SketchHash.hash64(transactionId), 0) > 0) {
+                    scan.counts.merge(transactionId, 1, Integer::sum);
+                }
+            }
+        }, IdScan::merge);
+        idScan.counts.forEach((transactionId, count) -> {
+            if (count > 1) {
+                findings.report(new Discrepancy(DiscrepancyType.DUPLICATE_ID, TRANSACTIONS_FILE, transactionId, "1",
+                        String.valueOf(count)));
+            }
+        });
+    }
+
+    private static Discrepancy malformed(String file, long offset, RuntimeException e) {
+        return new Discrepancy(DiscrepancyType.MALFORMED_RECORD, file, String.valueOf(offset), "",
+                String.valueOf(e.getMessage()));
+    }
+
+    /**
+     * Parses a file in parallel, one task per range of about {@value #CHUNK_BYTES} bytes,
+     * skipping the header line.
+     */
+    private <R> R scan(ForkJoinPool pool, Path path, Supplier<R> accumulator, LineHandler<R> handler,
+                       BiConsumer<R, R> merger) throws IOException {
+        if (!Files.exists(path)) {
+            return accumulator.get();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            return pool.invoke(new ScanTask<>(channel, size, 0, size, accumulator, handler, merger));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LineHandler<R> {
+        void accept(R result, String line, long offset);
+    }
+
+    /**
+     * Parses the lines starting within a byte range of a file, splitting large ranges in half.
+     */
+    private static class ScanTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        // Tasks only live within one scan and are never serialized
+        private final transient FileChannel channel;
+        private final long size;
+        private final long start;
+        private final long end;
+        private final transient Supplier<R> accumulator;
+        private final transient LineHandler<R> handler;
+        private final transient BiConsumer<R, R> merger;
+
+        private ScanTask(FileChannel channel, long size, long start, long end, Supplier<R> accumulator,
+                         LineHandler<R> handler, BiConsumer<R, R> merger) {
+            this.channel = channel;
+            this.size = size;
+            this.start = start;
+            this.end = end;
+            this.accumulator = accumulator;
+            this.handler = handler;
+            this.merger = merger;
+        }
+
+        @Override
+        protected R compute() {
+            if (end - start > CHUNK_BYTES) {
+                long middle = start + (end - start) / 2;
+                ScanTask<R> left = new ScanTask<>(channel, size, start, middle, accumulator, handler, merger);
+                ScanTask<R> right = new ScanTask<>(channel, size, middle, end, accumulator, handler, merger);
+                left.fork();
+                R rightResult = right.compute();
+                R leftResult = left.join();
+                merger.accept(leftResult, rightResult);
+                return leftResult;
+            }
+            try {
+                return scanRange();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Parses every line whose first byte lies in the range. A line crossing the end of the
+         * range is read to its end; the line crossing the start belongs to the previous range.
+         */
+        private R scanRange() throws IOException {
+            R result = accumulator.get();
+            // The line containing the byte before the range belongs to the previous range, and the
+            // line starting at offset 0 is the header
+            long lineOffset = nextLineStart(Math.max(start - 1, 0));
+            byte[] buffer = new byte[BUFFER_BYTES];
+            long bufferOffset = lineOffset;
+            int filled = 0;
+            int lineStart = 0;
+            int scanned = 0;
+            while (lineOffset < end) {
+                int newline = indexOf(buffer, scanned, filled);
+                if (newline < 0) {
+                    scanned = filled;
+                    if (bufferOffset + filled >= size) {
+                        if (lineStart < filled) {
+                            accept(result, buffer, lineStart, filled, lineOffset);
+                        }
+                        break;
+                    }
+                    // Keep the partial line and read more after it
+                    System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+                    filled -= lineStart;
+                    scanned -= lineStart;
+                    bufferOffset += lineStart;
+                    lineStart = 0;
+                    if (filled == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    int read = channel.read(ByteBuffer.wrap(buffer, filled,
+                            (int) Math.min(buffer.length - filled, size - bufferOffset - filled)), bufferOffset + filled);
+                    if (read <= 0) {
+                        break;
+                    }
+                    filled += read;
+                    continue;
+                }
+                accept(result, buffer, lineStart, newline, lineOffset);
+                lineStart = newline + 1;
+                scanned = lineStart;
+                lineOffset = bufferOffset + lineStart;
+            }
+            return result;
+        }
+
+        private void accept(R result, byte[] buffer, int from, int to, long offset) {
+            int length = to - from;
+            if (length > 0 && buffer[to - 1] == '\r') {
+                length--;
+            }
+            if (length > 0) {
+                handler.accept(result, new String(buffer, from, length, StandardCharsets.UTF_8), offset);
+            }
+        }
+
+        /**
+         * Gets the offset just after the first line break at or after a position.
+         */
+        private long nextLineStart(long position) throws IOException {
+            ByteBuffer block = ByteBuffer.allocate(8192);
+            long offset = position;
+            while (offset < size) {
+                block.clear();
+                int read = channel.read(block, offset);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (block.get(i) == '\n') {
+                        return offset + i + 1;
+                    }
+                }
+                offset += read;
+            }
+            return size;
+        }
+
+        private static int indexOf(byte[] buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Discrepancy counts and the first discrepancies of a scan.
+     */
+    private static class Findings {
+        private final long[] counts = new long[DiscrepancyType.values().length];
+        private final List<Discrepancy> listed = new ArrayList<>();
+        long records;
+
+        void report(Discrepancy discrepancy) {
+            counts[discrepancy.type().ordinal()]++;
+            if (listed.size() < MAX_REPORTED_DISCREPANCIES) {
+                listed.add(discrepancy);
+            }
+        }
+
+        void mergeFindings(Findings other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            int room = MAX_REPORTED_DISCREPANCIES - listed.size();
+            listed.addAll(other.listed.subList(0, Math.min(room, other.listed.size())));
+            records += other.records;
+        }
+
+        Map<DiscrepancyType, Long> getCounts() {
+            Map<DiscrepancyType, Long> result = new EnumMap<>(DiscrepancyType.class);
+            for (DiscrepancyType type : DiscrepancyType.values()) {
+                if (counts[type.ordinal()] > 0) {
+                    result.put(type, counts[type.ordinal()]);
+                }
+            }
+            return Collections.unmodifiableMap(result);
+        }
+    }
+
+    private static class BookScan extends Findings {
+        private final List<Book> books = new ArrayList<>();
+
+        void merge(BookScan other) {
+            mergeFindings(other);
+            books.addAll(other.books);
+        }
+    }
+
+    private static class UserScan extends Findings {
+        private final List<String> userIds = new ArrayList<>();
+
+        void merge(UserScan other) {
+            mergeFindings(other);
+            userIds.addAll(other.userIds);
+        }
+    }
+
+    private static class ItemScan extends Findings {
+        private final List<Item> items = new ArrayList<>();
+
+        void merge(ItemScan other) {
+            mergeFindings(other);
+            items.addAll(other.items);
+        }
+    }
+
+    /**
+     * An open loan, lost loan or reservation, with the status its copy should have.
+     */
+    private record HeldCopy(long ISBN, ItemStatus status) {
+    }
+
+    private static class LoanScan extends Findings {
+        private final LongIntHashMap heldCopies = new LongIntHashMap();
+        private final Map<String, HeldCopy> held = new HashMap<>();
+        private long[] idHashes = new long[1024];
+        private int idCount;
+
+        void addIdHash(long hash) {
+            if (idCount == idHashes.length) {
+                idHashes = Arrays.copyOf(idHashes, idCount * 2);
+            }
+            idHashes[idCount++] = hash;
+        }
+
+        void merge(LoanScan other) {
+            mergeFindings(other);
+            other.heldCopies.forEach(heldCopies::addTo);
+            held.putAll(other.held);
+            if (idCount + other.idCount > idHashes.length) {
+                idHashes = Arrays.copyOf(idHashes, idCount + other.idCount);
+            }
+            System.arraycopy(other.idHashes, 0, idHashes, idCount, other.idCount);
+            idCount += other.idCount;
+        }
+    }
+
+    private static class IdScan {
+        private final Map<String, Integer> counts = new HashMap<>();
+
+        void merge(IdScan other) {
+            other.counts.forEach((transactionId, count) -> counts.merge(transactionId, count, Integer::sum));
+        }
+    }
+
+    /**
+     * Runs a nightly check from the command line. With {@code --repair} drifted copies and copy
+     * counts are corrected, and with {@code --report=<file>} the discrepancies are written as CSV.
+     *
+     * @param args The options
+     * @throws IOException If an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        boolean repair = false;
+        Path reportPath = null;
+        for (String arg : args) {
+            if (arg.equals("--repair")) {
+                repair = true;
+            } else if (arg.startsWith("--report=")) {
+                reportPath = Paths.get(arg.substring("--report=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        IntegrityChecker checker = new IntegrityChecker();
+        IntegrityReport report = repair ? checker.repair() : checker.check();
+        System.out.printf("Checked %d books, %d users and %d transactions in %d ms: %d discrepancies, %d books and %d copies repaired%n",
+                report.booksChecked(), report.usersChecked(), report.transactionsChecked(), report.elapsedMillis(),
+                report.totalDiscrepancies(), report.repaired(), report.itemsRepaired());
+        report.counts().forEach((type, count) -> System.out.println("  " + type.getDisplayName() + ": " + count));
+        if (reportPath != null) {
+            report.writeTo(reportPath);
+        }
+    }
+}
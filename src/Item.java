@@ -0,0 +1,103 @@
+// File: Item.java
+
+import enums.ItemStatus;
+
+import java.util.Objects;
+
+/**
+ * Represents one physical copy of a book, identified by the barcode on its label.
+ * Items are immutable; a change of state produces a new item.
+ */
+public class Item {
+    private final String barcode;
+    private final String ISBN;
+    private final ItemStatus status;
+    private final String transactionId;
+
+    /**
+     * Constructor for creating an item.
+     *
+     * @param barcode The barcode of the copy
+     * @param ISBN The ISBN of the title
+     * @param status The circulation state of the copy
+     * @param transactionId The loan or reservation holding the copy, or null if it is on the shelf
+     *                      or out on a loan that predates item tracking
+     * @throws IllegalArgumentException If the barcode or ISBN is invalid, or the transaction does not match the status
+     */
+    public Item(String barcode, String ISBN, ItemStatus status, String transactionId) {
+        if (!ItemIndex.isBarcode(barcode)) {
+            throw new IllegalArgumentException("Invalid barcode: " + barcode);
+        }
+        if ((status == ItemStatus.AVAILABLE && transactionId != null)
+                || (status == ItemStatus.RESERVED && transactionId == null)) {
+            throw new IllegalArgumentException("Item " + barcode + " is " + status
+                    + (transactionId == null ? " without a transaction" : " with a transaction"));
+        }
+        this.barcode = barcode;
+        this.ISBN = ISBNUtils.fromLong(ISBNUtils.toLong(ISBN));
+        this.status = status;
+        this.transactionId = transactionId;
+    }
+
+    public String getBarcode() { return barcode; }
+
+    public String getISBN() { return ISBN; }
+
+    public ItemStatus getStatus() { return status; }
+
+    public String getTransactionId() { return transactionId; }
+
+    /**
+     * Creates a copy of this item in another state.
+     *
+     * @param status The new state
+     * @param transactionId The loan or reservation holding the copy, or null for AVAILABLE
+     * @return The updated item
+     */
+    public Item withStatus(ItemStatus status, String transactionId) {
+        return new Item(barcode, ISBN, status, transactionId);
+    }
+
+    /**
+     * Creates a CSV representation of the item.
+     *
+     * @return A string containing the item's data in CSV format
+     */
+    public String toCSV() {
+        return String.join(",", barcode, ISBN, status.name(), transactionId == null ? "" : transactionId);
+    }
+
+    /**
+     * Creates an Item object from a CSV string.
+     *
+     * @param csv The CSV string containing item data
+     * @return A new Item object
+     */
+    public static Item fromCSV(String csv) {
+        String[] parts = csv.split(",", -1);
+        return new Item(parts[0], parts[1], ItemStatus.fromString(parts[2]), parts[3].isEmpty() ? null : parts[3]);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Item item = (Item) o;
+        return Objects.equals(barcode, item.barcode);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(barcode);
+    }
+
+    @Override
+    public String toString() {
+        return "Item{" +
+                "barcode='" + barcode + '\'' +
+                ", ISBN='" + ISBN + '\'' +
+                ", status=" + status +
+                ", transactionId='" + transactionId + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,295 @@
+// File: ItemIndex.java
+
+import enums.ItemStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the physical copies of the catalog.
+ * <p>
+ * Items are kept in slots addressed through a primitive hash map keyed by the numeric barcode,
+ * so resolving a scanned barcode is a single hash probe. The copies of each title are listed in
+ * an array with a bitset marking the ones on the shelf: the next free copy is found with one bit
+ * scan, and the total and available copy counts of a title are the array length and the bitset
+ * cardinality, so they cannot drift from the item records. Loans and reservations are mapped to
+ * the copy they hold. The index records the generation of the item file it was loaded from, so a
+ * writer can tell whether another process has committed to the file since.
+ */
+public class ItemIndex {
+    private static final int BARCODE_LENGTH = 14;
+    private static final long FIRST_BARCODE = 30000000000001L;
+
+    private final List<Item> items = new ArrayList<>();
+    private int[] positions = new int[16]; // Position of each slot in its title's copy list
+    private final LongIntHashMap slotsByBarcode = new LongIntHashMap();
+    private final LongObjectHashMap<Copies> copiesByTitle = new LongObjectHashMap<>();
+    private final Map<String, Integer> slotsByTransaction = new HashMap<>();
+    private final long generation;
+    private long lastBarcode = FIRST_BARCODE - 1;
+    private int size;
+
+    /**
+     * Copy counts of a title.
+     *
+     * @param total All copies held by the library
+     * @param available Copies on the shelf
+     */
+    public record CopyCounts(int total, int available) {
+    }
+
+    /**
+     * Creates an index of the given items.
+     *
+     * @param items The items
+     * @param generation The generation of the item file the items were loaded from
+     * @throws IllegalArgumentException If two items have the same barcode
+     */
+    public ItemIndex(Collection<Item> items, long generation) {
+        this.generation = generation;
+        for (Item item : items) {
+            if (slotsByBarcode.containsKey(Long.parseLong(item.getBarcode()))) {
+                throw new IllegalArgumentException("Duplicate barcode: " + item.getBarcode());
+            }
+            add(item);
+        }
+    }
+
+    /**
+     * Gets the generation of the item file the index was loaded from.
+     *
+     * @return The generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Checks whether a scanned code is an item barcode rather than an ISBN or transaction ID.
+     *
+     * @param code The scanned code
+     * @return true if the code consists of exactly 14 digits
+     */
+    public static boolean isBarcode(String code) {
+        if (code == null || code.length() != BARCODE_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < BARCODE_LENGTH; i++) {
+            if (code.charAt(i) < '0' || code.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds an item by its barcode.
+     *
+     * @param barcode The barcode
+     * @return The item, or null if no item has this barcode
+     */
+    public synchronized Item findByBarcode(String barcode) {
+        if (!isBarcode(barcode)) {
+            return null;
+        }
+        int slot = slotsByBarcode.get(Long.parseLong(barcode), -1);
+        return slot < 0 ? null : items.get(slot);
+    }
+
+    /**
+     * Finds the copy held by a loan or reservation.
+     *
+     * @param transactionId The ID of the loan or reservation
+     * @return The item, or null if no copy is recorded for the transaction
+     */
+    public synchronized Item findByTransaction(String transactionId) {
+        Integer slot = slotsByTransaction.get(transactionId);
+        return slot == null ? null : items.get(slot);
+    }
+
+    /**
+     * Finds a copy of a title that is on the shelf.
+     *
+     * @param ISBN The ISBN of the title
+     * @return The first available copy, or null if none is available
+     */
+    public synchronized Item nextAvailable(String ISBN) {
+        Copies copies = copiesByTitle.get(ISBNUtils.toLong(ISBN));
+        if (copies == null) {
+            return null;
+        }
+        int position = copies.available.nextSetBit(0);
+        return position < 0 ? null : items.get(copies.slots[position]);
+    }
+
+    /**
+     * Checks whether any copies of a title are recorded.
+     *
+     * @param ISBN The ISBN of the title
+     * @return true if the title has at least one item
+     */
+    public synchronized boolean hasCopies(String ISBN) {
+        return copiesByTitle.containsKey(ISBNUtils.toLong(ISBN));
+    }
+
+    /**
+     * Gets the copy counts of a title, derived from its items.
+     *
+     * @param ISBN The ISBN of the title
+     * @return The counts, zero if the title has no items
+     */
+    public synchronized CopyCounts getCopyCounts(String ISBN) {
+        Copies copies = copiesByTitle.get(ISBNUtils.toLong(ISBN));
+        return copies == null ? new CopyCounts(0, 0) : new CopyCounts(copies.size, copies.available.cardinality());
+    }
+
+    /**
+     * Gets the copies of a title.
+     *
+     * @param ISBN The ISBN of the title
+     * @return The items, empty if the title has none
+     */
+    public synchronized List<Item> getCopies(String ISBN) {
+        Copies copies = copiesByTitle.get(ISBNUtils.toLong(ISBN));
+        List<Item> result = new ArrayList<>();
+        if (copies != null) {
+            for (int i = 0; i < copies.size; i++) {
+                result.add(items.get(copies.slots[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds an item, or replaces the item with the same barcode.
+     *
+     * @param item The item
+     * @throws IllegalArgumentException If the barcode is already used by a copy of another title
+     */
+    public synchronized void put(Item item) {
+        add(item);
+    }
+
+    private void add(Item item) {
+        long barcode = Long.parseLong(item.getBarcode());
+        long isbn = ISBNUtils.toLong(item.getISBN());
+        int slot = slotsByBarcode.get(barcode, -1);
+        if (slot < 0) {
+            slot = items.size();
+            items.add(item);
+            slotsByBarcode.put(barcode, slot);
+            if (slot == positions.length) {
+                positions = Arrays.copyOf(positions, slot * 2);
+            }
+            Copies copies = copiesByTitle.get(isbn);
+            if (copies == null) {
+                copies = new Copies();
+                copiesByTitle.put(isbn, copies);
+            }
+            positions[slot] = copies.add(slot);
+            lastBarcode = Math.max(lastBarcode, barcode);
+            size++;
+        } else {
+            Item previous = items.get(slot);
+            if (!previous.getISBN().equals(item.getISBN())) {
+                throw new IllegalArgumentException("Barcode " + item.getBarcode() + " belongs to another title");
+            }
+            if (previous.getTransactionId() != null) {
+                slotsByTransaction.remove(previous.getTransactionId());
+            }
+            items.set(slot, item);
+        }
+        if (item.getTransactionId() != null) {
+            slotsByTransaction.put(item.getTransactionId(), slot);
+        }
+        copiesByTitle.get(isbn).available.set(positions[slot], item.getStatus() == ItemStatus.AVAILABLE);
+    }
+
+    /**
+     * Removes an item.
+     *
+     * @param barcode The barcode of the item
+     * @return The removed item, or null if no item has this barcode
+     */
+    public synchronized Item remove(String barcode) {
+        Item item = findByBarcode(barcode);
+        if (item == null) {
+            return null;
+        }
+        int slot = slotsByBarcode.get(Long.parseLong(barcode), -1);
+        slotsByBarcode.remove(Long.parseLong(barcode));
+        if (item.getTransactionId() != null) {
+            slotsByTransaction.remove(item.getTransactionId());
+        }
+        long isbn = ISBNUtils.toLong(item.getISBN());
+        Copies copies = copiesByTitle.get(isbn);
+        int moved = copies.remove(positions[slot]);
+        if (moved >= 0) {
+            positions[moved] = positions[slot];
+        }
+        if (copies.size == 0) {
+            copiesByTitle.remove(isbn);
+        }
+        // The slot is left empty; withdrawals are rare enough not to warrant reuse
+        items.set(slot, null);
+        size--;
+        return item;
+    }
+
+    /**
+     * Allocates a barcode for a new copy, above every barcode in the index.
+     *
+     * @return The barcode
+     */
+    public synchronized String nextBarcode() {
+        return String.format("%0" + BARCODE_LENGTH + "d", ++lastBarcode);
+    }
+
+    /**
+     * Gets the number of items.
+     *
+     * @return The number of items
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The copies of one title: slots in a packed array, with a bit per position for the ones on the shelf.
+     */
+    private static class Copies {
+        private int[] slots = new int[4];
+        private int size;
+        private final BitSet available = new BitSet();
+
+        private int add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size] = slot;
+            return size++;
+        }
+
+        /**
+         * Removes the copy at a position by moving the last copy into it.
+         *
+         * @return The slot of the moved copy, or -1 if the removed copy was the last
+         */
+        private int remove(int position) {
+            int last = --size;
+            int moved = -1;
+            if (position != last) {
+                moved = slots[last];
+                slots[position] = moved;
+                available.set(position, available.get(last));
+            }
+            available.clear(last);
+            return moved;
+        }
+    }
+}
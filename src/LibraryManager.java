@@ -1,88 +1,1272 @@
 // File: LibraryManager.java
 
+import enums.AuditAction;
+import enums.CirculationEvent;
+import enums.Genre;
+import enums.ItemStatus;
+import enums.NotificationType;
+import enums.OperationClass;
+import enums.ReplicatedEntity;
 import enums.TransactionStatus;
 import enums.UserRole;
 
 import javax.naming.AuthenticationException;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 /**
  * Core class managing library operations and coordinating data access.
  */
 public class LibraryManager {
+    private static final int HOLD_PICKUP_DAYS = 7;
+    private static final int RENEWAL_DAYS = 14;
+    private static final int MAX_RENEWALS = 2;
+    private static final long REPORT_CACHE_CHARS = 16L * 1024 * 1024;
+    private static final boolean REPLICATION = Boolean.getBoolean("library.replication");
+    private static final long ROLLUP_SNAPSHOT_MINUTES = 5;
+
+    // Report cache dependencies
+    private static final String BOOKS = "books";
+    private static final String TITLES = "titles";
+    private static final String BORROWS = "borrows";
+    private static final String LOANS = "loans";
+    private static final String HISTORY = "history";
+    private static final String USERS = "users";
+
     private final AuthService authService;
     private final ReportGenerator reportGenerator;
     private final CSVUserDAO csvUserDAO = new CSVUserDAO();
     private final CSVTransactionDAO csvTransactionDAO = new CSVTransactionDAO();
+    private final CSVItemDAO csvItemDAO = new CSVItemDAO();
+    private final AdmissionController admissionController;
+    private final ReportCache reportCache = new ReportCache(REPORT_CACHE_CHARS);
+    private final ReplicationLog replicationLog; // Null unless read replicas are enabled
+    private final AuditLog auditLog;
+    private final ThreadLocal<String> actor = new ThreadLocal<>(); // Actor of the audited changes made inside runAs
+    private HoldQueueManager holdQueueManager;
+    private volatile CatalogIndex catalogIndex;
+    private volatile TrigramIndex trigramIndex;
+    private volatile CirculationAnalytics circulationAnalytics;
+    private volatile CoBorrowIndex coBorrowIndex;
+    private volatile ItemIndex itemIndex;
+    private volatile CirculationRollup circulationRollup;
+    // Held shared by circulation commits and their rollup updates, exclusively by rollup builds and snapshots
+    private final ReadWriteLock rollupLock = new ReentrantReadWriteLock();
+    private CirculationRollup savedRollup;
+    private long savedRollupUpdates;
+    private ScheduledExecutorService rollupSnapshots;
+    private BranchConsortium branchConsortium;
+    private NotificationOutbox notificationOutbox;
 
     public LibraryManager() {
-        this.authService = new AuthService(csvUserDAO);
+        this(new AdmissionController());
+    }
+
+    /**
+     * Creates a library manager that admits operations through the given admission controller.
+     *
+     * @param admissionController The admission controller
+     */
+    public LibraryManager(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+        this.auditLog = AuditLog.getDefault();
+        this.authService = new AuthService(csvUserDAO, auditLog);
         this.reportGenerator = new ReportGenerator(new CSVBookDAO(), csvUserDAO, csvTransactionDAO);
+        this.replicationLog = REPLICATION ? new ReplicationLog(csvUserDAO, csvTransactionDAO) : null;
+        DataFileCoordinator.addChangeListener(this::onExternalCommit);
     }
 
     // Authentication operations
     public User authenticateUser(String username, String password) throws IOException, AuthenticationException {
-        return authService.authenticate(username, password);
+        AdmissionController.Permit permit = admissionController.acquire(OperationClass.AUTH, username);
+        try {
+            return authService.authenticate(username, password);
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Runs operations on behalf of a user, who is recorded as the actor of the changes they make.
+     * The actor only applies to the calling thread for the duration of the call, so pooled
+     * threads never carry it over to the next task; changes made outside any call are recorded
+     * without an actor.
+     *
+     * @param actorId The ID of the user acting, typically the one just authenticated
+     * @param action The operations
+     * @param <T> The result type
+     * @return The result of the operations
+     * @throws IOException If an I/O error occurs
+     */
+    public <T> T runAs(String actorId, DataFileCoordinator.IOCallable<T> action) throws IOException {
+        String previous = actor.get();
+        actor.set(actorId);
+        try {
+            return action.call();
+        } finally {
+            if (previous == null) {
+                actor.remove();
+            } else {
+                actor.set(previous);
+            }
+        }
     }
 
     // Book operations
     public void addBook(Book book) throws IOException {
         CSVBookDAO.addBook(book);
+        csvItemDAO.withWriteLock(() -> {
+            ItemIndex items = getLockedItemIndex();
+            if (!items.hasCopies(book.getISBN())) {
+                createCopies(items, List.of(book), false);
+            }
+            return null;
+        });
+        indexBook(book);
+        invalidateReports(BOOKS, TITLES);
+        audit(AuditAction.BOOK_ADDED, book.getISBN(), book.getTitle());
     }
 
+    /**
+     * Updates the details of a book. Copy counts are derived from the book's items, so counts
+     * set on the updated book are ignored once its copies are recorded; use {@link #addCopies}
+     * and {@link #withdrawCopy} to change them.
+     *
+     * @param updatedBook The updated book information
+     * @throws IOException If an I/O error occurs
+     */
     public void updateBook(Book updatedBook) throws IOException {
+        ItemIndex items = getItemIndex();
+        if (items.hasCopies(updatedBook.getISBN())) {
+            ItemIndex.CopyCounts counts = items.getCopyCounts(updatedBook.getISBN());
+            updatedBook.setCopyCounts(counts.total(), counts.available());
+        }
         CSVBookDAO.updateBook(updatedBook);
+        indexBook(updatedBook);
+        invalidateReports(BOOKS, TITLES);
+        audit(AuditAction.BOOK_UPDATED, updatedBook.getISBN(), updatedBook.getTitle());
     }
 
+    /**
+     * Deletes a book and its copies. A book cannot be deleted while any copy is out, since its
+     * loans and reservations still refer to the copy.
+     *
+     * @param ISBN The ISBN of the book
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If a copy of the book is on loan or reserved
+     */
     public void deleteBook(String ISBN) throws IOException {
-        CSVBookDAO.deleteBook(ISBN);
+        csvItemDAO.withWriteLock(() -> {
+            ItemIndex items = getLockedItemIndex();
+            Set<String> barcodes = new HashSet<>();
+            for (Item item : items.getCopies(ISBN)) {
+                if (item.getStatus() != ItemStatus.AVAILABLE) {
+                    throw new IllegalArgumentException("Copy " + item.getBarcode() + " is "
+                            + item.getStatus().getDisplayName().toLowerCase());
+                }
+                barcodes.add(item.getBarcode());
+            }
+            CSVBookDAO.deleteBook(ISBN);
+            csvItemDAO.deleteItems(barcodes);
+            barcodes.forEach(items::remove);
+            return null;
+        });
+        invalidateReports(BOOKS, TITLES);
+        replicate(ReplicatedEntity.BOOK, ISBN);
+        audit(AuditAction.BOOK_DELETED, ISBN, null);
+        CatalogIndex index = catalogIndex;
+        if (index != null) {
+            index.remove(ISBN);
+        }
+        TrigramIndex titles = trigramIndex;
+        if (titles != null) {
+            titles.remove(ISBN);
+        }
+    }
+
+    public CatalogImporter.ImportResult importBooks(Path source) throws IOException {
+        return importBooks(source, null);
+    }
+
+    /**
+     * Adds new physical copies of a book, each with a freshly allocated barcode.
+     *
+     * @param ISBN The ISBN of the book
+     * @param count The number of copies to add
+     * @return The new items, whose barcodes go on the copy labels
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the count is not positive or no book has this ISBN
+     */
+    public List<Item> addCopies(String ISBN, int count) throws IOException {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Invalid number of copies: " + count);
+        }
+        List<Item> created = csvItemDAO.withWriteLock(() -> {
+            ItemIndex items = getLockedItemIndex();
+            Book book = requireCopiesRecorded(items, ISBN);
+            if (book == null) {
+                throw new IllegalArgumentException("Book not found: " + ISBN);
+            }
+            List<Item> copies = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                copies.add(new Item(items.nextBarcode(), ISBN, ItemStatus.AVAILABLE, null));
+            }
+            csvItemDAO.addItems(copies);
+            copies.forEach(items::put);
+            indexBook(CSVBookDAO.updateCopyCounts(ISBN, items.getCopyCounts(ISBN)));
+            return copies;
+        });
+        invalidateReports(BOOKS);
+        audit(AuditAction.COPIES_ADDED, ISBN, "count=" + count);
+        return created;
+    }
+
+    /**
+     * Removes a physical copy from the collection. Only copies on the shelf can be withdrawn.
+     *
+     * @param barcode The barcode of the copy
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the barcode is unknown or the copy is not on the shelf
+     */
+    public void withdrawCopy(String barcode) throws IOException {
+        csvItemDAO.withWriteLock(() -> {
+            ItemIndex items = getLockedItemIndex();
+            Item item = items.findByBarcode(barcode);
+            if (item == null) {
+                throw new IllegalArgumentException("Unknown barcode: " + barcode);
+            }
+            if (item.getStatus() != ItemStatus.AVAILABLE) {
+                throw new IllegalArgumentException("Item is " + item.getStatus().getDisplayName().toLowerCase());
+            }
+            csvItemDAO.deleteItems(Set.of(barcode));
+            items.remove(barcode);
+            indexBook(CSVBookDAO.updateCopyCounts(item.getISBN(), items.getCopyCounts(item.getISBN())));
+            return null;
+        });
+        invalidateReports(BOOKS);
+        audit(AuditAction.COPY_WITHDRAWN, barcode, null);
+    }
+
+    /**
+     * Resolves a scanned barcode to its copy.
+     *
+     * @param barcode The barcode
+     * @return The item, or null if no copy has this barcode
+     * @throws IOException If the item index has to be built and an I/O error occurs
+     */
+    public Item findItemByBarcode(String barcode) throws IOException {
+        return getItemIndex().findByBarcode(barcode);
+    }
+
+    /**
+     * Gets the physical copies of a book.
+     *
+     * @param ISBN The ISBN of the book
+     * @return The items, empty if the book has no copies
+     * @throws IOException If the item index has to be built and an I/O error occurs
+     */
+    public List<Item> getCopies(String ISBN) throws IOException {
+        return getItemIndex().getCopies(ISBN);
+    }
+
+    public CatalogImporter.ImportResult importBooks(Path source, CatalogImporter.ProgressListener listener) throws IOException {
+        CatalogImporter.ImportResult result = new CatalogImporter().importFile(source, listener, new CatalogImporter.CopySink() {
+            @Override
+            public <T> T withWriteLock(DataFileCoordinator.IOCallable<T> catalogWrite) throws IOException {
+                return csvItemDAO.withWriteLock(() -> {
+                    // Titles that only have counts get their items before the import adds to the counts
+                    getLockedItemIndex();
+                    return catalogWrite.call();
+                });
+            }
+
+            @Override
+            public void addCopies(Map<String, Integer> copies) throws IOException {
+                recordImportedCopies(copies);
+            }
+        });
+        invalidateCatalogIndex();
+        invalidateReports(BOOKS, TITLES);
+        replicate(ReplicatedEntity.BOOK, ReplicationLog.RELOAD_KEY);
+        audit(AuditAction.BOOKS_IMPORTED, source.toString(), "added=" + result.titlesAdded() + " merged=" + result.rowsMerged());
+        return result;
     }
 
     public List<Book> searchBooks(String query) throws IOException {
-        return CSVBookDAO.loadBooks().stream()
+        return admissionController.admit(OperationClass.SEARCH, null, () -> CSVBookDAO.loadBooks().stream()
                 .filter(book -> book.getTitle().contains(query) ||
                         book.getAuthor().contains(query) ||
                         book.getISBN().equals(query))
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Runs a catalog query combining genre, availability, author, title and copy-count predicates,
+     * with sorting, pagination and per-genre facet counts.
+     *
+     * @param query The query
+     * @return The requested page of matching books
+     * @throws IOException If the catalog has to be loaded and an I/O error occurs
+     */
+    public CatalogIndex.QueryResult queryBooks(BookQuery query) throws IOException {
+        return admissionController.admit(OperationClass.SEARCH, null, () -> getCatalogIndex().query(query));
+    }
+
+    /**
+     * Searches titles and authors while tolerating misspellings such as "Orwel" or "Tolkein".
+     * Results are ranked by similarity, boosted for available and frequently borrowed books.
+     *
+     * @param query The words to search for
+     * @param limit The maximum number of results
+     * @return The best matches, highest score first
+     * @throws IOException If the index has to be built and an I/O error occurs
+     */
+    public List<TrigramIndex.SearchHit> fuzzySearchBooks(String query, int limit) throws IOException {
+        return admissionController.admit(OperationClass.SEARCH, null, () -> getTrigramIndex().search(query, limit));
     }
 
     // Transaction operations
-    public void borrowBook(String userId, String ISBN, int loanDays) throws IOException {
-        User user = csvUserDAO.findUserById(userId);
-        Book book = CSVBookDAO.findBookByISBN(ISBN);
 
+    /**
+     * Lends a book to a patron. Scanning a copy's barcode lends that copy; giving an ISBN lends
+     * the next copy on the shelf. A patron with a reservation for the title picks up the
+     * reserved copy, or the scanned copy in its place.
+     *
+     * @param userId The ID of the patron
+     * @param code The barcode of a copy, or the ISBN of the title
+     * @param loanDays The loan period in days
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the patron is invalid or inactive, the barcode is unknown,
+     *                                  or no copy is available
+     */
+    public void borrowBook(String userId, String code, int loanDays) throws IOException {
+        AdmissionController.Permit permit = admissionController.acquire(OperationClass.CIRCULATION, userId);
+        try {
+            User user = csvUserDAO.findUserById(userId);
+            if (user == null || !user.isActive()) {
+                throw new IllegalArgumentException("Invalid or inactive user");
+            }
+            Item scanned = null;
+            String ISBN = code;
+            if (ItemIndex.isBarcode(code)) {
+                scanned = getItemIndex().findByBarcode(code);
+                if (scanned == null) {
+                    throw new IllegalArgumentException("Unknown barcode: " + code);
+                }
+                ISBN = scanned.getISBN();
+            }
+            String barcode = scanned == null ? null : scanned.getBarcode();
+            String borrowedISBN = ISBN;
+
+            // A reserved copy is already set aside for the user, so picking it up does not change availability
+            HoldQueueManager holds = getHoldQueueManager();
+            String reservationId = holds.findReservation(userId, ISBN);
+            if (reservationId != null && scanned != null && !reservationId.equals(scanned.getTransactionId())
+                    && scanned.getStatus() != ItemStatus.AVAILABLE) {
+                throw new IllegalArgumentException("Item is " + scanned.getStatus().getDisplayName().toLowerCase());
+            }
+            if (reservationId != null) {
+                boolean pickedUp = commitCirculation(() -> csvTransactionDAO.withWriteLock(() -> {
+                    Transaction reservation = csvTransactionDAO.findTransactionById(reservationId);
+                    if (reservation == null || reservation.getStatus() != TransactionStatus.RESERVED) {
+                        return false;
+                    }
+                    LocalDate pickupDeadline = reservation.getDueDate();
+                    reservation.setStatus(TransactionStatus.ACTIVE);
+                    reservation.setBorrowDate(LocalDate.now());
+                    reservation.setDueDate(LocalDate.now().plusDays(loanDays));
+                    csvTransactionDAO.updateTransaction(reservation);
+                    holds.releaseReservation(reservationId, userId, reservation.getISBN(), pickupDeadline);
+                    recordCirculation(CirculationEvent.BORROW, reservation.getBorrowDate(), userId, borrowedISBN);
+                    return true;
+                }));
+                if (pickedUp) {
+                    pickUpCopy(reservationId, barcode);
+                    replicate(ReplicatedEntity.TRANSACTION, reservationId);
+                    invalidateReports(LOANS, userReport(userId));
+                    recordBorrow(userId, CSVBookDAO.findBookByISBN(ISBN));
+                    audit(AuditAction.BOOK_BORROWED, reservationId, "user=" + userId + " isbn=" + ISBN);
+                    return;
+                }
+            }
+
+            // Checking and taking the copy in one write transaction keeps concurrent processes from
+            // lending out the same copy
+            Transaction transaction = new Transaction(userId, ISBN, loanDays);
+            Book book = checkOutCopy(ISBN, barcode, transaction.getTransactionId());
+            indexBook(book);
+            commitCirculation(() -> {
+                try {
+                    csvTransactionDAO.addTransaction(transaction);
+                } catch (IOException | RuntimeException e) {
+                    // The loan was never written, so the copy goes back on the shelf
+                    try {
+                        releaseCopies(Collections.singletonMap(transaction.getTransactionId(), null));
+                    } catch (IOException | RuntimeException restoreFailure) {
+                        e.addSuppressed(restoreFailure);
+                    }
+                    throw e;
+                }
+                recordCirculation(CirculationEvent.BORROW, transaction.getBorrowDate(), userId, borrowedISBN);
+                return null;
+            });
+            replicate(ReplicatedEntity.TRANSACTION, transaction.getTransactionId());
+            invalidateReports(BOOKS, BORROWS, LOANS, userReport(userId));
+            TrigramIndex titles = trigramIndex;
+            if (titles != null) {
+                titles.recordBorrow(ISBN);
+            }
+            recordBorrow(userId, book);
+            audit(AuditAction.BOOK_BORROWED, transaction.getTransactionId(), "user=" + userId + " isbn=" + ISBN);
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Takes back a lent book and hands it to the next patron waiting for the title, or puts it
+     * back on the shelf.
+     *
+     * @param code The barcode of the returned copy, or the ID of the loan
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the copy is not on loan or the loan is not open
+     */
+    public void returnBook(String code) throws IOException {
+        AdmissionController.Permit permit = admissionController.acquire(OperationClass.CIRCULATION, null);
+        try {
+            String transactionId = ItemIndex.isBarcode(code) ? loanOf(getItemIndex().findByBarcode(code), code) : code;
+            Transaction transaction = commitCirculation(() -> csvTransactionDAO.withWriteLock(() -> {
+                Transaction t = csvTransactionDAO.findTransactionById(transactionId);
+                if (t == null || !(t.getStatus().isOpenLoan() || t.getStatus() == TransactionStatus.LOST)) {
+                    throw new IllegalArgumentException("Invalid transaction");
+                }
+                // Loans already marked OVERDUE or LOST were counted as overdue by the status job
+                boolean countedOverdue = t.getStatus() == TransactionStatus.OVERDUE || t.getStatus() == TransactionStatus.LOST;
+                t.completeTransaction();
+                csvTransactionDAO.updateTransaction(t);
+                recordCirculation(CirculationEvent.RETURN, t.getReturnDate(), t.getUserId(), t.getISBN());
+                if (!countedOverdue && t.getReturnDate().isAfter(t.getDueDate())) {
+                    recordCirculation(CirculationEvent.OVERDUE, t.getDueDate().plusDays(1), t.getUserId(), t.getISBN());
+                }
+                return t;
+            }));
+            replicate(ReplicatedEntity.TRANSACTION, transaction.getTransactionId());
+            invalidateReports(LOANS, userReport(transaction.getUserId()));
+            audit(AuditAction.BOOK_RETURNED, transaction.getTransactionId(), "user=" + transaction.getUserId());
+
+            // Hand the returned copy straight to the next patron in the hold queue, if any
+            List<HoldQueueManager.Hold> taken = new ArrayList<>();
+            Transaction reservation = reserveForNextHold(transaction.getISBN(), taken);
+            if (reservation != null) {
+                try {
+                    csvTransactionDAO.addTransaction(reservation);
+                } catch (IOException e) {
+                    restoreHolds(taken, e);
+                    throw e;
+                }
+                getHoldQueueManager().registerReservation(reservation);
+                replicate(ReplicatedEntity.TRANSACTION, reservation.getTransactionId());
+                releaseCopies(Map.of(transaction.getTransactionId(), reservation.getTransactionId()));
+                invalidateReports(BORROWS, userReport(reservation.getUserId()));
+                audit(AuditAction.HOLD_RESERVED, reservation.getTransactionId(),
+                        "user=" + reservation.getUserId() + " isbn=" + reservation.getISBN());
+                notifyHoldsReady(List.of(reservation));
+                return;
+            }
+
+            releaseCopies(Collections.singletonMap(transaction.getTransactionId(), null));
+            invalidateReports(BOOKS);
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Renews a loan at the desk, extending its due date by two weeks. A loan can be renewed
+     * twice, and not while other patrons are waiting for the title.
+     *
+     * @param transactionId The ID of the loan
+     * @return The renewed loan
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the loan is not open, has reached the renewal limit
+     *                                  or the title has a hold queue
+     */
+    public Transaction renewLoan(String transactionId) throws IOException {
+        AdmissionController.Permit permit = admissionController.acquire(OperationClass.CIRCULATION, null);
+        try {
+            HoldQueueManager holds = getHoldQueueManager();
+            Transaction renewed = csvTransactionDAO.withWriteLock(() -> {
+                Transaction t = csvTransactionDAO.findTransactionById(transactionId);
+                if (t == null || !t.getStatus().isOpenLoan()) {
+                    throw new IllegalArgumentException("Invalid transaction");
+                }
+                holds.refresh();
+                if (holds.getQueueLength(t.getISBN()) > 0) {
+                    throw new IllegalArgumentException("Other patrons are waiting for this book");
+                }
+                if (!t.renewTransaction(RENEWAL_DAYS, MAX_RENEWALS)) {
+                    throw new IllegalArgumentException("Loan cannot be renewed");
+                }
+                csvTransactionDAO.updateTransaction(t);
+                return t;
+            });
+            replicate(ReplicatedEntity.TRANSACTION, renewed.getTransactionId());
+            invalidateReports(LOANS, userReport(renewed.getUserId()));
+            audit(AuditAction.LOAN_RENEWED, renewed.getTransactionId(), "due=" + renewed.getDueDate());
+            return renewed;
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Renews every eligible loan due within the given number of days, as a nightly job.
+     * Loans at the renewal limit and loans of titles with a hold queue are skipped. Loans are
+     * checked in parallel and all renewals are written with one rewrite of the transaction file.
+     *
+     * @param dueWithinDays Loans due on or before today plus this many days are considered
+     * @return The renewed loans
+     * @throws IOException If an I/O error occurs
+     */
+    public List<Transaction> autoRenewLoans(int dueWithinDays) throws IOException {
+        if (dueWithinDays < 0) {
+            throw new IllegalArgumentException("Invalid renewal window: " + dueWithinDays);
+        }
+        HoldQueueManager holds = getHoldQueueManager();
+        holds.refresh();
+        LocalDate dueBy = LocalDate.now().plusDays(dueWithinDays);
+        List<Transaction> renewed = csvTransactionDAO.updateOpenLoans(t ->
+                !t.getDueDate().isAfter(dueBy)
+                        && holds.getQueueLength(t.getISBN()) == 0
+                        && t.renewTransaction(RENEWAL_DAYS, MAX_RENEWALS));
+        invalidateReports(LOANS);
+        for (Transaction t : renewed) {
+            replicate(ReplicatedEntity.TRANSACTION, t.getTransactionId());
+            invalidateReports(userReport(t.getUserId()));
+            audit(AuditAction.LOAN_RENEWED, t.getTransactionId(), "due=" + t.getDueDate() + " auto");
+        }
+        return renewed;
+    }
+
+    // Branch operations. Each branch's holdings and loans are kept in its own partition.
+
+    /**
+     * Gets the branch partitions of the consortium, opening them on first use.
+     *
+     * @return The consortium
+     * @throws IOException If an I/O error occurs listing the branches
+     */
+    public synchronized BranchConsortium getBranchConsortium() throws IOException {
+        if (branchConsortium == null) {
+            branchConsortium = new BranchConsortium();
+        }
+        return branchConsortium;
+    }
+
+    /**
+     * Lends a copy held by a branch. Only the branch's partition is read and written.
+     *
+     * @param branchId The lending branch
+     * @param userId The ID of the patron
+     * @param ISBN The ISBN of the title
+     * @param loanDays The loan period in days
+     * @return The new loan
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the branch or patron is invalid, or the branch has no copy available
+     */
+    public Transaction borrowBookAtBranch(String branchId, String userId, String ISBN, int loanDays) throws IOException {
+        AdmissionController.Permit permit = admissionController.acquire(OperationClass.CIRCULATION, userId);
+        try {
+            User user = csvUserDAO.findUserById(userId);
+            if (user == null || !user.isActive()) {
+                throw new IllegalArgumentException("Invalid or inactive user");
+            }
+            Transaction loan = getBranchConsortium().getBranch(branchId).borrowBook(userId, ISBN, loanDays);
+            audit(AuditAction.BOOK_BORROWED, loan.getTransactionId(), "user=" + userId + " isbn=" + ISBN + " branch=" + branchId);
+            return loan;
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Takes back a copy lent by a branch.
+     *
+     * @param branchId The lending branch
+     * @param transactionId The ID of the loan
+     * @return The completed loan
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If the branch is unknown or has no open loan with this ID
+     */
+    public Transaction returnBookAtBranch(String branchId, String transactionId) throws IOException {
+        AdmissionController.Permit permit = admissionController.acquire(OperationClass.CIRCULATION, null);
+        try {
+            Transaction loan = getBranchConsortium().getBranch(branchId).returnBook(transactionId);
+            audit(AuditAction.BOOK_RETURNED, transactionId, "user=" + loan.getUserId() + " branch=" + branchId);
+            return loan;
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Searches the holdings of every branch in parallel.
+     *
+     * @param query The text to search for in titles and authors, or an exact ISBN
+     * @return The matches with the branch holding each
+     * @throws IOException If an I/O error occurs
+     */
+    public List<BranchConsortium.BranchHolding> searchAllBranches(String query) throws IOException {
+        return admissionController.admit(OperationClass.SEARCH, null, () -> getBranchConsortium().searchBooks(query));
+    }
+
+    /**
+     * Gets the most borrowed titles across all branches.
+     *
+     * @param topN The number of titles
+     * @param since Only borrows on or after this date are counted, or null for all
+     * @return The titles, most borrowed first
+     * @throws IOException If an I/O error occurs
+     */
+    public List<BranchConsortium.TitleBorrows> getConsortiumPopularBooks(int topN, LocalDate since) throws IOException {
+        return admissionController.admit(OperationClass.REPORTING, null, () -> getBranchConsortium().getPopularBooks(topN, since));
+    }
+
+    // Hold operations
+    public int placeHold(String userId, String ISBN) throws IOException {
+        User user = csvUserDAO.findUserById(userId);
         if (user == null || !user.isActive()) {
             throw new IllegalArgumentException("Invalid or inactive user");
         }
 
-        if (book == null || !book.isAvailable()) {
-            throw new IllegalArgumentException("Book not available");
+        Book book = CSVBookDAO.findBookByISBN(ISBN);
+        if (book == null) {
+            throw new IllegalArgumentException("Book not found");
+        }
+        if (book.isAvailable()) {
+            throw new IllegalArgumentException("Book is available and can be borrowed directly");
+        }
+
+        int position = getHoldQueueManager().placeHold(userId, ISBN);
+        audit(AuditAction.HOLD_PLACED, ISBN, "user=" + userId + " position=" + position);
+        return position;
+    }
+
+    public boolean cancelHold(String userId, String ISBN) throws IOException {
+        boolean cancelled = getHoldQueueManager().cancelHold(userId, ISBN);
+        if (cancelled) {
+            audit(AuditAction.HOLD_CANCELLED, ISBN, "user=" + userId);
+        }
+        return cancelled;
+    }
+
+    public int getHoldQueueLength(String ISBN) throws IOException {
+        return getHoldQueueManager().getQueueLength(ISBN);
+    }
+
+    /**
+     * Expires reservations whose pickup deadline has passed. Each released copy is offered to the
+     * next patron in the title's hold queue or put back on the shelf. All changes are written
+     * with one transaction file write and one catalog write.
+     *
+     * @return The number of reservations expired
+     * @throws IOException If an I/O error occurs
+     */
+    public int sweepExpiredHolds() throws IOException {
+        HoldQueueManager holds = getHoldQueueManager();
+        Set<String> expiredIds = new HashSet<>(holds.findExpiredReservations(LocalDate.now()));
+        if (expiredIds.isEmpty()) {
+            return 0;
+        }
+
+        // The new holder of each released copy, null for copies going back on the shelf
+        Map<String, String> copyHolders = new HashMap<>();
+        List<Transaction> reservations = new ArrayList<>();
+        List<Transaction> expiredReservations = new ArrayList<>();
+        List<HoldQueueManager.Hold> taken = new ArrayList<>();
+        AtomicBoolean shelved = new AtomicBoolean();
+        Set<String> affectedUsers = new HashSet<>();
+        try {
+            csvTransactionDAO.withWriteLock(() -> {
+                List<Transaction> transactions = csvTransactionDAO.loadTransactions();
+                Map<String, List<String>> releasedCopies = new HashMap<>();
+                for (Transaction t : transactions) {
+                    if (t.getStatus() == TransactionStatus.RESERVED && expiredIds.contains(t.getTransactionId())) {
+                        t.setStatus(TransactionStatus.EXPIRED);
+                        expiredReservations.add(t);
+                        affectedUsers.add(t.getUserId());
+                        releasedCopies.computeIfAbsent(t.getISBN(), isbn -> new ArrayList<>()).add(t.getTransactionId());
+                    }
+                }
+
+                for (Map.Entry<String, List<String>> entry : releasedCopies.entrySet()) {
+                    for (String expiredId : entry.getValue()) {
+                        Transaction reservation = reserveForNextHold(entry.getKey(), taken);
+                        if (reservation != null) {
+                            transactions.add(reservation);
+                            reservations.add(reservation);
+                            affectedUsers.add(reservation.getUserId());
+                            copyHolders.put(expiredId, reservation.getTransactionId());
+                        } else {
+                            copyHolders.put(expiredId, null);
+                            shelved.set(true);
+                        }
+                    }
+                }
+                csvTransactionDAO.saveTransactions(transactions);
+                return null;
+            });
+        } catch (IOException e) {
+            restoreHolds(taken, e);
+            throw e;
+        }
+        // The reservation indexes change only once the expiries and new reservations are written
+        for (Transaction t : expiredReservations) {
+            holds.releaseReservation(t);
+        }
+        for (Transaction reservation : reservations) {
+            holds.registerReservation(reservation);
+        }
+        invalidateReports(BORROWS);
+        for (String userId : affectedUsers) {
+            invalidateReports(userReport(userId));
+        }
+        for (Map.Entry<String, String> holder : copyHolders.entrySet()) {
+            replicate(ReplicatedEntity.TRANSACTION, holder.getKey());
+            audit(AuditAction.HOLD_EXPIRED, holder.getKey(), null);
+            if (holder.getValue() != null) {
+                replicate(ReplicatedEntity.TRANSACTION, holder.getValue());
+                audit(AuditAction.HOLD_RESERVED, holder.getValue(), null);
+            }
+        }
+
+        releaseCopies(copyHolders);
+        if (shelved.get()) {
+            invalidateReports(BOOKS);
+        }
+        notifyHoldsReady(reservations);
+        return expiredReservations.size();
+    }
+
+    /**
+     * Creates a reservation for the next active patron waiting on a title, taking the patron's
+     * hold off the queue. The caller persists the returned transaction and then registers it
+     * with the hold queue manager, or puts the taken holds back if the write fails.
+     *
+     * @param ISBN The ISBN of the title with a copy to hand out
+     * @param taken Receives the hold the reservation was made for
+     * @return The new RESERVED transaction, or null if nobody is waiting
+     */
+    private Transaction reserveForNextHold(String ISBN, List<HoldQueueManager.Hold> taken) throws IOException {
+        HoldQueueManager holds = getHoldQueueManager();
+        HoldQueueManager.Hold hold;
+        while ((hold = holds.pollNextHold(ISBN)) != null) {
+            User user = csvUserDAO.findUserById(hold.userId());
+            if (user != null && user.isActive()) {
+                Transaction reservation = new Transaction(hold.userId(), ISBN, HOLD_PICKUP_DAYS);
+                reservation.setStatus(TransactionStatus.RESERVED);
+                taken.add(hold);
+                return reservation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts holds back in their queues after the reservations made for them could not be written.
+     */
+    private void restoreHolds(List<HoldQueueManager.Hold> taken, IOException failure) {
+        try {
+            getHoldQueueManager().restoreHolds(taken);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Gets the ID of the loan holding a scanned copy.
+     *
+     * @throws IllegalArgumentException If the barcode is unknown or the copy is not on loan
+     */
+    private static String loanOf(Item item, String barcode) {
+        if (item == null) {
+            throw new IllegalArgumentException("Unknown barcode: " + barcode);
+        }
+        if (item.getStatus() != ItemStatus.ON_LOAN) {
+            throw new IllegalArgumentException("Item is not on loan");
+        }
+        if (item.getTransactionId() == null) {
+            throw new IllegalArgumentException("Item is on loan without a recorded loan");
+        }
+        return item.getTransactionId();
+    }
+
+    /**
+     * Lends a copy for a new loan and refreshes the title's copy counts.
+     *
+     * @param ISBN The ISBN of the title
+     * @param barcode The scanned copy, or null to take the next copy on the shelf
+     * @param transactionId The ID of the new loan
+     * @return The book with updated copy counts
+     * @throws IllegalArgumentException If the copy, or every copy of the title, is not on the shelf
+     */
+    private Book checkOutCopy(String ISBN, String barcode, String transactionId) throws IOException {
+        return csvItemDAO.withWriteLock(() -> {
+            ItemIndex items = getLockedItemIndex();
+            requireCopiesRecorded(items, ISBN);
+            Item item = barcode == null ? items.nextAvailable(ISBN) : items.findByBarcode(barcode);
+            if (item == null || item.getStatus() != ItemStatus.AVAILABLE) {
+                throw new IllegalArgumentException("Book not available");
+            }
+            Item lent = item.withStatus(ItemStatus.ON_LOAN, transactionId);
+            csvItemDAO.updateItems(List.of(lent));
+            items.put(lent);
+            return CSVBookDAO.updateCopyCounts(ISBN, items.getCopyCounts(ISBN));
+        });
+    }
+
+    /**
+     * Moves the copy reserved for a picked-up reservation onto the loan. If the patron brought
+     * another copy from the shelf, that copy is lent and the reserved one goes back on the shelf.
+     */
+    private void pickUpCopy(String reservationId, String barcode) throws IOException {
+        csvItemDAO.withWriteLock(() -> {
+            ItemIndex items = getLockedItemIndex();
+            Item reserved = items.findByTransaction(reservationId);
+            Item scanned = barcode == null ? null : items.findByBarcode(barcode);
+            List<Item> changes = new ArrayList<>();
+            if (scanned != null && !scanned.equals(reserved) && scanned.getStatus() == ItemStatus.AVAILABLE) {
+                changes.add(scanned.withStatus(ItemStatus.ON_LOAN, reservationId));
+                if (reserved != null) {
+                    changes.add(reserved.withStatus(ItemStatus.AVAILABLE, null));
+                }
+            } else if (reserved != null) {
+                changes.add(reserved.withStatus(ItemStatus.ON_LOAN, reservationId));
+            }
+            csvItemDAO.updateItems(changes);
+            changes.forEach(items::put);
+            return null;
+        });
+    }
+
+    /**
+     * Hands the copies held by closed loans or expired reservations to new reservations, or puts
+     * them back on the shelf, and refreshes the copy counts of the shelved titles.
+     *
+     * @param holders The new reservation ID for each released transaction ID, null to shelve the copy
+     */
+    private void releaseCopies(Map<String, String> holders) throws IOException {
+        if (holders.isEmpty()) {
+            return;
+        }
+        csvItemDAO.withWriteLock(() -> {
+            ItemIndex items = getLockedItemIndex();
+            List<Item> changes = new ArrayList<>();
+            for (Map.Entry<String, String> entry : holders.entrySet()) {
+                Item item = items.findByTransaction(entry.getKey());
+                if (item != null) {
+                    changes.add(entry.getValue() == null
+                            ? item.withStatus(ItemStatus.AVAILABLE, null)
+                            : item.withStatus(ItemStatus.RESERVED, entry.getValue()));
+                }
+            }
+            csvItemDAO.updateItems(changes);
+            Map<String, ItemIndex.CopyCounts> counts = new HashMap<>();
+            for (Item item : changes) {
+                items.put(item);
+                if (item.getStatus() == ItemStatus.AVAILABLE) {
+                    counts.put(item.getISBN(), null);
+                }
+            }
+            counts.replaceAll((isbn, ignored) -> items.getCopyCounts(isbn));
+            if (!counts.isEmpty()) {
+                CSVBookDAO.updateCopyCounts(counts).forEach(this::indexBook);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Makes sure the copies of a title are recorded as items. Titles added by a bulk import or
+     * another process only carry copy counts until their first circulation. Must run inside an
+     * item write transaction.
+     *
+     * @return The book, or null if no book has this ISBN
+     */
+    private Book requireCopiesRecorded(ItemIndex items, String ISBN) throws IOException {
+        Book book = CSVBookDAO.findBookByISBN(ISBN);
+        if (book != null && !items.hasCopies(ISBN)) {
+            createCopies(items, List.of(book), true);
         }
+        return book;
+    }
 
-        Transaction transaction = new Transaction(userId, ISBN, loanDays);
-        ArrayList<Transaction> temp = new ArrayList<>();
-        temp.add(transaction);
-        csvTransactionDAO.saveTransactions(temp);
+    /**
+     * Records the copies added by a catalog import as items and sets the copy counts of the
+     * imported titles from their items. Titles without items get one for every copy in the
+     * merged catalog. Must run inside an item write transaction.
+     *
+     * @param copies The number of copies imported for each title, keyed by ISBN
+     */
+    private void recordImportedCopies(Map<String, Integer> copies) throws IOException {
+        ItemIndex items = getLockedItemIndex();
+        List<Item> created = new ArrayList<>();
+        Set<String> untracked = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : copies.entrySet()) {
+            if (!items.hasCopies(entry.getKey())) {
+                untracked.add(entry.getKey());
+                continue;
+            }
+            for (int i = 0; i < entry.getValue(); i++) {
+                created.add(new Item(items.nextBarcode(), entry.getKey(), ItemStatus.AVAILABLE, null));
+            }
+        }
+        csvItemDAO.addItems(created);
+        created.forEach(items::put);
+        if (!untracked.isEmpty()) {
+            createCopies(items, CSVBookDAO.loadBooks().stream()
+                    .filter(book -> untracked.contains(book.getISBN()))
+                    .collect(Collectors.toList()), true);
+        }
+        Map<String, ItemIndex.CopyCounts> counts = new HashMap<>();
+        for (String ISBN : copies.keySet()) {
+            if (!untracked.contains(ISBN)) {
+                counts.put(ISBN, items.getCopyCounts(ISBN));
+            }
+        }
+        if (!counts.isEmpty()) {
+            CSVBookDAO.updateCopyCounts(counts);
+        }
+    }
 
-        book.updateAvailableCopies(-1);
-        CSVBookDAO.updateBook(book);
+    /**
+     * Records an item for every copy of titles that so far only have copy counts. With
+     * {@code assignLoans}, the open loans and reservations of each title are assigned to its
+     * first copies. Copies out without a loan to explain them are recorded as on loan without a
+     * transaction, so the stored copy counts are kept; mismatches are left to
+     * {@link #checkIntegrity}. Must run inside an item write transaction.
+     *
+     * @param items The item index
+     * @param books The titles without items
+     * @param assignLoans Whether the titles may already have copies out
+     */
+    private void createCopies(ItemIndex items, List<Book> books, boolean assignLoans) throws IOException {
+        Map<String, List<Transaction>> holders = new HashMap<>();
+        if (assignLoans) {
+            Set<String> titles = books.stream().map(Book::getISBN).collect(Collectors.toSet());
+            for (Transaction t : csvTransactionDAO.loadTransactions()) {
+                TransactionStatus status = t.getStatus();
+                if ((status.isOpenLoan() || status == TransactionStatus.LOST || status == TransactionStatus.RESERVED)
+                        && titles.contains(t.getISBN()) && items.findByTransaction(t.getTransactionId()) == null) {
+                    holders.computeIfAbsent(t.getISBN(), isbn -> new ArrayList<>()).add(t);
+                }
+            }
+        }
+        List<Item> created = new ArrayList<>();
+        for (Book book : books) {
+            List<Transaction> out = holders.getOrDefault(book.getISBN(), List.of());
+            // Copies out that no loan accounts for stay out, so the stored counts are kept
+            int unexplained = Math.max(0, book.getTotalCopies() - book.getAvailableCopies() - out.size());
+            for (int copy = 0; copy < book.getTotalCopies(); copy++) {
+                Item item;
+                if (copy < out.size()) {
+                    Transaction t = out.get(copy);
+                    item = new Item(items.nextBarcode(), book.getISBN(),
+                            t.getStatus() == TransactionStatus.RESERVED ? ItemStatus.RESERVED : ItemStatus.ON_LOAN,
+                            t.getTransactionId());
+                } else if (copy < out.size() + unexplained) {
+                    item = new Item(items.nextBarcode(), book.getISBN(), ItemStatus.ON_LOAN, null);
+                } else {
+                    item = new Item(items.nextBarcode(), book.getISBN(), ItemStatus.AVAILABLE, null);
+                }
+                created.add(item);
+            }
+        }
+        csvItemDAO.addItems(created);
+        created.forEach(items::put);
     }
 
-    public void returnBook(String transactionId) throws IOException {
-        Transaction transaction = csvTransactionDAO.findTransactionById(transactionId);
-        if (transaction == null || transaction.getStatus() != TransactionStatus.ACTIVE) {
-            throw new IllegalArgumentException("Invalid transaction");
+    /**
+     * Drops in-process state derived from a data file that another process has committed to.
+     *
+     * @param file The changed data file
+     */
+    private synchronized void onExternalCommit(Path file) {
+        if (file.endsWith(csvTransactionDAO.getPath())) {
+            csvTransactionDAO.invalidateCaches();
+            holdQueueManager = null;
+            circulationAnalytics = null;
+            coBorrowIndex = null;
+            circulationRollup = null;
+            invalidateReports(HISTORY);
+        } else if (file.endsWith(CSVBookDAO.getPath())) {
+            catalogIndex = null;
+            trigramIndex = null;
+            invalidateReports(BOOKS, TITLES);
+        } else if (file.endsWith(csvUserDAO.getPath())) {
+            invalidateReports(USERS);
+        } else if (file.endsWith(csvItemDAO.getPath())) {
+            itemIndex = null;
         }
+    }
 
-        transaction.completeTransaction();
-        csvTransactionDAO.updateTransaction(transaction);
+    /**
+     * Gets the item index, recording items for the copies of every title that has none yet.
+     */
+    private synchronized ItemIndex getItemIndex() throws IOException {
+        if (itemIndex == null) {
+            itemIndex = csvItemDAO.withWriteLock(this::loadItemIndex);
+        }
+        return itemIndex;
+    }
 
-        Book book = CSVBookDAO.findBookByISBN(transaction.getISBN());
-        book.updateAvailableCopies(1);
-        CSVBookDAO.updateBook(book);
+    /**
+     * Gets the item index for an item write transaction. The watcher reports commits by other
+     * processes asynchronously, so the cached index is reloaded when the item file has moved past
+     * both the generation the index was loaded from and the latest generation this process knows
+     * of. Must run inside an item write transaction; it does not take the monitor of this
+     * manager, which threads building the index hold while they wait for the file lock.
+     */
+    private ItemIndex getLockedItemIndex() throws IOException {
+        ItemIndex items = itemIndex;
+        long generation = DataFileCoordinator.getGeneration(csvItemDAO.getPath());
+        if (items == null || (generation != items.getGeneration()
+                && generation != DataFileCoordinator.getKnownGeneration(csvItemDAO.getPath()))) {
+            items = loadItemIndex();
+            itemIndex = items;
+        }
+        return items;
+    }
+
+    /**
+     * Loads the item index from the item file. Must run inside an item write transaction.
+     */
+    private ItemIndex loadItemIndex() throws IOException {
+        ItemIndex items = new ItemIndex(csvItemDAO.loadItems(), DataFileCoordinator.getGeneration(csvItemDAO.getPath()));
+        List<Book> untracked = new ArrayList<>();
+        for (Book book : CSVBookDAO.loadBooks()) {
+            if (book.getTotalCopies() > 0 && !items.hasCopies(book.getISBN())) {
+                untracked.add(book);
+            }
+        }
+        if (!untracked.isEmpty()) {
+            createCopies(items, untracked, true);
+        }
+        return items;
+    }
+
+    private synchronized CatalogIndex getCatalogIndex() throws IOException {
+        if (catalogIndex == null) {
+            catalogIndex = new CatalogIndex(CSVBookDAO.loadBooks());
+        }
+        return catalogIndex;
+    }
+
+    private synchronized TrigramIndex getTrigramIndex() throws IOException {
+        if (trigramIndex == null) {
+            TrigramIndex index = new TrigramIndex(CSVBookDAO.loadBooks());
+            LongIntHashMap borrows = new LongIntHashMap();
+            csvTransactionDAO.scanHistory(null, null, null, t -> borrows.addTo(ISBNUtils.toLong(t.getISBN()), 1));
+            borrows.forEach((isbn, count) -> index.setBorrowCount(ISBNUtils.fromLong(isbn), count));
+            trigramIndex = index;
+        }
+        return trigramIndex;
+    }
+
+    private synchronized CoBorrowIndex getCoBorrowIndex() throws IOException {
+        if (coBorrowIndex == null) {
+            CoBorrowIndex.Builder builder = new CoBorrowIndex.Builder();
+            csvTransactionDAO.scanHistory(null, null, null, t -> {
+                if (t.getStatus() != TransactionStatus.RESERVED && t.getStatus() != TransactionStatus.EXPIRED) {
+                    builder.add(t.getUserId(), t.getISBN(), t.getBorrowDate());
+                }
+            });
+            coBorrowIndex = builder.build(CoBorrowIndex.DEFAULT_NEIGHBORS, Runtime.getRuntime().availableProcessors());
+        }
+        return coBorrowIndex;
+    }
+
+    private synchronized CirculationAnalytics getCirculationAnalytics() throws IOException {
+        if (circulationAnalytics == null) {
+            CirculationAnalytics analytics = new CirculationAnalytics();
+            LongObjectHashMap<Book> catalog = new LongObjectHashMap<>();
+            for (Book book : CSVBookDAO.loadBooks()) {
+                catalog.put(book.getISBNKey(), book);
+            }
+            csvTransactionDAO.scanHistory(null, null, LocalDate.now().minusWeeks(CirculationAnalytics.DEFAULT_RETENTION_WEEKS), t -> {
+                Book book = catalog.get(ISBNUtils.toLong(t.getISBN()));
+                if (book != null && t.getStatus() != TransactionStatus.RESERVED && t.getStatus() != TransactionStatus.EXPIRED) {
+                    analytics.recordBorrow(t.getUserId(), book, t.getBorrowDate());
+                }
+            });
+            circulationAnalytics = analytics;
+        }
+        return circulationAnalytics;
+    }
+
+    /**
+     * Gets the circulation rollup, loading its snapshot if it reflects the current transaction
+     * file and rebuilding it from the history otherwise. Circulation commits wait for the build,
+     * so none is missed or counted twice.
+     */
+    private synchronized CirculationRollup getCirculationRollup() throws IOException {
+        if (circulationRollup == null) {
+            rollupLock.writeLock().lock();
+            try {
+                Path snapshot = Paths.get(CirculationRollup.DEFAULT_SNAPSHOT_PATH);
+                Path transactions = csvTransactionDAO.getPath();
+                long generation = DataFileCoordinator.getGeneration(transactions);
+                // Changes still queued in memory are not in the file the snapshot was stamped with
+                boolean committed = csvTransactionDAO.getPendingCommit().isDone();
+                CirculationRollup rollup = committed ? CirculationRollup.load(snapshot, generation) : null;
+                boolean saved = rollup != null;
+                if (rollup == null) {
+                    CirculationRollup.Builder builder = new CirculationRollup.Builder(loadCatalogByISBN(), loadUserRoles());
+                    csvTransactionDAO.scanHistory(null, null, null, builder::add);
+                    rollup = builder.build();
+                    if (committed && csvTransactionDAO.getPendingCommit().isDone()
+                            && DataFileCoordinator.getGeneration(transactions) == generation) {
+                        rollup.save(snapshot, generation);
+                        saved = true;
+                    }
+                }
+                circulationRollup = rollup;
+                savedRollup = saved ? rollup : null;
+                savedRollupUpdates = 0;
+            } finally {
+                rollupLock.writeLock().unlock();
+            }
+            if (rollupSnapshots == null) {
+                rollupSnapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "rollup-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                rollupSnapshots.scheduleWithFixedDelay(() -> {
+                    try {
+                        saveCirculationRollup();
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Unable to save the circulation rollup: " + e.getMessage());
+                    }
+                }, ROLLUP_SNAPSHOT_MINUTES, ROLLUP_SNAPSHOT_MINUTES, TimeUnit.MINUTES);
+            }
+        }
+        return circulationRollup;
+    }
+
+    /**
+     * Runs a circulation commit together with its rollup updates, so that no rollup snapshot or
+     * build falls between them.
+     */
+    private <T> T commitCirculation(DataFileCoordinator.IOCallable<T> commit) throws IOException {
+        rollupLock.readLock().lock();
+        try {
+            return commit.call();
+        } finally {
+            rollupLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts a committed circulation event in the rollup, if it has been built. Must be called
+     * inside {@link #commitCirculation}.
+     */
+    private void recordCirculation(CirculationEvent event, LocalDate date, String userId, String ISBN) throws IOException {
+        CirculationRollup rollup = circulationRollup;
+        if (rollup == null) {
+            return;
+        }
+        User user = csvUserDAO.findUserById(userId);
+        CatalogIndex catalog = catalogIndex;
+        Book book = catalog != null ? catalog.get(ISBN) : CSVBookDAO.findBookByISBN(ISBN);
+        if (user != null && book != null && book.getGenre() != null) {
+            rollup.record(event, date, book.getGenre(), user.getRole());
+        }
+    }
+
+    private static LongObjectHashMap<Book> loadCatalogByISBN() throws IOException {
+        LongObjectHashMap<Book> catalog = new LongObjectHashMap<>();
+        for (Book book : CSVBookDAO.loadBooks()) {
+            catalog.put(book.getISBNKey(), book);
+        }
+        return catalog;
+    }
+
+    private Map<String, UserRole> loadUserRoles() throws IOException {
+        Map<String, UserRole> roles = new HashMap<>();
+        for (User user : csvUserDAO.loadUsers()) {
+            roles.put(user.getUserId(), user.getRole());
+        }
+        return roles;
+    }
+
+    /**
+     * Feeds a borrow to the circulation analytics, if they have been built.
+     */
+    private void recordBorrow(String userId, Book book) {
+        CirculationAnalytics analytics = circulationAnalytics;
+        if (analytics != null && book != null) {
+            analytics.recordBorrow(userId, book, LocalDate.now());
+        }
+        CoBorrowIndex coBorrows = coBorrowIndex;
+        if (coBorrows != null && book != null) {
+            coBorrows.recordBorrow(userId, book.getISBN());
+        }
+    }
+
+    /**
+     * Reflects a committed book change in the catalog and title indexes, if they have been built.
+     */
+    private void indexBook(Book book) {
+        if (book == null) {
+            return;
+        }
+        replicate(ReplicatedEntity.BOOK, book.getISBN());
+        CatalogIndex index = catalogIndex;
+        if (index != null) {
+            index.put(book);
+        }
+        TrigramIndex titles = trigramIndex;
+        if (titles != null) {
+            titles.put(book);
+        }
+    }
+
+    private synchronized void invalidateCatalogIndex() {
+        catalogIndex = null;
+        trigramIndex = null;
+    }
+
+    private synchronized NotificationOutbox getNotificationOutbox() throws IOException {
+        if (notificationOutbox == null) {
+            notificationOutbox = new NotificationOutbox();
+        }
+        return notificationOutbox;
+    }
+
+    private synchronized HoldQueueManager getHoldQueueManager() throws IOException {
+        if (holdQueueManager == null) {
+            holdQueueManager = new HoldQueueManager(csvTransactionDAO.loadTransactions());
+        }
+        return holdQueueManager;
     }
 
     public List<Transaction> getUserTransactions(String userId) throws IOException {
@@ -91,26 +1275,387 @@ public class LibraryManager {
                 .collect(Collectors.toList());
     }
 
-    // Reporting operations
+    /**
+     * Finds the loan or reservation a scanned code refers to.
+     *
+     * @param code The barcode of a copy, or the ID of a transaction
+     * @return The transaction, or null if the code matches none or the copy is on the shelf
+     * @throws IOException If an I/O error occurs
+     */
+    public Transaction findTransaction(String code) throws IOException {
+        String transactionId = code;
+        if (ItemIndex.isBarcode(code)) {
+            Item item = getItemIndex().findByBarcode(code);
+            transactionId = item == null ? null : item.getTransactionId();
+        }
+        return transactionId == null ? null : csvTransactionDAO.findTransactionById(transactionId);
+    }
+
+    public int archiveCompletedLoans(LocalDate cutoff) throws IOException {
+        int archived = csvTransactionDAO.archiveCompletedBefore(cutoff);
+        invalidateReports(HISTORY);
+        replicate(ReplicatedEntity.TRANSACTION, ReplicationLog.RELOAD_KEY);
+        audit(AuditAction.LOANS_ARCHIVED, null, "before=" + cutoff + " count=" + archived);
+        return archived;
+    }
+
+    /**
+     * Verifies the invariants across the catalog, item, user and transaction files, and
+     * optionally corrects drifted copies and the copy counts derived from them.
+     *
+     * @param repair Whether to correct the copies and copy counts in one write of each file
+     * @return The discrepancy report
+     * @throws IOException If an I/O error occurs
+     */
+    public IntegrityChecker.IntegrityReport checkIntegrity(boolean repair) throws IOException {
+        IntegrityChecker checker = new IntegrityChecker();
+        if (!repair) {
+            return checker.check();
+        }
+        IntegrityChecker.IntegrityReport report = checker.repair();
+        if (report.itemsRepaired() > 0) {
+            // The repair is this process's own commit, so the watcher does not drop the index
+            itemIndex = null;
+        }
+        if (report.repaired() > 0) {
+            invalidateCatalogIndex();
+            invalidateReports(BOOKS);
+            replicate(ReplicatedEntity.BOOK, ReplicationLog.RELOAD_KEY);
+        }
+        if (report.repaired() > 0 || report.itemsRepaired() > 0) {
+            audit(AuditAction.COPY_COUNTS_REPAIRED, null, "books=" + report.repaired() + " items=" + report.itemsRepaired());
+        }
+        return report;
+    }
+
+    /**
+     * Runs the nightly status transitions on the main transaction file and on every branch partition.
+     *
+     * @return The combined summary of the runs
+     * @throws IOException If an I/O error occurs
+     */
+    public StatusTransitionJob.JobResult runStatusTransitions() throws IOException {
+        StatusTransitionJob.JobResult result = commitCirculation(() -> {
+            CirculationRollup rollup = circulationRollup;
+            List<StatusTransitionJob.Transition> transitions = new ArrayList<>();
+            StatusTransitionJob.JobResult run = new StatusTransitionJob(csvTransactionDAO.getPath())
+                    .run(rollup != null ? transitions::add : null);
+            if (rollup != null && run.resumedFromChunk() > 0) {
+                // Loans moved before the run was interrupted are not reported, so the counts are rebuilt
+                circulationRollup = null;
+            } else if (rollup != null) {
+                LongObjectHashMap<Book> catalog = loadCatalogByISBN();
+                Map<String, UserRole> roles = loadUserRoles();
+                for (StatusTransitionJob.Transition transition : transitions) {
+                    // A loan moved from OVERDUE to LOST was counted when it became overdue
+                    Book book = catalog.get(ISBNUtils.toLong(transition.ISBN()));
+                    UserRole role = roles.get(transition.userId());
+                    if (transition.previous() != TransactionStatus.OVERDUE && book != null && book.getGenre() != null && role != null) {
+                        rollup.record(CirculationEvent.OVERDUE, transition.dueDate().plusDays(1), book.getGenre(), role);
+                    }
+                }
+            }
+            return run;
+        });
+        // Branch loans are not counted in the rollup, which only covers the main collection
+        result = result.plus(getBranchConsortium().runStatusTransitions());
+        invalidateReports(HISTORY);
+        replicate(ReplicatedEntity.TRANSACTION, ReplicationLog.RELOAD_KEY);
+        audit(AuditAction.STATUSES_UPDATED, null, "overdue=" + result.markedOverdue() + " lost=" + result.markedLost());
+        return result;
+    }
+
+    // Reporting operations. Rendered reports are cached until a write changes the data they show.
     public void generateInventoryReport() throws IOException {
-        reportGenerator.generateInventoryReport();
+        System.out.print(cachedReport("inventory", List.of(BOOKS), null, reportGenerator::renderInventoryReport));
     }
 
     public void generateOverdueReport() throws IOException {
-        reportGenerator.generateOverdueReport();
+        // Keyed by date, since loans become overdue without any write
+        System.out.print(cachedReport("overdue:" + LocalDate.now(), List.of(LOANS, HISTORY), null,
+                reportGenerator::renderOverdueReport));
     }
 
     public void generateUserActivityReport(String userId) throws IOException {
-        reportGenerator.generateUserReport(userId);
+        System.out.print(cachedReport(userReport(userId), List.of(userReport(userId), USERS, HISTORY), userId,
+                () -> reportGenerator.renderUserReport(userId)));
+    }
+
+    public void generatePopularBooksReport(int topN) throws IOException {
+        generatePopularBooksReport(topN, null);
+    }
+
+    public void generatePopularBooksReport(int topN, LocalDate since) throws IOException {
+        System.out.print(cachedReport("popular:" + topN + ":" + since, List.of(BORROWS, TITLES, HISTORY), null,
+                () -> reportGenerator.renderPopularBooksReport(topN, since)));
+    }
+
+    /**
+     * Gets a report from the cache, or renders it if admission control admits the work.
+     * Cache hits do not touch the data files and are not rate limited.
+     */
+    private String cachedReport(String key, List<String> dependencies, String userId,
+                                DataFileCoordinator.IOCallable<String> render) throws IOException {
+        String cached = reportCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        return admissionController.admit(OperationClass.REPORTING, userId, () -> reportCache.get(key, dependencies, render));
+    }
+
+    // Circulation analytics. Answered from sketches in constant memory with bounded error.
+
+    /**
+     * Estimates how many distinct patrons borrowed a title in a date range.
+     *
+     * @param ISBN The ISBN of the title
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return The estimate, counted over the whole weeks the range touches
+     * @throws IOException If the analytics have to be built and an I/O error occurs
+     */
+    public long estimateDistinctBorrowers(String ISBN, LocalDate from, LocalDate to) throws IOException {
+        return getCirculationAnalytics().estimateDistinctBorrowers(ISBN, from, to);
+    }
+
+    /**
+     * Estimates how many distinct patrons borrowed books of a genre in a date range.
+     *
+     * @param genre The genre
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return The estimate, counted over the whole weeks the range touches
+     * @throws IOException If the analytics have to be built and an I/O error occurs
+     */
+    public long estimateDistinctBorrowers(Genre genre, LocalDate from, LocalDate to) throws IOException {
+        return getCirculationAnalytics().estimateDistinctBorrowers(genre, from, to);
+    }
+
+    /**
+     * Gets the most borrowed titles in a date range.
+     *
+     * @param limit The maximum number of titles, at most 100
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return ISBNs with estimated borrow counts, most borrowed first
+     * @throws IOException If the analytics have to be built and an I/O error occurs
+     */
+    public List<HeavyHitters.HeavyHitter> getTrendingTitles(int limit, LocalDate from, LocalDate to) throws IOException {
+        return getCirculationAnalytics().getTopTitles(limit, from, to);
+    }
+
+    /**
+     * Gets the most borrowed authors in a date range.
+     *
+     * @param limit The maximum number of authors, at most 100
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return Authors with estimated borrow counts, most borrowed first
+     * @throws IOException If the analytics have to be built and an I/O error occurs
+     */
+    public List<HeavyHitters.HeavyHitter> getTrendingAuthors(int limit, LocalDate from, LocalDate to) throws IOException {
+        return getCirculationAnalytics().getTopAuthors(limit, from, to);
+    }
+
+    /**
+     * Gets the titles patrons most often borrowed together with a title, for its catalog page.
+     *
+     * @param ISBN The ISBN of the title
+     * @param limit The maximum number of recommendations, at most 50
+     * @return The recommendations, most co-borrowed first
+     * @throws IOException If the index has to be built and an I/O error occurs
+     */
+    public List<CoBorrowIndex.Recommendation> getRecommendations(String ISBN, int limit) throws IOException {
+        return getCoBorrowIndex().recommend(ISBN, limit);
+    }
+
+    // Circulation dashboards. Counts come from the calendar rollup, loaded or rebuilt on first use.
+
+    /**
+     * Counts circulation events in a date range.
+     *
+     * @param event The event
+     * @param genre The genre, or null for all genres
+     * @param role The patron role, or null for all roles
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return The number of events
+     * @throws IOException If an I/O error occurs building the rollup
+     * @throws IllegalArgumentException If the range is empty
+     */
+    public long countCirculation(CirculationEvent event, Genre genre, UserRole role, LocalDate from, LocalDate to) throws IOException {
+        return getCirculationRollup().count(event, genre, role, from, to);
+    }
+
+    /**
+     * Counts circulation events in a date range for every genre.
+     *
+     * @param event The event
+     * @param role The patron role, or null for all roles
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return The number of events of each genre
+     * @throws IOException If an I/O error occurs building the rollup
+     * @throws IllegalArgumentException If the range is empty
+     */
+    public Map<Genre, Long> getCirculationByGenre(CirculationEvent event, UserRole role, LocalDate from, LocalDate to) throws IOException {
+        return getCirculationRollup().countByGenre(event, role, from, to);
+    }
+
+    /**
+     * Gets the daily counts of a circulation event.
+     *
+     * @param event The event
+     * @param genre The genre, or null for all genres
+     * @param role The patron role, or null for all roles
+     * @param from The first day
+     * @param to The last day
+     * @return The count of each day, in order
+     * @throws IOException If an I/O error occurs building the rollup
+     * @throws IllegalArgumentException If the range is empty or longer than a century
+     */
+    public long[] getDailyCirculation(CirculationEvent event, Genre genre, UserRole role, LocalDate from, LocalDate to) throws IOException {
+        return getCirculationRollup().getDailySeries(event, genre, role, from, to);
+    }
+
+    /**
+     * Gets the monthly counts of a circulation event.
+     *
+     * @param event The event
+     * @param genre The genre, or null for all genres
+     * @param role The patron role, or null for all roles
+     * @param from The first month
+     * @param to The last month
+     * @return The count of each month, in order
+     * @throws IOException If an I/O error occurs building the rollup
+     * @throws IllegalArgumentException If the range is empty or longer than a century
+     */
+    public long[] getMonthlyCirculation(CirculationEvent event, Genre genre, UserRole role, YearMonth from, YearMonth to) throws IOException {
+        return getCirculationRollup().getMonthlySeries(event, genre, role, from, to);
+    }
+
+    /**
+     * Gets the yearly counts of a circulation event.
+     *
+     * @param event The event
+     * @param genre The genre, or null for all genres
+     * @param role The patron role, or null for all roles
+     * @param fromYear The first year
+     * @param toYear The last year
+     * @return The count of each year, in order
+     * @throws IOException If an I/O error occurs building the rollup
+     * @throws IllegalArgumentException If the range is empty or longer than a century
+     */
+    public long[] getYearlyCirculation(CirculationEvent event, Genre genre, UserRole role, int fromYear, int toYear) throws IOException {
+        return getCirculationRollup().getYearlySeries(event, genre, role, fromYear, toYear);
+    }
+
+    /**
+     * Saves the circulation rollup to {@code data/rollup.bin} if it has counted events since it
+     * was last saved; this also runs every five minutes once the rollup is in use. The snapshot
+     * is stamped with the generation of the transaction file it reflects, and is skipped while
+     * changes are still queued in memory or while another process has committed a change the
+     * rollup has not yet been dropped for.
+     *
+     * @return true if a snapshot was written
+     * @throws IOException If an I/O error occurs
+     */
+    public boolean saveCirculationRollup() throws IOException {
+        CirculationRollup rollup = circulationRollup;
+        CirculationRollup copy;
+        long generation;
+        rollupLock.writeLock().lock();
+        try {
+            if (rollup == null || (rollup == savedRollup && rollup.getUpdateCount() == savedRollupUpdates)) {
+                return false;
+            }
+            Path transactions = csvTransactionDAO.getPath();
+            generation = DataFileCoordinator.getGeneration(transactions);
+            // The rollup is checked last: the change listeners drop it before the generation becomes known
+            if (!csvTransactionDAO.getPendingCommit().isDone()
+                    || generation != DataFileCoordinator.getKnownGeneration(transactions)
+                    || rollup != circulationRollup) {
+                return false;
+            }
+            copy = rollup.copy();
+        } finally {
+            rollupLock.writeLock().unlock();
+        }
+        copy.save(Paths.get(CirculationRollup.DEFAULT_SNAPSHOT_PATH), generation);
+        savedRollup = rollup;
+        savedRollupUpdates = copy.getUpdateCount();
+        return true;
+    }
+
+    /**
+     * Gets the hit, miss, eviction and invalidation counters of the report cache.
+     *
+     * @return The cache counters
+     */
+    public ReportCache.CacheStats getReportCacheStats() {
+        return reportCache.getStats();
+    }
+
+    private void invalidateReports(String... dependencies) {
+        for (String dependency : dependencies) {
+            reportCache.invalidate(dependency);
+        }
+    }
+
+    private static String userReport(String userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * Publishes a committed change to read replicas, if replication is enabled. Only the key is
+     * queued here; the record is read and shipped by the replication log's writer thread.
+     */
+    private void replicate(ReplicatedEntity entity, String key) {
+        if (replicationLog != null) {
+            replicationLog.publish(entity, key);
+        }
+    }
+
+    /**
+     * Records a committed change in the audit log, attributed to the user the calling thread is
+     * running as. Only queues the record, so it adds no I/O to the operation.
+     */
+    private void audit(AuditAction action, String subject, String detail) {
+        auditLog.record(action, actor.get(), subject, detail);
+    }
+
+    /**
+     * Gets a future completed once every change published so far is in the replication log.
+     *
+     * @return The future, already completed if replication is disabled
+     */
+    public CompletableFuture<Void> getPendingReplication() {
+        return replicationLog == null ? CompletableFuture.completedFuture(null) : replicationLog.flush();
+    }
+
+    /**
+     * Gets the admission control counters of every operation class, including how many
+     * operations were shed and why.
+     *
+     * @return The metrics, keyed by operation class
+     */
+    public Map<OperationClass, AdmissionController.LaneMetrics> getAdmissionMetrics() {
+        return admissionController.getMetrics();
     }
 
     // User management
     public void addUser(User user) throws IOException {
         csvUserDAO.addUser(user);
+        invalidateReports(userReport(user.getUserId()));
+        replicate(ReplicatedEntity.USER, user.getUserId());
+        audit(AuditAction.USER_ADDED, user.getUserId(), "role=" + user.getRole().name());
     }
 
     public void updateUser(User updatedUser) throws IOException {
         csvUserDAO.updateUser(updatedUser);
+        invalidateReports(userReport(updatedUser.getUserId()));
+        replicate(ReplicatedEntity.USER, updatedUser.getUserId());
+        audit(AuditAction.USER_UPDATED, updatedUser.getUserId(), null);
     }
 
     public void deactivateUser(String userId) throws IOException {
@@ -118,6 +1663,9 @@ public class LibraryManager {
         if (user != null) {
             user.setActive(false);
             csvUserDAO.updateUser(user);
+            invalidateReports(userReport(userId));
+            replicate(ReplicatedEntity.USER, userId);
+            audit(AuditAction.USER_DEACTIVATED, userId, null);
         }
     }
 
@@ -134,6 +1682,17 @@ public class LibraryManager {
         return csvTransactionDAO.loadTransactions();
     }
 
+    /**
+     * Gets a future completed once every change queued under a deferred durability mode
+     * has been written to the data files.
+     *
+     * @return The commit future, already completed in synchronous mode
+     */
+    public CompletableFuture<Void> getPendingCommits() {
+        return CompletableFuture.allOf(CSVBookDAO.getPendingCommit(), csvUserDAO.getPendingCommit(),
+                csvTransactionDAO.getPendingCommit(), csvItemDAO.getPendingCommit());
+    }
+
     // Additional business logic
     public boolean canUserBorrow(User user) throws IOException {
         if (user.getRole() == UserRole.ADMIN || user.getRole() == UserRole.LIBRARIAN) {
@@ -142,19 +1701,91 @@ public class LibraryManager {
 
         long activeLoans = csvTransactionDAO.loadTransactions().stream()
                 .filter(t -> t.getUserId().equals(user.getUserId()))
-                .filter(t -> t.getStatus() == TransactionStatus.ACTIVE ||
-                        t.getStatus() == TransactionStatus.RENEWED)
+                .filter(t -> t.getStatus().isOpenLoan())
                 .count();
 
         return activeLoans < 5; // Maximum 5 loans for regular members
     }
 
-    public void sendOverdueNotifications() throws IOException {
+    /**
+     * Queues an overdue notice for every overdue loan that has not had one yet. The notices are
+     * written to the outbox and delivered in the background once delivery has been started.
+     *
+     * @return The number of notices queued
+     * @throws IOException If an I/O error occurs
+     */
+    public int sendOverdueNotifications() throws IOException {
         List<Transaction> overdueTransactions = csvTransactionDAO.loadTransactions().stream()
                 .filter(Transaction::isOverdue)
                 .toList();
 
-        // Integration with email service would go here
-        System.out.println("Sending notifications for " + overdueTransactions.size() + " overdue books");
+        Map<String, User> users = csvUserDAO.loadUsers().stream()
+                .collect(Collectors.toMap(User::getUserId, user -> user, (first, second) -> first));
+        CatalogIndex catalog = getCatalogIndex();
+        long now = System.currentTimeMillis();
+        List<Notification> notifications = new ArrayList<>();
+        for (Transaction t : overdueTransactions) {
+            User user = users.get(t.getUserId());
+            if (user == null) {
+                continue;
+            }
+            Book book = catalog.get(t.getISBN());
+            String title = book != null ? book.getTitle() : t.getISBN();
+            notifications.add(new Notification(t.getTransactionId(), NotificationType.OVERDUE, user.getUserId(),
+                    user.getEmail(), "\"" + title + "\" was due on " + t.getDueDate() + ". Please return it.", now));
+        }
+        int queued = getNotificationOutbox().enqueue(notifications);
+        System.out.println("Queued " + queued + " notifications for " + overdueTransactions.size() + " overdue books");
+        return queued;
+    }
+
+    /**
+     * Starts delivering queued notifications in the background. Only one process sharing the
+     * data directory should deliver notifications.
+     *
+     * @param sink The transport notifications are delivered with
+     * @throws IOException If an I/O error occurs reading the outbox
+     * @throws IllegalStateException If delivery has already started
+     */
+    public void startNotificationDelivery(NotificationSink sink) throws IOException {
+        getNotificationOutbox().start(sink);
+    }
+
+    /**
+     * Gets the notification outbox counters.
+     *
+     * @return The counters
+     * @throws IOException If an I/O error occurs reading the outbox
+     */
+    public NotificationOutbox.OutboxStats getNotificationStats() throws IOException {
+        return getNotificationOutbox().getStats();
+    }
+
+    /**
+     * Queues a notice telling each patron that their reserved copy is ready for pickup. The
+     * reservations are already committed, so a failure to queue is reported and not thrown.
+     */
+    private void notifyHoldsReady(List<Transaction> reservations) throws IOException {
+        if (reservations.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Notification> notifications = new ArrayList<>();
+        for (Transaction reservation : reservations) {
+            User user = csvUserDAO.findUserById(reservation.getUserId());
+            if (user == null) {
+                continue;
+            }
+            Book book = getCatalogIndex().get(reservation.getISBN());
+            String title = book != null ? book.getTitle() : reservation.getISBN();
+            notifications.add(new Notification(reservation.getTransactionId(), NotificationType.HOLD_READY,
+                    user.getUserId(), user.getEmail(), "\"" + title + "\" is ready for pickup until "
+                    + reservation.getDueDate() + ".", now));
+        }
+        try {
+            getNotificationOutbox().enqueue(notifications);
+        } catch (IOException e) {
+            System.err.println("Unable to queue hold notifications: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,543 @@
+// File: LoadGenerator.java
+
+import enums.Genre;
+import enums.LoadOperation;
+import enums.TransactionStatus;
+import enums.UserRole;
+
+import javax.naming.AuthenticationException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a {@link LibraryManager} with a realistic mix of operations and reports throughput and
+ * latency percentiles.
+ * <p>
+ * The generator is open-loop. Operations are issued on a seeded Poisson schedule at the target rate
+ * whether or not earlier operations have completed, and each latency is measured from the moment the
+ * operation was scheduled to start rather than from when a worker picked it up. A stall therefore
+ * shows up in the percentiles of every operation that queued behind it instead of hiding as a
+ * single slow sample (coordinated omission). Service times measured from the actual start are
+ * reported next to them for comparison.
+ * <p>
+ * The operation schedule, the chosen patrons, titles and queries, and the generated data files all
+ * follow from the seed, so runs with the same seed and configuration can be compared across builds.
+ * Outcomes can still differ between runs where they depend on timing, such as which of two
+ * concurrent borrows gets the last copy.
+ */
+public class LoadGenerator {
+    private static final String PATRON_PASSWORD = "load-test";
+    private static final int HOT_HISTORY_DAYS = 90;
+    private static final String[] ADJECTIVES = {"Silent", "Hidden", "Broken", "Golden", "Last", "Distant", "Crimson",
+            "Forgotten", "Endless", "Quiet", "Burning", "Winter", "Secret", "Lonely", "Wild", "Iron", "Glass", "Dark"};
+    private static final String[] NOUNS = {"River", "Kingdom", "Garden", "Empire", "Voyage", "Mountain", "Harbor",
+            "Library", "Forest", "Machine", "Island", "Letter", "Promise", "Shadow", "Storm", "Orchard", "Bridge", "Sea"};
+    private static final String[] FIRST_NAMES = {"Ada", "Bruno", "Chloe", "Dmitri", "Elena", "Farid", "Grace", "Hiro",
+            "Ines", "Jonas", "Kara", "Luis", "Maya", "Noor", "Oscar", "Priya", "Quinn", "Rosa", "Sami", "Tess"};
+    private static final String[] LAST_NAMES = {"Abbott", "Brennan", "Castillo", "Dubois", "Eriksen", "Fischer",
+            "Garcia", "Hoffman", "Ivanova", "Jensen", "Kowalski", "Lindqvist", "Moreau", "Novak", "Okafor", "Petrov"};
+
+    private final Config config;
+
+    /**
+     * Scale, rate and operation mix of a run.
+     *
+     * @param seed Seed of the generated data and the operation schedule
+     * @param books Titles in the generated catalog
+     * @param patrons Patrons generated
+     * @param historyYears Years of loan history generated
+     * @param loansPerPatronPerYear Loans per patron per year of generated history
+     * @param ratePerSecond Target rate of issued operations
+     * @param threads Worker threads running the operations
+     * @param duration How long operations are issued
+     * @param mix Relative weight of every operation
+     */
+    public record Config(long seed, int books, int patrons, int historyYears, int loansPerPatronPerYear,
+                         double ratePerSecond, int threads, Duration duration, Map<LoadOperation, Integer> mix) {
+        public Config {
+            if (books <= 0 || patrons <= 0 || historyYears < 0 || loansPerPatronPerYear < 0 || ratePerSecond <= 0
+                    || threads <= 0 || duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException("Invalid load generator configuration");
+            }
+            if (mix.values().stream().anyMatch(weight -> weight < 0)
+                    || mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+                throw new IllegalArgumentException("Invalid operation mix: " + mix);
+            }
+            mix = Map.copyOf(mix);
+        }
+
+        /**
+         * Gets the default configuration: a small branch with a few years of history serving a
+         * day-time mix dominated by searches and logins.
+         *
+         * @return The default configuration
+         */
+        public static Config defaults() {
+            Map<LoadOperation, Integer> mix = new EnumMap<>(LoadOperation.class);
+            mix.put(LoadOperation.SEARCH, 40);
+            mix.put(LoadOperation.BORROW, 15);
+            mix.put(LoadOperation.RETURN, 15);
+            mix.put(LoadOperation.LOGIN, 25);
+            mix.put(LoadOperation.REPORT, 5);
+            return new Config(42, 10_000, 5_000, 3, 12, 200, 16, Duration.ofSeconds(30), mix);
+        }
+    }
+
+    /**
+     * Outcome counters and latencies of one operation.
+     *
+     * @param operation The operation
+     * @param succeeded Operations that completed normally
+     * @param shed Operations rejected by admission control
+     * @param rejected Operations refused by business rules, such as a title with no copy available
+     * @param failed Operations that failed with an I/O or unexpected error
+     * @param latency Latencies from the scheduled start, corrected for coordinated omission
+     * @param serviceTime Latencies from the actual start
+     */
+    public record OperationStats(LoadOperation operation, long succeeded, long shed, long rejected, long failed,
+                                 LatencyHistogram latency, LatencyHistogram serviceTime) {
+        public long total() {
+            return succeeded + shed + rejected + failed;
+        }
+    }
+
+    /**
+     * Result of a run.
+     *
+     * @param config The configuration of the run
+     * @param issued Operations issued
+     * @param elapsed Time from the first scheduled operation until the last one completed
+     * @param maxDispatchLagNanos Largest delay between an operation's scheduled start and its submission
+     * @param operations The statistics of every operation
+     */
+    public record RunResult(Config config, long issued, Duration elapsed, long maxDispatchLagNanos,
+                            Map<LoadOperation, OperationStats> operations) {
+
+        /**
+         * Prints a throughput and latency table.
+         *
+         * @param out The stream to print to
+         */
+        public void print(PrintStream out) {
+            double seconds = elapsed.toNanos() / 1e9;
+            out.printf("Seed %d, target %.0f ops/s, %d threads: %d operations in %.1f s (%.1f ops/s), max dispatch lag %.2f ms%n",
+                    config.seed(), config.ratePerSecond(), config.threads(), issued, seconds, issued / seconds,
+                    maxDispatchLagNanos / 1e6);
+            out.printf("%-8s %8s %8s %7s %8s %6s %9s %9s %9s %9s %9s %12s%n", "Op", "Count", "OK", "Shed", "Rejected",
+                    "Failed", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms");
+            LatencyHistogram all = new LatencyHistogram();
+            LatencyHistogram allService = new LatencyHistogram();
+            long[] totals = new long[5];
+            for (OperationStats stats : operations.values()) {
+                printRow(out, stats.operation().getDisplayName(), stats.total(), stats.succeeded(), stats.shed(),
+                        stats.rejected(), stats.failed(), stats.latency(), stats.serviceTime());
+                all.add(stats.latency());
+                allService.add(stats.serviceTime());
+                totals[0] += stats.total();
+                totals[1] += stats.succeeded();
+                totals[2] += stats.shed();
+                totals[3] += stats.rejected();
+                totals[4] += stats.failed();
+            }
+            printRow(out, "All", totals[0], totals[1], totals[2], totals[3], totals[4], all, allService);
+        }
+
+        private static void printRow(PrintStream out, String name, long total, long succeeded, long shed, long rejected,
+                                     long failed, LatencyHistogram latency, LatencyHistogram serviceTime) {
+            out.printf("%-8s %8d %8d %7d %8d %6d %9.2f %9.2f %9.2f %9.2f %9.2f %12.2f%n", name, total, succeeded, shed,
+                    rejected, failed, latency.getPercentile(50) / 1e6, latency.getPercentile(90) / 1e6,
+                    latency.getPercentile(99) / 1e6, latency.getPercentile(99.9) / 1e6, latency.getMax() / 1e6,
+                    serviceTime.getPercentile(99) / 1e6);
+        }
+    }
+
+    /**
+     * Creates a load generator.
+     *
+     * @param config The configuration
+     */
+    public LoadGenerator(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Replaces the books, users, transactions and items files in the data directory with a synthetic
+     * catalog, patrons and loan history. Completed loans older than 90 days are moved to the archive.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void generateData() throws IOException {
+        SplittableRandom random = new SplittableRandom(config.seed());
+        LocalDate today = LocalDate.now();
+
+        List<Book> books = new ArrayList<>(config.books());
+        Genre[] genres = Genre.values();
+        for (int i = 0; i < config.books(); i++) {
+            String title = "The " + pick(random, ADJECTIVES) + " " + pick(random, NOUNS)
+                    + (random.nextInt(3) == 0 ? " " + (i % 97 + 2) : "");
+            String author = pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES);
+            books.add(new Book(isbnOf(i), title, author, genres[random.nextInt(genres.length)], 1 + random.nextInt(6)));
+        }
+
+        String passwordHash = PasswordUtils.hashPassword(PATRON_PASSWORD);
+        List<User> users = new ArrayList<>(config.patrons());
+        for (int i = 0; i < config.patrons(); i++) {
+            String name = pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES);
+            users.add(User.restore(patronId(i), name, emailOf(i), passwordHash, UserRole.MEMBER, random.nextInt(50) != 0));
+        }
+
+        List<Transaction> transactions = new ArrayList<>();
+        int historyDays = config.historyYears() * 365;
+        long historyLoans = (long) config.patrons() * config.historyYears() * config.loansPerPatronPerYear();
+        for (long i = 0; i < historyLoans && historyDays > 0; i++) {
+            // Popularity is skewed: a small share of titles gets most of the loans
+            Book book = books.get(skewedIndex(random, books.size()));
+            LocalDate borrowed = today.minusDays(22 + random.nextInt(historyDays));
+            Transaction t = seededTransaction(random, patronId(random.nextInt(config.patrons())), book.getISBN(), borrowed, 14);
+            t.setReturnDate(borrowed.plusDays(1 + random.nextInt(21)));
+            t.setStatus(TransactionStatus.COMPLETED);
+            transactions.add(t);
+        }
+        // Open loans, some of them already overdue
+        for (int i = 0; i < config.patrons() / 3; i++) {
+            Book book = books.get(skewedIndex(random, books.size()));
+            if (book.getAvailableCopies() == 0) {
+                continue;
+            }
+            book.updateAvailableCopies(-1);
+            LocalDate borrowed = today.minusDays(random.nextInt(30));
+            transactions.add(seededTransaction(random, patronId(random.nextInt(config.patrons())), book.getISBN(), borrowed, 14));
+        }
+        transactions.sort((a, b) -> a.getBorrowDate().compareTo(b.getBorrowDate()));
+
+        CSVBookDAO.saveBooks(books);
+        new CSVUserDAO().saveUsers(users);
+        CSVTransactionDAO transactionDAO = new CSVTransactionDAO();
+        transactionDAO.saveTransactions(transactions);
+        transactionDAO.archiveCompletedBefore(today.minusDays(HOT_HISTORY_DAYS));
+        // Copies of the new catalog are recorded from its counts and open loans on first use
+        new CSVItemDAO().saveItems(List.of());
+    }
+
+    /**
+     * Runs the configured load against a library manager working on the data directory.
+     * Report output printed by the manager is discarded while the run is in progress.
+     *
+     * @param manager The library manager
+     * @return The throughput and latency statistics
+     * @throws IOException If the catalog or the open loans cannot be read before the run
+     */
+    public RunResult run(LibraryManager manager) throws IOException {
+        List<String> isbns = new ArrayList<>();
+        List<String> queries = new ArrayList<>();
+        for (Book book : manager.getAllBooks()) {
+            isbns.add(book.getISBN());
+            if (queries.size() < 1000) {
+                queries.add(book.getTitle());
+            }
+        }
+        ConcurrentLinkedQueue<String> openLoans = new ConcurrentLinkedQueue<>();
+        for (Transaction t : manager.getAllTransactions()) {
+            if (t.getStatus().isOpenLoan()) {
+                openLoans.add(t.getTransactionId());
+            }
+        }
+        int patrons = manager.getAllUsers().size();
+        if (isbns.isEmpty() || patrons == 0) {
+            throw new IllegalArgumentException("The data directory has no books or no patrons; generate data first");
+        }
+
+        Map<LoadOperation, Recorder> recorders = new EnumMap<>(LoadOperation.class);
+        for (LoadOperation operation : LoadOperation.values()) {
+            recorders.put(operation, new Recorder());
+        }
+        LoadOperation[] schedule = weightedOperations();
+        SplittableRandom random = new SplittableRandom(config.seed() ^ 0x5DEECE66DL);
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(config.threads(), config.threads(), 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "load-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long issued = 0;
+        long maxLag = 0;
+        long start = System.nanoTime();
+        long end = start + config.duration().toNanos();
+        double meanGapNanos = 1e9 / config.ratePerSecond();
+        try {
+            long scheduled = start;
+            while (true) {
+                // Poisson arrivals: exponentially distributed gaps between scheduled starts
+                scheduled += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+                if (scheduled >= end) {
+                    break;
+                }
+                LoadOperation operation = schedule[random.nextInt(schedule.length)];
+                Operation task = task(manager, operation, random.split(), isbns, queries, patrons, openLoans);
+                long wait;
+                while ((wait = scheduled - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                maxLag = Math.max(maxLag, -wait);
+                long intendedStart = scheduled;
+                Recorder recorder = recorders.get(operation);
+                workers.execute(() -> recorder.run(task, intendedStart));
+                issued++;
+            }
+            shutdown(workers);
+        } finally {
+            System.setOut(console);
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Map<LoadOperation, OperationStats> operations = new EnumMap<>(LoadOperation.class);
+        recorders.forEach((operation, recorder) -> operations.put(operation, recorder.toStats(operation)));
+        return new RunResult(config, issued, elapsed, maxLag, operations);
+    }
+
+    /**
+     * Builds the work of one scheduled operation. Every choice is drawn from the operation's own
+     * random stream, so the schedule does not depend on the order in which workers run.
+     */
+    private Operation task(LibraryManager manager, LoadOperation operation, SplittableRandom random, List<String> isbns,
+                          List<String> queries, int patrons, ConcurrentLinkedQueue<String> openLoans) {
+        String patronId = patronId(random.nextInt(patrons));
+        String isbn = isbns.get(skewedIndex(random, isbns.size()));
+        int variant = random.nextInt(100);
+        String query = queries.get(random.nextInt(queries.size()));
+        return switch (operation) {
+            case SEARCH -> () -> {
+                // Titles are "The <adjective> <noun>", optionally followed by a number
+                String word = query.split(" ")[1 + random.nextInt(2)];
+                if (variant < 50) {
+                    manager.searchBooks(word);
+                } else {
+                    // Drop one letter to exercise typo tolerance
+                    int drop = random.nextInt(word.length());
+                    manager.fuzzySearchBooks(word.substring(0, drop) + word.substring(drop + 1), 10);
+                }
+            };
+            case BORROW -> () -> manager.borrowBook(patronId, isbn, 14);
+            case RETURN -> () -> {
+                String transactionId = openLoans.poll();
+                if (transactionId == null) {
+                    throw new IllegalArgumentException("No open loan to return");
+                }
+                manager.returnBook(transactionId);
+            };
+            case LOGIN -> () -> {
+                String email = emailOf(Integer.parseInt(patronId.substring(1)));
+                // A few patrons mistype their password
+                String password = variant < 5 ? PATRON_PASSWORD + "x" : PATRON_PASSWORD;
+                if (manager.authenticateUser(email, password) == null) {
+                    throw new IllegalArgumentException("Authentication failed");
+                }
+            };
+            case REPORT -> () -> {
+                if (variant < 40) {
+                    manager.generateUserActivityReport(patronId);
+                } else if (variant < 70) {
+                    manager.generatePopularBooksReport(10);
+                } else if (variant < 90) {
+                    manager.generateOverdueReport();
+                } else {
+                    manager.generateInventoryReport();
+                }
+            };
+        };
+    }
+
+    private LoadOperation[] weightedOperations() {
+        List<LoadOperation> operations = new ArrayList<>();
+        for (LoadOperation operation : LoadOperation.values()) {
+            for (int i = 0; i < config.mix().getOrDefault(operation, 0); i++) {
+                operations.add(operation);
+            }
+        }
+        return operations.toArray(new LoadOperation[0]);
+    }
+
+    private static void shutdown(ExecutorService workers) {
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Every issued operation is waited for; abandoning them would hide the slowest ones
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Transaction seededTransaction(SplittableRandom random, String userId, String ISBN,
+                                                 LocalDate borrowed, int loanDays) {
+        Transaction t = new Transaction(userId, ISBN, loanDays);
+        t.setTransactionId(new UUID(random.nextLong(), random.nextLong()).toString());
+        t.setBorrowDate(borrowed);
+        t.setDueDate(borrowed.plusDays(loanDays));
+        return t;
+    }
+
+    /**
+     * Picks an index with a Zipf-like skew towards low indexes.
+     */
+    private static int skewedIndex(SplittableRandom random, int size) {
+        double u = random.nextDouble();
+        return (int) Math.min(size - 1, Math.floor(size * u * u * u));
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Builds a distinct, valid ISBN-13 for the i-th generated title.
+     */
+    private static String isbnOf(int i) {
+        // Multiplying by a number coprime with 10^9 spreads the sequence over distinct bodies
+        String body = "978" + String.format("%09d", (i * 7919L + 104_729L) % 1_000_000_000L);
+        int sum = 0;
+        for (int d = 0; d < 12; d++) {
+            sum += (body.charAt(d) - '0') * (d % 2 == 0 ? 1 : 3);
+        }
+        return body + ((10 - sum % 10) % 10);
+    }
+
+    private static String patronId(int i) {
+        return String.format("P%07d", i);
+    }
+
+    private static String emailOf(int i) {
+        return "patron" + i + "@load.test";
+    }
+
+    /**
+     * Collects the outcomes and latencies of one operation.
+     */
+    private static class Recorder {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong shed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        void run(Operation operation, long intendedStart) {
+            long start = System.nanoTime();
+            try {
+                operation.run();
+                succeeded.incrementAndGet();
+            } catch (OverloadException e) {
+                shed.incrementAndGet();
+            } catch (IllegalArgumentException | AuthenticationException e) {
+                rejected.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+            }
+            long end = System.nanoTime();
+            latency.record(end - intendedStart);
+            serviceTime.record(end - start);
+        }
+
+        OperationStats toStats(LoadOperation operation) {
+            return new OperationStats(operation, succeeded.get(), shed.get(), rejected.get(), failed.get(),
+                    latency, serviceTime);
+        }
+    }
+
+    /**
+     * The work of one scheduled operation.
+     */
+    @FunctionalInterface
+    private interface Operation {
+        void run() throws IOException, AuthenticationException;
+    }
+
+    /**
+     * Runs the load generator from the command line. Options are given as {@code --name=value}:
+     * {@code seed}, {@code books}, {@code patrons}, {@code years}, {@code loans-per-year}, {@code rate},
+     * {@code threads}, {@code seconds} and {@code mix} (for example {@code search=40,borrow=15,return=15,login=25,report=5}).
+     * With {@code --generate} the data directory is first replaced with generated data.
+     *
+     * @param args The options
+     * @throws IOException If an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        Config defaults = Config.defaults();
+        long seed = defaults.seed();
+        int books = defaults.books();
+        int patrons = defaults.patrons();
+        int years = defaults.historyYears();
+        int loansPerYear = defaults.loansPerPatronPerYear();
+        double rate = defaults.ratePerSecond();
+        int threads = defaults.threads();
+        Duration duration = defaults.duration();
+        Map<LoadOperation, Integer> mix = defaults.mix();
+        boolean generate = false;
+        for (String arg : args) {
+            if (arg.equals("--generate")) {
+                generate = true;
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Invalid option: " + arg);
+            }
+            String value = arg.substring(equals + 1);
+            switch (arg.substring(2, equals)) {
+                case "seed" -> seed = Long.parseLong(value);
+                case "books" -> books = Integer.parseInt(value);
+                case "patrons" -> patrons = Integer.parseInt(value);
+                case "years" -> years = Integer.parseInt(value);
+                case "loans-per-year" -> loansPerYear = Integer.parseInt(value);
+                case "rate" -> rate = Double.parseDouble(value);
+                case "threads" -> threads = Integer.parseInt(value);
+                case "seconds" -> duration = Duration.ofMillis((long) (Double.parseDouble(value) * 1000));
+                case "mix" -> mix = parseMix(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        LoadGenerator generator = new LoadGenerator(new Config(seed, books, patrons, years, loansPerYear, rate,
+                threads, duration, mix));
+        if (generate) {
+            long start = System.nanoTime();
+            generator.generateData();
+            System.out.printf("Generated %d books, %d patrons and %d years of history in %d ms%n", books, patrons,
+                    years, (System.nanoTime() - start) / 1_000_000);
+        }
+        generator.run(new LibraryManager()).print(System.out);
+        WriteBehindFlusher.flushAll();
+    }
+
+    private static Map<LoadOperation, Integer> parseMix(String value) {
+        Map<LoadOperation, Integer> mix = new EnumMap<>(LoadOperation.class);
+        for (String part : value.split(",")) {
+            String[] weight = part.split("=");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Invalid operation mix: " + value);
+            }
+            mix.put(LoadOperation.fromString(weight[0]), Integer.parseInt(weight[1].trim()));
+        }
+        return mix;
+    }
+}
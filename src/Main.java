@@ -22,19 +22,23 @@ public class Main {
                 System.out.println("Authentication failed");
             }
 
-            // Demonstrate book borrowing
+            // Demonstrate book borrowing and returning, recorded as changes by the authenticated user
             String userId = "MEM001";
             String ISBN = "9780060850524";
-            libraryManager.borrowBook(userId, ISBN, 14);
-            System.out.println("Book borrowed successfully");
-
-            // Demonstrate book returning
-            List<Transaction> userTransactions = libraryManager.getUserTransactions(userId);
-            if (!userTransactions.isEmpty()) {
-                String transactionId = userTransactions.getFirst().getTransactionId();
-                libraryManager.returnBook(transactionId);
-                System.out.println("Book returned successfully");
-            }
+            libraryManager.runAs(user != null ? user.getUserId() : null, () -> {
+                libraryManager.borrowBook(userId, ISBN, 14);
+                System.out.println("Book borrowed successfully");
+
+                List<Transaction> userTransactions = libraryManager.getUserTransactions(userId).stream()
+                        .filter(t -> t.getStatus().isOpenLoan())
+                        .toList();
+                if (!userTransactions.isEmpty()) {
+                    String transactionId = userTransactions.getLast().getTransactionId();
+                    libraryManager.returnBook(transactionId);
+                    System.out.println("Book returned successfully");
+                }
+                return null;
+            });
 
             // Generate reports
             System.out.println("\nInventory Report:");
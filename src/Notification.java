@@ -0,0 +1,126 @@
+// File: Notification.java
+
+import enums.NotificationType;
+
+import java.util.Objects;
+
+/**
+ * Represents a notice to a patron about one of their transactions. A notification is identified
+ * by its transaction and type, so each loan receives each kind of notice at most once.
+ * Notifications are immutable.
+ */
+public class Notification {
+    private final String transactionId;
+    private final NotificationType type;
+    private final String userId;
+    private final String recipient;
+    private final String message;
+    private final long createdAt;
+
+    /**
+     * Constructor for creating a notification.
+     *
+     * @param transactionId The loan or reservation the notice is about
+     * @param type The kind of notice
+     * @param userId The ID of the patron
+     * @param recipient The address the notice is delivered to
+     * @param message The text of the notice; line breaks are replaced by spaces
+     * @param createdAt When the notice was created, in epoch milliseconds
+     * @throws IllegalArgumentException If the transaction ID, user ID or recipient is missing or contains a comma
+     */
+    public Notification(String transactionId, NotificationType type, String userId, String recipient, String message,
+                        long createdAt) {
+        requireField("transaction ID", transactionId);
+        requireField("user ID", userId);
+        requireField("recipient", recipient);
+        this.transactionId = transactionId;
+        this.type = Objects.requireNonNull(type);
+        this.userId = userId;
+        this.recipient = recipient;
+        this.message = message.replace('\r', ' ').replace('\n', ' ');
+        this.createdAt = createdAt;
+    }
+
+    public String getTransactionId() { return transactionId; }
+
+    public NotificationType getType() { return type; }
+
+    public String getUserId() { return userId; }
+
+    public String getRecipient() { return recipient; }
+
+    public String getMessage() { return message; }
+
+    public long getCreatedAt() { return createdAt; }
+
+    /**
+     * Gets the key identifying the notice, used to send it only once.
+     *
+     * @return The transaction ID and the type
+     */
+    public String getKey() {
+        return keyOf(transactionId, type);
+    }
+
+    /**
+     * Gets the key of the notice of a type about a transaction.
+     *
+     * @param transactionId The transaction ID
+     * @param type The kind of notice
+     * @return The key
+     */
+    public static String keyOf(String transactionId, NotificationType type) {
+        return transactionId + ":" + type.name();
+    }
+
+    /**
+     * Creates a CSV representation of the notification. The message is the last column and may contain commas.
+     *
+     * @return A string containing the notification's data in CSV format
+     */
+    public String toCSV() {
+        return String.join(",", transactionId, type.name(), userId, recipient, String.valueOf(createdAt), message);
+    }
+
+    /**
+     * Creates a Notification object from a CSV string.
+     *
+     * @param csv The CSV string containing notification data
+     * @return A new Notification object
+     */
+    public static Notification fromCSV(String csv) {
+        String[] parts = csv.split(",", 6);
+        return new Notification(parts[0], NotificationType.fromString(parts[1]), parts[2], parts[3],
+                parts[5], Long.parseLong(parts[4]));
+    }
+
+    private static void requireField(String name, String value) {
+        if (value == null || value.isEmpty() || value.indexOf(',') >= 0) {
+            throw new IllegalArgumentException("Invalid notification " + name + ": " + value);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Notification notification = (Notification) o;
+        return transactionId.equals(notification.transactionId) && type == notification.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(transactionId, type);
+    }
+
+    @Override
+    public String toString() {
+        return "Notification{" +
+                "transactionId='" + transactionId + '\'' +
+                ", type=" + type +
+                ", userId='" + userId + '\'' +
+                ", recipient='" + recipient + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
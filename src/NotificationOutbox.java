@@ -0,0 +1,444 @@
+// File: NotificationOutbox.java
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable queue of notifications waiting to be delivered to patrons.
+ * <p>
+ * Enqueued notifications are appended to {@code data/outbox.log} in one write and the caller
+ * returns without waiting for delivery. A notification is identified by its transaction and type,
+ * and a key that was ever queued is not queued again, so rerunning a scan does not send a second
+ * notice. A dispatcher thread hands ready notifications to a {@link NotificationSink} in batches,
+ * holds back patrons who exceed their rate limit, retries failures with exponential backoff and
+ * jitter, and gives up after a fixed number of attempts. Deliveries are recorded in the log after
+ * the sink confirms them, so after a crash at most the batch in flight is sent again.
+ * <p>
+ * The log is rewritten with only the pending notifications and recent keys once it grows past
+ * its size limit. Run the dispatcher in one process; other processes may enqueue, and their
+ * notifications are picked up when they commit to the log.
+ */
+public class NotificationOutbox implements AutoCloseable {
+    private static final String FILE_PATH = "data/outbox.log";
+    private static final Path PATH = Paths.get(FILE_PATH);
+    private static final int BATCH_SIZE = 100;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long IDLE_WAIT_MILLIS = 1000;
+    private static final long COMPACT_BYTES = 8L * 1024 * 1024;
+    private static final long KEY_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(365);
+    private static final double RECIPIENT_BURST = 5;
+    private static final double RECIPIENT_PER_SECOND = 1;
+
+    // Log record prefixes
+    private static final String ENQUEUED = "E";
+    private static final String DELIVERED = "D";
+    private static final String ABANDONED = "X";
+
+    private final Path path;
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private final Map<String, Notification> appending = new HashMap<>(); // Queued, not yet in the log
+    private final Map<String, Long> finished = new HashMap<>(); // Key to creation time
+    private final ArrayDeque<Pending> ready = new ArrayDeque<>();
+    private final PriorityQueue<Pending> delayed = new PriorityQueue<>(Comparator.comparingLong(p -> p.nextAttemptAt));
+    private final Map<String, TokenBucket> recipientLimits = new HashMap<>();
+    private Thread dispatcher;
+    private NotificationSink sink;
+    private volatile boolean externalChanges;
+    private long enqueuedCount;
+    private long duplicateCount;
+    private long deliveredCount;
+    private long retryCount;
+    private long abandonedCount;
+
+    /**
+     * Outbox counters.
+     *
+     * @param enqueued Notifications queued by this process
+     * @param duplicates Notifications not queued because their key was already queued
+     * @param delivered Notifications confirmed by the sink
+     * @param retries Failed delivery attempts that were scheduled again
+     * @param abandoned Notifications given up after the last attempt
+     * @param pending Notifications waiting for delivery
+     */
+    public record OutboxStats(long enqueued, long duplicates, long delivered, long retries, long abandoned, int pending) {
+    }
+
+    /**
+     * A queued notification and its delivery attempts.
+     */
+    private static class Pending {
+        private final Notification notification;
+        private int attempts;
+        private long nextAttemptAt;
+
+        private Pending(Notification notification) {
+            this.notification = notification;
+        }
+    }
+
+    /**
+     * Opens the outbox in {@code data/outbox.log}, recovering the notifications not yet delivered.
+     *
+     * @throws IOException If an I/O error occurs reading the log
+     */
+    public NotificationOutbox() throws IOException {
+        this(PATH);
+    }
+
+    /**
+     * Opens an outbox, recovering the notifications not yet delivered.
+     *
+     * @param path The log file
+     * @throws IOException If an I/O error occurs reading the log
+     */
+    public NotificationOutbox(Path path) throws IOException {
+        this.path = path;
+        replay();
+        DataFileCoordinator.addChangeListener(file -> {
+            if (file.endsWith(path)) {
+                externalChanges = true;
+                wakeDispatcher();
+            }
+        });
+    }
+
+    /**
+     * Queues notifications for delivery with one append to the log. Returns once they are
+     * durable, without waiting for delivery.
+     *
+     * @param notifications The notifications
+     * @return The number of notifications queued; the others were already queued before
+     * @throws IOException If an I/O error occurs
+     */
+    public int enqueue(Collection<Notification> notifications) throws IOException {
+        List<Notification> added = new ArrayList<>();
+        synchronized (this) {
+            for (Notification notification : notifications) {
+                String key = notification.getKey();
+                if (pending.containsKey(key) || finished.containsKey(key) || appending.containsKey(key)) {
+                    duplicateCount++;
+                } else {
+                    appending.put(key, notification);
+                    added.add(notification);
+                }
+            }
+        }
+        if (added.isEmpty()) {
+            return 0;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Notification notification : added) {
+            lines.append(ENQUEUED).append(',').append(notification.toCSV()).append('\n');
+        }
+        try {
+            DataFileCoordinator.write(path, () -> {
+                appendLines(lines);
+                return null;
+            });
+        } finally {
+            synchronized (this) {
+                for (Notification notification : added) {
+                    appending.remove(notification.getKey());
+                }
+            }
+        }
+        synchronized (this) {
+            for (Notification notification : added) {
+                Pending entry = new Pending(notification);
+                pending.put(notification.getKey(), entry);
+                ready.add(entry);
+            }
+            enqueuedCount += added.size();
+            notifyAll();
+        }
+        return added.size();
+    }
+
+    /**
+     * Starts delivering queued notifications on a background thread.
+     *
+     * @param sink The transport
+     * @throws IllegalStateException If delivery has already started
+     */
+    public synchronized void start(NotificationSink sink) {
+        if (dispatcher != null) {
+            throw new IllegalStateException("Notification delivery has already started");
+        }
+        this.sink = sink;
+        dispatcher = new Thread(this::runDispatcher, "notification-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Stops delivery. Notifications not yet delivered stay in the log.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            thread = dispatcher;
+            dispatcher = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gets the outbox counters.
+     *
+     * @return The counters
+     */
+    public synchronized OutboxStats getStats() {
+        return new OutboxStats(enqueuedCount, duplicateCount, deliveredCount, retryCount, abandonedCount, pending.size());
+    }
+
+    private void runDispatcher() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (externalChanges) {
+                    externalChanges = false;
+                    replay();
+                }
+                List<Pending> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                Set<String> deliveredKeys;
+                try {
+                    deliveredKeys = sink.deliver(batch.stream().map(p -> p.notification).toList());
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Unable to deliver " + batch.size() + " notifications: " + e.getMessage());
+                    deliveredKeys = Set.of();
+                }
+                recordAttempts(batch, deliveredKeys);
+                compactIfNeeded();
+            }
+        } catch (InterruptedException e) {
+            // Stopped by close()
+        } catch (IOException e) {
+            System.err.println("Notification delivery stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for ready notifications and takes up to a batch of them, deferring the ones whose
+     * recipient is over the rate limit. Returns an empty batch when woken without work.
+     */
+    private synchronized List<Pending> nextBatch() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        while (!delayed.isEmpty() && delayed.peek().nextAttemptAt <= now) {
+            ready.add(delayed.poll());
+        }
+        List<Pending> batch = new ArrayList<>();
+        while (batch.size() < BATCH_SIZE && !ready.isEmpty()) {
+            Pending entry = ready.poll();
+            if (pending.get(entry.notification.getKey()) != entry) {
+                continue; // Delivered by another process
+            }
+            TokenBucket limit = recipientLimits.computeIfAbsent(entry.notification.getRecipient(),
+                    recipient -> new TokenBucket(RECIPIENT_BURST, RECIPIENT_PER_SECOND));
+            long waitNanos = limit.tryAcquire();
+            if (waitNanos > 0) {
+                entry.nextAttemptAt = now + TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1;
+                delayed.add(entry);
+            } else {
+                batch.add(entry);
+            }
+        }
+        if (batch.isEmpty() && !externalChanges) {
+            long wait = delayed.isEmpty() ? IDLE_WAIT_MILLIS : Math.max(delayed.peek().nextAttemptAt - now, 1);
+            wait(Math.min(wait, IDLE_WAIT_MILLIS));
+            // Buckets of recipients not limited recently carry no state worth keeping
+            recipientLimits.values().removeIf(TokenBucket::isFull);
+        }
+        return batch;
+    }
+
+    /**
+     * Records delivered and abandoned notifications in the log and schedules retries of the rest.
+     */
+    private void recordAttempts(List<Pending> batch, Set<String> deliveredKeys) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Pending entry : batch) {
+            Notification notification = entry.notification;
+            if (deliveredKeys.contains(notification.getKey())) {
+                lines.append(DELIVERED);
+            } else if (entry.attempts + 1 >= MAX_ATTEMPTS) {
+                lines.append(ABANDONED);
+            } else {
+                continue;
+            }
+            lines.append(',').append(notification.getKey()).append(',').append(notification.getCreatedAt()).append('\n');
+        }
+        if (!lines.isEmpty()) {
+            DataFileCoordinator.write(path, () -> {
+                appendLines(lines);
+                return null;
+            });
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Pending entry : batch) {
+                Notification notification = entry.notification;
+                if (pending.get(notification.getKey()) != entry) {
+                    continue;
+                }
+                entry.attempts++;
+                if (deliveredKeys.contains(notification.getKey())) {
+                    deliveredCount++;
+                } else if (entry.attempts >= MAX_ATTEMPTS) {
+                    System.err.println("Giving up on notification " + notification.getKey() + " after "
+                            + entry.attempts + " attempts");
+                    abandonedCount++;
+                } else {
+                    entry.nextAttemptAt = now + backoffMillis(entry.attempts);
+                    delayed.add(entry);
+                    retryCount++;
+                    continue;
+                }
+                pending.remove(notification.getKey());
+                finished.put(notification.getKey(), notification.getCreatedAt());
+            }
+        }
+    }
+
+    /**
+     * Gets the delay before the next attempt: doubling from one second up to fifteen minutes,
+     * with random jitter of up to half the delay so that failed batches do not retry in lockstep.
+     */
+    private static long backoffMillis(int attempts) {
+        long delay = Math.min(BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 20), MAX_BACKOFF_MILLIS);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Rewrites the log with the pending notifications and the keys finished within the retention
+     * period. The log is replayed under the same lock first, so notifications queued or delivered
+     * by other processes since the last replay survive the rewrite.
+     */
+    private void compactIfNeeded() throws IOException {
+        DataFileCoordinator.write(path, () -> {
+            if (!Files.exists(path) || Files.size(path) < COMPACT_BYTES) {
+                return null;
+            }
+            replay();
+            long cutoff = System.currentTimeMillis() - KEY_RETENTION_MILLIS;
+            synchronized (this) {
+                finished.values().removeIf(createdAt -> createdAt < cutoff);
+                DataFileCoordinator.replace(path, writer -> {
+                    for (Pending entry : pending.values()) {
+                        writer.write(ENQUEUED + "," + entry.notification.toCSV());
+                        writer.newLine();
+                    }
+                    for (Notification notification : appending.values()) {
+                        writer.write(ENQUEUED + "," + notification.toCSV());
+                        writer.newLine();
+                    }
+                    for (Map.Entry<String, Long> entry : finished.entrySet()) {
+                        writer.write(DELIVERED + "," + entry.getKey() + "," + entry.getValue());
+                        writer.newLine();
+                    }
+                });
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Reads the log and merges it into the in-memory state: notifications queued by other
+     * processes become pending, and notifications finished elsewhere are dropped.
+     */
+    private void replay() throws IOException {
+        Map<String, Notification> queued = new LinkedHashMap<>();
+        Map<String, Long> done = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma < 0) {
+                    continue; // A line torn by a crash
+                }
+                String record = line.substring(comma + 1);
+                try {
+                    switch (line.substring(0, comma)) {
+                        case ENQUEUED -> {
+                            Notification notification = Notification.fromCSV(record);
+                            queued.put(notification.getKey(), notification);
+                        }
+                        case DELIVERED, ABANDONED -> {
+                            int separator = record.lastIndexOf(',');
+                            done.put(record.substring(0, separator), Long.parseLong(record.substring(separator + 1)));
+                        }
+                        default -> {
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping unreadable outbox record: " + line);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        synchronized (this) {
+            finished.putAll(done);
+            for (Iterator<String> keys = pending.keySet().iterator(); keys.hasNext(); ) {
+                if (done.containsKey(keys.next())) {
+                    keys.remove();
+                }
+            }
+            for (Notification notification : queued.values()) {
+                String key = notification.getKey();
+                if (!done.containsKey(key) && !pending.containsKey(key)) {
+                    Pending entry = new Pending(notification);
+                    pending.put(key, entry);
+                    ready.add(entry);
+                }
+            }
+        }
+    }
+
+    private void appendLines(CharSequence lines) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        DataFileCoordinator.markWritten(path);
+    }
+
+    private synchronized void wakeDispatcher() {
+        notifyAll();
+    }
+}
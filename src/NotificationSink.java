@@ -0,0 +1,20 @@
+// File: NotificationSink.java
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Transport that delivers notifications to patrons, such as an email or SMS gateway.
+ * The notification outbox calls a sink from its dispatcher thread only, one batch at a time.
+ */
+public interface NotificationSink {
+    /**
+     * Delivers a batch of notifications.
+     *
+     * @param batch The notifications to deliver
+     * @return The keys of the notifications delivered; the others are retried later
+     * @throws IOException If the transport failed, in which case the whole batch is retried later
+     */
+    Set<String> deliver(List<Notification> batch) throws IOException;
+}
@@ -0,0 +1,32 @@
+// File: OverloadException.java
+
+import enums.OperationClass;
+
+import java.time.Duration;
+
+/**
+ * Thrown when an operation is rejected by admission control instead of being queued.
+ * Callers should retry no earlier than {@link #getRetryAfter()}.
+ */
+public class OverloadException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final OperationClass operationClass;
+    private final Duration retryAfter;
+
+    /**
+     * Creates an exception for a rejected operation.
+     *
+     * @param operationClass The class of the rejected operation
+     * @param retryAfter How long the caller should wait before retrying
+     * @param message The reason for the rejection
+     */
+    public OverloadException(OperationClass operationClass, Duration retryAfter, String message) {
+        super(message + " (retry after " + retryAfter.toMillis() + " ms)");
+        this.operationClass = operationClass;
+        this.retryAfter = retryAfter;
+    }
+
+    public OperationClass getOperationClass() { return operationClass; }
+    public Duration getRetryAfter() { return retryAfter; }
+}
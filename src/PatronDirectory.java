@@ -0,0 +1,481 @@
+// File: PatronDirectory.java
+
+import enums.UserRole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Patron records stored outside the Java heap.
+ * <p>
+ * Every patron occupies a fixed-size record in slabs of off-heap memory, either direct buffers or
+ * regions of a memory-mapped file, and is found through two open-addressing hash indexes by user ID
+ * and by email that are also held off-heap. The heap only holds a handful of buffer objects however
+ * many patrons are stored, so garbage collection work does not grow with the directory.
+ * {@link User} objects are created only when a record is looked up.
+ * <p>
+ * Fields longer than the fixed layout allows are kept in a small on-heap overflow map instead.
+ */
+public class PatronDirectory implements AutoCloseable {
+    private static final int ID_MAX = 40;
+    private static final int NAME_MAX = 64;
+    private static final int EMAIL_MAX = 80;
+    private static final int HASH_MAX = 64;
+
+    // Record layout: flags, role, then length-prefixed UTF-8 fields
+    private static final int FLAGS = 0;
+    private static final int ROLE = 1;
+    private static final int ID = 2;
+    private static final int NAME = ID + 1 + ID_MAX;
+    private static final int EMAIL = NAME + 1 + NAME_MAX;
+    private static final int HASH = EMAIL + 1 + EMAIL_MAX;
+    private static final int RECORD_SIZE = 256;
+    private static final byte LIVE = 1;
+    private static final byte ACTIVE = 2;
+
+    private static final int RECORDS_PER_SLAB = 65_536;
+    private static final long SLAB_BYTES = (long) RECORDS_PER_SLAB * RECORD_SIZE;
+    private static final float INDEX_LOAD_FACTOR = 0.5f;
+    private static final UserRole[] ROLES = UserRole.values();
+
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final FileChannel mappedFile;
+    private final Map<String, User> overflow = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ByteBuffer idIndex;
+    private ByteBuffer emailIndex;
+    private int indexCapacity;
+    private int recordCount;
+    private int liveCount;
+    private int[] freeRecords = new int[16];
+    private int freeCount;
+
+    /**
+     * Creates an empty directory in direct memory.
+     */
+    public PatronDirectory() {
+        this.mappedFile = null;
+        allocateIndexes(1024);
+    }
+
+    /**
+     * Creates a directory whose records live in a memory-mapped file. Records already in the file
+     * are indexed, so a directory can be reopened without reloading the patron file.
+     *
+     * @param file The backing file, created if it does not exist
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    public PatronDirectory(Path file) throws IOException {
+        this.mappedFile = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        allocateIndexes(1024);
+        long existingSlabs = (mappedFile.size() + SLAB_BYTES - 1) / SLAB_BYTES;
+        for (int slab = 0; slab < existingSlabs; slab++) {
+            addSlab();
+        }
+        for (int record = 0; record < existingSlabs * RECORDS_PER_SLAB; record++) {
+            ByteBuffer slab = slabOf(record);
+            int offset = offsetOf(record);
+            if ((slab.get(offset + FLAGS) & LIVE) != 0) {
+                recordCount = record + 1;
+                liveCount++;
+                ensureIndexCapacity();
+                insert(idIndex, hash(fieldBytes(slab, offset + ID)), record);
+                insert(emailIndex, hash(fieldBytes(slab, offset + EMAIL)), record);
+            }
+        }
+        for (int record = 0; record < recordCount; record++) {
+            if ((slabOf(record).get(offsetOf(record) + FLAGS) & LIVE) == 0) {
+                releaseRecord(record);
+            }
+        }
+    }
+
+    /**
+     * Adds a patron or replaces the stored record with the same user ID.
+     *
+     * @param user The patron
+     * @throws IllegalArgumentException If the user has no ID
+     */
+    public void put(User user) {
+        if (user.getUserId() == null) {
+            throw new IllegalArgumentException("User ID is required");
+        }
+        byte[] id = utf8(user.getUserId());
+        byte[] name = utf8(user.getName());
+        byte[] email = utf8(user.getEmail());
+        byte[] passwordHash = utf8(user.getPasswordHash());
+        lock.writeLock().lock();
+        try {
+            removeLocked(user.getUserId(), id);
+            if (id.length > ID_MAX || name.length > NAME_MAX || email.length > EMAIL_MAX || passwordHash.length > HASH_MAX) {
+                overflow.put(user.getUserId(), copyOf(user));
+                return;
+            }
+            int record = allocateRecord();
+            ByteBuffer slab = slabOf(record);
+            int offset = offsetOf(record);
+            putField(slab, offset + ID, id);
+            putField(slab, offset + NAME, name);
+            putField(slab, offset + EMAIL, email);
+            putField(slab, offset + HASH, passwordHash);
+            slab.put(offset + ROLE, (byte) user.getRole().ordinal());
+            slab.put(offset + FLAGS, (byte) (LIVE | (user.isActive() ? ACTIVE : 0)));
+            liveCount++;
+            ensureIndexCapacity();
+            insert(idIndex, hash(id), record);
+            insert(emailIndex, hash(email), record);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a patron by user ID.
+     *
+     * @param userId The user ID
+     * @return A new User object for the patron, or null if not found
+     */
+    public User findById(String userId) {
+        byte[] key = utf8(userId);
+        lock.readLock().lock();
+        try {
+            int record = find(idIndex, key, ID);
+            if (record >= 0) {
+                return materialize(record);
+            }
+            User user = overflow.get(userId);
+            return user == null ? null : copyOf(user);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a patron by email address.
+     *
+     * @param email The email address, compared exactly
+     * @return A new User object for the patron, or null if not found
+     */
+    public User findByEmail(String email) {
+        byte[] key = utf8(email);
+        lock.readLock().lock();
+        try {
+            int record = find(emailIndex, key, EMAIL);
+            if (record >= 0) {
+                return materialize(record);
+            }
+            for (User user : overflow.values()) {
+                if (email.equals(user.getEmail())) {
+                    return copyOf(user);
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a patron.
+     *
+     * @param userId The user ID
+     * @return true if the patron was stored
+     */
+    public boolean remove(String userId) {
+        lock.writeLock().lock();
+        try {
+            return removeLocked(userId, utf8(userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every patron.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int record = 0; record < recordCount; record++) {
+                slabOf(record).put(offsetOf(record) + FLAGS, (byte) 0);
+            }
+            overflow.clear();
+            recordCount = 0;
+            liveCount = 0;
+            freeCount = 0;
+            allocateIndexes(1024);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of stored patrons.
+     *
+     * @return The number of patrons
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount + overflow.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the off-heap memory used by records and indexes.
+     *
+     * @return The number of bytes allocated outside the heap
+     */
+    public long getOffHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return slabs.size() * SLAB_BYTES + 2L * indexCapacity * Long.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes a mapped directory to its file and closes it. Direct memory is released when the
+     * directory becomes unreachable.
+     *
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (mappedFile != null) {
+            lock.writeLock().lock();
+            try {
+                for (ByteBuffer slab : slabs) {
+                    ((MappedByteBuffer) slab).force();
+                }
+                mappedFile.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private boolean removeLocked(String userId, byte[] id) {
+        if (overflow.remove(userId) != null) {
+            return true;
+        }
+        int record = find(idIndex, id, ID);
+        if (record < 0) {
+            return false;
+        }
+        ByteBuffer slab = slabOf(record);
+        int offset = offsetOf(record);
+        delete(idIndex, hash(id), record);
+        delete(emailIndex, hash(fieldBytes(slab, offset + EMAIL)), record);
+        slab.put(offset + FLAGS, (byte) 0);
+        liveCount--;
+        releaseRecord(record);
+        return true;
+    }
+
+    private User materialize(int record) {
+        ByteBuffer slab = slabOf(record);
+        int offset = offsetOf(record);
+        byte flags = slab.get(offset + FLAGS);
+        return User.restore(fieldString(slab, offset + ID), fieldString(slab, offset + NAME),
+                fieldString(slab, offset + EMAIL), fieldString(slab, offset + HASH),
+                ROLES[slab.get(offset + ROLE)], (flags & ACTIVE) != 0);
+    }
+
+    private static User copyOf(User user) {
+        return User.restore(user.getUserId(), user.getName(), user.getEmail(), user.getPasswordHash(),
+                user.getRole(), user.isActive());
+    }
+
+    // Index slots hold the record number + 1 in the low 32 bits and a hash fragment in the high 32 bits
+
+    private int find(ByteBuffer index, byte[] key, int field) {
+        long hash = hash(key);
+        int mask = indexCapacity - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long entry = index.getLong(slot * Long.BYTES);
+            if (entry == 0) {
+                return -1;
+            }
+            int record = (int) entry - 1;
+            if ((int) (entry >>> 32) == fragment(hash) && fieldEquals(slabOf(record), offsetOf(record) + field, key)) {
+                return record;
+            }
+        }
+    }
+
+    private void insert(ByteBuffer index, long hash, int record) {
+        int mask = indexCapacity - 1;
+        int slot = (int) hash & mask;
+        while (index.getLong(slot * Long.BYTES) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putLong(slot * Long.BYTES, ((long) fragment(hash) << 32) | (record + 1L));
+    }
+
+    /**
+     * Removes a record's entry with backward-shift deletion, so probe chains stay intact.
+     */
+    private void delete(ByteBuffer index, long hash, int record) {
+        int mask = indexCapacity - 1;
+        int gap = (int) hash & mask;
+        for (long entry = index.getLong(gap * Long.BYTES); (int) entry - 1 != record; entry = index.getLong(gap * Long.BYTES)) {
+            if (entry == 0) {
+                return;
+            }
+            gap = (gap + 1) & mask;
+        }
+        for (int next = (gap + 1) & mask; ; next = (next + 1) & mask) {
+            long entry = index.getLong(next * Long.BYTES);
+            if (entry == 0) {
+                break;
+            }
+            int home = homeSlot(index, entry) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                index.putLong(gap * Long.BYTES, entry);
+                gap = next;
+            }
+        }
+        index.putLong(gap * Long.BYTES, 0);
+    }
+
+    private int homeSlot(ByteBuffer index, long entry) {
+        int record = (int) entry - 1;
+        int field = index == idIndex ? ID : EMAIL;
+        return (int) hash(fieldBytes(slabOf(record), offsetOf(record) + field));
+    }
+
+    private void ensureIndexCapacity() {
+        if (liveCount > indexCapacity * INDEX_LOAD_FACTOR) {
+            ByteBuffer oldIds = idIndex;
+            ByteBuffer oldEmails = emailIndex;
+            int oldCapacity = indexCapacity;
+            allocateIndexes(oldCapacity * 2);
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                long entry = oldIds.getLong(slot * Long.BYTES);
+                if (entry != 0) {
+                    reinsert(idIndex, entry, ID);
+                }
+                entry = oldEmails.getLong(slot * Long.BYTES);
+                if (entry != 0) {
+                    reinsert(emailIndex, entry, EMAIL);
+                }
+            }
+        }
+    }
+
+    private void reinsert(ByteBuffer index, long entry, int field) {
+        int record = (int) entry - 1;
+        insert(index, hash(fieldBytes(slabOf(record), offsetOf(record) + field)), record);
+    }
+
+    private void allocateIndexes(int capacity) {
+        indexCapacity = capacity;
+        idIndex = ByteBuffer.allocateDirect(capacity * Long.BYTES);
+        emailIndex = ByteBuffer.allocateDirect(capacity * Long.BYTES);
+    }
+
+    private int allocateRecord() {
+        if (freeCount > 0) {
+            return freeRecords[--freeCount];
+        }
+        int record = recordCount++;
+        if (record / RECORDS_PER_SLAB >= slabs.size()) {
+            try {
+                addSlab();
+            } catch (IOException e) {
+                recordCount--;
+                throw new IllegalStateException("Unable to grow patron directory", e);
+            }
+        }
+        return record;
+    }
+
+    private void releaseRecord(int record) {
+        if (freeCount == freeRecords.length) {
+            freeRecords = Arrays.copyOf(freeRecords, freeCount * 2);
+        }
+        freeRecords[freeCount++] = record;
+    }
+
+    private void addSlab() throws IOException {
+        if (mappedFile == null) {
+            slabs.add(ByteBuffer.allocateDirect((int) SLAB_BYTES));
+        } else {
+            slabs.add(mappedFile.map(FileChannel.MapMode.READ_WRITE, slabs.size() * SLAB_BYTES, SLAB_BYTES));
+        }
+    }
+
+    private ByteBuffer slabOf(int record) {
+        return slabs.get(record / RECORDS_PER_SLAB);
+    }
+
+    private static int offsetOf(int record) {
+        return (record % RECORDS_PER_SLAB) * RECORD_SIZE;
+    }
+
+    private static void putField(ByteBuffer slab, int position, byte[] value) {
+        slab.put(position, (byte) value.length);
+        slab.put(position + 1, value);
+    }
+
+    private static byte[] fieldBytes(ByteBuffer slab, int position) {
+        byte[] value = new byte[slab.get(position) & 0xFF];
+        slab.get(position + 1, value);
+        return value;
+    }
+
+    private static String fieldString(ByteBuffer slab, int position) {
+        return new String(fieldBytes(slab, position), StandardCharsets.UTF_8);
+    }
+
+    private static boolean fieldEquals(ByteBuffer slab, int position, byte[] key) {
+        if ((slab.get(position) & 0xFF) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (slab.get(position + 1 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 64-bit FNV-1a hash with a final mix, so both the low bits (slot) and the high bits
+     * (fragment) are well distributed.
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static int fragment(long hash) {
+        int fragment = (int) (hash >>> 32);
+        return fragment == 0 ? 1 : fragment;
+    }
+}
@@ -0,0 +1,513 @@
+// File: ReadReplica.java
+
+import enums.ReplicatedEntity;
+import enums.TransactionStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Read-only copy of the library data, kept current by tailing the replication log.
+ * <p>
+ * A replica starts from a snapshot of the data files and then applies the entries the primary
+ * appends to {@link ReplicationLog}, keeping books, users and hot transactions in memory together
+ * with its own catalog and fuzzy-search indexes. Reports and searches run against this state, so
+ * they can be served by other processes without reading the primary's files on every request or
+ * competing with circulation for its locks. Archived history is read from the archive segments,
+ * which are immutable once written.
+ * <p>
+ * Entries are applied in sequence order. A gap in the sequence, such as after the replica missed
+ * a log rotation, is repaired by reloading a snapshot. The replica reports how far it is behind
+ * the log and how long entries took to arrive.
+ */
+public class ReadReplica implements ReportGenerator.DataSource, AutoCloseable {
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final CSVUserDAO userDAO = new CSVUserDAO();
+    private final CSVTransactionDAO transactionDAO = new CSVTransactionDAO();
+    private final TransactionArchive archive = new TransactionArchive();
+    private final ReportGenerator reportGenerator = new ReportGenerator(this);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Book> books = new LinkedHashMap<>();
+    private final Map<String, User> users = new HashMap<>();
+    private final Map<String, Transaction> transactions = new LinkedHashMap<>();
+    private CatalogIndex catalogIndex;
+    private TrigramIndex trigramIndex;
+    private ScheduledExecutorService poller;
+
+    // Log tailing state, guarded by the instance monitor
+    private FileChannel channel;
+    private Object channelKey;
+    private long position;
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private volatile long appliedSequence;
+    private volatile long lastDelayMillis;
+    private volatile long maxDelayMillis;
+    private volatile long appliedEntries;
+    private volatile int snapshotLoads;
+
+    /**
+     * Replication progress of a replica.
+     *
+     * @param appliedSequence The sequence number of the last applied entry
+     * @param logSequence The sequence number of the last entry in the log
+     * @param lastDelayMillis Time from the primary's commit to this replica applying the last entry
+     * @param maxDelayMillis The largest such delay seen
+     * @param appliedEntries The number of entries applied
+     * @param snapshotLoads The number of snapshots loaded, including the initial one
+     */
+    public record ReplicationStatus(long appliedSequence, long logSequence, long lastDelayMillis, long maxDelayMillis,
+                                    long appliedEntries, int snapshotLoads) {
+        /**
+         * Gets the number of log entries not yet applied.
+         *
+         * @return The lag in entries
+         */
+        public long getLagEntries() {
+            return Math.max(logSequence - appliedSequence, 0);
+        }
+    }
+
+    /**
+     * Creates a replica from a snapshot of the data files.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public ReadReplica() throws IOException {
+        catchUpFromSnapshot();
+    }
+
+    /**
+     * Applies every complete entry appended to the log since the last poll.
+     *
+     * @return The number of entries applied
+     * @throws IOException If an I/O error occurs
+     */
+    public synchronized int poll() throws IOException {
+        int applied = 0;
+        while (true) {
+            if (channel == null && !openLog()) {
+                return applied;
+            }
+            applied += readAppended();
+            // The primary rotates the log by replacing the file; the old one is drained first
+            Object currentKey = fileKeyOf(ReplicationLog.getPath());
+            if (Objects.equals(currentKey, channelKey)) {
+                return applied;
+            }
+            closeLog();
+        }
+    }
+
+    /**
+     * Polls the log periodically on a background thread.
+     *
+     * @param pollMillis The interval between polls
+     * @throws IllegalArgumentException If the interval is not positive
+     * @throws IllegalStateException If the replica is already polling
+     */
+    public synchronized void start(long pollMillis) {
+        if (pollMillis <= 0) {
+            throw new IllegalArgumentException("Invalid poll interval: " + pollMillis);
+        }
+        if (poller != null) {
+            throw new IllegalStateException("Replica is already polling");
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "read-replica-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Unable to apply the replication log: " + e.getMessage());
+            }
+        }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling and closes the log.
+     */
+    @Override
+    public synchronized void close() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+        closeLog();
+    }
+
+    /**
+     * Replaces the replica's state with the current data files and continues from the end of the log.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public synchronized void catchUpFromSnapshot() throws IOException {
+        // Entries appended while the files are read carry full records, so applying them again is harmless
+        long sequence = ReplicationLog.readLastSequence(ReplicationLog.getPath());
+        List<Book> loadedBooks = CSVBookDAO.loadBooks();
+        List<User> loadedUsers = userDAO.loadUsers();
+        List<Transaction> loadedTransactions = transactionDAO.loadTransactions();
+        lock.writeLock().lock();
+        try {
+            books.clear();
+            loadedBooks.forEach(book -> books.put(book.getISBN(), book));
+            users.clear();
+            loadedUsers.forEach(user -> users.put(user.getUserId(), user));
+            transactions.clear();
+            loadedTransactions.forEach(t -> transactions.put(t.getTransactionId(), t));
+            archive.invalidate();
+            rebuildIndexes();
+            appliedSequence = sequence;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        snapshotLoads++;
+    }
+
+    /**
+     * Gets the replication progress.
+     *
+     * @return The status
+     * @throws IOException If an I/O error occurs reading the log
+     */
+    public ReplicationStatus getStatus() throws IOException {
+        return new ReplicationStatus(appliedSequence, ReplicationLog.readLastSequence(ReplicationLog.getPath()),
+                lastDelayMillis, maxDelayMillis, appliedEntries, snapshotLoads);
+    }
+
+    /**
+     * Gets a report generator reading the replica's state.
+     *
+     * @return The report generator
+     */
+    public ReportGenerator getReportGenerator() {
+        return reportGenerator;
+    }
+
+    /**
+     * Searches titles and authors for a substring, or for an exact ISBN.
+     *
+     * @param query The text to search for
+     * @return The matching books
+     */
+    public List<Book> searchBooks(String query) {
+        lock.readLock().lock();
+        try {
+            return books.values().stream()
+                    .filter(book -> book.getTitle().contains(query) ||
+                            book.getAuthor().contains(query) ||
+                            book.getISBN().equals(query))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a catalog query against the replica's catalog index.
+     *
+     * @param query The query
+     * @return The requested page of matching books
+     */
+    public CatalogIndex.QueryResult queryBooks(BookQuery query) {
+        lock.readLock().lock();
+        try {
+            return catalogIndex.query(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches titles and authors while tolerating misspellings.
+     *
+     * @param query The words to search for
+     * @param limit The maximum number of results
+     * @return The best matches, highest score first
+     */
+    public List<TrigramIndex.SearchHit> fuzzySearchBooks(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            return trigramIndex.search(query, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> loadBooks() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(books.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Transaction> loadTransactions() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(transactions.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User findUserById(String userId) {
+        lock.readLock().lock();
+        try {
+            return users.get(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void scanHistory(String userId, String ISBN, LocalDate from, Consumer<Transaction> action) throws IOException {
+        Set<String> hotIds = new HashSet<>();
+        for (Transaction t : loadTransactions()) {
+            hotIds.add(t.getTransactionId());
+            if ((userId == null || t.getUserId().equals(userId))
+                    && (ISBN == null || t.getISBN().equals(ISBN))
+                    && (from == null || !t.getBorrowDate().isBefore(from))) {
+                action.accept(t);
+            }
+        }
+        archive.scan(userId, ISBN, from, null, t -> {
+            if (!hotIds.contains(t.getTransactionId())) {
+                action.accept(t);
+            }
+        });
+    }
+
+    /**
+     * Reads the bytes appended to the open log file and applies the complete lines among them.
+     */
+    private int readAppended() throws IOException {
+        int applied = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            position += read;
+            byte[] bytes = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    partialLine.write(bytes, lineStart, i - lineStart);
+                    applied += apply(ReplicationLog.Entry.parse(partialLine.toString(StandardCharsets.UTF_8)));
+                    partialLine.reset();
+                    lineStart = i + 1;
+                }
+            }
+            // A line still being appended is completed by a later read
+            partialLine.write(bytes, lineStart, read - lineStart);
+            buffer.clear();
+        }
+        return applied;
+    }
+
+    private int apply(ReplicationLog.Entry entry) throws IOException {
+        if (entry.sequence() <= appliedSequence) {
+            return 0;
+        }
+        if (entry.sequence() > appliedSequence + 1) {
+            // Entries were lost to a rotation; the snapshot covers them and possibly this entry
+            catchUpFromSnapshot();
+            if (entry.sequence() <= appliedSequence) {
+                return 0;
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            if (entry.isReload()) {
+                reload(entry.entity());
+            } else {
+                switch (entry.entity()) {
+                    case BOOK -> applyBook(entry);
+                    case USER -> applyUser(entry);
+                    case TRANSACTION -> applyTransaction(entry);
+                }
+            }
+            appliedSequence = entry.sequence();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long delay = Math.max(System.currentTimeMillis() - entry.publishedAt(), 0);
+        lastDelayMillis = delay;
+        maxDelayMillis = Math.max(maxDelayMillis, delay);
+        appliedEntries++;
+        return 1;
+    }
+
+    private void applyBook(ReplicationLog.Entry entry) {
+        if (entry.isDeletion()) {
+            books.remove(entry.key());
+            catalogIndex.remove(entry.key());
+            trigramIndex.remove(entry.key());
+        } else {
+            Book book = Book.fromCSV(entry.payload());
+            books.put(book.getISBN(), book);
+            catalogIndex.put(book);
+            trigramIndex.put(book);
+        }
+    }
+
+    private void applyUser(ReplicationLog.Entry entry) {
+        if (entry.isDeletion()) {
+            users.remove(entry.key());
+        } else {
+            User user = User.fromCSV(entry.payload());
+            users.put(user.getUserId(), user);
+        }
+    }
+
+    private void applyTransaction(ReplicationLog.Entry entry) {
+        if (entry.isDeletion()) {
+            transactions.remove(entry.key());
+        } else {
+            Transaction t = Transaction.fromCSV(entry.payload());
+            if (transactions.put(t.getTransactionId(), t) == null && t.getStatus() != TransactionStatus.RESERVED) {
+                trigramIndex.recordBorrow(t.getISBN());
+            }
+        }
+    }
+
+    /**
+     * Reloads every record of an entity after a bulk change on the primary. Called with the write lock held.
+     */
+    private void reload(ReplicatedEntity entity) throws IOException {
+        switch (entity) {
+            case BOOK -> {
+                books.clear();
+                CSVBookDAO.loadBooks().forEach(book -> books.put(book.getISBN(), book));
+                rebuildIndexes();
+            }
+            case USER -> {
+                users.clear();
+                userDAO.loadUsers().forEach(user -> users.put(user.getUserId(), user));
+            }
+            case TRANSACTION -> {
+                // Bulk transaction changes include archiving, which adds archive segments
+                transactions.clear();
+                transactionDAO.loadTransactions().forEach(t -> transactions.put(t.getTransactionId(), t));
+                archive.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Builds the search indexes from the replica's books and full history. Called with the write lock held.
+     */
+    private void rebuildIndexes() throws IOException {
+        List<Book> catalog = new ArrayList<>(books.values());
+        catalogIndex = new CatalogIndex(catalog);
+        TrigramIndex index = new TrigramIndex(catalog);
+        LongIntHashMap borrows = new LongIntHashMap();
+        for (Transaction t : transactions.values()) {
+            borrows.addTo(ISBNUtils.toLong(t.getISBN()), 1);
+        }
+        archive.scan(null, null, null, null, t -> {
+            if (!transactions.containsKey(t.getTransactionId())) {
+                borrows.addTo(ISBNUtils.toLong(t.getISBN()), 1);
+            }
+        });
+        borrows.forEach((isbn, count) -> index.setBorrowCount(ISBNUtils.fromLong(isbn), count));
+        trigramIndex = index;
+    }
+
+    private boolean openLog() throws IOException {
+        try {
+            channel = FileChannel.open(ReplicationLog.getPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        channelKey = fileKeyOf(ReplicationLog.getPath());
+        position = 0;
+        partialLine.reset();
+        return true;
+    }
+
+    private void closeLog() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Unable to close the replication log: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private static Object fileKeyOf(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs a replica that applies the log and prints reports from its state.
+     * <p>
+     * Options: {@code --poll=<ms>} sets the poll interval (default 200), and
+     * {@code --report=<seconds>} prints the inventory report and replication status at that
+     * interval (default 10).
+     *
+     * @param args The options
+     * @throws IOException If an I/O error occurs
+     * @throws InterruptedException If interrupted while running
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long pollMillis = 200;
+        long reportSeconds = 10;
+        for (String arg : args) {
+            if (arg.startsWith("--poll=")) {
+                pollMillis = Long.parseLong(arg.substring("--poll=".length()));
+            } else if (arg.startsWith("--report=")) {
+                reportSeconds = Long.parseLong(arg.substring("--report=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        try (ReadReplica replica = new ReadReplica()) {
+            replica.start(pollMillis);
+            while (true) {
+                ReplicationStatus status = replica.getStatus();
+                System.out.print(replica.getReportGenerator().renderInventoryReport());
+                System.out.printf("Replication: applied %d of %d (%d behind), last delay %d ms, max delay %d ms, %d snapshot loads%n",
+                        status.appliedSequence(), status.logSequence(), status.getLagEntries(),
+                        status.lastDelayMillis(), status.maxDelayMillis(), status.snapshotLoads());
+                Thread.sleep(TimeUnit.SECONDS.toMillis(reportSeconds));
+            }
+        }
+    }
+}
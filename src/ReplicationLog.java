@@ -0,0 +1,329 @@
+// File: ReplicationLog.java
+
+import enums.ReplicatedEntity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Ordered log of committed changes, shipped from the primary process to read replicas.
+ * <p>
+ * The primary publishes the key of every book, user and transaction it commits. Publishing only
+ * queues the key, so circulation never waits for the log. A background thread drains the queue,
+ * reads the committed state of each record and appends one numbered entry per record to
+ * {@code data/replication.log}. Because an entry carries the record as it was when the entry was
+ * written, changes published out of commit order by concurrent threads still converge to the
+ * latest state, and several changes to one record within a batch ship once. Bulk operations
+ * publish a reload of a whole file instead of every record.
+ * <p>
+ * Appends run as write transactions on the log, so several primary processes can share it and
+ * sequence numbers stay gapless. Once the log grows past its size limit it is replaced by a file
+ * holding only its last entry, so the numbering continues; a replica that falls behind a rotation
+ * reloads a snapshot.
+ */
+public class ReplicationLog implements AutoCloseable {
+    private static final String FILE_PATH = "data/replication.log";
+    private static final Path PATH = Paths.get(FILE_PATH);
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_BATCH = 4096;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final int TAIL_CHUNK = 4096;
+
+    /**
+     * The key of a reload entry, which replaces every record of the entity.
+     */
+    public static final String RELOAD_KEY = "*";
+
+    private final CSVUserDAO userDAO;
+    private final CSVTransactionDAO transactionDAO;
+    private final long maxBytes;
+    private final LinkedBlockingQueue<Change> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * A shipped change.
+     *
+     * @param sequence The position in the log, starting at 1
+     * @param publishedAt When the primary committed the change, in epoch milliseconds
+     * @param entity The kind of record
+     * @param key The record key, or {@link #RELOAD_KEY} to reload every record of the entity
+     * @param payload The record as a CSV line, or null if the record was deleted or for a reload
+     */
+    public record Entry(long sequence, long publishedAt, ReplicatedEntity entity, String key, String payload) {
+        public boolean isReload() {
+            return RELOAD_KEY.equals(key);
+        }
+
+        public boolean isDeletion() {
+            return payload == null && !isReload();
+        }
+
+        /**
+         * Formats the entry as a log line.
+         *
+         * @return The line, without a line separator
+         */
+        public String toLine() {
+            return sequence + "," + publishedAt + "," + entity.name() + "," + key + "," + (payload == null ? "" : payload);
+        }
+
+        /**
+         * Parses a log line.
+         *
+         * @param line The line, without a line separator
+         * @return The entry
+         * @throws IllegalArgumentException If the line is not a log entry
+         */
+        public static Entry parse(String line) {
+            String[] parts = line.split(",", 5);
+            if (parts.length < 5) {
+                throw new IllegalArgumentException("Invalid replication log entry: " + line);
+            }
+            return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), ReplicatedEntity.fromString(parts[2]),
+                    parts[3], parts[4].isEmpty() ? null : parts[4]);
+        }
+    }
+
+    /**
+     * A published key waiting to be shipped, or a flush marker when the entity is null.
+     */
+    private record Change(ReplicatedEntity entity, String key, long publishedAt, CompletableFuture<Void> shipped) {
+    }
+
+    /**
+     * Creates a log with the default size limit and starts its writer thread.
+     *
+     * @param userDAO The user data the shipped user records are read from
+     * @param transactionDAO The transaction data the shipped transaction records are read from
+     */
+    public ReplicationLog(CSVUserDAO userDAO, CSVTransactionDAO transactionDAO) {
+        this(userDAO, transactionDAO, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a log and starts its writer thread.
+     *
+     * @param userDAO The user data the shipped user records are read from
+     * @param transactionDAO The transaction data the shipped transaction records are read from
+     * @param maxBytes The size past which the log file is rotated
+     * @throws IllegalArgumentException If the size limit is not positive
+     */
+    public ReplicationLog(CSVUserDAO userDAO, CSVTransactionDAO transactionDAO, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid log size limit: " + maxBytes);
+        }
+        this.userDAO = userDAO;
+        this.transactionDAO = transactionDAO;
+        this.maxBytes = maxBytes;
+        this.writer = new Thread(this::runWriter, "replication-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Publishes a committed change of a record.
+     *
+     * @param entity The kind of record
+     * @param key The record key, or {@link #RELOAD_KEY} after a bulk change to many records
+     */
+    public void publish(ReplicatedEntity entity, String key) {
+        if (!closed) {
+            queue.add(new Change(entity, key, System.currentTimeMillis(), null));
+        }
+    }
+
+    /**
+     * Gets a future completed once every change published so far has been written to the log.
+     *
+     * @return The future
+     */
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Void> shipped = new CompletableFuture<>();
+        queue.add(new Change(null, null, 0, shipped));
+        return shipped;
+    }
+
+    /**
+     * Ships every change published so far and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        CompletableFuture<Void> shipped = flush();
+        closed = true;
+        try {
+            shipped.get();
+        } catch (Exception e) {
+            System.err.println("Unable to ship the last replication log entries: " + e.getMessage());
+        }
+        writer.interrupt();
+    }
+
+    /**
+     * Gets the path of the log file.
+     *
+     * @return The log file path
+     */
+    public static Path getPath() {
+        return PATH;
+    }
+
+    /**
+     * Reads the sequence number of the last entry of a log file.
+     *
+     * @param file The log file
+     * @return The last sequence number, 0 if the file is missing or empty
+     * @throws IOException If an I/O error occurs
+     */
+    public static long readLastSequence(Path file) throws IOException {
+        String line = readLastLine(file);
+        return line == null ? 0 : Entry.parse(line).sequence();
+    }
+
+    /**
+     * Reads the last complete line of a file by scanning backwards from its end.
+     */
+    private static String readLastLine(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (int chunk = TAIL_CHUNK; size > 0; chunk *= 2) {
+                int length = (int) Math.min(size, chunk);
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, size - length + buffer.position()) < 0) {
+                        return null;
+                    }
+                }
+                String tail = new String(buffer.array(), StandardCharsets.UTF_8);
+                int end = tail.lastIndexOf('\n');
+                int start = end <= 0 ? -1 : tail.lastIndexOf('\n', end - 1);
+                if (start >= 0 || length == size) {
+                    return end <= 0 ? null : tail.substring(start + 1, end);
+                }
+            }
+            return null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void runWriter() {
+        List<Change> batch = new ArrayList<>();
+        while (true) {
+            try {
+                if (batch.isEmpty()) {
+                    batch.add(queue.take());
+                }
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+                ship(batch);
+                for (Change change : batch) {
+                    if (change.shipped() != null) {
+                        change.shipped().complete(null);
+                    }
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                // The batch is kept and retried, so replicas never miss a change
+                System.err.println("Unable to write the replication log: " + e.getMessage());
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the current state of every changed record and appends the entries in one write.
+     * Records are resolved while the log is locked, so entries for a record from several primary
+     * processes are appended in the order their state was read and the last one is the latest.
+     */
+    private void ship(List<Change> batch) throws IOException {
+        // Several changes to one record in a batch ship as a single entry of its latest state
+        Map<String, Change> latest = new LinkedHashMap<>();
+        for (Change change : batch) {
+            if (change.entity() != null) {
+                String id = change.entity().name() + ":" + change.key();
+                latest.remove(id);
+                latest.put(id, change);
+            }
+        }
+        if (latest.isEmpty()) {
+            return;
+        }
+        DataFileCoordinator.write(PATH, () -> {
+            String last = readLastLine(PATH);
+            long sequence = last == null ? 0 : Entry.parse(last).sequence();
+            if (last != null && Files.size(PATH) > maxBytes) {
+                // The new file starts with the last entry so the numbering continues from it
+                Path fresh = PATH.resolveSibling(PATH.getFileName() + ".tmp");
+                Files.write(fresh, (last + "\n").getBytes(StandardCharsets.UTF_8));
+                Files.move(fresh, PATH, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            StringBuilder lines = new StringBuilder();
+            Map<String, String> books = null;
+            Map<String, String> transactions = null;
+            for (Change change : latest.values()) {
+                String payload = null;
+                if (!RELOAD_KEY.equals(change.key())) {
+                    switch (change.entity()) {
+                        case BOOK -> {
+                            if (books == null) {
+                                books = new HashMap<>();
+                                for (Book book : CSVBookDAO.loadBooks()) {
+                                    books.put(book.getISBN(), book.toCSV());
+                                }
+                            }
+                            payload = books.get(change.key());
+                        }
+                        case TRANSACTION -> {
+                            if (transactions == null) {
+                                transactions = new HashMap<>();
+                                for (Transaction t : transactionDAO.loadTransactions()) {
+                                    transactions.put(t.getTransactionId(), t.toCSV());
+                                }
+                            }
+                            payload = transactions.get(change.key());
+                        }
+                        case USER -> {
+                            User user = userDAO.findUserById(change.key());
+                            payload = user == null ? null : user.toCSV();
+                        }
+                    }
+                }
+                Entry entry = new Entry(++sequence, change.publishedAt(), change.entity(), change.key(), payload);
+                lines.append(entry.toLine()).append('\n');
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            try (FileChannel channel = FileChannel.open(PATH, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            DataFileCoordinator.markWritten(PATH);
+            return null;
+        });
+    }
+}
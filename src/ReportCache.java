@@ -0,0 +1,202 @@
+// File: ReportCache.java
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Least-recently-used cache of rendered reports.
+ * <p>
+ * Every entry is stored with the dependencies it was computed from, such as "books" or
+ * "user:MEM001". A write invalidates only the entries depending on what it changed, so a report
+ * is recomputed only after the data it shows has changed. The cache is bounded by the total
+ * number of characters it holds. A report whose dependencies are invalidated while it is being
+ * computed is returned but not cached, so a stale result is never stored.
+ */
+public class ReportCache {
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<String>> keysByDependency = new HashMap<>();
+    private static final int VERSION_STRIPES = 1024;
+
+    private final long maxChars;
+    // Invalidation counters of the dependencies, striped by hash
+    private final long[] versions = new long[VERSION_STRIPES];
+    private long cachedChars;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Cache counters.
+     *
+     * @param hits Lookups answered from the cache
+     * @param misses Lookups that computed the report
+     * @param evictions Entries dropped to stay within the size bound
+     * @param invalidations Entries dropped because their data changed
+     * @param entries Reports cached now
+     * @param cachedChars Characters cached now
+     */
+    public record CacheStats(long hits, long misses, long evictions, long invalidations, int entries, long cachedChars) {
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+
+    private record Entry(String report, List<String> dependencies) {
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxChars The maximum number of characters of all cached reports together
+     * @throws IllegalArgumentException If the size bound is not positive
+     */
+    public ReportCache(long maxChars) {
+        if (maxChars <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxChars);
+        }
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Gets a cached report, computing and caching it if it is missing.
+     *
+     * @param key The report type and parameters
+     * @param dependencies The data the report is computed from
+     * @param render Computes the report
+     * @return The report
+     * @throws IOException If the report has to be computed and an I/O error occurs
+     */
+    public String get(String key, Collection<String> dependencies, DataFileCoordinator.IOCallable<String> render)
+            throws IOException {
+        long[] seen = new long[dependencies.size()];
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.report();
+            }
+            misses++;
+            int i = 0;
+            for (String dependency : dependencies) {
+                seen[i++] = versions[stripe(dependency)];
+            }
+        }
+        String report = render.call();
+        synchronized (this) {
+            if (unchangedSince(dependencies, seen) && report.length() <= maxChars) {
+                store(key, new Entry(report, List.copyOf(dependencies)));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Gets a cached report without computing it.
+     *
+     * @param key The report type and parameters
+     * @return The cached report, or null if it is missing
+     */
+    public synchronized String getIfPresent(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        hits++;
+        return entry.report();
+    }
+
+    /**
+     * Drops every report depending on the given data.
+     *
+     * @param dependency The changed data
+     */
+    public synchronized void invalidate(String dependency) {
+        versions[stripe(dependency)]++;
+        Set<String> keys = keysByDependency.remove(dependency);
+        if (keys != null) {
+            for (String key : keys) {
+                if (remove(key) != null) {
+                    invalidations++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every report.
+     */
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            versions[i]++;
+        }
+        invalidations += entries.size();
+        entries.clear();
+        keysByDependency.clear();
+        cachedChars = 0;
+    }
+
+    /**
+     * Gets the cache counters.
+     *
+     * @return The counters
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, invalidations, entries.size(), cachedChars);
+    }
+
+    private boolean unchangedSince(Collection<String> dependencies, long[] seen) {
+        int i = 0;
+        for (String dependency : dependencies) {
+            if (versions[stripe(dependency)] != seen[i++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int stripe(String dependency) {
+        return dependency.hashCode() & (VERSION_STRIPES - 1);
+    }
+
+    private void store(String key, Entry entry) {
+        remove(key);
+        entries.put(key, entry);
+        cachedChars += entry.report().length();
+        for (String dependency : entry.dependencies()) {
+            keysByDependency.computeIfAbsent(dependency, d -> new HashSet<>()).add(key);
+        }
+        while (cachedChars > maxChars) {
+            remove(entries.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    private Entry remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            forget(key, entry);
+        }
+        return entry;
+    }
+
+    private void forget(String key, Entry entry) {
+        cachedChars -= entry.report().length();
+        for (String dependency : entry.dependencies()) {
+            Set<String> keys = keysByDependency.get(dependency);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByDependency.remove(dependency);
+                }
+            }
+        }
+    }
+}
@@ -3,19 +3,38 @@
 import enums.TransactionStatus;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
 
 /**
  * Generates various reports for the library management system.
  */
 public class ReportGenerator {
 
-    private final CSVBookDAO bookDAO;
-    private final CSVUserDAO userDAO;
-    private final CSVTransactionDAO transactionDAO;
+    private final DataSource source;
+
+    /**
+     * The data reports are computed from.
+     */
+    public interface DataSource {
+        List<Book> loadBooks() throws IOException;
+
+        List<Transaction> loadTransactions() throws IOException;
+
+        User findUserById(String userId) throws IOException;
+
+        /**
+         * Streams the full transaction history, hot and archived, matching the given criteria.
+         * Null criteria are unrestricted.
+         */
+        void scanHistory(String userId, String ISBN, LocalDate from, Consumer<Transaction> action) throws IOException;
+    }
 
     /**
      * Constructor for ReportGenerator.
@@ -25,25 +44,65 @@ public class ReportGenerator {
      * @param transactionDAO The data access object for transactions
      */
     public ReportGenerator(CSVBookDAO bookDAO, CSVUserDAO userDAO, CSVTransactionDAO transactionDAO) {
-        this.bookDAO = bookDAO;
-        this.userDAO = userDAO;
-        this.transactionDAO = transactionDAO;
+        this(new DataSource() {
+            @Override
+            public List<Book> loadBooks() throws IOException {
+                return CSVBookDAO.loadBooks();
+            }
+
+            @Override
+            public List<Transaction> loadTransactions() throws IOException {
+                return transactionDAO.loadTransactions();
+            }
+
+            @Override
+            public User findUserById(String userId) throws IOException {
+                return userDAO.findUserById(userId);
+            }
+
+            @Override
+            public void scanHistory(String userId, String ISBN, LocalDate from, Consumer<Transaction> action)
+                    throws IOException {
+                transactionDAO.scanHistory(userId, ISBN, from, action);
+            }
+        });
     }
 
     /**
-     * Generates an inventory report of all books in the library.
+     * Creates a report generator reading from the given data, such as the in-memory state of a read replica.
+     *
+     * @param source The data source
+     */
+    public ReportGenerator(DataSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Prints an inventory report of all books in the library.
      *
      * @throws IOException If there's an error reading the book data
      */
     public void generateInventoryReport() throws IOException {
-        List<Book> books = CSVBookDAO.loadBooks();
+        System.out.print(renderInventoryReport());
+    }
+
+    /**
+     * Renders an inventory report of all books in the library.
+     *
+     * @return The report text
+     * @throws IOException If there's an error reading the book data
+     */
+    public String renderInventoryReport() throws IOException {
+        StringWriter buffer = new StringWriter();
+        PrintWriter out = new PrintWriter(buffer);
+        List<Book> books = source.loadBooks();
 
-        System.out.println("=== Library Inventory Report ===");
-        System.out.printf("%-15s %-40s %-20s %-10s %-10s%n", "ISBN", "Title", "Author", "Available", "Total");
-        System.out.println("--------------------------------------------------------------------------------");
+        out.println("=== Library Inventory Report ===");
+        out.printf("%-15s %-40s %-20s %-10s %-10s%n", "ISBN", "Title", "Author", "Available", "Total");
+        out.println("--------------------------------------------------------------------------------");
 
         for (Book book : books) {
-            System.out.printf("%-15s %-40s %-20s %-10d %-10d%n",
+            out.printf("%-15s %-40s %-20s %-10d %-10d%n",
                     book.getISBN(),
                     truncate(book.getTitle(), 37),
                     truncate(book.getAuthor(), 17),
@@ -51,73 +110,99 @@ public class ReportGenerator {
                     book.getTotalCopies());
         }
 
-        System.out.println("--------------------------------------------------------------------------------");
-        System.out.println("Total Books: " + books.size());
+        out.println("--------------------------------------------------------------------------------");
+        out.println("Total Books: " + books.size());
+        return buffer.toString();
     }
 
     /**
-     * Generates a report of all overdue books.
+     * Prints a report of all overdue books.
      *
      * @throws IOException If there's an error reading the transaction data
      */
     public void generateOverdueReport() throws IOException {
-            List<Transaction> transactions = transactionDAO.loadTransactions();
+        System.out.print(renderOverdueReport());
+    }
+
+    /**
+     * Renders a report of all overdue books.
+     *
+     * @return The report text
+     * @throws IOException If there's an error reading the transaction data
+     */
+    public String renderOverdueReport() throws IOException {
+        StringWriter buffer = new StringWriter();
+        PrintWriter out = new PrintWriter(buffer);
+        List<Transaction> transactions = source.loadTransactions();
         LocalDate today = LocalDate.now();
 
         List<Transaction> overdueTransactions = transactions.stream()
-                .filter(t -> t.getStatus() == TransactionStatus.ACTIVE && t.getDueDate().isBefore(today))
+                .filter(t -> t.getStatus().isOpenLoan() && t.getDueDate().isBefore(today))
                 .toList();
 
-        System.out.println("=== Overdue Books Report ===");
-        System.out.printf("%-15s %-15s %-15s %-12s%n", "ISBN", "User ID", "Due Date", "Days Overdue");
-        System.out.println("----------------------------------------------------------");
+        out.println("=== Overdue Books Report ===");
+        out.printf("%-15s %-15s %-15s %-12s%n", "ISBN", "User ID", "Due Date", "Days Overdue");
+        out.println("----------------------------------------------------------");
 
         for (Transaction t : overdueTransactions) {
             long daysOverdue = t.getDueDate().until(today).getDays();
-            System.out.printf("%-15s %-15s %-15s %-12d%n",
+            out.printf("%-15s %-15s %-15s %-12d%n",
                     t.getISBN(),
                     t.getUserId(),
                     t.getDueDate(),
                     daysOverdue);
         }
 
-        System.out.println("----------------------------------------------------------");
-        System.out.println("Total Overdue Books: " + overdueTransactions.size());
+        out.println("----------------------------------------------------------");
+        out.println("Total Overdue Books: " + overdueTransactions.size());
+        return buffer.toString();
     }
 
     /**
-     * Generates a report of a user's borrowing activity.
+     * Prints a report of a user's borrowing activity.
      *
      * @param userId The ID of the user
      * @throws IOException If there's an error reading the user or transaction data
      */
     public void generateUserReport(String userId) throws IOException {
-        User user = userDAO.findUserById(userId);
+        System.out.print(renderUserReport(userId));
+    }
+
+    /**
+     * Renders a report of a user's borrowing activity.
+     *
+     * @param userId The ID of the user
+     * @return The report text
+     * @throws IOException If there's an error reading the user or transaction data
+     */
+    public String renderUserReport(String userId) throws IOException {
+        StringWriter buffer = new StringWriter();
+        PrintWriter out = new PrintWriter(buffer);
+        User user = source.findUserById(userId);
         if (user == null) {
-            System.out.println("User not found.");
-            return;
+            return "User not found." + System.lineSeparator();
         }
 
-        List<Transaction> userTransactions = transactionDAO.loadTransactions().stream()
-                .filter(t -> t.getUserId().equals(userId))
-                .toList();
+        List<Transaction> userTransactions = new ArrayList<>();
+        source.scanHistory(userId, null, null, userTransactions::add);
 
-        System.out.println("=== User Activity Report ===");
-        System.out.println("User: " + user.getName() + " (ID: " + user.getUserId() + ")");
-        System.out.println("----------------------------------------------------------");
-        System.out.printf("%-15s %-12s %-12s %-10s%n", "ISBN", "Borrow Date", "Return Date", "Status");
-        System.out.println("----------------------------------------------------------");
+        out.println("=== User Activity Report ===");
+        out.println("User: " + user.getName() + " (ID: " + user.getUserId() + ")");
+        out.println("----------------------------------------------------------");
+        out.printf("%-15s %-12s %-12s %-10s%n", "ISBN", "Borrow Date", "Return Date", "Status");
+        out.println("----------------------------------------------------------");
 
         for (Transaction t : userTransactions) {
-            System.out.printf("%-15s %-12s %-12s %-10s%n",
+            out.printf("%-15s %-12s %-12s %-10s%n",
                     t.getISBN(),
                     t.getBorrowDate(),
                     t.getReturnDate() != null ? t.getReturnDate() : "-",
                     t.getStatus());
         }
 
-        System.out.println("----------------------------------------------------------");
-        System.out.println("Total Transactions: " + userTransactions.size());
+        out.println("----------------------------------------------------------");
+        out.println("Total Transactions: " + userTransactions.size());
+        return buffer.toString();
     }
 
     /**
@@ -127,31 +212,80 @@ public class ReportGenerator {
      * @throws IOException If there's an error reading the transaction data
      */
     public void generatePopularBooksReport(int topN) throws IOException {
-        List<Transaction> transactions = transactionDAO.loadTransactions();
+        generatePopularBooksReport(topN, null);
+    }
 
-        Map<String, Long> bookBorrowCounts = transactions.stream()
-                .collect(Collectors.groupingBy(Transaction::getISBN, Collectors.counting()));
+    /**
+     * Prints a report of the most popular books borrowed since a given date.
+     * Archived history older than the date is not read.
+     *
+     * @param topN The number of top books to include in the report
+     * @param since The earliest borrow date to count, or null for the full history
+     * @throws IOException If there's an error reading the transaction data
+     */
+    public void generatePopularBooksReport(int topN, LocalDate since) throws IOException {
+        System.out.print(renderPopularBooksReport(topN, since));
+    }
 
-        List<Map.Entry<String, Long>> sortedBooks = bookBorrowCounts.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(topN)
-                .toList();
+    /**
+     * Renders a report of the most popular books borrowed since a given date. Only copies that
+     * were lent count, so reservations that were never picked up are left out, as are records
+     * with an ISBN that cannot be parsed. Archived history older than the date is not read.
+     *
+     * @param topN The number of top books to include in the report
+     * @param since The earliest borrow date to count, or null for the full history
+     * @return The report text
+     * @throws IOException If there's an error reading the transaction data
+     */
+    public String renderPopularBooksReport(int topN, LocalDate since) throws IOException {
+        StringWriter buffer = new StringWriter();
+        PrintWriter out = new PrintWriter(buffer);
+        LongIntHashMap bookBorrowCounts = new LongIntHashMap();
+        source.scanHistory(null, null, since, t -> {
+            TransactionStatus status = t.getStatus();
+            if (!status.isOpenLoan() && status != TransactionStatus.COMPLETED && status != TransactionStatus.LOST) {
+                return;
+            }
+            String ISBN = ISBNUtils.normalize(t.getISBN());
+            if (ISBN != null) {
+                bookBorrowCounts.addTo(Long.parseLong(ISBN), 1);
+            }
+        });
+
+        // Keep the top N in a bounded min-heap of {ISBN key, count} pairs
+        PriorityQueue<long[]> heap = new PriorityQueue<>(Comparator.comparingLong(e -> e[1]));
+        bookBorrowCounts.forEach((isbn, count) -> {
+            if (heap.size() < topN) {
+                heap.add(new long[]{isbn, count});
+            } else if (topN > 0 && count > heap.peek()[1]) {
+                heap.poll();
+                heap.add(new long[]{isbn, count});
+            }
+        });
+        List<long[]> sortedBooks = new ArrayList<>(heap);
+        sortedBooks.sort(Comparator.comparingLong((long[] e) -> e[1]).reversed());
+
+        LongObjectHashMap<Book> catalog = new LongObjectHashMap<>();
+        for (Book book : source.loadBooks()) {
+            catalog.put(book.getISBNKey(), book);
+        }
 
-        System.out.println("=== Most Popular Books Report ===");
-        System.out.printf("%-15s %-40s %-10s%n", "ISBN", "Title", "Borrows");
-        System.out.println("----------------------------------------------------------");
+        out.println("=== Most Popular Books Report ===");
+        out.printf("%-15s %-40s %-10s%n", "ISBN", "Title", "Borrows");
+        out.println("----------------------------------------------------------");
 
-        for (Map.Entry<String, Long> entry : sortedBooks) {
-            Book book = CSVBookDAO.findBookByISBN(entry.getKey());
+        for (long[] entry : sortedBooks) {
+            Book book = catalog.get(entry[0]);
             if (book != null) {
-                System.out.printf("%-15s %-40s %-10d%n",
+                out.printf("%-15s %-40s %-10d%n",
                         book.getISBN(),
                         truncate(book.getTitle(), 37),
-                        entry.getValue());
+                        entry[1]);
             }
         }
 
-        System.out.println("----------------------------------------------------------");
+        out.println("----------------------------------------------------------");
+        return buffer.toString();
     }
 
     /**
@@ -0,0 +1,40 @@
+// File: SketchHash.java
+
+/**
+ * Hash function shared by the probabilistic sketches.
+ */
+public final class SketchHash {
+
+    private SketchHash() {
+    }
+
+    /**
+     * Computes a 64-bit hash of a string: FNV-1a over the UTF-16 code units followed by a
+     * MurmurHash3 finalizer, so every output bit depends on every input character.
+     *
+     * @param value The string to hash
+     * @return The hash
+     */
+    public static long hash64(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Scrambles a 64-bit value, for hashing numeric keys such as ISBNs.
+     *
+     * @param value The value
+     * @return The hash
+     */
+    public static long mix(long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,320 @@
+// File: SparseFileIndex.java
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sparse index over a CSV file sorted by a numeric first column.
+ * <p>
+ * The records are grouped into blocks of a fixed number of lines, and the index keeps only the
+ * first key and the byte offset of each block, so its memory is proportional to the number of
+ * blocks rather than the number of records. A lookup binary-searches the block keys and reads a
+ * single block with a positioned read; recently read blocks are kept in a small LRU cache.
+ * <p>
+ * The index is tied to one version of the file, identified by its size, modification time and
+ * file key. Data files are replaced atomically, so a stale index is detected on every lookup and
+ * reported with a {@link ConcurrentModificationException}. The index can be saved to and loaded
+ * from a sidecar file so that a restart does not have to scan the data file.
+ */
+public class SparseFileIndex {
+    private static final int MAGIC = 0x53504958; // "SPIX"
+    private static final int VERSION = 1;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final String stamp;
+    private final int recordsPerBlock;
+    private final long[] keys;
+    private final long[] offsets; // One more than keys; the last is the end of the data
+    private final Map<Integer, String[]> blockCache;
+
+    private SparseFileIndex(Path file, String stamp, int recordsPerBlock, long[] keys, long[] offsets, int cachedBlocks) {
+        this.file = file;
+        this.stamp = stamp;
+        this.recordsPerBlock = recordsPerBlock;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.blockCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+                return size() > cachedBlocks;
+            }
+        };
+    }
+
+    /**
+     * Builds an index by scanning a data file once. The first line is taken as the header.
+     *
+     * @param file The data file
+     * @param recordsPerBlock The number of records per block
+     * @param cachedBlocks The number of blocks kept in the cache
+     * @return The index, or null if the keys in the file are not in ascending order
+     * @throws IOException If an I/O error occurs
+     * @throws ConcurrentModificationException If the file was replaced during the scan
+     */
+    public static SparseFileIndex build(Path file, int recordsPerBlock, int cachedBlocks) throws IOException {
+        if (recordsPerBlock <= 0 || cachedBlocks < 0) {
+            throw new IllegalArgumentException("Invalid block settings: " + recordsPerBlock + " records, "
+                    + cachedBlocks + " cached blocks");
+        }
+        String stamp = stampOf(file);
+        long[] keys = new long[64];
+        long[] offsets = new long[65];
+        int blocks = 0;
+        long records = 0;
+        long previousKey = Long.MIN_VALUE;
+        long offset = 0;
+        boolean header = true;
+        try (InputStream in = Files.newInputStream(file)) {
+            long lineStart = 0;
+            long key = 0;
+            boolean inKey = true;
+            boolean hasDigits = false;
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    int b = buffer[i];
+                    offset++;
+                    if (b == '\n') {
+                        if (!header) {
+                            if (!hasDigits || key < previousKey) {
+                                return null;
+                            }
+                            if (records % recordsPerBlock == 0) {
+                                if (blocks == keys.length) {
+                                    keys = Arrays.copyOf(keys, blocks * 2);
+                                    offsets = Arrays.copyOf(offsets, blocks * 2 + 1);
+                                }
+                                keys[blocks] = key;
+                                offsets[blocks++] = lineStart;
+                            }
+                            previousKey = key;
+                            records++;
+                        }
+                        header = false;
+                        lineStart = offset;
+                        key = 0;
+                        inKey = true;
+                        hasDigits = false;
+                    } else if (inKey && !header) {
+                        if (b >= '0' && b <= '9') {
+                            key = key * 10 + (b - '0');
+                            hasDigits = true;
+                        } else if (b == ',') {
+                            inKey = false;
+                        } else if (b != '\r') {
+                            return null;
+                        }
+                    }
+                }
+            }
+            if (offset > lineStart && !header) {
+                // Every record must end with a line separator for blocks to end on a record boundary
+                return null;
+            }
+        }
+        offsets[blocks] = offset;
+        if (!stamp.equals(stampOf(file))) {
+            throw new ConcurrentModificationException(file + " changed while it was indexed");
+        }
+        return new SparseFileIndex(file, stamp, recordsPerBlock, Arrays.copyOf(keys, blocks),
+                Arrays.copyOf(offsets, blocks + 1), cachedBlocks);
+    }
+
+    /**
+     * Loads an index from a sidecar file, provided it was built for the current version of the data file.
+     *
+     * @param file The data file
+     * @param sidecar The sidecar file
+     * @param cachedBlocks The number of blocks kept in the cache
+     * @return The index, or null if the sidecar is missing, unreadable or stale
+     * @throws IOException If an I/O error occurs reading the data file's attributes
+     */
+    public static SparseFileIndex load(Path file, Path sidecar, int cachedBlocks) throws IOException {
+        String stamp = stampOf(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(stamp)) {
+                return null;
+            }
+            int recordsPerBlock = in.readInt();
+            int blocks = in.readInt();
+            long[] keys = new long[blocks];
+            long[] offsets = new long[blocks + 1];
+            for (int i = 0; i < blocks; i++) {
+                keys[i] = in.readLong();
+            }
+            for (int i = 0; i <= blocks; i++) {
+                offsets[i] = in.readLong();
+            }
+            return new SparseFileIndex(file, stamp, recordsPerBlock, keys, offsets, cachedBlocks);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // A truncated or corrupt sidecar is rebuilt from the data file
+            return null;
+        }
+    }
+
+    /**
+     * Saves the index to a sidecar file, replacing it atomically.
+     *
+     * @param sidecar The sidecar file
+     * @throws IOException If an I/O error occurs
+     */
+    public void save(Path sidecar) throws IOException {
+        Path temp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(stamp);
+            out.writeInt(recordsPerBlock);
+            out.writeInt(keys.length);
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+        }
+        Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Checks whether the index still describes the data file.
+     *
+     * @return true if the file has not been replaced since the index was built
+     * @throws IOException If an I/O error occurs
+     */
+    public boolean isCurrent() throws IOException {
+        return stamp.equals(stampOf(file));
+    }
+
+    /**
+     * Finds the line with a key.
+     *
+     * @param key The key
+     * @return The line, or null if no record has the key
+     * @throws IOException If an I/O error occurs
+     * @throws ConcurrentModificationException If the data file no longer matches the index
+     */
+    public String find(long key) throws IOException {
+        if (keys.length == 0 || key < keys[0]) {
+            return null;
+        }
+        if (!isCurrent()) {
+            throw new ConcurrentModificationException(file + " changed since it was indexed");
+        }
+        // Start at the last block beginning below the key; a run of equal keys may span blocks
+        int block = Math.max(lowerBound(key) - 1, 0);
+        for (; block < keys.length && keys[block] <= key; block++) {
+            for (String line : readBlock(block)) {
+                long lineKey = keyOf(line);
+                if (lineKey == key) {
+                    return line;
+                }
+                if (lineKey > key) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of blocks.
+     *
+     * @return The number of index entries
+     */
+    public int getBlockCount() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the approximate heap used by the index entries, excluding the block cache.
+     *
+     * @return The size in bytes
+     */
+    public long getIndexBytes() {
+        return (keys.length * 2L + 1) * Long.BYTES;
+    }
+
+    private String[] readBlock(int block) throws IOException {
+        synchronized (blockCache) {
+            String[] cached = blockCache.get(block);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (offsets[block + 1] - offsets[block]));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = offsets[block];
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new ConcurrentModificationException(file + " is shorter than its index");
+                }
+            }
+        }
+        String text = new String(buffer.array(), StandardCharsets.UTF_8);
+        String[] lines = text.split("\r?\n");
+        if (!text.endsWith("\n") || lines.length == 0 || keyOf(lines[0]) != keys[block] || !isCurrent()) {
+            throw new ConcurrentModificationException(file + " changed since it was indexed");
+        }
+        synchronized (blockCache) {
+            blockCache.put(block, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Gets the first block whose first key is not below the key.
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long keyOf(String line) {
+        int comma = line.indexOf(',');
+        try {
+            return Long.parseLong(comma < 0 ? line : line.substring(0, comma));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Identifies a version of a file. Replacing a file gives it a new file key or modification time.
+     */
+    private static String stampOf(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return attributes.size() + ":" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) + ":" + attributes.fileKey();
+    }
+}
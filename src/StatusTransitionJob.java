@@ -0,0 +1,371 @@
+// File: StatusTransitionJob.java
+
+import enums.TransactionStatus;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Nightly batch job that assigns the OVERDUE and LOST statuses.
+ * Open loans past their due date become OVERDUE, and overdue loans older than the lost
+ * threshold become LOST. The transaction file is processed in fixed-size chunks on a worker
+ * pool; chunks are written to a staging file in order with one write each, and a checkpoint
+ * is saved after every chunk so an interrupted run resumes where it stopped.
+ */
+public class StatusTransitionJob {
+    private static final String DEFAULT_FILE_PATH = "data/transactions.csv";
+    private static final String STAGING_SUFFIX = ".job";
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final int DEFAULT_CHUNK_SIZE = 50_000;
+    private static final int DEFAULT_LOST_AFTER_DAYS = 60;
+
+    private final Path file;
+    private final Path stagingPath;
+    private final Path checkpointPath;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int overdueGraceDays;
+    private final int lostAfterDays;
+
+    /**
+     * Summary of a job run.
+     *
+     * @param runDate The date the transitions were evaluated against
+     * @param resumedFromChunk The chunk the run resumed from, 0 for a fresh run
+     * @param chunksWritten The number of chunks written in this run
+     * @param markedOverdue The number of loans moved to OVERDUE in this run
+     * @param markedLost The number of loans moved to LOST in this run
+     * @param elapsedMillis The wall-clock duration of the run
+     */
+    public record JobResult(LocalDate runDate, long resumedFromChunk, long chunksWritten,
+                            long markedOverdue, long markedLost, long elapsedMillis) {
+        /**
+         * Adds the counts of a run over another transaction file, such as a branch partition's.
+         * The run date and resumed chunk stay those of this run.
+         *
+         * @param other The other run
+         * @return The combined summary
+         */
+        public JobResult plus(JobResult other) {
+            return new JobResult(runDate, resumedFromChunk, chunksWritten + other.chunksWritten,
+                    markedOverdue + other.markedOverdue, markedLost + other.markedLost,
+                    elapsedMillis + other.elapsedMillis);
+        }
+    }
+
+    /**
+     * A status change made by a run.
+     *
+     * @param transactionId The ID of the loan
+     * @param userId The borrowing patron
+     * @param ISBN The ISBN of the borrowed title
+     * @param dueDate The due date of the loan
+     * @param previous The status before the run
+     * @param next The status assigned by the run
+     */
+    public record Transition(String transactionId, String userId, String ISBN, LocalDate dueDate,
+                             TransactionStatus previous, TransactionStatus next) {
+    }
+
+    /**
+     * Creates a job over {@code data/transactions.csv} with the default policy: loans are overdue
+     * the day after their due date and lost 60 days after it.
+     */
+    public StatusTransitionJob() {
+        this(Paths.get(DEFAULT_FILE_PATH));
+    }
+
+    /**
+     * Creates a job over a transaction file with the default policy.
+     *
+     * @param file The transaction file, such as a branch partition's
+     */
+    public StatusTransitionJob(Path file) {
+        this(file, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors(), 0, DEFAULT_LOST_AFTER_DAYS);
+    }
+
+    /**
+     * Creates a job over {@code data/transactions.csv}.
+     *
+     * @param chunkSize The number of transactions per chunk
+     * @param parallelism The number of worker threads
+     * @param overdueGraceDays Days after the due date before a loan is marked OVERDUE
+     * @param lostAfterDays Days after the due date before an overdue loan is marked LOST
+     */
+    public StatusTransitionJob(int chunkSize, int parallelism, int overdueGraceDays, int lostAfterDays) {
+        this(Paths.get(DEFAULT_FILE_PATH), chunkSize, parallelism, overdueGraceDays, lostAfterDays);
+    }
+
+    /**
+     * Creates a job. Its staging and checkpoint files are kept next to the transaction file.
+     *
+     * @param file The transaction file
+     * @param chunkSize The number of transactions per chunk
+     * @param parallelism The number of worker threads
+     * @param overdueGraceDays Days after the due date before a loan is marked OVERDUE
+     * @param lostAfterDays Days after the due date before an overdue loan is marked LOST
+     */
+    public StatusTransitionJob(Path file, int chunkSize, int parallelism, int overdueGraceDays, int lostAfterDays) {
+        if (chunkSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Chunk size and parallelism must be positive");
+        }
+        if (overdueGraceDays < 0 || lostAfterDays <= overdueGraceDays) {
+            throw new IllegalArgumentException("Lost threshold must be after the overdue grace period");
+        }
+        this.file = file;
+        this.stagingPath = file.resolveSibling(file.getFileName() + STAGING_SUFFIX);
+        this.checkpointPath = file.resolveSibling(file.getFileName() + CHECKPOINT_SUFFIX);
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.overdueGraceDays = overdueGraceDays;
+        this.lostAfterDays = lostAfterDays;
+    }
+
+    /**
+     * Runs the job, resuming an interrupted run if a checkpoint exists.
+     *
+     * @return A summary of the run
+     * @throws IOException If an I/O error occurs
+     */
+    public JobResult run() throws IOException {
+        return run(null);
+    }
+
+    /**
+     * Runs the job, resuming an interrupted run if a checkpoint exists, and reports each status
+     * change once the transaction file has been replaced. Changes made by an interrupted run
+     * before it stopped are not reported.
+     *
+     * @param listener Called with each status change, or null
+     * @return A summary of the run
+     * @throws IOException If an I/O error occurs
+     */
+    public JobResult run(Consumer<Transition> listener) throws IOException {
+        // Hold the transaction file's write lock for the whole run so no commit is lost when the
+        // staging file replaces it; readers keep reading the current file meanwhile
+        return DataFileCoordinator.write(file, () -> runLocked(listener));
+    }
+
+    private JobResult runLocked(Consumer<Transition> listener) throws IOException {
+        long start = System.nanoTime();
+        Path source = file;
+        Path staging = stagingPath;
+        Checkpoint checkpoint = Checkpoint.load(checkpointPath);
+        long generation = DataFileCoordinator.getGeneration(source);
+
+        if (checkpoint != null && checkpoint.nextChunk > 0 && !Files.exists(staging)) {
+            // The staging file was already moved into place; only the checkpoint was left behind
+            DataFileCoordinator.markWritten(source);
+            Files.deleteIfExists(checkpointPath);
+            return new JobResult(checkpoint.runDate, checkpoint.nextChunk, 0, 0, 0, 0);
+        }
+        // A commit since the interrupted run may have changed or removed rows it already processed
+        if (checkpoint == null || checkpoint.chunkSize != chunkSize || checkpoint.sourceGeneration != generation) {
+            checkpoint = new Checkpoint(LocalDate.now(), chunkSize, generation, 0, 0);
+            Files.deleteIfExists(staging);
+        }
+        long resumedFrom = checkpoint.nextChunk;
+        long chunksWritten = 0;
+        long markedOverdue = 0;
+        long markedLost = 0;
+        List<Transition> transitions = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8);
+             FileChannel out = FileChannel.open(staging, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            String header = reader.readLine();
+            out.truncate(checkpoint.outputBytes);
+            out.position(checkpoint.outputBytes);
+            if (checkpoint.outputBytes == 0) {
+                out.write(ByteBuffer.wrap((header + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)));
+            }
+
+            // Skip the chunks completed by an earlier run without parsing them
+            for (long skipped = 0; skipped < checkpoint.nextChunk * chunkSize; skipped++) {
+                if (reader.readLine() == null) {
+                    break;
+                }
+            }
+
+            LocalDate runDate = checkpoint.runDate;
+            Deque<Future<ChunkResult>> pending = new ArrayDeque<>();
+            boolean eof = false;
+            while (!eof || !pending.isEmpty()) {
+                while (!eof && pending.size() < parallelism * 2) {
+                    List<String> lines = new ArrayList<>(chunkSize);
+                    String line;
+                    while (lines.size() < chunkSize && (line = reader.readLine()) != null) {
+                        lines.add(line);
+                    }
+                    if (lines.size() < chunkSize) {
+                        eof = true;
+                    }
+                    if (!lines.isEmpty()) {
+                        pending.add(executor.submit(() -> transform(lines, runDate, listener != null)));
+                    }
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+
+                ChunkResult result = await(pending.poll());
+                ByteBuffer buffer = ByteBuffer.wrap(result.output);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(false);
+                checkpoint = new Checkpoint(runDate, chunkSize, generation, checkpoint.nextChunk + 1, out.position());
+                checkpoint.save(checkpointPath);
+                chunksWritten++;
+                markedOverdue += result.markedOverdue;
+                markedLost += result.markedLost;
+                if (result.transitions != null) {
+                    transitions.addAll(result.transitions);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Files.move(staging, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        DataFileCoordinator.markWritten(source);
+        Files.deleteIfExists(checkpointPath);
+        if (listener != null) {
+            transitions.forEach(listener);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new JobResult(checkpoint.runDate, resumedFrom, chunksWritten, markedOverdue, markedLost, elapsedMillis);
+    }
+
+    /**
+     * Applies the status policy to one chunk of CSV lines.
+     * Only the status and due date columns are parsed; unchanged lines are copied as they are.
+     */
+    private ChunkResult transform(List<String> lines, LocalDate runDate, boolean collectTransitions) {
+        ChunkResult result = new ChunkResult();
+        if (collectTransitions) {
+            result.transitions = new ArrayList<>();
+        }
+        LocalDate overdueBefore = runDate.minusDays(overdueGraceDays);
+        LocalDate lostBefore = runDate.minusDays(lostAfterDays);
+        StringBuilder output = new StringBuilder(lines.size() * 96);
+        for (String line : lines) {
+            // Status is the seventh column; the renewal count may follow it
+            int statusStart = 0;
+            for (int column = 0; column < 6; column++) {
+                statusStart = line.indexOf(',', statusStart) + 1;
+            }
+            int statusEnd = line.indexOf(',', statusStart);
+            if (statusEnd < 0) {
+                statusEnd = line.length();
+            }
+            TransactionStatus status = TransactionStatus.fromString(line.substring(statusStart, statusEnd));
+            TransactionStatus next = status;
+            String[] parts = null;
+            if (status.isOpenLoan()) {
+                parts = line.split(",");
+                LocalDate dueDate = LocalDate.parse(parts[4]);
+                if (dueDate.isBefore(lostBefore)) {
+                    next = TransactionStatus.LOST;
+                } else if (dueDate.isBefore(overdueBefore)) {
+                    next = TransactionStatus.OVERDUE;
+                }
+            }
+            if (next == status) {
+                output.append(line);
+            } else {
+                output.append(line, 0, statusStart).append(next).append(line, statusEnd, line.length());
+                if (next == TransactionStatus.LOST) {
+                    result.markedLost++;
+                } else {
+                    result.markedOverdue++;
+                }
+                if (result.transitions != null) {
+                    result.transitions.add(new Transition(parts[0], parts[1], parts[2], LocalDate.parse(parts[4]), status, next));
+                }
+            }
+            output.append(System.lineSeparator());
+        }
+        result.output = output.toString().getBytes(StandardCharsets.UTF_8);
+        return result;
+    }
+
+    private static ChunkResult await(Future<ChunkResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Status transition job interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error processing transaction chunk", e.getCause());
+        }
+    }
+
+    /**
+     * Runs the job over the main transaction file and every branch partition from the command
+     * line, for example from a nightly scheduler.
+     *
+     * @param args Unused
+     * @throws IOException If an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        JobResult result = new StatusTransitionJob().run().plus(new BranchConsortium().runStatusTransitions());
+        System.out.println("Status transitions for " + result.runDate() + ": "
+                + result.markedOverdue() + " overdue, " + result.markedLost() + " lost, "
+                + result.chunksWritten() + " chunks in " + result.elapsedMillis() + " ms");
+    }
+
+    private static class ChunkResult {
+        private byte[] output;
+        private long markedOverdue;
+        private long markedLost;
+        private List<Transition> transitions; // Null unless a listener was given
+    }
+
+    /**
+     * Progress of a run: the next chunk to process and the committed length of the staging file,
+     * valid only while the transaction file is still at the generation the run started from.
+     */
+    private record Checkpoint(LocalDate runDate, int chunkSize, long sourceGeneration, long nextChunk, long outputBytes) {
+
+        private static Checkpoint load(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            String[] parts = Files.readString(path).trim().split(",");
+            if (parts.length != 5) {
+                // Written by a version that did not record the source generation; start over
+                return null;
+            }
+            return new Checkpoint(LocalDate.parse(parts[0]), Integer.parseInt(parts[1]),
+                    Long.parseLong(parts[2]), Long.parseLong(parts[3]), Long.parseLong(parts[4]));
+        }
+
+        private void save(Path path) throws IOException {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+                writer.write(runDate + "," + chunkSize + "," + sourceGeneration + "," + nextChunk + "," + outputBytes);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+// File: TokenBucket.java
+
+/**
+ * Token bucket rate limiter. The bucket holds up to {@code capacity} tokens and refills
+ * continuously at a fixed rate; each admitted operation takes one token.
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param capacity The maximum number of tokens, which is the largest burst admitted at once
+     * @param tokensPerSecond The refill rate
+     * @throws IllegalArgumentException If the capacity or the rate is not positive
+     */
+    public TokenBucket(double capacity, double tokensPerSecond) {
+        if (capacity <= 0 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("Invalid token bucket: capacity " + capacity + ", rate " + tokensPerSecond);
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return 0 if a token was taken, otherwise the number of nanoseconds until one will be available
+     */
+    public synchronized long tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return nanosUntilToken();
+    }
+
+    /**
+     * Returns a token taken by {@link #tryAcquire()} for an operation that was rejected after all.
+     */
+    public synchronized void refund() {
+        refill();
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    /**
+     * Gets the time until a token will be available, without taking one.
+     *
+     * @return 0 if a token is available now, otherwise the number of nanoseconds to wait
+     */
+    public synchronized long nanosUntilAvailable() {
+        refill();
+        return tokens >= 1 ? 0 : nanosUntilToken();
+    }
+
+    /**
+     * Checks whether the bucket has refilled completely, meaning it has not limited anything recently.
+     *
+     * @return true if the bucket is full
+     */
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+
+    private long nanosUntilToken() {
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+}
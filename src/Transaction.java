@@ -18,6 +18,7 @@ public class Transaction {
     private LocalDate dueDate;
     private LocalDate returnDate;
     private TransactionStatus status;
+    private int renewalCount;
 
     /**
      * Constructor for creating a new transaction.
@@ -51,6 +52,9 @@ public class Transaction {
     public TransactionStatus getStatus() { return status; }
     public void setStatus(TransactionStatus status) { this.status = status; }
 
+    public int getRenewalCount() { return renewalCount; }
+    public void setRenewalCount(int renewalCount) { this.renewalCount = renewalCount; }
+
     public void setTransactionId(String transactionId) {
         this.transactionId = transactionId;
     }
@@ -93,18 +97,31 @@ public class Transaction {
         if (this.status == TransactionStatus.ACTIVE || this.status == TransactionStatus.RENEWED) {
             this.dueDate = this.dueDate.plusDays(extensionDays);
             this.status = TransactionStatus.RENEWED;
+            this.renewalCount++;
             return true;
         }
         return false;
     }
 
+    /**
+     * Renews the transaction by extending the due date, unless it has already been renewed
+     * the maximum number of times.
+     *
+     * @param extensionDays The number of days to extend the loan
+     * @param maxRenewals The maximum number of renewals allowed for one loan
+     * @return true if the renewal was successful, false if the transaction is not eligible for renewal
+     */
+    public boolean renewTransaction(int extensionDays, int maxRenewals) {
+        return renewalCount < maxRenewals && renewTransaction(extensionDays);
+    }
+
     /**
      * Checks if the transaction is overdue.
      *
      * @return true if the transaction is overdue, false otherwise
      */
     public boolean isOverdue() {
-        return LocalDate.now().isAfter(this.dueDate) && this.status != TransactionStatus.COMPLETED;
+        return LocalDate.now().isAfter(this.dueDate) && this.status.isOpenLoan();
     }
 
     /**
@@ -120,7 +137,8 @@ public class Transaction {
                 borrowDate.toString(),
                 dueDate.toString(),
                 returnDate != null ? returnDate.toString() : "",
-                status.name()
+                status.name(),
+                String.valueOf(renewalCount)
         );
     }
 
@@ -140,6 +158,9 @@ public class Transaction {
             transaction.returnDate = LocalDate.parse(parts[5]);
         }
         transaction.status = TransactionStatus.valueOf(parts[6]);
+        if (parts.length > 7) {
+            transaction.renewalCount = Integer.parseInt(parts[7]);
+        }
         return transaction;
     }
 
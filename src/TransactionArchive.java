@@ -0,0 +1,222 @@
+// File: TransactionArchive.java
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cold storage tier for completed transactions.
+ * Archived transactions are written to immutable, Deflate-compressed segment files. Each segment
+ * starts with an uncompressed header holding its minimum and maximum borrow date and a bloom
+ * filter of the user IDs and ISBNs it contains, so history queries only decompress the segments
+ * that can match.
+ */
+public class TransactionArchive {
+    private static final String DIRECTORY = "data/archive";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MAGIC = 0x4C4D5341; // "LMSA"
+    private static final int VERSION = 1;
+    private static final int MAX_SEGMENT_RECORDS = 200_000;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+    private final Path directory;
+    private List<SegmentInfo> segments;
+
+    /**
+     * Header information of a single segment file.
+     *
+     * @param path The segment file
+     * @param recordCount The number of transactions in the segment
+     * @param minBorrowDate The earliest borrow date in the segment
+     * @param maxBorrowDate The latest borrow date in the segment
+     * @param keys Bloom filter of the user IDs and ISBNs in the segment
+     */
+    public record SegmentInfo(Path path, int recordCount, LocalDate minBorrowDate, LocalDate maxBorrowDate,
+                              BloomFilter keys) {
+        /**
+         * Checks whether the segment can hold transactions matching the given criteria.
+         * Null criteria are unrestricted.
+         */
+        boolean mayMatch(String userId, String ISBN, LocalDate from, LocalDate to) {
+            if (from != null && maxBorrowDate.isBefore(from)) {
+                return false;
+            }
+            if (to != null && minBorrowDate.isAfter(to)) {
+                return false;
+            }
+            if (userId != null && !keys.mightContain(userId)) {
+                return false;
+            }
+            return ISBN == null || keys.mightContain(ISBN);
+        }
+    }
+
+    public TransactionArchive() {
+        this(Paths.get(DIRECTORY));
+    }
+
+    /**
+     * Creates an archive keeping its segments in the given directory.
+     *
+     * @param directory The segment directory
+     */
+    public TransactionArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Writes transactions to new segment files.
+     * Transactions are ordered by borrow date before being split into segments so that each
+     * segment covers a narrow date range.
+     *
+     * @param transactions The completed transactions to archive
+     * @throws IOException If an I/O error occurs
+     */
+    public synchronized void append(List<Transaction> transactions) throws IOException {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        List<Transaction> sorted = new ArrayList<>(transactions);
+        sorted.sort(Comparator.comparing(Transaction::getBorrowDate));
+
+        Files.createDirectories(directory);
+        // Reload the headers so that segments written by another process are not overwritten
+        invalidate();
+        List<SegmentInfo> current = new ArrayList<>(getSegments());
+        long nextSequence = nextSequence(current);
+        for (int start = 0; start < sorted.size(); start += MAX_SEGMENT_RECORDS) {
+            List<Transaction> batch = sorted.subList(start, Math.min(sorted.size(), start + MAX_SEGMENT_RECORDS));
+            current.add(writeSegment(batch, nextSequence++));
+        }
+        segments = List.copyOf(current);
+    }
+
+    /**
+     * Streams archived transactions matching the given criteria.
+     * Null criteria are unrestricted. Segments whose date range or bloom filter rule out a match
+     * are skipped without being decompressed.
+     *
+     * @param userId The user ID to match, or null
+     * @param ISBN The ISBN to match, or null
+     * @param from The earliest borrow date to include, or null
+     * @param to The latest borrow date to include, or null
+     * @param action The action to apply to each matching transaction
+     * @throws IOException If an I/O error occurs
+     */
+    public void scan(String userId, String ISBN, LocalDate from, LocalDate to, Consumer<Transaction> action) throws IOException {
+        for (SegmentInfo segment : getSegments()) {
+            if (!segment.mayMatch(userId, ISBN, from, to)) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path())))) {
+                readHeader(segment.path(), in);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new InflaterInputStream(in), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Transaction t = Transaction.fromCSV(line);
+                    if ((userId == null || t.getUserId().equals(userId))
+                            && (ISBN == null || t.getISBN().equals(ISBN))
+                            && (from == null || !t.getBorrowDate().isBefore(from))
+                            && (to == null || !t.getBorrowDate().isAfter(to))) {
+                        action.accept(t);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the cached segment headers; they are reloaded on next use.
+     */
+    public synchronized void invalidate() {
+        segments = null;
+    }
+
+    /**
+     * Gets the headers of all segments, loading them on first use.
+     *
+     * @return An immutable list of the segment headers in sequence order
+     * @throws IOException If an I/O error occurs
+     */
+    public synchronized List<SegmentInfo> getSegments() throws IOException {
+        if (segments == null) {
+            List<SegmentInfo> loaded = new ArrayList<>();
+            if (Files.isDirectory(directory)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                    for (Path path : stream) {
+                        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                            loaded.add(readHeader(path, in));
+                        }
+                    }
+                }
+            }
+            loaded.sort(Comparator.comparing(s -> s.path().getFileName().toString()));
+            segments = List.copyOf(loaded);
+        }
+        return segments;
+    }
+
+    private SegmentInfo writeSegment(List<Transaction> batch, long sequence) throws IOException {
+        BloomFilter keys = new BloomFilter(batch.size() * 2, BLOOM_FALSE_POSITIVE_RATE);
+        for (Transaction t : batch) {
+            keys.add(t.getUserId());
+            keys.add(t.getISBN());
+        }
+        LocalDate min = batch.get(0).getBorrowDate();
+        LocalDate max = batch.get(batch.size() - 1).getBorrowDate();
+
+        Path target = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(batch.size());
+            out.writeLong(min.toEpochDay());
+            out.writeLong(max.toEpochDay());
+            keys.writeTo(out);
+
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try {
+                DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 64 * 1024);
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(deflated, StandardCharsets.UTF_8));
+                for (Transaction t : batch) {
+                    writer.write(t.toCSV());
+                    writer.newLine();
+                }
+                writer.flush();
+                deflated.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return new SegmentInfo(target, batch.size(), min, max, keys);
+    }
+
+    private static SegmentInfo readHeader(Path path, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a transaction archive segment: " + path);
+        }
+        int count = in.readInt();
+        LocalDate min = LocalDate.ofEpochDay(in.readLong());
+        LocalDate max = LocalDate.ofEpochDay(in.readLong());
+        return new SegmentInfo(path, count, min, max, BloomFilter.readFrom(in));
+    }
+
+    private static long nextSequence(List<SegmentInfo> segments) {
+        if (segments.isEmpty()) {
+            return 1;
+        }
+        String name = segments.get(segments.size() - 1).path().getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())) + 1;
+    }
+}
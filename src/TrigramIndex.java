@@ -0,0 +1,413 @@
+// File: TrigramIndex.java
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Typo-tolerant search over book titles and authors.
+ * <p>
+ * Every word of a title or author is split into trigrams, and each trigram has a posting list of
+ * the books containing it. A query scans the postings of its rarest trigrams to collect candidate
+ * books, re-scores the candidates sharing the most trigrams with the query by trigram similarity,
+ * and keeps the best results in a bounded heap. Scores are boosted for available and frequently
+ * borrowed books.
+ * <p>
+ * Edits are incremental: a changed book gets a new row and its old row is left dead in the
+ * posting lists until dead rows make up half the index, when the postings are rebuilt.
+ */
+public class TrigramIndex {
+    private static final int SYMBOLS = 38;
+    private static final int TRIGRAMS = SYMBOLS * SYMBOLS * SYMBOLS;
+    private static final int MAX_POSTINGS_SCANNED = 30_000;
+    private static final int CANDIDATES_PER_RESULT = 10;
+    private static final double MIN_SIMILARITY = 0.3;
+    private static final double AVAILABILITY_BOOST = 0.15;
+    private static final double POPULARITY_BOOST = 0.25;
+
+    private final int[][] postings = new int[TRIGRAMS][];
+    private final int[] postingSizes = new int[TRIGRAMS];
+    private final List<Book> rows = new ArrayList<>();
+    private final List<String> rowTexts = new ArrayList<>();
+    private final BitSet liveRows = new BitSet();
+    private final LongIntHashMap rowByISBN = new LongIntHashMap();
+    private final LongIntHashMap borrowCounts = new LongIntHashMap();
+    private int maxBorrowCount;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<int[]> scratchCounts = ThreadLocal.withInitial(() -> new int[0]);
+
+    /**
+     * A search result.
+     *
+     * @param book The matching book
+     * @param score The ranking score: similarity boosted for availability and popularity
+     * @param similarity The trigram similarity between the query and the book's title and author, from 0 to 1
+     */
+    public record SearchHit(Book book, double score, double similarity) {
+    }
+
+    /**
+     * Creates an index of the given books.
+     *
+     * @param books The catalog
+     */
+    public TrigramIndex(List<Book> books) {
+        for (Book book : books) {
+            put(book);
+        }
+    }
+
+    /**
+     * Adds a book or replaces the indexed version of an existing one.
+     *
+     * @param book The book
+     */
+    public void put(Book book) {
+        lock.writeLock().lock();
+        try {
+            int previous = rowByISBN.get(book.getISBNKey(), -1);
+            if (previous >= 0) {
+                if (rowTexts.get(previous).equals(textOf(book))) {
+                    // Same text, so the postings are still right; only the copy counts changed
+                    rows.set(previous, book);
+                    return;
+                }
+                kill(previous);
+            }
+            addRow(book);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a book from the index.
+     *
+     * @param ISBN The ISBN of the book
+     */
+    public void remove(String ISBN) {
+        lock.writeLock().lock();
+        try {
+            long key = ISBNUtils.toLong(ISBN);
+            int row = rowByISBN.get(key, -1);
+            if (row >= 0) {
+                rowByISBN.remove(key);
+                kill(row);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the number of times a book was borrowed, used for the popularity boost.
+     *
+     * @param ISBN The ISBN of the book
+     * @param count The borrow count
+     */
+    public void setBorrowCount(String ISBN, int count) {
+        lock.writeLock().lock();
+        try {
+            borrowCounts.put(ISBNUtils.toLong(ISBN), count);
+            maxBorrowCount = Math.max(maxBorrowCount, count);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts one more borrow of a book for the popularity boost.
+     *
+     * @param ISBN The ISBN of the book
+     */
+    public void recordBorrow(String ISBN) {
+        lock.writeLock().lock();
+        try {
+            maxBorrowCount = Math.max(maxBorrowCount, borrowCounts.addTo(ISBNUtils.toLong(ISBN), 1));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the books whose title or author best matches the query, tolerating misspellings.
+     *
+     * @param query The words to search for
+     * @param limit The maximum number of results
+     * @return The best matches, highest score first
+     * @throws IllegalArgumentException If the limit is not positive
+     */
+    public List<SearchHit> search(String query, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+        int[][] queryWords = wordTrigrams(query);
+        if (queryWords.length == 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            int[] candidates = collectCandidates(queryWords, limit * CANDIDATES_PER_RESULT);
+
+            // The heap's head is the worst hit kept so far, so it can be evicted cheaply
+            PriorityQueue<SearchHit> best = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(SearchHit::score));
+            for (int row : candidates) {
+                Book book = rows.get(row);
+                double similarity = similarity(queryWords, wordTrigrams(rowTexts.get(row)));
+                if (similarity < MIN_SIMILARITY) {
+                    continue;
+                }
+                double score = similarity * boost(book);
+                if (best.size() < limit) {
+                    best.add(new SearchHit(book, score, similarity));
+                } else if (score > best.peek().score()) {
+                    best.poll();
+                    best.add(new SearchHit(book, score, similarity));
+                }
+            }
+            List<SearchHit> hits = new ArrayList<>(best);
+            hits.sort(Comparator.comparingDouble(SearchHit::score).reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts how many query trigrams each live row shares, scanning the rarest trigrams first
+     * within a fixed budget, and returns the rows with the highest counts.
+     */
+    private int[] collectCandidates(int[][] queryWords, int maxCandidates) {
+        int[] queryTrigrams = sortedDistinct(Arrays.stream(queryWords).flatMapToInt(Arrays::stream).toArray());
+        Integer[] byRarity = new Integer[queryTrigrams.length];
+        for (int i = 0; i < byRarity.length; i++) {
+            byRarity[i] = queryTrigrams[i];
+        }
+        Arrays.sort(byRarity, Comparator.comparingInt(trigram -> postingSizes[trigram]));
+
+        int[] counts = scratchCounts.get();
+        if (counts.length < rows.size()) {
+            counts = new int[rows.size() + rows.size() / 4];
+            scratchCounts.set(counts);
+        }
+        int[] touched = new int[64];
+        int touchedCount = 0;
+        long scanned = 0;
+        for (int trigram : byRarity) {
+            int size = postingSizes[trigram];
+            if (size == 0) {
+                continue;
+            }
+            if (scanned > 0 && scanned + size > MAX_POSTINGS_SCANNED) {
+                break;
+            }
+            // A query made only of very common trigrams still scans no more than the budget
+            size = Math.min(size, MAX_POSTINGS_SCANNED);
+            scanned += size;
+            int[] posting = postings[trigram];
+            for (int i = 0; i < size; i++) {
+                int row = posting[i];
+                if (counts[row]++ == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = row;
+                }
+            }
+        }
+
+        // Keep the rows sharing the most trigrams in a bounded min-heap of (count, row) pairs
+        PriorityQueue<long[]> top = new PriorityQueue<>(maxCandidates + 1, Comparator.comparingLong(e -> e[0]));
+        for (int i = 0; i < touchedCount; i++) {
+            int row = touched[i];
+            int count = counts[row];
+            counts[row] = 0;
+            if (!liveRows.get(row)) {
+                continue;
+            }
+            if (top.size() < maxCandidates) {
+                top.add(new long[]{count, row});
+            } else if (count > top.peek()[0]) {
+                top.poll();
+                top.add(new long[]{count, row});
+            }
+        }
+        int[] candidates = new int[top.size()];
+        int i = 0;
+        for (long[] entry : top) {
+            candidates[i++] = (int) entry[1];
+        }
+        return candidates;
+    }
+
+    /**
+     * Scores how well the words of a book match the query words: for every query word, the best
+     * trigram Jaccard similarity with any book word, averaged over the query words.
+     */
+    private static double similarity(int[][] queryWords, int[][] bookWords) {
+        double total = 0;
+        for (int[] queryWord : queryWords) {
+            double best = 0;
+            for (int[] bookWord : bookWords) {
+                best = Math.max(best, jaccard(queryWord, bookWord));
+            }
+            total += best;
+        }
+        return total / queryWords.length;
+    }
+
+    private static double jaccard(int[] a, int[] b) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) shared / (a.length + b.length - shared);
+    }
+
+    private double boost(Book book) {
+        double boost = 1;
+        if (book.isAvailable()) {
+            boost += AVAILABILITY_BOOST;
+        }
+        int borrows = borrowCounts.get(book.getISBNKey(), 0);
+        if (borrows > 0) {
+            boost += POPULARITY_BOOST * Math.log1p(borrows) / Math.log1p(maxBorrowCount);
+        }
+        return boost;
+    }
+
+    /**
+     * Splits text into words and returns the sorted, distinct trigrams of each word.
+     * Words are padded with two spaces in front and one behind, so short words still produce
+     * trigrams and word starts weigh more.
+     */
+    private static int[][] wordTrigrams(String text) {
+        List<int[]> words = new ArrayList<>();
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && symbol(text.charAt(start)) == 0) {
+                start++;
+            }
+            int end = start;
+            while (end < length && symbol(text.charAt(end)) != 0) {
+                end++;
+            }
+            if (end > start) {
+                int[] padded = new int[end - start + 3];
+                for (int i = start; i < end; i++) {
+                    padded[i - start + 2] = symbol(text.charAt(i));
+                }
+                int[] trigrams = new int[padded.length - 2];
+                for (int i = 0; i < trigrams.length; i++) {
+                    trigrams[i] = (padded[i] * SYMBOLS + padded[i + 1]) * SYMBOLS + padded[i + 2];
+                }
+                words.add(sortedDistinct(trigrams));
+            }
+            start = end;
+        }
+        return words.toArray(new int[0][]);
+    }
+
+    /**
+     * Maps a character to a trigram symbol: 0 for separators, 1-26 for letters, 27-36 for digits
+     * and 37 for any other letter.
+     */
+    private static int symbol(char c) {
+        char lower = Character.toLowerCase(c);
+        if (lower >= 'a' && lower <= 'z') {
+            return lower - 'a' + 1;
+        }
+        if (lower >= '0' && lower <= '9') {
+            return lower - '0' + 27;
+        }
+        return Character.isLetter(lower) ? 37 : 0;
+    }
+
+    private void addPosting(int trigram, int row) {
+        int[] posting = postings[trigram];
+        int size = postingSizes[trigram];
+        if (posting == null) {
+            posting = new int[4];
+            postings[trigram] = posting;
+        } else if (size == posting.length) {
+            posting = Arrays.copyOf(posting, size + (size >> 1) + 1);
+            postings[trigram] = posting;
+        }
+        posting[size] = row;
+        postingSizes[trigram] = size + 1;
+    }
+
+    private void kill(int row) {
+        liveRows.clear(row);
+        rows.set(row, null);
+        rowTexts.set(row, "");
+    }
+
+    /**
+     * Rebuilds the rows and postings without dead rows once they make up half the index.
+     */
+    private void compactIfNeeded() {
+        int live = liveRows.cardinality();
+        if (rows.size() < 1024 || live * 2 > rows.size()) {
+            return;
+        }
+        List<Book> books = new ArrayList<>(live);
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            books.add(rows.get(row));
+        }
+        rows.clear();
+        liveRows.clear();
+        rowByISBN.clear();
+        Arrays.fill(postings, null);
+        Arrays.fill(postingSizes, 0);
+        rowTexts.clear();
+        for (Book book : books) {
+            addRow(book);
+        }
+    }
+
+    private void addRow(Book book) {
+        int row = rows.size();
+        String text = textOf(book);
+        rows.add(book);
+        rowTexts.add(text);
+        liveRows.set(row);
+        rowByISBN.put(book.getISBNKey(), row);
+        for (int trigram : sortedDistinct(Arrays.stream(wordTrigrams(text)).flatMapToInt(Arrays::stream).toArray())) {
+            addPosting(trigram, row);
+        }
+    }
+
+    private static String textOf(Book book) {
+        return book.getTitle() + " " + book.getAuthor();
+    }
+
+    private static int[] sortedDistinct(int[] values) {
+        Arrays.sort(values);
+        int distinct = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, distinct);
+    }
+}
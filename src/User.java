@@ -33,6 +33,31 @@ public class User {
         this.isActive = true;
     }
 
+    private User(String userId, String name, String email, String passwordHash, UserRole role, boolean isActive) {
+        this.userId = userId;
+        this.name = name;
+        this.email = email;
+        this.passwordHash = passwordHash;
+        this.role = role;
+        this.isActive = isActive;
+    }
+
+    /**
+     * Recreates a stored user without hashing a password or generating a new ID.
+     *
+     * @param userId The ID of the user
+     * @param name The name of the user
+     * @param email The email address of the user
+     * @param passwordHash The stored password hash
+     * @param role The role of the user
+     * @param isActive Whether the account is active
+     * @return The user
+     */
+    public static User restore(String userId, String name, String email, String passwordHash, UserRole role,
+                               boolean isActive) {
+        return new User(userId, name, email, passwordHash, role, isActive);
+    }
+
     // Getters and setters
     public String getUserId() { return userId; }
 
@@ -112,11 +137,7 @@ public class User {
      */
     public static User fromCSV(String csv) {
         String[] parts = csv.split(",");
-        User user = new User(parts[1], parts[2], "", UserRole.valueOf(parts[4]));
-        user.userId = parts[0];
-        user.passwordHash = parts[3];
-        user.isActive = Boolean.parseBoolean(parts[5]);
-        return user;
+        return restore(parts[0], parts[1], parts[2], parts[3], UserRole.valueOf(parts[4]), Boolean.parseBoolean(parts[5]));
     }
 
     @Override
@@ -0,0 +1,450 @@
+// File: WriteBehindFlusher.java
+
+import enums.DurabilityMode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Queues changes to the records of a CSV data file and writes them in batches.
+ * <p>
+ * Records are keyed by their first column. Changes to the same record within one batch are
+ * coalesced, so only the latest version is written, and a whole batch costs a single file rewrite.
+ * Reads through {@link #read(Function)} see queued changes. Every write transaction on the file,
+ * from this process or from code that rewrites the file directly, flushes the queue first.
+ * A batch that cannot be written stays queued and is retried with a delay that doubles up to
+ * 30 seconds.
+ * <p>
+ * Queued changes are only visible to this process until they are flushed, and a flushed record
+ * replaces whatever another process wrote to the same record in the meantime. The durability mode,
+ * batch window and batch size are process-wide settings; the initial mode can be set with the
+ * {@code library.durability} system property.
+ */
+public class WriteBehindFlusher {
+    private static final long DEFAULT_GROUP_WINDOW_MILLIS = 10;
+    private static final int DEFAULT_GROUP_MAX_OPERATIONS = 256;
+    private static final long DEFAULT_ASYNC_WINDOW_MILLIS = 1000;
+    private static final int DEFAULT_ASYNC_MAX_OPERATIONS = 10_000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    private static final List<WriteBehindFlusher> flushers = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "write-behind-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile DurabilityMode mode = DurabilityMode.SYNC;
+    private static volatile long windowMillis;
+    private static volatile int maxOperations;
+
+    static {
+        String configured = System.getProperty("library.durability");
+        DurabilityMode initial = configured == null ? DurabilityMode.SYNC : DurabilityMode.fromString(configured);
+        applySettings(initial, defaultWindowMillis(initial), defaultMaxOperations(initial));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                flushAll();
+            } catch (IOException e) {
+                System.err.println("Unable to flush queued changes: " + e.getMessage());
+            }
+        }, "write-behind-shutdown"));
+    }
+
+    private final Path path;
+    private final String header;
+    private LinkedHashMap<String, String> pending = new LinkedHashMap<>();
+    private Map<String, String> inFlight = Map.of();
+    private CompletableFuture<Void> pendingCommit = new CompletableFuture<>();
+    private CompletableFuture<Void> inFlightCommit = CompletableFuture.completedFuture(null);
+    private int pendingOperations;
+    private boolean flushScheduled;
+    private Exception flushFailure;
+    private long retryDelayMillis;
+
+    /**
+     * Creates a flusher for a CSV data file and registers it to be flushed before every write
+     * transaction on the file.
+     *
+     * @param path The data file
+     * @param header The header line of the file
+     */
+    public WriteBehindFlusher(Path path, String header) {
+        this.path = path;
+        this.header = header;
+        DataFileCoordinator.setPreWriteHook(path, this::flushLocked);
+        flushers.add(this);
+    }
+
+    /**
+     * Sets the process-wide durability mode with its default batch window and size.
+     *
+     * @param newMode The durability mode
+     * @throws IOException If switching to synchronous mode and queued changes cannot be flushed
+     */
+    public static void configure(DurabilityMode newMode) throws IOException {
+        configure(newMode, defaultWindowMillis(newMode), defaultMaxOperations(newMode));
+    }
+
+    /**
+     * Sets the process-wide durability mode. In deferred modes a batch is flushed when its window
+     * elapses or when it reaches the maximum number of operations, whichever comes first.
+     *
+     * @param newMode The durability mode
+     * @param newWindowMillis The maximum time a change waits before it is flushed, in milliseconds
+     * @param newMaxOperations The number of queued operations that triggers an immediate flush
+     * @throws IOException If switching to synchronous mode and queued changes cannot be flushed
+     * @throws IllegalArgumentException If the window or the number of operations is not positive
+     */
+    public static synchronized void configure(DurabilityMode newMode, long newWindowMillis, int newMaxOperations)
+            throws IOException {
+        if (newWindowMillis <= 0 || newMaxOperations <= 0) {
+            throw new IllegalArgumentException("Invalid batch window: " + newWindowMillis + " ms, "
+                    + newMaxOperations + " operations");
+        }
+        applySettings(newMode, newWindowMillis, newMaxOperations);
+        if (!newMode.isDeferred()) {
+            flushAll();
+        }
+    }
+
+    /**
+     * Gets the process-wide durability mode.
+     *
+     * @return The durability mode
+     */
+    public static DurabilityMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Flushes the queued changes of every data file.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static void flushAll() throws IOException {
+        for (WriteBehindFlusher flusher : flushers) {
+            flusher.flush();
+        }
+    }
+
+    /**
+     * Checks whether a change made now by the current thread should be queued rather than written.
+     * Changes made inside a write transaction on the file are always written directly.
+     *
+     * @return true if the change should be queued
+     */
+    public boolean isDeferred() {
+        return mode.isDeferred() && !DataFileCoordinator.isWriteLockedByCurrentThread(path);
+    }
+
+    /**
+     * Queues a new version of a record, replacing any version queued earlier in the same batch.
+     *
+     * @param line The CSV line of the record
+     * @return A future completed when the batch containing the change has been written
+     */
+    public synchronized CompletableFuture<Void> put(String line) {
+        return enqueue(keyOf(line), line);
+    }
+
+    /**
+     * Queues the deletion of a record.
+     *
+     * @param key The record key
+     * @return A future completed when the batch containing the change has been written
+     */
+    public synchronized CompletableFuture<Void> delete(String key) {
+        return enqueue(key, null);
+    }
+
+    /**
+     * Atomically reads the current version of a record, including queued changes, and queues
+     * the version computed from it.
+     *
+     * @param key The record key
+     * @param update Computes the new CSV line from the current one; returns null to leave the record unchanged
+     * @return The new CSV line, or null if the record does not exist or was left unchanged
+     * @throws IOException If an I/O error occurs
+     */
+    public synchronized String update(String key, UnaryOperator<String> update) throws IOException {
+        String current;
+        if (pending.containsKey(key)) {
+            current = pending.get(key);
+        } else if (inFlight.containsKey(key)) {
+            current = inFlight.get(key);
+        } else {
+            current = findOnDisk(key);
+        }
+        if (current == null) {
+            return null;
+        }
+        String updated = update.apply(current);
+        if (updated != null) {
+            enqueue(key, updated);
+        }
+        return updated;
+    }
+
+    /**
+     * A change queued for a record.
+     *
+     * @param line The new CSV line, or null if the record is queued for deletion
+     */
+    public record QueuedChange(String line) {
+    }
+
+    /**
+     * Looks up the change queued for a record without reading the file.
+     *
+     * @param key The record key
+     * @return The queued change, or null if no change is queued for the record
+     */
+    public synchronized QueuedChange findQueued(String key) {
+        if (pending.containsKey(key)) {
+            return new QueuedChange(pending.get(key));
+        }
+        if (inFlight.containsKey(key)) {
+            return new QueuedChange(inFlight.get(key));
+        }
+        return null;
+    }
+
+    /**
+     * Reads every record of the file with queued changes applied. Updated records keep their
+     * position and new records follow the records already on disk.
+     *
+     * @param parser Converts a CSV line into a record
+     * @param <T> The record type
+     * @return The records
+     * @throws IOException If an I/O error occurs
+     */
+    public <T> List<T> read(Function<String, T> parser) throws IOException {
+        List<T> records = new ArrayList<>();
+        forEach(parser, records::add);
+        return records;
+    }
+
+    /**
+     * Streams every record of the file with queued changes applied, in the order of
+     * {@link #read(Function)}, without collecting them into a list.
+     *
+     * @param parser Converts a CSV line into a record
+     * @param action Receives each record
+     * @param <T> The record type
+     * @throws IOException If an I/O error occurs
+     */
+    public <T> void forEach(Function<String, T> parser, Consumer<? super T> action) throws IOException {
+        Map<String, String> overlay = snapshot();
+        Set<String> seen = overlay.isEmpty() ? Set.of() : new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            reader.readLine(); // Skip header
+            while ((line = reader.readLine()) != null) {
+                if (!overlay.isEmpty()) {
+                    String key = keyOf(line);
+                    if (overlay.containsKey(key)) {
+                        seen.add(key);
+                        line = overlay.get(key);
+                    }
+                }
+                if (line != null) {
+                    action.accept(parser.apply(line));
+                }
+            }
+        }
+        for (Map.Entry<String, String> entry : overlay.entrySet()) {
+            if (entry.getValue() != null && !seen.contains(entry.getKey())) {
+                action.accept(parser.apply(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Gets a future completed when every change queued so far has been written. While a failed
+     * batch waits for its retry, the future is already failed with the error of the last attempt.
+     *
+     * @return The commit future, already completed if nothing is queued
+     */
+    public synchronized CompletableFuture<Void> getPendingCommit() {
+        if (flushFailure != null && !pending.isEmpty()) {
+            return CompletableFuture.failedFuture(flushFailure);
+        }
+        if (!pending.isEmpty()) {
+            return pendingCommit;
+        }
+        if (!inFlight.isEmpty()) {
+            return inFlightCommit;
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Writes the queued changes now.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+        }
+        // The pre-write hook does the work once the file lock is held
+        DataFileCoordinator.write(path, () -> null);
+    }
+
+    private CompletableFuture<Void> enqueue(String key, String line) {
+        pending.put(key, line);
+        pendingOperations++;
+        if (pendingOperations >= maxOperations) {
+            pendingOperations = 0;
+            scheduler.execute(this::flushQuietly);
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(this::flushQuietly, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return pendingCommit;
+    }
+
+    /**
+     * Writes the queued batch. Runs inside the outermost write transaction on the file.
+     */
+    private Void flushLocked() throws IOException {
+        Map<String, String> batch;
+        CompletableFuture<Void> commit;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return null;
+            }
+            batch = pending;
+            commit = pendingCommit;
+            pending = new LinkedHashMap<>();
+            pendingCommit = new CompletableFuture<>();
+            pendingOperations = 0;
+            flushScheduled = false;
+            inFlight = batch;
+            inFlightCommit = commit;
+        }
+        try {
+            rewrite(batch);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                // Keep the failed batch queued ahead of newer changes and retry it with a growing delay
+                LinkedHashMap<String, String> retry = new LinkedHashMap<>(batch);
+                retry.putAll(pending);
+                pending = retry;
+                inFlight = Map.of();
+                flushFailure = e;
+                retryDelayMillis = Math.min(Math.max(retryDelayMillis * 2, windowMillis), MAX_RETRY_DELAY_MILLIS);
+                flushScheduled = true;
+                scheduler.schedule(this::flushQuietly, retryDelayMillis, TimeUnit.MILLISECONDS);
+            }
+            commit.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            inFlight = Map.of();
+            flushFailure = null;
+            retryDelayMillis = 0;
+        }
+        commit.complete(null);
+        return null;
+    }
+
+    private void rewrite(Map<String, String> batch) throws IOException {
+        DataFileCoordinator.replace(path, writer -> {
+            Set<String> seen = new HashSet<>();
+            writer.write(header);
+            writer.newLine();
+            try (BufferedReader reader = Files.newBufferedReader(path)) {
+                String line;
+                reader.readLine(); // Skip header
+                while ((line = reader.readLine()) != null) {
+                    String key = keyOf(line);
+                    if (batch.containsKey(key)) {
+                        seen.add(key);
+                        line = batch.get(key);
+                    }
+                    if (line != null) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Every queued record is new
+            }
+            for (Map.Entry<String, String> entry : batch.entrySet()) {
+                if (entry.getValue() != null && !seen.contains(entry.getKey())) {
+                    writer.write(entry.getValue());
+                    writer.newLine();
+                }
+            }
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Unable to flush queued changes to " + path + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized Map<String, String> snapshot() {
+        if (pending.isEmpty() && inFlight.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> overlay = new LinkedHashMap<>(inFlight);
+        overlay.putAll(pending);
+        return overlay;
+    }
+
+    private String findOnDisk(String key) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            reader.readLine(); // Skip header
+            while ((line = reader.readLine()) != null) {
+                if (keyOf(line).equals(key)) {
+                    return line;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String keyOf(String line) {
+        int comma = line.indexOf(',');
+        return comma < 0 ? line : line.substring(0, comma);
+    }
+
+    private static void applySettings(DurabilityMode newMode, long newWindowMillis, int newMaxOperations) {
+        windowMillis = newWindowMillis;
+        maxOperations = newMaxOperations;
+        mode = newMode;
+    }
+
+    private static long defaultWindowMillis(DurabilityMode mode) {
+        return mode == DurabilityMode.ASYNC ? DEFAULT_ASYNC_WINDOW_MILLIS : DEFAULT_GROUP_WINDOW_MILLIS;
+    }
+
+    private static int defaultMaxOperations(DurabilityMode mode) {
+        return mode == DurabilityMode.ASYNC ? DEFAULT_ASYNC_MAX_OPERATIONS : DEFAULT_GROUP_MAX_OPERATIONS;
+    }
+}
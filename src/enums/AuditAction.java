@@ -0,0 +1,89 @@
+package enums;
+
+// File: AuditAction.java
+
+import java.util.Arrays;
+
+/**
+ * Represents the kinds of changes recorded in the audit log. Audit records store the action
+ * by its ordinal, so new actions must be added at the end.
+ */
+public enum AuditAction {
+    BOOK_ADDED("Book Added", "A title was added to the catalog"),
+    BOOK_UPDATED("Book Updated", "The details of a title were changed"),
+    BOOK_DELETED("Book Deleted", "A title was removed from the catalog"),
+    BOOKS_IMPORTED("Books Imported", "A catalog export was imported"),
+    COPIES_ADDED("Copies Added", "Physical copies of a title were added"),
+    COPY_WITHDRAWN("Copy Withdrawn", "A physical copy was removed from the collection"),
+    BOOK_BORROWED("Book Borrowed", "A loan was opened"),
+    BOOK_RETURNED("Book Returned", "A loan was completed"),
+    LOAN_RENEWED("Loan Renewed", "The due date of a loan was extended"),
+    HOLD_PLACED("Hold Placed", "A patron joined the hold queue of a title"),
+    HOLD_CANCELLED("Hold Cancelled", "A patron left the hold queue of a title"),
+    HOLD_RESERVED("Hold Reserved", "A copy was set aside for the next patron in a hold queue"),
+    HOLD_EXPIRED("Hold Expired", "A reservation was not picked up in time"),
+    LOANS_ARCHIVED("Loans Archived", "Completed loans were moved to the archive"),
+    STATUSES_UPDATED("Statuses Updated", "The nightly job assigned the overdue and lost statuses"),
+    COPY_COUNTS_REPAIRED("Copy Counts Repaired", "The integrity checker corrected drifted copies and copy counts"),
+    USER_ADDED("User Added", "A user was registered"),
+    USER_UPDATED("User Updated", "The details of a user were changed"),
+    USER_DEACTIVATED("User Deactivated", "A user account was deactivated"),
+    PASSWORD_CHANGED("Password Changed", "A user changed their password");
+
+    private final String displayName;
+    private final String description;
+
+    /**
+     * Constructor for AuditAction enum.
+     *
+     * @param displayName The human-readable name of the audit action.
+     * @param description A brief description of what the audit action means.
+     */
+    AuditAction(String displayName, String description) {
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    /**
+     * Gets the display name of the audit action.
+     *
+     * @return The human-readable name of the audit action.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the description of the audit action.
+     *
+     * @return A brief description of what the audit action means.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Converts a string to a AuditAction enum value, ignoring case.
+     *
+     * @param typeString The string representation of the audit action.
+     * @return The corresponding AuditAction enum value.
+     * @throws IllegalArgumentException if the input string doesn't match any AuditAction.
+     */
+    public static AuditAction fromString(String typeString) {
+        String normalizedType = typeString.toUpperCase().replace(" ", "_");
+        return Arrays.stream(AuditAction.values())
+                .filter(type -> type.name().equals(normalizedType))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid audit action: " + typeString));
+    }
+
+    /**
+     * Returns a string representation of the audit action (its display name).
+     *
+     * @return The display name of the audit action.
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,71 @@
+package enums;
+
+// File: CirculationEvent.java
+
+import java.util.Arrays;
+
+/**
+ * Represents the circulation events counted by the calendar rollups.
+ */
+public enum CirculationEvent {
+    BORROW("Borrow", "A copy was lent out, counted on the borrow date"),
+    RETURN("Return", "A loan was returned, counted on the return date"),
+    OVERDUE("Overdue", "A loan went past its due date, counted on the first day it was late");
+
+    private final String displayName;
+    private final String description;
+
+    /**
+     * Constructor for CirculationEvent enum.
+     *
+     * @param displayName The human-readable name of the circulation event.
+     * @param description A brief description of what the circulation event means.
+     */
+    CirculationEvent(String displayName, String description) {
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    /**
+     * Gets the display name of the circulation event.
+     *
+     * @return The human-readable name of the circulation event.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the description of the circulation event.
+     *
+     * @return A brief description of what the circulation event means.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Converts a string to a CirculationEvent enum value, ignoring case.
+     *
+     * @param eventString The string representation of the circulation event.
+     * @return The corresponding CirculationEvent enum value.
+     * @throws IllegalArgumentException if the input string doesn't match any CirculationEvent.
+     */
+    public static CirculationEvent fromString(String eventString) {
+        String normalizedEvent = eventString.toUpperCase().replace(" ", "_");
+        return Arrays.stream(CirculationEvent.values())
+                .filter(event -> event.name().equals(normalizedEvent))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid circulation event: " + eventString));
+    }
+
+    /**
+     * Returns a string representation of the circulation event (its display name).
+     *
+     * @return The display name of the circulation event.
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,75 @@
+package enums;
+
+// File: DiscrepancyType.java
+
+import java.util.Arrays;
+
+/**
+ * Represents the kinds of inconsistencies found by the integrity checker.
+ */
+public enum DiscrepancyType {
+    MALFORMED_RECORD("Malformed Record", "A line of a data file cannot be parsed"),
+    DUPLICATE_ID("Duplicate ID", "Several records of a file share the same ID"),
+    UNKNOWN_USER("Unknown User", "A transaction references a user that does not exist"),
+    UNKNOWN_BOOK("Unknown Book", "A transaction references an ISBN that is not in the catalog"),
+    COPY_COUNT("Copy Count", "A book's copy counts differ from its copies, or from its total copies minus the copies held"),
+    OVERCOMMITTED("Overcommitted", "A book has more copies held by loans and reservations than it owns"),
+    ITEM_STATUS("Item Status", "A copy's status disagrees with the open loans and reservations");
+
+    private final String displayName;
+    private final String description;
+
+    /**
+     * Constructor for DiscrepancyType enum.
+     *
+     * @param displayName The human-readable name of the discrepancy type.
+     * @param description A brief description of what the discrepancy type means.
+     */
+    DiscrepancyType(String displayName, String description) {
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    /**
+     * Gets the display name of the discrepancy type.
+     *
+     * @return The human-readable name of the discrepancy type.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the description of the discrepancy type.
+     *
+     * @return A brief description of what the discrepancy type means.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Converts a string to a DiscrepancyType enum value, ignoring case.
+     *
+     * @param typeString The string representation of the discrepancy type.
+     * @return The corresponding DiscrepancyType enum value.
+     * @throws IllegalArgumentException if the input string doesn't match any DiscrepancyType.
+     */
+    public static DiscrepancyType fromString(String typeString) {
+        String normalizedType = typeString.toUpperCase().replace(" ", "_");
+        return Arrays.stream(DiscrepancyType.values())
+                .filter(type -> type.name().equals(normalizedType))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid discrepancy type: " + typeString));
+    }
+
+    /**
+     * Returns a string representation of the discrepancy type (its display name).
+     *
+     * @return The display name of the discrepancy type.
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,93 @@
+package enums;
+
+// File: DurabilityMode.java
+
+import java.util.Arrays;
+
+/**
+ * Represents how eagerly changes to the data files are made durable.
+ * Deferred modes trade a short window of possible data loss for fewer file rewrites.
+ */
+public enum DurabilityMode {
+    SYNC("Synchronous", "Every change is written and forced to disk before the operation returns", true),
+    GROUP("Group commit", "Changes are coalesced and forced to disk in batches every few milliseconds", true),
+    ASYNC("Asynchronous", "Changes are coalesced and written in the background without forcing them to disk", false);
+
+    private final String displayName;
+    private final String description;
+    private final boolean forcesWrites;
+
+    /**
+     * Constructor for DurabilityMode enum.
+     *
+     * @param displayName The human-readable name of the mode.
+     * @param description A brief description of the durability guarantee.
+     * @param forcesWrites Whether file writes are forced to the storage device.
+     */
+    DurabilityMode(String displayName, String description, boolean forcesWrites) {
+        this.displayName = displayName;
+        this.description = description;
+        this.forcesWrites = forcesWrites;
+    }
+
+    /**
+     * Gets the display name of the mode.
+     *
+     * @return The human-readable name of the mode.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the description of the mode.
+     *
+     * @return A brief description of the durability guarantee.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Checks whether file writes in this mode are forced to the storage device.
+     *
+     * @return true if writes are forced, false otherwise
+     */
+    public boolean forcesWrites() {
+        return forcesWrites;
+    }
+
+    /**
+     * Checks whether changes in this mode are queued and written in batches.
+     *
+     * @return true for group commit and asynchronous modes, false otherwise
+     */
+    public boolean isDeferred() {
+        return this != SYNC;
+    }
+
+    /**
+     * Converts a string to a DurabilityMode enum value, ignoring case.
+     *
+     * @param modeString The string representation of the mode.
+     * @return The corresponding DurabilityMode enum value.
+     * @throws IllegalArgumentException if the input string doesn't match any DurabilityMode.
+     */
+    public static DurabilityMode fromString(String modeString) {
+        String normalizedMode = modeString.trim().toUpperCase();
+        return Arrays.stream(DurabilityMode.values())
+                .filter(mode -> mode.name().equals(normalizedMode))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid durability mode: " + modeString));
+    }
+
+    /**
+     * Returns a string representation of the mode (its display name).
+     *
+     * @return The display name of the mode.
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,71 @@
+package enums;
+
+// File: ItemStatus.java
+
+import java.util.Arrays;
+
+/**
+ * Represents the circulation state of a physical copy of a book.
+ */
+public enum ItemStatus {
+    AVAILABLE("Available", "The copy is on the shelf"),
+    ON_LOAN("On Loan", "The copy is checked out to a patron"),
+    RESERVED("Reserved", "The copy is set aside for a patron with a hold");
+
+    private final String displayName;
+    private final String description;
+
+    /**
+     * Constructor for ItemStatus enum.
+     *
+     * @param displayName The human-readable name of the status.
+     * @param description A brief description of what the status means.
+     */
+    ItemStatus(String displayName, String description) {
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    /**
+     * Gets the display name of the status.
+     *
+     * @return The human-readable name of the status.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the description of the status.
+     *
+     * @return A brief description of what the status means.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Converts a string to an ItemStatus enum value, ignoring case.
+     *
+     * @param statusString The string representation of the status.
+     * @return The corresponding ItemStatus enum value.
+     * @throws IllegalArgumentException if the input string doesn't match any ItemStatus.
+     */
+    public static ItemStatus fromString(String statusString) {
+        String normalizedStatus = statusString.toUpperCase().replace(" ", "_");
+        return Arrays.stream(ItemStatus.values())
+                .filter(status -> status.name().equals(normalizedStatus))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid item status: " + statusString));
+    }
+
+    /**
+     * Returns a string representation of the status (its display name).
+     *
+     * @return The display name of the status.
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
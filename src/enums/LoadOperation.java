@@ -0,0 +1,73 @@
+package enums;
+
+// File: LoadOperation.java
+
+import java.util.Arrays;
+
+/**
+ * Represents an operation issued by the load generator.
+ */
+public enum LoadOperation {
+    SEARCH("Search", "A catalog search by title, author or misspelled words"),
+    BORROW("Borrow", "A patron borrows a random title"),
+    RETURN("Return", "A patron returns a book on loan"),
+    LOGIN("Login", "A patron logs in with their email and password"),
+    REPORT("Report", "A staff member requests a report");
+
+    private final String displayName;
+    private final String description;
+
+    /**
+     * Constructor for LoadOperation enum.
+     *
+     * @param displayName The human-readable name of the operation.
+     * @param description A brief description of the operation.
+     */
+    LoadOperation(String displayName, String description) {
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    /**
+     * Gets the display name of the operation.
+     *
+     * @return The human-readable name of the operation.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the description of the operation.
+     *
+     * @return A brief description of the operation.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Converts a string to a LoadOperation enum value, ignoring case.
+     *
+     * @param operationString The string representation of the operation.
+     * @return The corresponding LoadOperation enum value.
+     * @throws IllegalArgumentException if the input string doesn't match any LoadOperation.
+     */
+    public static LoadOperation fromString(String operationString) {
+        String normalizedOperation = operationString.trim().toUpperCase();
+        return Arrays.stream(LoadOperation.values())
+                .filter(operation -> operation.name().equals(normalizedOperation))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid load operation: " + operationString));
+    }
+
+    /**
+     * Returns a string representation of the operation (its display name).
+     *
+     * @return The display name of the operation.
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
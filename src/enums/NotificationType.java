@@ -0,0 +1,70 @@
+package enums;
+
+// File: NotificationType.java
+
+import java.util.Arrays;
+
+/**
+ * Represents the kinds of notices sent to patrons through the notification outbox.
+ */
+public enum NotificationType {
+    OVERDUE("Overdue Notice", "A loan is past its due date"),
+    HOLD_READY("Hold Ready", "A copy is reserved for the patron and waiting for pickup");
+
+    private final String displayName;
+    private final String description;
+
+    /**
+     * Constructor for NotificationType enum.
+     *
+     * @param displayName The human-readable name of the notification type.
+     * @param description A brief description of what the notification type means.
+     */
+    NotificationType(String displayName, String description) {
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    /**
+     * Gets the display name of the notification type.
+     *
+     * @return The human-readable name of the notification type.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the description of the notification type.
+     *
+     * @return A brief description of what the notification type means.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Converts a string to a NotificationType enum value, ignoring case.
+     *
+     * @param typeString The string representation of the notification type.
+     * @return The corresponding NotificationType enum value.
+     * @throws IllegalArgumentException if the input string doesn't match any NotificationType.
+     */
+    public static NotificationType fromString(String typeString) {
+        String normalizedType = typeString.toUpperCase().replace(" ", "_");
+        return Arrays.stream(NotificationType.values())
+                .filter(type -> type.name().equals(normalizedType))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid notification type: " + typeString));
+    }
+
+    /**
+     * Returns a string representation of the notification type (its display name).
+     *
+     * @return The display name of the notification type.
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,65 @@
+package enums;
+
+// File: OperationClass.java
+
+/**
+ * Represents the classes of library operations that admission control limits separately.
+ * Classes are listed from the highest to the lowest priority.
+ */
+public enum OperationClass {
+    CIRCULATION("Circulation", "Borrowing and returning books"),
+    AUTH("Authentication", "Logging in"),
+    SEARCH("Search", "Catalog searches and queries"),
+    REPORTING("Reporting", "Inventory, overdue and activity reports");
+
+    private final String displayName;
+    private final String description;
+
+    /**
+     * Constructor for OperationClass enum.
+     *
+     * @param displayName The human-readable name of the operation class.
+     * @param description A brief description of the operations in the class.
+     */
+    OperationClass(String displayName, String description) {
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    /**
+     * Gets the display name of the operation class.
+     *
+     * @return The human-readable name of the operation class.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the description of the operation class.
+     *
+     * @return A brief description of the operations in the class.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Checks whether operations of this class yield to circulation when the disk is busy.
+     *
+     * @return true for search and reporting, false otherwise
+     */
+    public boolean yieldsToCirculation() {
+        return this == SEARCH || this == REPORTING;
+    }
+
+    /**
+     * Returns a string representation of the operation class (its display name).
+     *
+     * @return The display name of the operation class.
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,71 @@
+package enums;
+
+// File: ReplicatedEntity.java
+
+import java.util.Arrays;
+
+/**
+ * Represents the kinds of records shipped to read replicas through the replication log.
+ */
+public enum ReplicatedEntity {
+    BOOK("Book", "A catalog record, keyed by ISBN"),
+    USER("User", "A patron or staff record, keyed by user ID"),
+    TRANSACTION("Transaction", "A loan or reservation record, keyed by transaction ID");
+
+    private final String displayName;
+    private final String description;
+
+    /**
+     * Constructor for ReplicatedEntity enum.
+     *
+     * @param displayName The human-readable name of the entity.
+     * @param description A brief description of the entity and its key.
+     */
+    ReplicatedEntity(String displayName, String description) {
+        this.displayName = displayName;
+        this.description = description;
+    }
+
+    /**
+     * Gets the display name of the entity.
+     *
+     * @return The human-readable name of the entity.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets the description of the entity.
+     *
+     * @return A brief description of the entity and its key.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Converts a string to a ReplicatedEntity enum value, ignoring case.
+     *
+     * @param entityString The string representation of the entity.
+     * @return The corresponding ReplicatedEntity enum value.
+     * @throws IllegalArgumentException if the input string doesn't match any ReplicatedEntity.
+     */
+    public static ReplicatedEntity fromString(String entityString) {
+        String normalizedEntity = entityString.toUpperCase().replace(" ", "_");
+        return Arrays.stream(ReplicatedEntity.values())
+                .filter(entity -> entity.name().equals(normalizedEntity))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid replicated entity: " + entityString));
+    }
+
+    /**
+     * Returns a string representation of the entity (its display name).
+     *
+     * @return The display name of the entity.
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -14,7 +14,8 @@ public enum TransactionStatus {
     OVERDUE("Overdue", "The book is past its due date"),
     RENEWED("Renewed", "The loan period has been extended"),
     LOST("Lost", "The book has been reported as lost"),
-    RESERVED("Reserved", "The book is reserved for pickup");
+    RESERVED("Reserved", "The book is reserved for pickup"),
+    EXPIRED("Expired", "The reservation was not picked up in time");
 
     private final String displayName;
     private final String description;
@@ -48,6 +49,15 @@ public enum TransactionStatus {
         return description;
     }
 
+    /**
+     * Checks whether this status describes a loan whose copy is still out with the borrower.
+     *
+     * @return true for active, renewed and overdue loans, false otherwise
+     */
+    public boolean isOpenLoan() {
+        return this == ACTIVE || this == RENEWED || this == OVERDUE;
+    }
+
     /**
      * Converts a string to a TransactionStatus enum value, ignoring case.
      *